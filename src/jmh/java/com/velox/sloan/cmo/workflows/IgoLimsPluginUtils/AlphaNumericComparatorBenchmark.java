@@ -0,0 +1,35 @@
+package com.velox.sloan.cmo.workflows.IgoLimsPluginUtils;
+
+import com.velox.sloan.cmo.workflows.SyntheticPlateData;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Time to sort the Sample IDs of 96, 384 and 1536 well plates with AlphaNumericComparator, the same way the plate and
+ * pool plugins sort samples.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AlphaNumericComparatorBenchmark {
+    @Param({"96", "384", "1536"})
+    private int plateSize;
+
+    private List<String> sampleIds;
+
+    @Setup
+    public void setUp() {
+        sampleIds = SyntheticPlateData.sampleIds(plateSize);
+    }
+
+    @Benchmark
+    public List<String> sortSampleIds() {
+        return sampleIds.stream().sorted(new AlphaNumericComparator()).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,244 @@
+package com.velox.sloan.cmo.workflows;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Generates instrument files and sample values for benchmarks, in the formats read by the plugins. Data is generated for
+ * 96, 384 and 1536 well plates from a fixed seed, so every run of a benchmark parses the same content.
+ */
+public final class SyntheticPlateData {
+    private static final long SEED = 20200324L;
+    private static final String[] STR_MARKERS = {"AMEL", "CSF1PO", "D2S1338", "D3S1358", "D5S818", "D7S820", "D8S1179",
+            "D13S317", "D16S539", "D18S51", "D19S433", "D21S11", "FGA", "TH01", "TPOX", "vWA"};
+
+    private SyntheticPlateData() {
+    }
+
+    /**
+     * Well IDs of a plate in column order, like 'A01', 'B01'. Rows after 'Z' are named 'AA', 'AB' and so on.
+     *
+     * @param plateSize 96, 384 or 1536
+     * @return List of well IDs.
+     */
+    public static List<String> wellIds(int plateSize) {
+        int rows = getRowCount(plateSize);
+        int columns = plateSize / rows;
+        List<String> wellIds = new ArrayList<>(plateSize);
+        for (int column = 1; column <= columns; column++) {
+            for (int row = 0; row < rows; row++) {
+                wellIds.add(String.format(Locale.ROOT, "%s%02d", getRowName(row), column));
+            }
+        }
+        return wellIds;
+    }
+
+    /**
+     * IGO Sample IDs like '09687_AO_1_1' from a few requests, in random order.
+     *
+     * @param count
+     * @return List of Sample IDs.
+     */
+    public static List<String> sampleIds(int count) {
+        Random random = new Random(SEED);
+        List<String> sampleIds = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int request = 7566 + (i % 7) * 531;
+            String requestSuffix = i % 3 == 0 ? "" : "_" + (char) ('A' + (i % 5)) + (char) ('A' + (i % 11));
+            StringBuilder sampleId = new StringBuilder(String.format(Locale.ROOT, "%05d%s_%d", request, requestSuffix, i / 7 + 1));
+            for (int aliquot = random.nextInt(4); aliquot >= 0; aliquot--) {
+                sampleId.append('_').append(random.nextInt(3) + 1);
+            }
+            sampleIds.add(sampleId.toString());
+        }
+        Collections.shuffle(sampleIds, random);
+        return sampleIds;
+    }
+
+    /**
+     * QX200 ddPCR results file with a target (Ch1Unknown) and a reference (Ch2Reference) row for every well.
+     *
+     * @param plateSize
+     * @return content of the csv file.
+     */
+    public static byte[] ddPcrQx200Results(int plateSize) {
+        Random random = new Random(SEED);
+        StringBuilder content = new StringBuilder("Well,ExptType,Experiment,Sample,TargetType,Target,Status,Concentration,Supermix,"
+                + "CopiesPer20uLWell,Positives,Negatives,Ch1+Ch2+,Ch1+Ch2-,Ch1-Ch2+,Ch1-Ch2-,AcceptedDroplets,CNV,Threshold\r\n");
+        List<String> wellIds = wellIds(plateSize);
+        for (int i = 0; i < wellIds.size(); i++) {
+            String sample = String.format(Locale.ROOT, "SK-PB-%d-%s", 300 + i / 2, (char) ('A' + i % 6));
+            int accepted = 12000 + random.nextInt(6000);
+            int doublePositive = random.nextInt(20);
+            int channel1Positive = random.nextInt(200);
+            int channel2Positive = 1000 + random.nextInt(2000);
+            int negative = accepted - doublePositive - channel1Positive - channel2Positive;
+            for (String targetType : new String[]{"Ch1Unknown", "Ch2Reference"}) {
+                boolean isTarget = targetType.equals("Ch1Unknown");
+                int positives = isTarget ? doublePositive + channel1Positive : doublePositive + channel2Positive;
+                content.append(wellIds.get(i)).append(",Rare Event Detection,RED,").append(sample).append(',')
+                        .append(targetType).append(',').append(isTarget ? "TP53_R249S" : "RPP30").append(",Manual,")
+                        .append(String.format(Locale.ROOT, "%.2f", positives / (accepted * 0.00085))).append(",ddPCR Supermix for Probes (no dUTP),")
+                        .append(String.format(Locale.ROOT, "%.1f", positives / (accepted * 0.0000425))).append(',').append(positives).append(',')
+                        .append(accepted - positives).append(',').append(doublePositive).append(',').append(channel1Positive).append(',')
+                        .append(channel2Positive).append(',').append(negative).append(',').append(accepted).append(',')
+                        .append(isTarget ? "" : String.format(Locale.ROOT, "%.2f", 1.5 + random.nextDouble())).append(",3037\r\n");
+            }
+        }
+        return content.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Bioanalyzer export with a Sample Name block, Peak Table and Region Table per sample. Sizes of 1,000 bp and more
+     * are quoted with a thousand separator, the same as in exports from the instrument.
+     *
+     * @param samples
+     * @return content of the csv file.
+     */
+    public static byte[] bioAnalyzerExport(int samples) {
+        Random random = new Random(SEED);
+        StringBuilder content = new StringBuilder("Data File Name,2100 expert_High Sensitivity DNA Assay.xad,,,,,,,,,\r\n")
+                .append("Assay Name,High Sensitivity DNA,,,,,,,,,\r\n")
+                .append(" ,,,,,,,,,,\r\n")
+                .append("Number of Samples Run,").append(samples).append(",,,,,,,,,\r\n")
+                .append(" ,,,,,,,,,,\r\n");
+        List<String> sampleIds = sampleIds(samples);
+        for (String sampleId : sampleIds) {
+            content.append("Sample Name,").append(sampleId).append(",,,,,,,,,\r\n")
+                    .append(" ,,,,,,,,,,\r\n")
+                    .append("Peak Table,,,,,,,,,,\r\n")
+                    .append("Size [bp],Conc. [pg/µl],Molarity [pmol/l],Observations,Area,Aligned Migration Time [s],Peak Height,Peak Width,% of Total,Time corrected area,\r\n")
+                    .append("35,125,5411.3,Lower Marker,68.8,43,157,1,0,158.8,\r\n");
+            int size = 100;
+            int peaks = 10 + random.nextInt(10);
+            for (int peak = 0; peak < peaks; peak++) {
+                size += 20 + random.nextInt(180);
+                String sizeValue = size >= 1000 ? String.format(Locale.ROOT, "\"%,d\"", size) : Integer.toString(size);
+                content.append(sizeValue).append(',').append(String.format(Locale.ROOT, "%.2f", random.nextDouble() * 100)).append(',')
+                        .append(String.format(Locale.ROOT, "%.1f", random.nextDouble() * 500)).append(",,")
+                        .append(String.format(Locale.ROOT, "%.1f", random.nextDouble() * 100)).append(",55.06,72.4,1.4,")
+                        .append(String.format(Locale.ROOT, "%.1f", 100.0 / peaks)).append(",62.7,\r\n");
+            }
+            content.append("\"10,380\",75,10.9,Upper Marker,236.8,113,220.3,2.3,0,193.3,\r\n")
+                    .append(" ,,,,,,,,,,\r\n")
+                    .append("Region Table,,,,,,,,,,\r\n")
+                    .append("Name,From [s],To [s],Corr. Area,% of Total,Average Size [bp],Size distribution in CV [%],Conc. [pg/µl],Molarity [pmol/l],Color,\r\n")
+                    .append("Region 1,55.92,95.34,810.1,82,349,36.1,487.22,2431,12930121,\r\n")
+                    .append(" ,,,,,,,,,,\r\n");
+        }
+        return content.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Tapestation region export with an adapter, library and high molecular weight region per sample.
+     *
+     * @param samples
+     * @return content of the csv file.
+     */
+    public static byte[] tapeStationResults(int samples) {
+        Random random = new Random(SEED);
+        StringBuilder content = new StringBuilder("FileName,WellId,Sample Description,From [bp],To [bp],Average Size [bp],Conc. [ng/µl],Region Molarity [nmol/l],% of Total\r\n");
+        List<String> wellIds = wellIds(samples <= 96 ? 96 : samples <= 384 ? 384 : 1536);
+        List<String> sampleIds = sampleIds(samples);
+        int[][] regions = {{120, 180}, {180, 1000}, {1000, 5000}};
+        for (int i = 0; i < samples; i++) {
+            for (int[] region : regions) {
+                content.append(String.format(Locale.ROOT, "20200312 Lib QC.D1000,%s,%s,%d,%d,%d,%.4f,%.3f,%.2f\r\n", wellIds.get(i), sampleIds.get(i),
+                        region[0], region[1], (region[0] + region[1]) / 2, random.nextDouble(), random.nextDouble() * 5,
+                        random.nextDouble() * 50));
+            }
+        }
+        return content.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * QuantStudio qPCR results with the '#' run header lines and N1, N2 and RP wells for every sample.
+     *
+     * @param plateSize
+     * @return content of the csv file.
+     */
+    public static byte[] qpcrResults(int plateSize) {
+        Random random = new Random(SEED);
+        StringBuilder content = new StringBuilder();
+        for (String runHeader : new String[]{"Plate File Name: /COVID19/2020-03-24_Batch2.eds", "Block Type: 384-Well Block",
+                "Instrument Name: appletini", "Passive Reference: ROX", "Quantification Cycle Method: CT"}) {
+            content.append("# ").append(runHeader).append(",,,,,,,,,,,,,,,,\r\n");
+        }
+        content.append("Well,Well Position,Omit,Sample,Target,Task,Reporter,Quencher,Amp Status,Amp Score,Curve Quality,"
+                + "Result Quality Issues,Cq,Cq Confidence,Cq Mean,Cq SD,Threshold\r\n");
+        String[] targets = {"N1", "N2", "RP"};
+        List<String> wellIds = wellIds(plateSize);
+        for (int i = 0; i < wellIds.size(); i++) {
+            String target = targets[i % targets.length];
+            boolean amplified = target.equals("RP") || random.nextInt(10) == 0;
+            String cq = amplified ? String.format(Locale.ROOT, "%.8f", 20 + random.nextDouble() * 20) : "Undetermined";
+            content.append(i + 1).append(',').append(wellIds.get(i)).append(",FALSE,").append(String.format(Locale.ROOT, "20084%05dA", i / 3))
+                    .append(',').append(target).append(",UNKNOWN,FAM,NFQ-MGB,").append(amplified ? "Amp" : "No Amp").append(",1.2,,,")
+                    .append(cq).append(",0.97,").append(amplified ? cq : "").append(",,0.146063705\r\n");
+        }
+        return content.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Lines of a GeneMapper STR export with a row per marker for every sample. Header values are written without the
+     * space after the delimiter, IgoLimsPluginUtils.getCsvHeaderValueMap only finds the index of trimmed header values.
+     *
+     * @param samples
+     * @return lines of the csv file.
+     */
+    public static List<String> strRawData(int samples) {
+        Random random = new Random(SEED);
+        List<String> lines = new ArrayList<>(samples * STR_MARKERS.length + 1);
+        lines.add("Sample File,Sample Name,Panel,Marker,Dye,Allele 1,Allele 2,Allele 3,Allele 4,Size 1,Size 2,Size 3,Size 4");
+        List<String> sampleIds = sampleIds(samples);
+        for (String sampleId : sampleIds) {
+            for (String marker : STR_MARKERS) {
+                String allele1 = marker.equals("AMEL") ? "X" : Integer.toString(8 + random.nextInt(20));
+                String allele2 = marker.equals("AMEL") ? "Y" : random.nextBoolean() ? Integer.toString(8 + random.nextInt(20)) : " ";
+                lines.add(String.format(Locale.ROOT, "%s.fsa, %s, Identifiler_v2, %s, B,%s,%s, , ,%.2f,%.2f, , ", sampleId, sampleId, marker,
+                        allele1, allele2, 100 + random.nextDouble() * 200, 100 + random.nextDouble() * 200));
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Lines of a Micronic rack scan with tube weights. Micronic racks hold 96 tubes, larger inputs are scanned as
+     * several racks in one file.
+     *
+     * @param tubes 96, 384 or 1536
+     * @return lines of the csv file, including the header.
+     */
+    public static String[] micronicTubeWeights(int tubes) {
+        Random random = new Random(SEED);
+        List<String> wellIds = wellIds(96);
+        String[] lines = new String[tubes + 1];
+        lines[0] = "Rack,Tube,Barcode,Weight";
+        for (int i = 0; i < tubes; i++) {
+            lines[i + 1] = String.format(Locale.ROOT, "%d,%s,%d,%.1f", 7000137444L + i / 96, wellIds.get(i % 96), 8027127000L + i,
+                    700 + random.nextDouble() * 100);
+        }
+        return lines;
+    }
+
+    private static int getRowCount(int plateSize) {
+        switch (plateSize) {
+            case 96:
+                return 8;
+            case 384:
+                return 16;
+            case 1536:
+                return 32;
+            default:
+                throw new IllegalArgumentException(String.format(Locale.ROOT, "Unsupported plate size %d.", plateSize));
+        }
+    }
+
+    private static String getRowName(int row) {
+        return row < 26 ? String.valueOf((char) ('A' + row)) : "A" + (char) ('A' + row - 26);
+    }
+}
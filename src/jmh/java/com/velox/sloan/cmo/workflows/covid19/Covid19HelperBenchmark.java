@@ -0,0 +1,41 @@
+package com.velox.sloan.cmo.workflows.covid19;
+
+import com.velox.api.plugin.PluginLogger;
+import com.velox.sloan.cmo.workflows.IgoLimsPluginUtils.CsvReader;
+import com.velox.sloan.cmo.workflows.SyntheticPlateData;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to parse and analyze QuantStudio qPCR results in Covid19Helper, for 96, 384 and 1536 well plates.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class Covid19HelperBenchmark {
+    @Param({"96", "384", "1536"})
+    private int plateSize;
+
+    private final Covid19Helper helper = new Covid19Helper();
+    private byte[] fileContent;
+    private PluginLogger logger;
+
+    @Setup
+    public void setUp() {
+        fileContent = SyntheticPlateData.qpcrResults(plateSize);
+        logger = Mockito.mock(PluginLogger.class);
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> parseAndAnalyzeQpcrData() {
+        CsvReader fileData = new CsvReader(fileContent);
+        return helper.analyzeParsedQpcrData(helper.parseQpcrData(fileData, logger));
+    }
+}
@@ -0,0 +1,46 @@
+package com.velox.sloan.cmo.workflows.digitalpcr;
+
+import com.velox.api.plugin.PluginLogger;
+import com.velox.sloan.cmo.workflows.IgoLimsPluginUtils.CsvReader;
+import com.velox.sloan.cmo.workflows.SyntheticPlateData;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to read, join and group QX200 ddPCR results in DdPcrResultsProcessor, the same steps DigitalPcrResultsParser
+ * runs for every uploaded file, for 96, 384 and 1536 well plates.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DdPcrResultsProcessorBenchmark {
+    @Param({"96", "384", "1536"})
+    private int plateSize;
+
+    private final DdPcrResultsProcessor resultsProcessor = new DdPcrResultsProcessor();
+    private byte[] fileContent;
+    private PluginLogger logger;
+
+    @Setup
+    public void setUp() {
+        fileContent = SyntheticPlateData.ddPcrQx200Results(plateSize);
+        logger = Mockito.mock(PluginLogger.class);
+    }
+
+    @Benchmark
+    public Map<String, List<Map<String, Object>>> readAndGroupQx200Results() {
+        CsvReader fileData = new CsvReader(fileContent);
+        Map<String, Integer> headerValueMap = fileData.getHeaderValueMap();
+        List<List<String>> channel1Data = resultsProcessor.readChannel1Data(fileData, headerValueMap, true);
+        List<List<String>> channel2Data = resultsProcessor.readChannel2Data(fileData, headerValueMap, true);
+        List<Map<String, Object>> flatData = resultsProcessor.concatenateChannel1AndChannel2Data(channel1Data, channel2Data, headerValueMap, true, logger);
+        return resultsProcessor.aggregateResultsBySampleAndAssay(flatData, true);
+    }
+}
@@ -0,0 +1,46 @@
+package com.velox.sloan.cmo.workflows.kapalibrary;
+
+import com.velox.sloan.cmo.workflows.SyntheticPlateData;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time of the per well calculations in AutoIndexAssignmentHelper when Index Barcodes are assigned to a whole plate:
+ * the adapter row and column positions and the adapter and water volumes, for 96, 384 and 1536 well plates.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AutoIndexAssignmentHelperBenchmark {
+    @Param({"96", "384", "1536"})
+    private int plateSize;
+
+    private final AutoIndexAssignmentHelper helper = new AutoIndexAssignmentHelper();
+    private List<String> wellIds;
+
+    @Setup
+    public void setUp() {
+        wellIds = SyntheticPlateData.wellIds(plateSize);
+    }
+
+    @Benchmark
+    public void assignIndexVolumesToPlate(Blackhole blackhole) throws Exception {
+        Double minAdapterVolume = helper.getMinAdapterVolumeRequired(plateSize, false);
+        Double maxPlateVolume = helper.getMaxVolumeLimit(plateSize);
+        for (int i = 0; i < wellIds.size(); i++) {
+            String wellId = wellIds.get(i);
+            blackhole.consume(helper.getAdapterRowPosition(wellId));
+            blackhole.consume(helper.isOddValue(Integer.parseInt(helper.getAdapterColPosition(wellId))));
+            double dnaInputAmount = 10.0 + i % 90;
+            Double targetAdapterConcentration = helper.getCalculatedTargetAdapterConcentration(dnaInputAmount, plateSize, "DNA");
+            blackhole.consume(helper.getAdapterInputVolume(15.0, minAdapterVolume, targetAdapterConcentration, "DNA", false, false));
+            blackhole.consume(helper.getVolumeOfWater(15.0, minAdapterVolume, targetAdapterConcentration, maxPlateVolume, "DNA", false));
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.velox.sloan.cmo.workflows.qualitycontrol.sequencingqc;
+
+import com.velox.api.plugin.PluginLogger;
+import com.velox.api.util.ClientCallbackOperations;
+import com.velox.sloan.cmo.workflows.IgoLimsPluginUtils.CsvReader;
+import com.velox.sloan.cmo.workflows.IgoLimsPluginUtils.IgoLimsPluginUtils;
+import com.velox.sloan.cmo.workflows.SyntheticPlateData;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parse time of Bioanalyzer exports in BioAnalyzerResultsParser. The test fixture is parsed as it is, and repeated to
+ * the size of a multi-chip export with a distinct Sample Name for every well. Synthetic exports are parsed for a sample
+ * per well of 96, 384 and 1536 well plates.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BioAnalyzerResultsParserBenchmark {
+    private static final String BIOA_HEADER_IDENTIFIER = "Size [bp]";
+    private static final IgoLimsPluginUtils utils = new IgoLimsPluginUtils();
+    private static final PluginLogger logger = Mockito.mock(PluginLogger.class);
+    private static final ClientCallbackOperations clientCallback = Mockito.mock(ClientCallbackOperations.class);
+
+    @State(Scope.Benchmark)
+    public static class FixtureFile {
+        @Param({"BioAnalyzer_Test_File_QCResultAnnotation.csv"})
+        private String fileName;
+
+        @Param({"1", "12"})
+        private int chips;
+
+        private byte[] fileContent;
+
+        @Setup
+        public void setUp() throws Exception {
+            String chipContent = new String(Files.readAllBytes(Paths.get(Objects.requireNonNull(
+                    BioAnalyzerResultsParserBenchmark.class.getClassLoader().getResource(fileName)).toURI())), StandardCharsets.ISO_8859_1);
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            for (int chip = 0; chip < chips; chip++) {
+                String sampleNamePrefix = chip == 0 ? "Sample Name," : String.format("Sample Name,CHIP%d_", chip);
+                content.write(chipContent.replace("Sample Name,", sampleNamePrefix).getBytes(StandardCharsets.ISO_8859_1));
+            }
+            fileContent = content.toByteArray();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class SyntheticExport {
+        @Param({"96", "384", "1536"})
+        private int plateSize;
+
+        private byte[] fileContent;
+
+        @Setup
+        public void setUp() {
+            fileContent = SyntheticPlateData.bioAnalyzerExport(plateSize);
+        }
+    }
+
+    @Benchmark
+    public Map<String, List<QualityControlData>> groupQualityControlDataBySampleId(FixtureFile file) throws Exception {
+        return groupQualityControlData(file.fileContent, file.fileName);
+    }
+
+    @Benchmark
+    public Map<String, List<QualityControlData>> groupSyntheticQualityControlDataBySampleId(SyntheticExport export) throws Exception {
+        return groupQualityControlData(export.fileContent, "synthetic.csv");
+    }
+
+    private Map<String, List<QualityControlData>> groupQualityControlData(byte[] fileContent, String fileName) throws Exception {
+        CsvReader fileData = utils.readCsvFile(fileContent);
+        Map<String, Integer> headerValueMap = utils.getBioanalyzerFileHeaderMap(fileData, fileName, BIOA_HEADER_IDENTIFIER, logger);
+        return new BioAnalyzerResultsParser(fileData, fileName, headerValueMap, clientCallback, logger, null).groupQualityControlDataBySampleId();
+    }
+}
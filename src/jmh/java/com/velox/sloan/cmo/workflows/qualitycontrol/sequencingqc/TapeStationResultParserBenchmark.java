@@ -0,0 +1,47 @@
+package com.velox.sloan.cmo.workflows.qualitycontrol.sequencingqc;
+
+import com.velox.api.plugin.PluginLogger;
+import com.velox.api.util.ClientCallbackOperations;
+import com.velox.sloan.cmo.workflows.IgoLimsPluginUtils.CsvReader;
+import com.velox.sloan.cmo.workflows.IgoLimsPluginUtils.IgoLimsPluginUtils;
+import com.velox.sloan.cmo.workflows.SyntheticPlateData;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parse time of Tapestation region exports in TapeStationResultParser, for a sample per well of 96, 384 and 1536 well
+ * plates.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TapeStationResultParserBenchmark {
+    @Param({"96", "384", "1536"})
+    private int plateSize;
+
+    private final IgoLimsPluginUtils utils = new IgoLimsPluginUtils();
+    private byte[] fileContent;
+    private PluginLogger logger;
+    private ClientCallbackOperations clientCallback;
+
+    @Setup
+    public void setUp() {
+        fileContent = SyntheticPlateData.tapeStationResults(plateSize);
+        logger = Mockito.mock(PluginLogger.class);
+        clientCallback = Mockito.mock(ClientCallbackOperations.class);
+    }
+
+    @Benchmark
+    public Map<String, List<QualityControlData>> groupQualityControlDataBySampleId() throws Exception {
+        CsvReader fileData = utils.readCsvFile(fileContent);
+        TapeStationResultParser parser = new TapeStationResultParser(fileData, "synthetic.csv", fileData.getHeaderValueMap(), clientCallback, logger, null);
+        return parser.groupQualityControlDataBySampleId();
+    }
+}
@@ -0,0 +1,40 @@
+package com.velox.sloan.cmo.workflows.samplereceiving;
+
+import com.velox.sloan.cmo.workflows.SyntheticPlateData;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to validate a Micronic rack scan and get the tube column positions in MicronicTubeVolumeDataReader, for 96, 384
+ * and 1536 tubes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MicronicTubeVolumeDataReaderBenchmark {
+    @Param({"96", "384", "1536"})
+    private int plateSize;
+
+    private final MicronicTubeVolumeDataReader dataReader = new MicronicTubeVolumeDataReader();
+    private String[] fileData;
+
+    @Setup
+    public void setUp() {
+        fileData = SyntheticPlateData.micronicTubeWeights(plateSize);
+    }
+
+    @Benchmark
+    public void validateAndReadColumnPositions(Blackhole blackhole) {
+        blackhole.consume(dataReader.allRowsHaveValidData(fileData));
+        Map<String, Integer> header = dataReader.getHeaderValues(fileData);
+        for (int i = 1; i < fileData.length; i++) {
+            blackhole.consume(dataReader.getColumnPosition(fileData[i], header));
+        }
+    }
+}
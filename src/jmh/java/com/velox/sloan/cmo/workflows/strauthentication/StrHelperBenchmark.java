@@ -0,0 +1,42 @@
+package com.velox.sloan.cmo.workflows.strauthentication;
+
+import com.velox.api.plugin.PluginLogger;
+import com.velox.sloan.cmo.workflows.IgoLimsPluginUtils.IgoLimsPluginUtils;
+import com.velox.sloan.cmo.workflows.SyntheticPlateData;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to aggregate GeneMapper STR exports by sample in StrHelper and convert them to Cellosaurus API requests, for a
+ * sample per well of 96, 384 and 1536 well plates.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StrHelperBenchmark {
+    @Param({"96", "384", "1536"})
+    private int plateSize;
+
+    private final StrHelper strHelper = new StrHelper();
+    private final IgoLimsPluginUtils utils = new IgoLimsPluginUtils();
+    private List<String> fileData;
+    private Map<String, Integer> headerValueMap;
+
+    @Setup
+    public void setUp() {
+        fileData = SyntheticPlateData.strRawData(plateSize);
+        headerValueMap = utils.getCsvHeaderValueMap(fileData, Mockito.mock(PluginLogger.class));
+    }
+
+    @Benchmark
+    public List<String> aggregateDataBySample() throws Exception {
+        return strHelper.convertSampleDataToJson(strHelper.aggregateDataBySample(fileData, headerValueMap, "human"));
+    }
+}
@@ -5,8 +5,9 @@ import com.velox.api.datarecord.IoError;
 import com.velox.api.datarecord.NotFound;
 import com.velox.api.plugin.PluginResult;
 import com.velox.api.util.ServerException;
-import com.velox.sapioutils.server.plugin.DefaultGenericPlugin;
 import com.velox.sloan.cmo.workflows.micronics.NewMicronicTubeTareWeightImporter;
+import com.velox.sloan.cmo.workflows.utils.DataRecordQuery;
+import com.velox.sloan.cmo.workflows.utils.ProfiledGenericPlugin;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 
 import java.rmi.RemoteException;
@@ -20,7 +21,7 @@ import java.util.Map;
  * to LIMS without creating child record of IndexBarcode type.
  * Created by sharmaa1 on 7/15/19.
  */
-public class IndexBarcodeChildRecordGenerator extends DefaultGenericPlugin {
+public class IndexBarcodeChildRecordGenerator extends ProfiledGenericPlugin {
     private String[] permittedUsers = {"Sample Receiving", "Sapio Admin", "Admin"};
     private NewMicronicTubeTareWeightImporter excelFileValidator = new NewMicronicTubeTareWeightImporter();
 
@@ -33,7 +34,7 @@ public class IndexBarcodeChildRecordGenerator extends DefaultGenericPlugin {
     }
 
     @Override
-    public PluginResult run() throws ServerException, RemoteException {
+    protected PluginResult runProfiled() throws ServerException, RemoteException {
         String dataFile = clientCallback.showFileDialog("Upload csv file with Index Barcode Information", null);
         try {
             byte[] byteData = clientCallback.readBytes(dataFile);
@@ -62,7 +63,7 @@ public class IndexBarcodeChildRecordGenerator extends DefaultGenericPlugin {
                 barcodeRecords.add(barcodeInfo);
             }
 
-            List<DataRecord> samples = dataRecordManager.queryDataRecords("Sample", "SampleId", getSampleIds(dataInFile), user);
+            List<DataRecord> samples = DataRecordQuery.from("Sample").whereIn("SampleId", getSampleIds(dataInFile)).execute(dataRecordManager, user);
             logInfo("Total samples: " + samples.toString());
             if (!samples.isEmpty()) {
                 for (DataRecord sample : samples) {
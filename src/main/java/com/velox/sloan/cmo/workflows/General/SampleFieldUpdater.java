@@ -1,14 +1,15 @@
 package com.velox.sloan.cmo.workflows.General;
 
 import com.velox.api.datarecord.*;
-import com.velox.api.exception.recoverability.serverexception.UnrecoverableServerException;
 import com.velox.api.plugin.PluginResult;
+import com.velox.api.user.User;
 import com.velox.api.util.ServerException;
-import com.velox.sapioutils.server.plugin.DefaultGenericPlugin;
+import com.velox.sloan.cmo.workflows.utils.DataRecordFieldCache;
+import com.velox.sloan.cmo.workflows.utils.ProfiledGenericPlugin;
+import com.velox.sloan.cmo.workflows.utils.SampleLineageCache;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 
-import java.rmi.Remote;
 import java.rmi.RemoteException;
 import java.util.*;
 import java.util.regex.Matcher;
@@ -21,8 +22,12 @@ import java.util.regex.Pattern;
  *
  * @author sharmaa1
  */
-public class SampleFieldUpdater extends DefaultGenericPlugin {
+public class SampleFieldUpdater extends ProfiledGenericPlugin {
     private String[] permittedUsers = {"Sapio Admin"};
+    private SampleLineageCache lineageCache;
+    private DataRecordFieldCache fieldCache;
+    private FieldUpdates fieldUpdates;
+    private Map<Long, List<String>> childDataTypeNamesByRecordId;
 
     public SampleFieldUpdater() {
         setTableToolbar(true);
@@ -36,7 +41,7 @@ public class SampleFieldUpdater extends DefaultGenericPlugin {
         return dataTypeName.equals("Sample");
     }
 
-    public PluginResult run() throws ServerException, RemoteException {
+    protected PluginResult runProfiled() throws ServerException, RemoteException {
         try {
             List<DataRecord> records = dataRecordList;
             String dataFieldToUpdate = clientCallback.showInputDialog("Please enter the DataFieldName to update for the samples in this table: eg: 'OtherSampleId'");
@@ -131,46 +136,75 @@ public class SampleFieldUpdater extends DefaultGenericPlugin {
 
 
     /**
-     * Method to get all the descendants on a DataRecord within a request.
+     * Method to get all the descendants within the request of each sample. The children of all samples on the same level of
+     * the hierarchy are loaded together, with one server call for the children and one for their field values.
      *
-     * @param sample
-     * @return List<DataRecord>
+     * @param samples
+     * @return Map of sample RecordId and the sample with its descendants.
      * @throws RemoteException
-     * @throws NotFound
      * @throws ServerException
      * @throws IoError
      */
-    private List<DataRecord> getDescendantSamplesWithinRequest(DataRecord sample) throws RemoteException, NotFound, ServerException, IoError {
-        List<DataRecord> descendantSamplesInRequest = new ArrayList<>();
-        descendantSamplesInRequest.add(sample);
-        Stack<DataRecord> sampleStack = new Stack<>();
-        sampleStack.add(sample);
-        while (!sampleStack.isEmpty()) {
-            DataRecord nextSample = sampleStack.pop();
-            if (nextSample.getChildrenOfType("Sample", user).length > 0) {
-                for (DataRecord samp : nextSample.getChildrenOfType("Sample", user)) {
-                    if (!"pooled library".equals(samp.getStringVal("ExemplarSampleType", user).toLowerCase())
-                            && samp.getValue("RequestId", user) != null
-                            && sample.getValue("RequestId", user) != null
-                            && samp.getStringVal("RequestId", user).equals(sample.getStringVal("RequestId", user))) {
-                        descendantSamplesInRequest.add(samp);
-                        logInfo("desc in request: " + samp.getStringVal("SampleId", user));
-                        sampleStack.push(samp);
-                    }
-                    if ("pooled library".equals(samp.getStringVal("ExemplarSampleType", user).toLowerCase())
-                            && samp.getValue("RequestId", user) != null && sample.getValue("RequestId", user) != null) {
-                        List<String> poolRequestIds = Arrays.asList(samp.getStringVal("RequestId", user).split(","));
-                        String sampleRequestId = sample.getStringVal("RequestId", user);
-                        if (poolRequestIds.contains(sampleRequestId)) {
-                            descendantSamplesInRequest.add(samp);
-                            logInfo("desc in request: " + samp.getStringVal("SampleId", user));
-                            sampleStack.push(samp);
+    private Map<Long, List<DataRecord>> getDescendantSamplesWithinRequest(List<DataRecord> samples) throws RemoteException, ServerException, IoError {
+        Map<Long, List<DataRecord>> descendantSamplesBySampleId = new HashMap<>();
+        Map<Long, Set<Long>> visitedRecordIdsBySampleId = new HashMap<>();
+        Map<Long, List<DataRecord>> levelBySampleId = new HashMap<>();
+        for (DataRecord sample : samples) {
+            descendantSamplesBySampleId.put(sample.getRecordId(), new ArrayList<>(Collections.singletonList(sample)));
+            visitedRecordIdsBySampleId.put(sample.getRecordId(), new HashSet<>(Collections.singletonList(sample.getRecordId())));
+            levelBySampleId.put(sample.getRecordId(), Collections.singletonList(sample));
+        }
+        while (!levelBySampleId.isEmpty()) {
+            List<DataRecord> frontier = new ArrayList<>();
+            for (List<DataRecord> level : levelBySampleId.values()) {
+                frontier.addAll(level);
+            }
+            lineageCache.loadChildren(frontier, "Sample");
+            List<DataRecord> childSamples = new ArrayList<>();
+            for (DataRecord levelSample : frontier) {
+                childSamples.addAll(lineageCache.getChildren(levelSample, "Sample"));
+            }
+            fieldCache.prefetch(childSamples);
+            Map<Long, List<DataRecord>> nextLevelBySampleId = new HashMap<>();
+            for (Map.Entry<Long, List<DataRecord>> sampleLevel : levelBySampleId.entrySet()) {
+                Long sampleId = sampleLevel.getKey();
+                String requestId = fieldCache.getStringVal(descendantSamplesBySampleId.get(sampleId).get(0), "RequestId");
+                List<DataRecord> nextLevel = new ArrayList<>();
+                for (DataRecord levelSample : sampleLevel.getValue()) {
+                    for (DataRecord samp : lineageCache.getChildren(levelSample, "Sample")) {
+                        if (isSampleWithinRequest(samp, requestId) && visitedRecordIdsBySampleId.get(sampleId).add(samp.getRecordId())) {
+                            descendantSamplesBySampleId.get(sampleId).add(samp);
+                            logInfo("desc in request: " + fieldCache.getStringVal(samp, "SampleId"));
+                            nextLevel.add(samp);
                         }
                     }
                 }
+                if (!nextLevel.isEmpty()) {
+                    nextLevelBySampleId.put(sampleId, nextLevel);
+                }
             }
+            levelBySampleId = nextLevelBySampleId;
         }
-        return descendantSamplesInRequest;
+        return descendantSamplesBySampleId;
+    }
+
+    /**
+     * Method to check if a sample belongs to a request. Pooled samples belong to all requests in their comma separated RequestId.
+     *
+     * @param sample
+     * @param requestId
+     * @return Boolean
+     * @throws RemoteException
+     */
+    private boolean isSampleWithinRequest(DataRecord sample, String requestId) throws RemoteException {
+        String sampleRequestId = fieldCache.getStringVal(sample, "RequestId");
+        if (sampleRequestId == null || requestId == null) {
+            return false;
+        }
+        if ("pooled library".equalsIgnoreCase(fieldCache.getStringVal(sample, "ExemplarSampleType"))) {
+            return Arrays.asList(sampleRequestId.split(",")).contains(requestId);
+        }
+        return sampleRequestId.equals(requestId);
     }
 
     /**
@@ -182,14 +216,16 @@ public class SampleFieldUpdater extends DefaultGenericPlugin {
      * @return
      * @throws IoError
      * @throws RemoteException
-     * @throws NotFound
+     * @throws ServerException
      */
-    private String getPrevousAssignedValueForOtherSampleId(DataRecord sample, String newValue, String fieldName) throws IoError, RemoteException, NotFound, UnrecoverableServerException {
-        DataRecord[] childSamples = sample.getChildrenOfType("Sample", user);
-        if (childSamples.length > 0) {
-            if (fieldName.equals("OtherSampleId") && childSamples[0].getValue("ExemplarSampleType", user) != null && !childSamples[0].getStringVal("ExemplarSampleType", user).equalsIgnoreCase("Pooled Library")) {
-                if (childSamples[0].getValue("OtherSampleId", user) != null && !newValue.equalsIgnoreCase(childSamples[0].getStringVal("OtherSampleId", user))) {
-                    return childSamples[0].getStringVal("OtherSampleId", user);
+    private String getPrevousAssignedValueForOtherSampleId(DataRecord sample, String newValue, String fieldName) throws IoError, RemoteException, ServerException {
+        List<DataRecord> childSamples = lineageCache.getChildren(sample, "Sample");
+        if (childSamples.size() > 0) {
+            String childSampleType = getCurrentStringVal(childSamples.get(0), "ExemplarSampleType");
+            if (fieldName.equals("OtherSampleId") && childSampleType != null && !childSampleType.equalsIgnoreCase("Pooled Library")) {
+                String childSampleName = getCurrentStringVal(childSamples.get(0), "OtherSampleId");
+                if (childSampleName != null && !newValue.equalsIgnoreCase(childSampleName)) {
+                    return childSampleName;
                 }
             }
         }
@@ -224,6 +260,34 @@ public class SampleFieldUpdater extends DefaultGenericPlugin {
         return new ArrayList<>(descendentDataTypeNames);
     }
 
+    /**
+     * Method to load the child records other than Samples of all descendant samples. Children of a DataType are loaded for
+     * all samples that have them with one server call, and the field values of all children with one more call.
+     *
+     * @param descendantSamples
+     * @throws IoError
+     * @throws RemoteException
+     * @throws ServerException
+     */
+    private void loadChildRecordsExceptSamples(Collection<DataRecord> descendantSamples) throws IoError, RemoteException, ServerException {
+        Map<String, List<DataRecord>> samplesByChildDataTypeName = new LinkedHashMap<>();
+        for (DataRecord sample : descendantSamples) {
+            List<String> childDataTypeNames = getDescendentDataTypeNames(sample);
+            childDataTypeNamesByRecordId.put(sample.getRecordId(), childDataTypeNames);
+            for (String childDataTypeName : childDataTypeNames) {
+                samplesByChildDataTypeName.computeIfAbsent(childDataTypeName, k -> new ArrayList<>()).add(sample);
+            }
+        }
+        List<DataRecord> childRecords = new ArrayList<>();
+        for (Map.Entry<String, List<DataRecord>> samplesWithChildType : samplesByChildDataTypeName.entrySet()) {
+            lineageCache.loadChildren(samplesWithChildType.getValue(), samplesWithChildType.getKey());
+            for (DataRecord sample : samplesWithChildType.getValue()) {
+                childRecords.addAll(lineageCache.getChildren(sample, samplesWithChildType.getKey()));
+            }
+        }
+        fieldCache.prefetch(childRecords);
+    }
+
     /**
      * ,
      * Update the samples that are not pools.
@@ -234,30 +298,25 @@ public class SampleFieldUpdater extends DefaultGenericPlugin {
      * @throws IoError
      * @throws RemoteException
      * @throws InvalidValue
-     * @throws NotFound
      */
-    private void updateSampleFields(DataRecord descSamp, Object valueToOverWrite, String fieldNameToUpdate) throws IoError, RemoteException, InvalidValue, NotFound, ServerException {
-        if ("OtherSampleId".equals(fieldNameToUpdate) && !isValidOtherSampleId(valueToOverWrite, descSamp.getStringVal("ExemplarSampleType", user))) {
+    private void updateSampleFields(DataRecord descSamp, Object valueToOverWrite, String fieldNameToUpdate) throws IoError, RemoteException, InvalidValue, ServerException {
+        if ("OtherSampleId".equals(fieldNameToUpdate) && !isValidOtherSampleId(valueToOverWrite, getCurrentStringVal(descSamp, "ExemplarSampleType"))) {
             throw new InvalidValue(String.format("Invalid OtherSampleId '%s", String.valueOf(valueToOverWrite)));
         }
-        List<String> childDataTypesExceptSample = getDescendentDataTypeNames(descSamp);
-        descSamp.setDataField(fieldNameToUpdate, valueToOverWrite, user);
-        for (String descendentType : childDataTypesExceptSample) {
-            List<DataRecord> children = Arrays.asList(descSamp.getChildrenOfType(descendentType, user));
-            clientCallback.displayInfo(" descendant type: " + descendentType);
-            if (children.size() > 0) {
-                for (DataRecord rec : children) {
-                    Map<String, Object> fields = rec.getFields(user);
-                    if (fields.containsKey(fieldNameToUpdate)) {
-                        rec.setDataField(fieldNameToUpdate, valueToOverWrite, user);
-                    }
+        fieldUpdates.put(descSamp, fieldNameToUpdate, valueToOverWrite);
+        for (String descendentType : childDataTypeNamesByRecordId.get(descSamp.getRecordId())) {
+            logInfo(" descendant type: " + descendentType);
+            for (DataRecord rec : lineageCache.getChildren(descSamp, descendentType)) {
+                if (fieldCache.get(rec).hasField(fieldNameToUpdate)) {
+                    fieldUpdates.put(rec, fieldNameToUpdate, valueToOverWrite);
                 }
             }
         }
     }
 
     /**
-     * Method to update fields on descendants of a DataRecord.
+     * Method to update fields on descendants of a DataRecord. The new values are collected first and set on all records with a
+     * single server call at the end.
      *
      * @param samples
      * @param fieldNameToUpdate
@@ -269,24 +328,38 @@ public class SampleFieldUpdater extends DefaultGenericPlugin {
      */
 
     private void updateFieldsOnDescendants(List<DataRecord> samples, String fieldNameToUpdate) throws IoError, RemoteException, ServerException, NotFound, InvalidValue {
+        lineageCache = new SampleLineageCache(dataRecordManager, user);
+        fieldCache = lineageCache.getFieldCache();
+        fieldUpdates = new FieldUpdates();
+        childDataTypeNamesByRecordId = new HashMap<>();
+        fieldCache.prefetch(samples);
+        Map<Long, List<DataRecord>> descendantSamplesBySampleId = getDescendantSamplesWithinRequest(samples);
+        Map<Long, DataRecord> allDescendantSamples = new LinkedHashMap<>();
+        for (List<DataRecord> descendantSamples : descendantSamplesBySampleId.values()) {
+            for (DataRecord samp : descendantSamples) {
+                allDescendantSamples.putIfAbsent(samp.getRecordId(), samp);
+            }
+        }
+        loadChildRecordsExceptSamples(allDescendantSamples.values());
         for (DataRecord sample : samples) {
-            Object valueToOverwrie = sample.getStringVal(fieldNameToUpdate, user);
+            Object valueToOverwrie = getCurrentStringVal(sample, fieldNameToUpdate);
             String oldValue = getPrevousAssignedValueForOtherSampleId(sample, String.valueOf(valueToOverwrie), fieldNameToUpdate);
-            List<DataRecord> descendantSamples = getDescendantSamplesWithinRequest(sample);
-            for (DataRecord samp : descendantSamples) {
+            for (DataRecord samp : descendantSamplesBySampleId.get(sample.getRecordId())) {
+                String sampleType = getCurrentStringVal(samp, "ExemplarSampleType");
                 if (fieldNameToUpdate.equalsIgnoreCase("OtherSampleId")
-                        && samp.getValue("ExemplarSampleType", user) != null
-                        && !"Pooled Library".equalsIgnoreCase(samp.getStringVal("ExemplarSampleType", user))) {
+                        && sampleType != null
+                        && !"Pooled Library".equalsIgnoreCase(sampleType)) {
                     updateSampleFields(samp, valueToOverwrie, fieldNameToUpdate);
                 } else if (fieldNameToUpdate.equalsIgnoreCase("OtherSampleId")
-                        && samp.getValue("ExemplarSampleType", user) != null
-                        && "Pooled Library".equalsIgnoreCase(samp.getStringVal("ExemplarSampleType", user))) {
+                        && sampleType != null
+                        && "Pooled Library".equalsIgnoreCase(sampleType)) {
                     updatePooledSampleFields(samp, valueToOverwrie, fieldNameToUpdate, oldValue);
                 } else {
                     updateSampleFields(samp, valueToOverwrie, fieldNameToUpdate);
                 }
             }
         }
+        fieldUpdates.apply(dataRecordManager, user);
     }
 
     /**
@@ -300,32 +373,74 @@ public class SampleFieldUpdater extends DefaultGenericPlugin {
      * @throws IoError
      * @throws RemoteException
      * @throws InvalidValue
-     * @throws NotFound
      * @throws ServerException
      */
-    private void updatePooledSampleFields(DataRecord descSamp, Object valueToOverWrite, String fieldNameToUpdate, String oldValueForSampleName) throws IoError, RemoteException, InvalidValue, NotFound, ServerException {
-        if ("OtherSampleId".equals(fieldNameToUpdate) && !isValidOtherSampleId(valueToOverWrite, descSamp.getStringVal("ExemplarSampleType", user))) {
+    private void updatePooledSampleFields(DataRecord descSamp, Object valueToOverWrite, String fieldNameToUpdate, String oldValueForSampleName) throws IoError, RemoteException, InvalidValue, ServerException {
+        if ("OtherSampleId".equals(fieldNameToUpdate) && !isValidOtherSampleId(valueToOverWrite, getCurrentStringVal(descSamp, "ExemplarSampleType"))) {
             throw new InvalidValue(String.format("Invalid OtherSampleId '%s", String.valueOf(valueToOverWrite)));
         }
-        List<String> childDataTypesExceptSample = getDescendentDataTypeNames(descSamp);
-        String pooledSampleId = descSamp.getStringVal("OtherSampleId", user);
+        String pooledSampleId = getCurrentStringVal(descSamp, "OtherSampleId");
         String newPooledSampleId = getNewSampleNameForPool(pooledSampleId, oldValueForSampleName, String.valueOf(valueToOverWrite));
         logInfo(newPooledSampleId);
-        descSamp.setDataField(fieldNameToUpdate, newPooledSampleId, user);
-        for (String descendentType : childDataTypesExceptSample) {
-            List<DataRecord> children = Arrays.asList(descSamp.getChildrenOfType(descendentType, user));
-            if (children.size() > 0) {
-                for (DataRecord rec : children) {
-                    Map<String, Object> fields = rec.getFields(user);
-                    if ("OtherSampleId".equals(fieldNameToUpdate) && fields.containsKey(fieldNameToUpdate)) {
-                        //String newPooledSampleId = getNewSampleNameForPool(pooledSampleId, oldValueForSampleName, String.valueOf(valueToOverWrite));
-                        rec.setDataField(fieldNameToUpdate, newPooledSampleId, user);
-                    }
-                    if (!"OtherSampleId".equals(fieldNameToUpdate) && fields.containsKey(fieldNameToUpdate)) {
-                        rec.setDataField(fieldNameToUpdate, valueToOverWrite, user);
-                    }
+        fieldUpdates.put(descSamp, fieldNameToUpdate, newPooledSampleId);
+        for (String descendentType : childDataTypeNamesByRecordId.get(descSamp.getRecordId())) {
+            for (DataRecord rec : lineageCache.getChildren(descSamp, descendentType)) {
+                if ("OtherSampleId".equals(fieldNameToUpdate) && fieldCache.get(rec).hasField(fieldNameToUpdate)) {
+                    fieldUpdates.put(rec, fieldNameToUpdate, newPooledSampleId);
+                }
+                if (!"OtherSampleId".equals(fieldNameToUpdate) && fieldCache.get(rec).hasField(fieldNameToUpdate)) {
+                    fieldUpdates.put(rec, fieldNameToUpdate, valueToOverWrite);
                 }
             }
         }
     }
+
+    /**
+     * Get the value of a field as it will be after the collected updates are set.
+     *
+     * @param record
+     * @param fieldName
+     * @return String value or null when the field has no value.
+     * @throws RemoteException
+     */
+    private String getCurrentStringVal(DataRecord record, String fieldName) throws RemoteException {
+        if (fieldUpdates.hasValue(record, fieldName)) {
+            Object value = fieldUpdates.getValue(record, fieldName);
+            return value == null ? null : value.toString();
+        }
+        return fieldCache.getStringVal(record, fieldName);
+    }
+
+    /**
+     * New field values per record, set on all records with a single setFieldsForRecords call.
+     */
+    private static class FieldUpdates {
+        private final Map<Long, DataRecord> recordsById = new LinkedHashMap<>();
+        private final Map<Long, Map<String, Object>> fieldsByRecordId = new HashMap<>();
+
+        void put(DataRecord record, String fieldName, Object value) {
+            recordsById.putIfAbsent(record.getRecordId(), record);
+            fieldsByRecordId.computeIfAbsent(record.getRecordId(), k -> new HashMap<>()).put(fieldName, value);
+        }
+
+        boolean hasValue(DataRecord record, String fieldName) {
+            return fieldsByRecordId.containsKey(record.getRecordId()) && fieldsByRecordId.get(record.getRecordId()).containsKey(fieldName);
+        }
+
+        Object getValue(DataRecord record, String fieldName) {
+            return fieldsByRecordId.get(record.getRecordId()).get(fieldName);
+        }
+
+        void apply(DataRecordManager dataRecordManager, User user) throws IoError, RemoteException, ServerException, NotFound, InvalidValue {
+            if (recordsById.isEmpty()) {
+                return;
+            }
+            List<DataRecord> records = new ArrayList<>(recordsById.values());
+            List<Map<String, Object>> fields = new ArrayList<>();
+            for (DataRecord record : records) {
+                fields.add(fieldsByRecordId.get(record.getRecordId()));
+            }
+            dataRecordManager.setFieldsForRecords(records, fields, user);
+        }
+    }
 }
@@ -0,0 +1,145 @@
+package com.velox.sloan.cmo.workflows.IgoLimsPluginUtils;
+
+import java.util.*;
+
+/**
+ * Streaming reader for CSV files uploaded to plugins. Rows are tokenized one at a time directly from the file content
+ * read as ISO-8859-1, the same charset used by IgoLimsPluginUtils.readDataFromCsvFile. Values enclosed in double quotes
+ * may contain commas, line breaks and escaped quotes (""), so numbers with a thousand separator like "1,234" are read as
+ * a single cell.
+ * <p>
+ * The first row of the file is used as the header. Iterating the reader returns the same CsvRow instance for every
+ * row, so no objects are created per cell while scanning the file. The reader can be iterated more than once.
+ */
+public class CsvReader implements Iterable<CsvRow> {
+    private static final byte DELIMITER = ',';
+    private static final byte QUOTE = '"';
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
+
+    private final byte[] content;
+    private Map<String, Integer> headerValueMap;
+
+    public CsvReader(byte[] content) {
+        this.content = content == null ? new byte[0] : content;
+    }
+
+    public boolean isEmpty() {
+        return content.length == 0;
+    }
+
+    /**
+     * Get map of header values in the first row of the file to their column index. Header values are trimmed.
+     *
+     * @return Map of header value to column index.
+     */
+    public Map<String, Integer> getHeaderValueMap() {
+        if (headerValueMap == null) {
+            Map<String, Integer> headerValues = new HashMap<>();
+            if (!isEmpty()) {
+                CsvRow header = new CsvRow(content, null);
+                readRow(header, 0, 0);
+                headerValues = header.toHeaderValueMap();
+            }
+            headerValueMap = Collections.unmodifiableMap(headerValues);
+        }
+        return headerValueMap;
+    }
+
+    /**
+     * Iterate over all rows of the file including the header row.
+     */
+    @Override
+    public Iterator<CsvRow> iterator() {
+        return new RowIterator(false);
+    }
+
+    /**
+     * Iterate over the rows of the file after the header row.
+     *
+     * @return Iterable over data rows.
+     */
+    public Iterable<CsvRow> getDataRows() {
+        return () -> new RowIterator(true);
+    }
+
+    /**
+     * Tokenize the row starting at position into the passed row.
+     *
+     * @return position where the next row starts.
+     */
+    private int readRow(CsvRow row, int position, int lineNumber) {
+        int length = content.length;
+        row.reset(position, lineNumber);
+        while (true) {
+            int cellStart = position;
+            int cellEnd;
+            boolean hasEscapedQuotes = false;
+            if (position < length && content[position] == QUOTE) {
+                cellStart = ++position;
+                while (position < length) {
+                    if (content[position] == QUOTE) {
+                        if (position + 1 < length && content[position + 1] == QUOTE) {
+                            hasEscapedQuotes = true;
+                            position += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    position++;
+                }
+                cellEnd = position;
+                // skip closing quote and anything between it and the next delimiter.
+                while (position < length && content[position] != DELIMITER && content[position] != CR && content[position] != LF) {
+                    position++;
+                }
+            } else {
+                while (position < length && content[position] != DELIMITER && content[position] != CR && content[position] != LF) {
+                    position++;
+                }
+                cellEnd = position;
+            }
+            row.addCell(cellStart, cellEnd, hasEscapedQuotes);
+            if (position < length && content[position] == DELIMITER) {
+                position++;
+                continue;
+            }
+            row.setLineEnd(position);
+            if (position < length && content[position] == CR) {
+                position++;
+                if (position < length && content[position] == LF) {
+                    position++;
+                }
+            } else if (position < length && content[position] == LF) {
+                position++;
+            }
+            return position;
+        }
+    }
+
+    private class RowIterator implements Iterator<CsvRow> {
+        private final CsvRow row = new CsvRow(content, getHeaderValueMap());
+        private int position = 0;
+        private int lineNumber = 0;
+
+        RowIterator(boolean skipHeader) {
+            if (skipHeader && hasNext()) {
+                next();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return position < content.length;
+        }
+
+        @Override
+        public CsvRow next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            position = readRow(row, position, lineNumber++);
+            return row;
+        }
+    }
+}
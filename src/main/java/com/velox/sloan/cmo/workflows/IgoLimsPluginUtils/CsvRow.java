@@ -0,0 +1,299 @@
+package com.velox.sloan.cmo.workflows.IgoLimsPluginUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * View over a single row of a CSV file read by CsvReader. The row keeps offsets of the cells in the file content, so
+ * cell values are only turned into Strings when they are read. Checks like isBlank, equalsIgnoreCase and contains
+ * compare against the file content directly.
+ * <p>
+ * CsvReader reuses the same CsvRow instance for every row. Use toList() to keep the values of a row.
+ */
+public final class CsvRow {
+    private final byte[] content;
+    private final Map<String, Integer> headerValueMap;
+    private int[] cellStarts = new int[32];
+    private int[] cellEnds = new int[32];
+    private boolean[] cellHasEscapedQuotes = new boolean[32];
+    private int size;
+    private int lineStart;
+    private int lineEnd;
+    private int lineNumber;
+
+    CsvRow(byte[] content, Map<String, Integer> headerValueMap) {
+        this.content = content;
+        this.headerValueMap = headerValueMap;
+    }
+
+    void reset(int lineStart, int lineNumber) {
+        this.lineStart = lineStart;
+        this.lineEnd = lineStart;
+        this.lineNumber = lineNumber;
+        this.size = 0;
+    }
+
+    void addCell(int start, int end, boolean hasEscapedQuotes) {
+        if (size == cellStarts.length) {
+            cellStarts = Arrays.copyOf(cellStarts, size * 2);
+            cellEnds = Arrays.copyOf(cellEnds, size * 2);
+            cellHasEscapedQuotes = Arrays.copyOf(cellHasEscapedQuotes, size * 2);
+        }
+        cellStarts[size] = start;
+        cellEnds[size] = end;
+        cellHasEscapedQuotes[size] = hasEscapedQuotes;
+        size++;
+    }
+
+    void setLineEnd(int lineEnd) {
+        this.lineEnd = lineEnd;
+    }
+
+    /**
+     * Number of cells in the row, including empty cells at the end of the row.
+     *
+     * @return int
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Index of the row in the file, starting with 0 for the header row.
+     *
+     * @return int
+     */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * Get value of a cell. Quotes around the value are removed and escaped quotes ("") are unescaped.
+     *
+     * @param index
+     * @return cell value, or empty String if the row has no cell at the index.
+     */
+    public String get(int index) {
+        if (index < 0 || index >= size) {
+            return "";
+        }
+        String value = new String(content, cellStarts[index], cellEnds[index] - cellStarts[index], StandardCharsets.ISO_8859_1);
+        return cellHasEscapedQuotes[index] ? value.replace("\"\"", "\"") : value;
+    }
+
+    /**
+     * Get value of a cell under a header of the file.
+     *
+     * @param header
+     * @return cell value, or empty String if the row has no cell under the header.
+     */
+    public String get(String header) {
+        return get(getIndex(header));
+    }
+
+    /**
+     * Get value of a numeric cell. Thousand separators (',') and surrounding whitespace are ignored, so a quoted
+     * "1,234.5" is read as 1234.5.
+     *
+     * @param index
+     * @return cell value
+     * @throws NumberFormatException if the cell is blank or not a number.
+     */
+    public double getDouble(int index) {
+        return Double.parseDouble(getNumber(index));
+    }
+
+    public double getDouble(String header) {
+        return getDouble(getIndex(header));
+    }
+
+    /**
+     * Get value of an integer cell. Thousand separators (',') and surrounding whitespace are ignored, decimal values
+     * like '1234.0' or '1e3' are not integers.
+     *
+     * @param index
+     * @return cell value
+     * @throws NumberFormatException if the cell is blank or not an integer.
+     */
+    public int getInt(int index) {
+        return Integer.parseInt(getNumber(index));
+    }
+
+    public int getInt(String header) {
+        return getInt(getIndex(header));
+    }
+
+    public boolean isBlank(int index) {
+        if (index < 0 || index >= size) {
+            return true;
+        }
+        for (int i = cellStarts[index]; i < cellEnds[index]; i++) {
+            if (!Character.isWhitespace(charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean isBlank(String header) {
+        return isBlank(getIndex(header));
+    }
+
+    public boolean equals(int index, String value) {
+        return regionMatches(index, value, false);
+    }
+
+    public boolean equalsIgnoreCase(int index, String value) {
+        return regionMatches(index, value, true);
+    }
+
+    public boolean equalsIgnoreCase(String header, String value) {
+        return equalsIgnoreCase(getIndex(header), value);
+    }
+
+    /**
+     * Check if the value of a cell contains the passed value.
+     *
+     * @param index
+     * @param value
+     * @return true/false
+     */
+    public boolean contains(int index, String value) {
+        if (index < 0 || index >= size) {
+            return value.isEmpty();
+        }
+        return indexOf(cellStarts[index], cellEnds[index], value) >= 0;
+    }
+
+    public boolean contains(String header, String value) {
+        return contains(getIndex(header), value);
+    }
+
+    /**
+     * Check if the line of the row, as it is in the file, contains the passed value.
+     *
+     * @param value
+     * @return true/false
+     */
+    public boolean lineContains(String value) {
+        return indexOf(lineStart, lineEnd, value) >= 0;
+    }
+
+    /**
+     * Get index of the first cell with a value equal to the passed value.
+     *
+     * @param value
+     * @return index of the cell or -1 if no cell has the value.
+     */
+    public int indexOf(String value) {
+        for (int i = 0; i < size; i++) {
+            if (equals(i, value)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Copy the values of all cells in the row.
+     *
+     * @return List of cell values.
+     */
+    public List<String> toList() {
+        List<String> values = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            values.add(get(i));
+        }
+        return values;
+    }
+
+    /**
+     * Get map of trimmed values of the row to their column index, to use the row as header row.
+     *
+     * @return Map of header value to column index.
+     */
+    public Map<String, Integer> toHeaderValueMap() {
+        Map<String, Integer> headerValues = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            headerValues.putIfAbsent(get(i).trim(), i);
+        }
+        return headerValues;
+    }
+
+    /**
+     * Get the line of the row as it is in the file.
+     *
+     * @return String
+     */
+    public String getLine() {
+        return new String(content, lineStart, lineEnd - lineStart, StandardCharsets.ISO_8859_1);
+    }
+
+    @Override
+    public String toString() {
+        return getLine();
+    }
+
+    private String getNumber(int index) {
+        return get(index).replace(",", "").trim();
+    }
+
+    private int getIndex(String header) {
+        Integer index = headerValueMap == null ? null : headerValueMap.get(header);
+        if (index == null) {
+            throw new IllegalArgumentException(String.format("Column '%s' not found in CSV file header.", header));
+        }
+        return index;
+    }
+
+    private boolean regionMatches(int index, String value, boolean ignoreCase) {
+        if (index < 0 || index >= size) {
+            return value.isEmpty();
+        }
+        if (cellHasEscapedQuotes[index]) {
+            return ignoreCase ? get(index).equalsIgnoreCase(value) : get(index).equals(value);
+        }
+        int start = cellStarts[index];
+        if (cellEnds[index] - start != value.length()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c1 = charAt(start + i);
+            char c2 = value.charAt(i);
+            if (c1 == c2) {
+                continue;
+            }
+            if (!ignoreCase) {
+                return false;
+            }
+            char u1 = Character.toUpperCase(c1);
+            char u2 = Character.toUpperCase(c2);
+            if (u1 != u2 && Character.toLowerCase(u1) != Character.toLowerCase(u2)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int indexOf(int from, int to, String value) {
+        int last = to - value.length();
+        for (int i = from; i <= last; i++) {
+            int j = 0;
+            while (j < value.length() && charAt(i + j) == value.charAt(j)) {
+                j++;
+            }
+            if (j == value.length()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private char charAt(int position) {
+        return (char) (content[position] & 0xff);
+    }
+}
@@ -0,0 +1,410 @@
+package com.velox.sloan.cmo.workflows.IgoLimsPluginUtils;
+
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.usermodel.WorkbookFactory;
+import org.apache.poi.util.SAXHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+
+/**
+ * Streaming reader for the first sheet of Excel files uploaded to plugins. '.xlsx' files are read with the POI event
+ * API (XSSFReader and a SAX handler for the sheet XML), so rows are passed to a RowHandler one at a time and the
+ * workbook is never loaded into memory as a whole. Shared strings are read with ReadOnlySharedStringsTable and cell
+ * styles are only used to find date cells. Old '.xls' files are limited to 65536 rows and are read with WorkbookFactory.
+ * <p>
+ * The first row of the sheet is used as the header. The reader can be read more than once.
+ */
+public class ExcelReader {
+    private static final byte[] ZIP_MAGIC = {'P', 'K', 3, 4};
+
+    private final byte[] content;
+    private Map<String, Integer> headerValueMap;
+    private int lastRowNum = -1;
+    private boolean isRead;
+
+    public ExcelReader(byte[] content) {
+        this.content = content == null ? new byte[0] : content;
+    }
+
+    /**
+     * Handler called for every row of the sheet after the header row.
+     */
+    @FunctionalInterface
+    public interface RowHandler<E extends Exception> {
+        void handleRow(ExcelRow row) throws E;
+    }
+
+    /**
+     * Get map of header values in the first row of the sheet to their column index. Header values are trimmed. Only the
+     * header row is read from the file.
+     *
+     * @return Map of header value to column index.
+     * @throws IOException
+     * @throws InvalidFormatException
+     */
+    public Map<String, Integer> getHeaderValueMap() throws IOException, InvalidFormatException {
+        if (headerValueMap == null) {
+            readSheet(null);
+        }
+        return headerValueMap;
+    }
+
+    /**
+     * Get index of the last row of the sheet, the same as Sheet.getLastRowNum(). The whole sheet is read the first time
+     * this is called, unless it was already read by read().
+     *
+     * @return index of the last row, or 0 if the sheet has no rows.
+     * @throws IOException
+     * @throws InvalidFormatException
+     */
+    public int getLastRowNum() throws IOException, InvalidFormatException {
+        if (!isRead) {
+            read(row -> {
+            });
+        }
+        return Math.max(lastRowNum, 0);
+    }
+
+    /**
+     * Check if the sheet has a row after the header row. Only the rows up to the first row after the header are read
+     * from the file, unless the sheet was already read by read().
+     *
+     * @return true if the last row of the sheet is not the header row.
+     * @throws IOException
+     * @throws InvalidFormatException
+     */
+    public boolean hasDataRows() throws IOException, InvalidFormatException {
+        if (isRead) {
+            return lastRowNum > 0;
+        }
+        try {
+            read(row -> {
+                throw new FirstDataRowException();
+            });
+        } catch (FirstDataRowException e) {
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Read the sheet and pass every row after the header row to the handler. Rows that are not in the file are
+     * skipped. Exceptions thrown by the handler stop reading and are thrown by this method.
+     *
+     * @param handler
+     * @throws IOException
+     * @throws InvalidFormatException
+     * @throws E exception thrown by the handler.
+     */
+    public <E extends Exception> void read(RowHandler<E> handler) throws IOException, InvalidFormatException, E {
+        try {
+            readSheet(handler);
+        } catch (HandlerException e) {
+            @SuppressWarnings("unchecked")
+            E handlerError = (E) e.getCause();
+            throw handlerError;
+        }
+        isRead = true;
+    }
+
+    private boolean isOoxmlFile() {
+        if (content.length < ZIP_MAGIC.length) {
+            return false;
+        }
+        for (int i = 0; i < ZIP_MAGIC.length; i++) {
+            if (content[i] != ZIP_MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Read the first sheet of the file. Only the header row is read when handler is null.
+     */
+    private void readSheet(RowHandler<?> handler) throws IOException, InvalidFormatException {
+        ExcelRow row = new ExcelRow();
+        lastRowNum = -1;
+        RowConsumer rowConsumer = new RowConsumer(row, handler);
+        if (isOoxmlFile()) {
+            readXlsxSheet(row, rowConsumer);
+        } else {
+            readWorkbookSheet(row, rowConsumer);
+        }
+        if (headerValueMap == null) {
+            headerValueMap = Collections.emptyMap();
+        }
+    }
+
+    private void readXlsxSheet(ExcelRow row, RowConsumer rowConsumer) throws IOException, InvalidFormatException {
+        OPCPackage opcPackage = OPCPackage.open(new ByteArrayInputStream(content));
+        try {
+            XSSFReader xssfReader = new XSSFReader(opcPackage);
+            ReadOnlySharedStringsTable sharedStrings = new ReadOnlySharedStringsTable(opcPackage);
+            Iterator<InputStream> sheets = xssfReader.getSheetsData();
+            if (!sheets.hasNext()) {
+                return;
+            }
+            try (InputStream sheet = sheets.next()) {
+                XMLReader xmlReader = SAXHelper.newXMLReader();
+                xmlReader.setContentHandler(new SheetHandler(row, rowConsumer, sharedStrings, xssfReader.getStylesTable()));
+                xmlReader.parse(new InputSource(sheet));
+            }
+        } catch (StopReadingException e) {
+            // header row was read.
+        } catch (InvalidFormatException e) {
+            throw e;
+        } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+            throw new IOException("Failed to read Excel file: " + e.getMessage(), e);
+        } finally {
+            // the package was opened from a stream, revert closes it without trying to save it.
+            opcPackage.revert();
+        }
+    }
+
+    private void readWorkbookSheet(ExcelRow row, RowConsumer rowConsumer) throws IOException, InvalidFormatException {
+        Workbook workbook = WorkbookFactory.create(new ByteArrayInputStream(content));
+        try {
+            if (workbook.getNumberOfSheets() == 0) {
+                return;
+            }
+            Sheet sheet = workbook.getSheetAt(0);
+            for (Row sheetRow : sheet) {
+                row.reset(sheetRow.getRowNum());
+                for (Cell cell : sheetRow) {
+                    CellType cellType = cell.getCellTypeEnum() == CellType.FORMULA ? cell.getCachedFormulaResultTypeEnum() : cell.getCellTypeEnum();
+                    switch (cellType) {
+                        case NUMERIC:
+                            row.addCell(cell.getColumnIndex(), ExcelRow.NUMERIC, null, cell.getNumericCellValue(), DateUtil.isCellDateFormatted(cell));
+                            break;
+                        case STRING:
+                            row.addCell(cell.getColumnIndex(), ExcelRow.STRING, cell.getStringCellValue(), 0.0, false);
+                            break;
+                        case BOOLEAN:
+                            row.addCell(cell.getColumnIndex(), ExcelRow.BOOLEAN, cell.getBooleanCellValue() ? "TRUE" : "FALSE", 0.0, false);
+                            break;
+                        case ERROR:
+                            row.addCell(cell.getColumnIndex(), ExcelRow.ERROR, cell.toString(), 0.0, false);
+                            break;
+                        default:
+                            row.addCell(cell.getColumnIndex(), ExcelRow.BLANK, null, 0.0, false);
+                    }
+                }
+                rowConsumer.accept();
+            }
+        } catch (StopReadingException e) {
+            // header row was read.
+        } finally {
+            workbook.close();
+        }
+    }
+
+    /**
+     * Passes finished rows to the RowHandler, after taking the header from the first row.
+     */
+    private class RowConsumer {
+        private final ExcelRow row;
+        private final RowHandler<?> handler;
+
+        RowConsumer(ExcelRow row, RowHandler<?> handler) {
+            this.row = row;
+            this.handler = handler;
+        }
+
+        void accept() throws StopReadingException {
+            lastRowNum = row.getRowNum();
+            if (row.getRowNum() == 0) {
+                headerValueMap = Collections.unmodifiableMap(row.toHeaderValueMap());
+                row.setHeaderValueMap(headerValueMap);
+                if (handler == null) {
+                    throw new StopReadingException();
+                }
+                return;
+            }
+            if (headerValueMap == null) {
+                headerValueMap = Collections.emptyMap();
+                row.setHeaderValueMap(headerValueMap);
+            }
+            if (handler == null) {
+                throw new StopReadingException();
+            }
+            try {
+                handler.handleRow(row);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new HandlerException(e);
+            }
+        }
+    }
+
+    /**
+     * SAX handler for the sheet XML. Cell values are in 'v' elements, or in 't' elements of an 'is' element for inline
+     * strings. The 't' attribute of a cell holds its type: 's' shared string, 'inlineStr', 'str' formula string, 'b'
+     * boolean, 'e' error, and none for numbers.
+     */
+    private static class SheetHandler extends DefaultHandler {
+        private final ExcelRow row;
+        private final RowConsumer rowConsumer;
+        private final ReadOnlySharedStringsTable sharedStrings;
+        private final StylesTable stylesTable;
+        private final Map<Integer, Boolean> isDateByStyle = new HashMap<>();
+        private final StringBuilder value = new StringBuilder();
+        private int rowNum = -1;
+        private int column;
+        private String cellType;
+        private int cellStyle;
+        private boolean isInValue;
+        private boolean isInInlineString;
+
+        SheetHandler(ExcelRow row, RowConsumer rowConsumer, ReadOnlySharedStringsTable sharedStrings, StylesTable stylesTable) {
+            this.row = row;
+            this.rowConsumer = rowConsumer;
+            this.sharedStrings = sharedStrings;
+            this.stylesTable = stylesTable;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            switch (localName) {
+                case "row":
+                    String rowReference = attributes.getValue("r");
+                    rowNum = rowReference == null ? rowNum + 1 : Integer.parseInt(rowReference) - 1;
+                    row.reset(rowNum);
+                    column = -1;
+                    break;
+                case "c":
+                    String cellReference = attributes.getValue("r");
+                    column = cellReference == null ? column + 1 : getColumnIndex(cellReference);
+                    cellType = attributes.getValue("t");
+                    String style = attributes.getValue("s");
+                    cellStyle = style == null ? 0 : Integer.parseInt(style);
+                    value.setLength(0);
+                    break;
+                case "v":
+                    isInValue = true;
+                    break;
+                case "is":
+                    isInInlineString = true;
+                    break;
+                case "t":
+                    isInValue = isInInlineString;
+                    break;
+                default:
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            switch (localName) {
+                case "v":
+                case "t":
+                    isInValue = false;
+                    break;
+                case "is":
+                    isInInlineString = false;
+                    break;
+                case "c":
+                    addCell();
+                    break;
+                case "row":
+                    rowConsumer.accept();
+                    break;
+                default:
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (isInValue) {
+                value.append(ch, start, length);
+            }
+        }
+
+        private void addCell() {
+            String text = value.toString();
+            if ("s".equals(cellType)) {
+                row.addCell(column, ExcelRow.STRING, sharedStrings.getEntryAt(Integer.parseInt(text.trim())), 0.0, false);
+            } else if ("inlineStr".equals(cellType) || "str".equals(cellType)) {
+                row.addCell(column, ExcelRow.STRING, text, 0.0, false);
+            } else if ("b".equals(cellType)) {
+                row.addCell(column, ExcelRow.BOOLEAN, "1".equals(text.trim()) ? "TRUE" : "FALSE", 0.0, false);
+            } else if ("e".equals(cellType)) {
+                row.addCell(column, ExcelRow.ERROR, text, 0.0, false);
+            } else if (text.isEmpty()) {
+                row.addCell(column, ExcelRow.BLANK, null, 0.0, false);
+            } else if (cellType == null || "n".equals(cellType)) {
+                row.addCell(column, ExcelRow.NUMERIC, null, Double.parseDouble(text), isDateStyle(cellStyle));
+            } else {
+                row.addCell(column, ExcelRow.STRING, text, 0.0, false);
+            }
+        }
+
+        private boolean isDateStyle(int styleIndex) {
+            return isDateByStyle.computeIfAbsent(styleIndex, index -> {
+                if (stylesTable == null || index >= stylesTable.getNumCellStyles()) {
+                    return false;
+                }
+                XSSFCellStyle style = stylesTable.getStyleAt(index);
+                return style != null && DateUtil.isADateFormat(style.getDataFormat(), style.getDataFormatString());
+            });
+        }
+
+        /**
+         * Get zero based column index from a cell reference like 'AB12'.
+         */
+        private static int getColumnIndex(String cellReference) {
+            int column = 0;
+            for (int i = 0; i < cellReference.length(); i++) {
+                char c = cellReference.charAt(i);
+                if (c < 'A' || c > 'Z') {
+                    break;
+                }
+                column = column * 26 + (c - 'A' + 1);
+            }
+            return column - 1;
+        }
+    }
+
+    /**
+     * Thrown to stop parsing the sheet once the header row is read.
+     */
+    private static class StopReadingException extends SAXException {
+    }
+
+    /**
+     * Thrown by the RowHandler of hasDataRows() to stop reading at the first row after the header.
+     */
+    private static class FirstDataRowException extends Exception {
+    }
+
+    /**
+     * Carries checked exceptions of the RowHandler through the SAX parser.
+     */
+    private static class HandlerException extends RuntimeException {
+        HandlerException(Exception cause) {
+            super(cause);
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package com.velox.sloan.cmo.workflows.IgoLimsPluginUtils;
+
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.util.NumberToTextConverter;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Values of a single row of an Excel sheet read by ExcelReader. Cells keep the type they have in the file, numeric cells
+ * are returned as Double and all other cells as String, the same way the importers read cells with getNumericCellValue
+ * and fall back to getStringCellValue.
+ * <p>
+ * ExcelReader reuses the same ExcelRow instance for every row. Use copy() to keep a row.
+ */
+public final class ExcelRow {
+    static final byte BLANK = 0;
+    static final byte STRING = 1;
+    static final byte NUMERIC = 2;
+    static final byte BOOLEAN = 3;
+    static final byte ERROR = 4;
+
+    private Map<String, Integer> headerValueMap;
+    private byte[] cellTypes = new byte[32];
+    private String[] cellText = new String[32];
+    private double[] cellNumbers = new double[32];
+    private boolean[] cellIsDate = new boolean[32];
+    private int size;
+    private int rowNum;
+
+    void setHeaderValueMap(Map<String, Integer> headerValueMap) {
+        this.headerValueMap = headerValueMap;
+    }
+
+    void reset(int rowNum) {
+        Arrays.fill(cellTypes, 0, size, BLANK);
+        Arrays.fill(cellText, 0, size, null);
+        this.rowNum = rowNum;
+        this.size = 0;
+    }
+
+    void addCell(int column, byte type, String text, double number, boolean isDate) {
+        if (column >= cellTypes.length) {
+            int length = Math.max(cellTypes.length * 2, column + 1);
+            cellTypes = Arrays.copyOf(cellTypes, length);
+            cellText = Arrays.copyOf(cellText, length);
+            cellNumbers = Arrays.copyOf(cellNumbers, length);
+            cellIsDate = Arrays.copyOf(cellIsDate, length);
+        }
+        cellTypes[column] = type;
+        cellText[column] = text;
+        cellNumbers[column] = number;
+        cellIsDate[column] = isDate;
+        size = Math.max(size, column + 1);
+    }
+
+    /**
+     * Index of the row in the sheet, starting with 0 for the header row.
+     *
+     * @return int
+     */
+    public int getRowNum() {
+        return rowNum;
+    }
+
+    /**
+     * Number of cells in the row, up to the last cell with a value or style.
+     *
+     * @return int
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Check if the sheet has a column with the passed header value.
+     *
+     * @param header
+     * @return true/false
+     */
+    public boolean hasColumn(String header) {
+        return headerValueMap != null && headerValueMap.containsKey(header);
+    }
+
+    public boolean isBlank(int index) {
+        return getType(index) == BLANK || (getType(index) == STRING && cellText[index].trim().isEmpty());
+    }
+
+    public boolean isBlank(String header) {
+        return isBlank(getIndex(header));
+    }
+
+    public boolean isNumeric(int index) {
+        return getType(index) == NUMERIC;
+    }
+
+    public boolean isNumeric(String header) {
+        return isNumeric(getIndex(header));
+    }
+
+    /**
+     * Get value of a cell as text, the same as Cell.toString(). Numeric cells are returned like '3.0', date cells like
+     * '05-Mar-2018' and boolean cells as 'TRUE' or 'FALSE'.
+     *
+     * @param index
+     * @return cell value, or empty String if the row has no cell at the index.
+     */
+    public String getString(int index) {
+        switch (getType(index)) {
+            case NUMERIC:
+                return cellIsDate[index] ? new SimpleDateFormat("dd-MMM-yyyy").format(getDate(index)) : String.valueOf(cellNumbers[index]);
+            case STRING:
+            case BOOLEAN:
+            case ERROR:
+                return cellText[index];
+            default:
+                return "";
+        }
+    }
+
+    public String getString(String header) {
+        return getString(getIndex(header));
+    }
+
+    /**
+     * Get value of a cell as string typed text, the same as Cell.setCellType(CellType.STRING) followed by
+     * getStringCellValue(). Numeric cells are returned the way Excel shows them, like '12345' instead of '12345.0', so
+     * IDs entered as numbers match the IDs in LIMS.
+     *
+     * @param index
+     * @return cell value, or empty String if the row has no cell at the index.
+     */
+    public String getText(int index) {
+        return getType(index) == NUMERIC ? NumberToTextConverter.toText(cellNumbers[index]) : getString(index);
+    }
+
+    public String getText(String header) {
+        return getText(getIndex(header));
+    }
+
+    /**
+     * Get value of a numeric cell, the same as Cell.getNumericCellValue().
+     *
+     * @param index
+     * @return cell value, or 0 for blank cells.
+     * @throws IllegalStateException if the cell is not numeric or blank.
+     */
+    public double getNumeric(int index) {
+        byte type = getType(index);
+        if (type == BLANK) {
+            return 0.0;
+        }
+        if (type != NUMERIC) {
+            throw new IllegalStateException(String.format("Cannot get a numeric value from the text cell in row %d column %d: '%s'", rowNum + 1, index + 1, cellText[index]));
+        }
+        return cellNumbers[index];
+    }
+
+    public double getNumeric(String header) {
+        return getNumeric(getIndex(header));
+    }
+
+    /**
+     * Get value of a cell that can be entered as number or text.
+     *
+     * @param index
+     * @return Double for numeric and blank cells, String for all other cells.
+     */
+    public Object getNumericOrString(int index) {
+        byte type = getType(index);
+        return type == NUMERIC || type == BLANK ? (Object) getNumeric(index) : getString(index);
+    }
+
+    public Object getNumericOrString(String header) {
+        return getNumericOrString(getIndex(header));
+    }
+
+    /**
+     * Get value of a date or time cell, the same as Cell.getDateCellValue().
+     *
+     * @param index
+     * @return Date, or null for blank cells.
+     * @throws IllegalStateException if the cell is not numeric or blank.
+     */
+    public Date getDate(int index) {
+        if (getType(index) == BLANK) {
+            return null;
+        }
+        return DateUtil.getJavaDate(getNumeric(index));
+    }
+
+    public Date getDate(String header) {
+        return getDate(getIndex(header));
+    }
+
+    /**
+     * Copy the text values of all cells in the row.
+     *
+     * @return List of cell values.
+     */
+    public List<String> toList() {
+        List<String> values = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            values.add(getString(i));
+        }
+        return values;
+    }
+
+    /**
+     * Get map of trimmed values of the row to their column index, to use the row as header row. Blank cells are left out.
+     *
+     * @return Map of header value to column index.
+     */
+    public Map<String, Integer> toHeaderValueMap() {
+        Map<String, Integer> headerValues = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            if (!isBlank(i)) {
+                headerValues.putIfAbsent(getString(i).trim(), i);
+            }
+        }
+        return headerValues;
+    }
+
+    /**
+     * Copy the row, to keep it after ExcelReader moved on to the next row.
+     *
+     * @return ExcelRow
+     */
+    public ExcelRow copy() {
+        ExcelRow copy = new ExcelRow();
+        copy.setHeaderValueMap(headerValueMap);
+        copy.reset(rowNum);
+        for (int i = 0; i < size; i++) {
+            copy.addCell(i, cellTypes[i], cellText[i], cellNumbers[i], cellIsDate[i]);
+        }
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        return toList().toString();
+    }
+
+    private byte getType(int index) {
+        return index < 0 || index >= size ? BLANK : cellTypes[index];
+    }
+
+    private int getIndex(String header) {
+        Integer index = headerValueMap == null ? null : headerValueMap.get(header);
+        if (index == null) {
+            throw new IllegalArgumentException(String.format("Column '%s' not found in Excel file header.", header));
+        }
+        return index;
+    }
+}
@@ -16,9 +16,9 @@ import com.velox.api.util.ServerException;
 import com.velox.api.user.User;
 import com.velox.api.util.ClientCallbackOperations;
 import com.velox.api.util.ServerException;
-import com.velox.sloan.cmo.recmodels.RequestModel;
 import com.velox.sloan.cmo.recmodels.SampleModel;
 import com.velox.sloan.cmo.recmodels.SeqAnalysisSampleQCModel;
+import com.velox.sloan.cmo.workflows.utils.SampleLineageCache;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
@@ -80,6 +80,17 @@ public class IgoLimsPluginUtils {
         return rowDataValues;
     }
 
+    /**
+     * Method to get a streaming reader over CSV file content. Use this instead of readDataFromCsvFile to parse large
+     * instrument exports without splitting every line into Strings.
+     *
+     * @param fileContent
+     * @return CsvReader
+     */
+    public CsvReader readCsvFile(byte[] fileContent) {
+        return new CsvReader(fileContent);
+    }
+
     /**
      * Read csv file data into byte array
      *
@@ -134,6 +145,16 @@ public class IgoLimsPluginUtils {
         return fileData.size() > 1;
     }
 
+    /**
+     * Method to check if csv file has data rows after the header row.
+     *
+     * @param fileData
+     * @return true/false
+     */
+    public boolean csvFileHasData(CsvReader fileData) {
+        return fileData.getDataRows().iterator().hasNext();
+    }
+
     /**
      * Method to check if csv file has valid header row values
      *
@@ -166,6 +187,21 @@ public class IgoLimsPluginUtils {
         return trimmedData.containsAll(expectedHeaderValues);
     }
 
+    /**
+     * Method to check if csv file header contains the values that are required. Header values are trimmed.
+     *
+     * @param fileData
+     * @param expectedHeaderValues
+     * @return true/false
+     */
+    public boolean csvFileContainsRequiredHeaders(CsvReader fileData, List<String> expectedHeaderValues, PluginLogger logger) {
+        List<String> trimmedData = new ArrayList<>(fileData.getHeaderValueMap().keySet());
+        logger.logInfo("Trimmed data: " + trimmedData);
+        logger.logInfo("Expected header values: " + expectedHeaderValues);
+        printMissing(expectedHeaderValues, trimmedData, logger);
+        return trimmedData.containsAll(expectedHeaderValues);
+    }
+
     public static void printMissing(List<String> collection1, List<String> collection2, PluginLogger logger) {
         List<String> missingElements = new ArrayList<>();
         for (String element : collection1) {
@@ -361,6 +397,32 @@ public class IgoLimsPluginUtils {
         return dataRows.size() > 1;
     }
 
+    /**
+     * Method to validate if excel file has valid Header values when compared to expected header values, without
+     * loading the workbook.
+     *
+     * @param excelReader
+     * @param expectedHeaderValues
+     * @return true/false
+     * @throws IOException
+     * @throws InvalidFormatException
+     */
+    public boolean excelFileHasValidHeader(ExcelReader excelReader, List<String> expectedHeaderValues) throws IOException, InvalidFormatException {
+        return excelReader.getHeaderValueMap().keySet().containsAll(expectedHeaderValues);
+    }
+
+    /**
+     * Method to validate if the excel file has data, without loading the workbook.
+     *
+     * @param excelReader
+     * @return true/false
+     * @throws IOException
+     * @throws InvalidFormatException
+     */
+    public boolean excelFileHasData(ExcelReader excelReader) throws IOException, InvalidFormatException {
+        return excelReader.getLastRowNum() >= 1;
+    }
+
 
     /**
      * To check if a int value is odd.
@@ -422,23 +484,21 @@ public class IgoLimsPluginUtils {
      * @throws ServerException
      */
     public DataRecord getParentSampleUnderRequest(DataRecord sample, User user, ClientCallbackOperations clientCallback) throws ServerException, RemoteException {
+        return getParentSampleUnderRequest(sample, new SampleLineageCache(user), clientCallback);
+    }
+
+    /**
+     * Method to get first parent Sample directly under the same Request in hierarchy. Lineage of the sample is read
+     * from the passed cache, so samples sharing ancestors do not load them again.
+     *
+     * @param sample
+     * @param lineageCache
+     * @return
+     * @throws ServerException
+     */
+    public DataRecord getParentSampleUnderRequest(DataRecord sample, SampleLineageCache lineageCache, ClientCallbackOperations clientCallback) throws ServerException, RemoteException {
         try {
-            Object requestId = sample.getValue(SampleModel.REQUEST_ID, user);
-            Stack<DataRecord> sampleStack = new Stack<>();
-            sampleStack.add(sample);
-            do {
-                DataRecord stackSample = sampleStack.pop();
-                if (stackSample.getParentsOfType(RequestModel.DATA_TYPE_NAME, user).size() > 0) {
-                    return stackSample;
-                }
-                List<DataRecord> stackSampleParentSamples = stackSample.getParentsOfType(SampleModel.DATA_TYPE_NAME, user);
-                for (DataRecord sa : stackSampleParentSamples) {
-                    Object saReqId = sa.getValue(SampleModel.REQUEST_ID, user);
-                    if (requestId != null && saReqId != null && requestId.toString().equalsIgnoreCase(saReqId.toString())) {
-                        sampleStack.push(sa);
-                    }
-                }
-            } while (!sampleStack.isEmpty());
+            return lineageCache.getParentSampleUnderRequest(sample);
         } catch (Exception e) {
             String errMsg = String.format("Error while getting first parent under request for Sample with record ID %d.\n%s", sample.getRecordId(), ExceptionUtils.getStackTrace(e));
             clientCallback.displayError(errMsg);
@@ -454,9 +514,21 @@ public class IgoLimsPluginUtils {
      * @throws ServerException
      */
     public boolean isUserLibrary(DataRecord sample, User user, ClientCallbackOperations clientCallback) throws ServerException, RemoteException {
+        return isUserLibrary(sample, new SampleLineageCache(user), user, clientCallback);
+    }
+
+    /**
+     * Method to check if Sample is user submitted Library, reading the lineage of the sample from the passed cache.
+     *
+     * @param sample
+     * @param lineageCache
+     * @return
+     * @throws ServerException
+     */
+    public boolean isUserLibrary(DataRecord sample, SampleLineageCache lineageCache, User user, ClientCallbackOperations clientCallback) throws ServerException, RemoteException {
         long recordId = sample.getRecordId();
         try {
-            DataRecord parentSample = getParentSampleUnderRequest(sample, user, clientCallback);
+            DataRecord parentSample = getParentSampleUnderRequest(sample, lineageCache, clientCallback);
             if (parentSample != null) {
                 Object sampleType = parentSample.getValue(SampleModel.EXEMPLAR_SAMPLE_TYPE, user);
                 if (sampleType == null) {
@@ -538,13 +610,12 @@ public class IgoLimsPluginUtils {
      * @param data
      * @return
      */
-    public boolean isBioanalyzerFile(List<String> data, List<String> bioanalyzerIdentifiers, ClientCallbackOperations clientCallback, PluginLogger logger) throws ServerException, RemoteException {
+    public boolean isBioanalyzerFile(CsvReader data, List<String> bioanalyzerIdentifiers, ClientCallbackOperations clientCallback, PluginLogger logger) throws ServerException, RemoteException {
         int countFound = 0;
         try {
-            int numberOfLinesToScan = data.size() > 20 ? 20 : data.size();
-            for (int i = 0; i < numberOfLinesToScan; i++) {
-                List<String> lineValues = Arrays.asList(data.get(i).split(","));
-                String firstVal = lineValues.get(0);
+            Iterator<CsvRow> rows = data.iterator();
+            for (int i = 0; i < 20 && rows.hasNext(); i++) {
+                String firstVal = rows.next().get(0);
                 if (!StringUtils.isBlank(firstVal) && bioanalyzerIdentifiers.contains(firstVal)) {
                     countFound++;
                 }
@@ -561,7 +632,7 @@ public class IgoLimsPluginUtils {
     }
 
     /**
-     * Method to check/validate headers in bioanalyzer file
+     * Method to check/validate headers in bioanalyzer file. Empty cells at the end of the header lines are ignored.
      *
      * @param data
      * @param bioanalyzerHeaders
@@ -569,14 +640,16 @@ public class IgoLimsPluginUtils {
      * @param logger
      * @return
      */
-    public boolean hasValidBioanalyzerHeader(List<String> data, String fileName, List<String> bioanalyzerHeaders, PluginLogger logger) {
-        for (String line : data) {
-            List<String> lineValues = Arrays.asList(line.split(","));
-            String firstVal = lineValues.size() > 0 ? lineValues.get(0) : null;
-            if (firstVal != null && bioanalyzerHeaders.contains(firstVal)) {
-                logger.logInfo(String.format("Header line from file %s %s", line, fileName));
-                for (String val : lineValues) {
-                    if (!bioanalyzerHeaders.contains(val)) {
+    public boolean hasValidBioanalyzerHeader(CsvReader data, String fileName, List<String> bioanalyzerHeaders, PluginLogger logger) {
+        for (CsvRow row : data) {
+            if (bioanalyzerHeaders.contains(row.get(0))) {
+                logger.logInfo(String.format("Header line from file %s %s", row.getLine(), fileName));
+                int lastCell = row.size() - 1;
+                while (lastCell > 0 && row.equals(lastCell, "")) {
+                    lastCell--;
+                }
+                for (int i = 0; i <= lastCell; i++) {
+                    if (!bioanalyzerHeaders.contains(row.get(i))) {
                         return false;
                     }
                 }
@@ -594,18 +667,13 @@ public class IgoLimsPluginUtils {
      * @param logger
      * @return
      */
-    public Map<String, Integer> getBioanalyzerFileHeaderMap(List<String> data, String fileName, String headerIdentifierValue, PluginLogger logger) {
+    public Map<String, Integer> getBioanalyzerFileHeaderMap(CsvReader data, String fileName, String headerIdentifierValue, PluginLogger logger) {
         Map<String, Integer> headerValueMap = new HashMap<>();
-        for (String line : data) {
-            List<String> lineValues = Arrays.asList(line.split(","));
-            logger.logInfo("line values: " + lineValues.toString());
-            String firstVal = lineValues.size() > 0 ? lineValues.get(0) : null;
-            logger.logInfo("first value in line: " + firstVal);
-            logger.logInfo("header identifier val: " + headerIdentifierValue);
-            if (firstVal != null && firstVal.equalsIgnoreCase(headerIdentifierValue)) {
-                logger.logInfo(String.format("Header line from file %s: %s", fileName, line));
-                for (int i = 0; i < lineValues.size(); i++) {
-                    headerValueMap.put(lineValues.get(i), i);
+        for (CsvRow row : data) {
+            if (row.equalsIgnoreCase(0, headerIdentifierValue)) {
+                logger.logInfo(String.format("Header line from file %s: %s", fileName, row.getLine()));
+                for (int i = 0; i < row.size(); i++) {
+                    headerValueMap.put(row.get(i), i);
                 }
                 return headerValueMap;
             }
@@ -698,27 +766,30 @@ public class IgoLimsPluginUtils {
      * @return
      */
     public List<DataRecord> getSequencingQcRecords(DataRecord sample, PluginLogger logger, User user, ClientCallbackOperations clientCallbackOperations) {
+        return getSequencingQcRecords(sample, new SampleLineageCache(user), logger, clientCallbackOperations);
+    }
+
+    /**
+     * Method to get all SeqAnalysisSampleQC records for a sample, reading the lineage of the sample from the passed cache.
+     *
+     * @param sample
+     * @param lineageCache
+     * @param logger
+     * @param clientCallbackOperations
+     * @return
+     */
+    public List<DataRecord> getSequencingQcRecords(DataRecord sample, SampleLineageCache lineageCache, PluginLogger logger, ClientCallbackOperations clientCallbackOperations) {
         List<DataRecord> sequencingQcRecords = new ArrayList<>();
         try {
-            DataRecord sampleUnderRequest = getParentSampleUnderRequest(sample, user, clientCallbackOperations);
-            Object requestId = sample.getValue(SampleModel.REQUEST_ID, user);
-            Stack<DataRecord> sampleStack = new Stack<>();
-            sampleStack.add(sampleUnderRequest);
-            do {
-                DataRecord stackSample = sampleStack.pop();
-                DataRecord[] childSeqQc = stackSample.getChildrenOfType(SeqAnalysisSampleQCModel.DATA_TYPE_NAME, user);
-                if (childSeqQc.length > 0) {
-                    Collections.addAll(sequencingQcRecords, childSeqQc);
-                }
-                DataRecord[] stackSampleChildSamples = stackSample.getChildrenOfType(SampleModel.DATA_TYPE_NAME, user);
-                for (DataRecord sa : stackSampleChildSamples) {
-                    Object saReqId = sa.getValue(SampleModel.REQUEST_ID, user);
-                    if (requestId != null && saReqId != null && requestId.toString().equalsIgnoreCase(saReqId.toString())) {
-                        sampleStack.push(sa);
-                    }
-                }
-            } while (!sampleStack.isEmpty());
-        } catch (ServerException | RemoteException | NotFound | IoError e) {
+            DataRecord sampleUnderRequest = getParentSampleUnderRequest(sample, lineageCache, clientCallbackOperations);
+            if (sampleUnderRequest == null) {
+                logger.logError(String.format("Sample with Record Id %d has no parent Sample under Request, cannot get %s records.",
+                        sample.getRecordId(), SeqAnalysisSampleQCModel.DATA_TYPE_NAME));
+                return sequencingQcRecords;
+            }
+            Object requestId = lineageCache.getFieldCache().getValue(sample, SampleModel.REQUEST_ID);
+            sequencingQcRecords.addAll(lineageCache.getDescendantRecordsUnderRequest(sampleUnderRequest, requestId, SeqAnalysisSampleQCModel.DATA_TYPE_NAME));
+        } catch (ServerException | RemoteException | IoError e) {
             logger.logError(String.format("%s -> Error while getting %s records for Sample with Record Id %d,\n%s",
                     ExceptionUtils.getRootCause(e), SeqAnalysisSampleQCModel.DATA_TYPE_NAME, sample.getRecordId(), ExceptionUtils.getStackTrace(e)));
         }
@@ -737,23 +808,22 @@ public class IgoLimsPluginUtils {
      * @return
      */
     public List<DataRecord> getRecordsOfTypeFromParents(DataRecord record, String parentDataType, String targetDataType, User user, PluginLogger logger) {
+        return getRecordsOfTypeFromParents(record, parentDataType, targetDataType, new SampleLineageCache(user), logger);
+    }
+
+    /**
+     * Same as getRecordsOfTypeFromParents, reading the parent tree from the passed cache.
+     *
+     * @param record
+     * @param parentDataType
+     * @param targetDataType
+     * @param lineageCache
+     * @return
+     */
+    public List<DataRecord> getRecordsOfTypeFromParents(DataRecord record, String parentDataType, String targetDataType, SampleLineageCache lineageCache, PluginLogger logger) {
         List<DataRecord> records = new ArrayList<>();
         try {
-            if (record.getChildrenOfType(targetDataType, user).length > 0) {
-                return Arrays.asList(record.getChildrenOfType(targetDataType, user));
-            }
-
-            Stack<DataRecord> recordsStack = new Stack<>();
-            List<DataRecord> parentRecords = record.getParentsOfType(parentDataType, user);
-            recordsStack.addAll(parentRecords);
-            while (!recordsStack.isEmpty()) {
-                DataRecord poppedRecord = recordsStack.pop();
-                if (poppedRecord.getChildrenOfType(targetDataType, user).length > 0) {
-                    return Arrays.asList(poppedRecord.getChildrenOfType(targetDataType, user));
-                }
-                recordsStack.addAll(poppedRecord.getParentsOfType(parentDataType, user));
-            }
-
+            return lineageCache.getRecordsOfTypeFromParents(record, parentDataType, targetDataType);
         } catch (IoError | ServerException | RemoteException e) {
             logger.logError(String.format("%s -> Error while getting %s records for %s record with Record Id %d,\n%s",
                     ExceptionUtils.getRootCause(e), targetDataType, record.getDataTypeName(), record.getRecordId(), ExceptionUtils.getStackTrace(e)));
@@ -823,19 +893,4 @@ public class IgoLimsPluginUtils {
         }
         return false;
     }
-
-    /**
-     * Method to convert List to properly formatted values to use with SQL IN clause.
-     *
-     * @param vals
-     * @return
-     */
-    public String listToSqlInClauseVal(List<Object> vals) {
-        StringJoiner joiner = new StringJoiner("', '");
-        for (Object val : vals) {
-            joiner.add((CharSequence) val);
-        }
-        String format = String.format("('%s')", joiner.toString());
-        return format;
-    }
 }
@@ -10,6 +10,7 @@ import com.velox.sapio.commons.exemplar.plugin.PluginOrder;
 import com.velox.sapioutils.server.plugin.DefaultGenericPlugin;
 import com.velox.sloan.cmo.recmodels.SampleModel;
 import com.velox.sloan.cmo.workflows.IgoLimsPluginUtils.AlphaNumericComparator;
+import com.velox.sloan.cmo.workflows.utils.DataRecordQuery;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 
 import java.rmi.RemoteException;
@@ -74,9 +75,9 @@ public class PoolIdReplacer extends DefaultGenericPlugin {
             if (sampleId.split("_").length > 2) {
                 String[] splitSampleId = sampleId.split("_");
                 String baseSampleId = splitSampleId[0] + splitSampleId[1];
-                return dataRecordManager.queryDataRecords("Sample", "SampleId = '" + baseSampleId + "%'", user);
+                return DataRecordQuery.from("Sample").whereEquals("SampleId", baseSampleId + "%").execute(dataRecordManager, user);
             }
-            existingSampleAliquots = dataRecordManager.queryDataRecords("Sample", "SampleId = '" + sampleId + "%'", user);
+            existingSampleAliquots = DataRecordQuery.from("Sample").whereEquals("SampleId", sampleId + "%").execute(dataRecordManager, user);
         } catch (RemoteException | ServerException e) {
             logError(String.format("RemoteException -> Error while getting Existing Aliquots for Sample with recordid %d:\n%s", sample.getRecordId(), ExceptionUtils.getStackTrace(e)));
         } catch (IoError ioError) {
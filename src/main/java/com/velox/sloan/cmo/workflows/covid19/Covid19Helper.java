@@ -2,6 +2,8 @@ package com.velox.sloan.cmo.workflows.covid19;
 
 import com.velox.api.plugin.PluginLogger;
 import com.velox.api.util.ServerException;
+import com.velox.sloan.cmo.workflows.IgoLimsPluginUtils.CsvReader;
+import com.velox.sloan.cmo.workflows.IgoLimsPluginUtils.CsvRow;
 import com.velox.sloan.cmo.workflows.IgoLimsPluginUtils.IgoLimsPluginUtils;
 import org.apache.commons.lang3.StringUtils;
 
@@ -14,44 +16,55 @@ class Covid19Helper {
 
 
     /**
-     * Method to get data from user uploaded file
+     * Method to get number of rows with qPCR results in user uploaded file including the header row. Lines with "#"
+     * describing the run are not counted.
      *
      * @param fileData
      * @return
      */
-    List<String> getQpcrResults(List<String> fileData) {
-        List<String> data = new ArrayList<>();
-        for (String line : fileData) {
-            if (!line.contains("#")) {
-                data.add(line);
+    int getQpcrResultRowCount(CsvReader fileData) {
+        int rowCount = 0;
+        for (CsvRow row : fileData) {
+            if (!row.lineContains("#")) {
+                rowCount++;
             }
         }
-        return data;
+        return rowCount;
     }
 
     /**
-     * Method to parse QPCR data from file into values for DataRecord.
+     * Method to parse QPCR data from file into values for DataRecord. Lines with "#" are skipped and the first line
+     * after them is used as header.
      *
-     * @param qpcrDataRows
+     * @param fileData
      * @return
      */
-    Map<String, List<Map<String, Object>>> parseQpcrData(List<String> qpcrDataRows, PluginLogger logger) {
-        Map<String, Integer> headerValuesMap = utils.getCsvHeaderValueMap(qpcrDataRows, logger);
+    Map<String, List<Map<String, Object>>> parseQpcrData(CsvReader fileData, PluginLogger logger) {
         Map<String, List<Map<String, Object>>> parsedData = new HashMap<>();
-        for (int i = 1; i < qpcrDataRows.size(); i++) {
-            List<String> rowValues = Arrays.asList(qpcrDataRows.get(i).split(","));
-            if (rowValues.size() > 0) {
-                String otherSampleId = rowValues.get(headerValuesMap.get("Sample")).trim();
-                if (!StringUtils.isBlank(otherSampleId)) {
-                    Map<String, Object> parsedValues = new HashMap<>();
-                    parsedData.putIfAbsent(otherSampleId, new ArrayList<>());
-                    parsedValues.put("OtherSampleId", otherSampleId);
-                    parsedValues.put("TargetAssay", rowValues.get(headerValuesMap.get("Target")));
-                    parsedValues.put("CqValue", rowValues.get(headerValuesMap.get("Cq")));
-                    parsedValues.put("WellPosition", rowValues.get(headerValuesMap.get("Well Position")));
-                    //parsedValues.put("CqMean", rowValues.get(headerValuesMap.get("Cq Mean")));
-                    parsedData.get(otherSampleId).add(parsedValues);
-                }
+        Map<String, Integer> headerValuesMap = null;
+        int sample = -1, target = -1, cq = -1, wellPosition = -1;
+        for (CsvRow row : fileData) {
+            if (row.lineContains("#")) {
+                continue;
+            }
+            if (headerValuesMap == null) {
+                logger.logInfo("qPCR results header: " + row.getLine());
+                headerValuesMap = row.toHeaderValueMap();
+                sample = headerValuesMap.get("Sample");
+                target = headerValuesMap.get("Target");
+                cq = headerValuesMap.get("Cq");
+                wellPosition = headerValuesMap.get("Well Position");
+                continue;
+            }
+            String otherSampleId = row.get(sample).trim();
+            if (!StringUtils.isBlank(otherSampleId)) {
+                Map<String, Object> parsedValues = new HashMap<>();
+                parsedData.putIfAbsent(otherSampleId, new ArrayList<>());
+                parsedValues.put("OtherSampleId", otherSampleId);
+                parsedValues.put("TargetAssay", row.get(target));
+                parsedValues.put("CqValue", row.get(cq));
+                parsedValues.put("WellPosition", row.get(wellPosition));
+                parsedData.get(otherSampleId).add(parsedValues);
             }
         }
         return parsedData;
@@ -3,10 +3,12 @@ package com.velox.sloan.cmo.workflows.covid19;
 import com.velox.api.datarecord.*;
 import com.velox.api.plugin.PluginResult;
 import com.velox.api.util.ServerException;
-import com.velox.sapioutils.server.plugin.DefaultGenericPlugin;
 import com.velox.sloan.cmo.workflows.IgoLimsPluginUtils.IgoLimsPluginUtils;
+import com.velox.sloan.cmo.workflows.utils.DataRecordQuery;
+import com.velox.sloan.cmo.workflows.utils.ProfiledGenericPlugin;
+import com.velox.sloan.cmo.workflows.utils.RecordFieldSnapshot;
+import com.velox.sloan.cmo.workflows.utils.SampleIdAllocator;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.lang3.exception.ExceptionUtils;
 
 import java.io.IOException;
 import java.rmi.RemoteException;
@@ -21,7 +23,7 @@ import static com.velox.sloan.cmo.workflows.utils.DataAccessUtils.*;
  *
  * @author sharmaa1
  */
-public class Covid19SampleImporter extends DefaultGenericPlugin {
+public class Covid19SampleImporter extends ProfiledGenericPlugin {
 
     private IgoLimsPluginUtils utils = new IgoLimsPluginUtils();
     private final List<String> REQUIRED_FILE_HEADERS = Arrays.asList("Accession Number", "Well ID");
@@ -36,7 +38,8 @@ public class Covid19SampleImporter extends DefaultGenericPlugin {
    }
 
     @Override
-    public PluginResult run() throws ServerException {
+    protected PluginResult runProfiled() throws ServerException {
+        SampleIdAllocator sampleIdAllocator = new SampleIdAllocator(dataRecordManager, user);
         try {
             String csvFilePath = clientCallback.showFileDialog("Upload file with Sample Information", null);
             if (csvFilePath == null) {
@@ -65,20 +68,24 @@ public class Covid19SampleImporter extends DefaultGenericPlugin {
                 return new PluginResult(false);
             }
             Map<String, Integer> headerValuesMap = utils.getCsvHeaderValueMap(fileData, pluginLogger);
-            List<Map<String,Object>> parsedSampleData = parseFileDataToSampleData(fileData, headerValuesMap);
-            List<DataRecord> requests = dataRecordManager.queryDataRecords("Request", "RequestId = '" + COVID_REQUEST_ID + "'" , user);
-
-            if (requests.size() == 1 && !hasDuplicateAccessionNumber(parsedSampleData) && isValidFileData(fileData, headerValuesMap)){
-                requests.get(0).addChildren("Sample", parsedSampleData, user);
-                clientCallback.displayInfo("Adding new Sample to request 10858........");
-                dataRecordManager.storeAndCommit(String.format("Added %d new Samples in LIMS.", parsedSampleData.size()), null, user);
-                clientCallback.displayInfo(String.format("Process complete.\n\nAdded %d new Sample to request 10858.", parsedSampleData.size()));
-            }
+            List<DataRecord> requests = DataRecordQuery.from("Request").whereEquals("RequestId", COVID_REQUEST_ID).execute(dataRecordManager, user);
             if (requests.size() != 1){
                 clientCallback.displayError("Error: Either the Request 10858 does not exist, or there are more than one Requests with same RequestId 10858.");
                 logError("Error: Either the Request 10858 does not exist, or there are more than one Requests with same RequestId 10858.");
                 return new PluginResult(false);
             }
+            if (!isValidFileData(fileData, headerValuesMap)){
+                return new PluginResult(false);
+            }
+
+            List<RecordFieldSnapshot> samplesInRequest = getSamplesInRequest();
+            int firstSampleNumber = sampleIdAllocator.reserveSampleNumbers(COVID_REQUEST_ID, fileData.size() - 1, getHighestSampleNumber(samplesInRequest));
+            List<Map<String,Object>> parsedSampleData = parseFileDataToSampleData(fileData, headerValuesMap, firstSampleNumber);
+            warnAboutExistingAccessionNumbers(parsedSampleData, samplesInRequest);
+            requests.get(0).addChildren("Sample", parsedSampleData, user);
+            clientCallback.displayInfo("Adding new Sample to request 10858........");
+            dataRecordManager.storeAndCommit(String.format("Added %d new Samples in LIMS.", parsedSampleData.size()), null, user);
+            clientCallback.displayInfo(String.format("Process complete.\n\nAdded %d new Sample to request 10858.", parsedSampleData.size()));
 
         } catch (ServerException e){
             String message = String.format("Server Exception while importing new COVID-19 Samples into LIMS with message: %s", e.getMessage());
@@ -92,6 +99,8 @@ public class Covid19SampleImporter extends DefaultGenericPlugin {
             String message = String.format("Data Record Access exception while importing new COVID-19 Samples into LIMS with message: %s", e.getMessage());
             logError(message, e);
             return new PluginResult(false);
+        } finally {
+            sampleIdAllocator.close();
         }
         return new PluginResult(true);
     }
@@ -128,11 +137,12 @@ public class Covid19SampleImporter extends DefaultGenericPlugin {
      * Method to parse
      * @param fileData
      * @param headrValuesMap
+     * @param firstSampleNumber
      * @return List<Map<String, Object>>
      */
-   private List<Map<String, Object>> parseFileDataToSampleData(List<String> fileData, Map<String, Integer> headrValuesMap){
+   private List<Map<String, Object>> parseFileDataToSampleData(List<String> fileData, Map<String, Integer> headrValuesMap, int firstSampleNumber){
         List<Map<String, Object>> parsedData = new ArrayList<>();
-        Integer nextSampleNumer = getNextSampleNumber();
+        int nextSampleNumer = firstSampleNumber;
         for (int i = 1; i< fileData.size(); i++){
             List<String> rowValues = Arrays.asList(fileData.get(i).split(","));
             if (rowValues.size()>0){
@@ -159,63 +169,57 @@ public class Covid19SampleImporter extends DefaultGenericPlugin {
    }
 
     /**
-     * Method to get the start incremental count value for new Sample ID's in LIMS.
-     * @return Integer
+     * Method to get the SampleId, OtherSampleId and ExemplarSampleType values of all Samples in request 10858 with a single
+     * query and a single field fetch.
+     * @return List<RecordFieldSnapshot>
+     * @throws IoError
+     * @throws RemoteException
+     * @throws NotFound
+     * @throws ServerException
      */
-    private Integer getNextSampleNumber() {
-        Integer lastSampleNumber = 0;
-        try {
-            List<DataRecord> samples = dataRecordManager.queryDataRecords("Sample", "RequestId = '" + COVID_REQUEST_ID + "'", user);
-            if (samples.size() > 0) {
-                // traverse all samples saving the highest sample number
-                for (DataRecord rec : samples) {
-                    Integer sampleNumber = Integer.parseInt(rec.getStringVal("SampleId", user).split("_")[1]);
-                    if (sampleNumber > lastSampleNumber) {
-                        lastSampleNumber = sampleNumber;
-                    }
-                }
+    private List<RecordFieldSnapshot> getSamplesInRequest() throws IoError, RemoteException, NotFound, ServerException {
+        List<DataRecord> samples = DataRecordQuery.from("Sample").whereEquals("RequestId", COVID_REQUEST_ID).execute(dataRecordManager, user);
+        return getFieldSnapshots(samples, dataRecordManager, user);
+    }
+
+    /**
+     * Method to get the highest sample number n of the SampleIds '10858_n' of the Samples in request 10858.
+     * @param samplesInRequest
+     * @return int
+     */
+    private int getHighestSampleNumber(List<RecordFieldSnapshot> samplesInRequest) {
+        int highestSampleNumber = 0;
+        for (RecordFieldSnapshot sample : samplesInRequest) {
+            String[] sampleIdParts = StringUtils.defaultString(sample.getStringVal("SampleId")).split("_");
+            if (sampleIdParts.length > 1 && StringUtils.isNumeric(sampleIdParts[1])) {
+                highestSampleNumber = Math.max(highestSampleNumber, Integer.parseInt(sampleIdParts[1]));
             }
-        } catch (Exception e) {
-            logError(e.getMessage(), e);
-            return null;
         }
-        return lastSampleNumber + 1;
+        return highestSampleNumber;
     }
 
     /**
-     * Method to check if any Accession Number being imported is already associated with other Sample in the same request 10858.
+     * Method to warn about Accession Numbers being imported that are already associated with other Samples in the same request 10858.
      * @param parsedSampleData
-     * @return
-     * @throws IoError
-     * @throws RemoteException
-     * @throws NotFound
+     * @param samplesInRequest
      * @throws ServerException
+     * @throws RemoteException
      */
-    private boolean hasDuplicateAccessionNumber(List<Map<String, Object>> parsedSampleData) {
-        List<DataRecord> samplesInRequest = new ArrayList<>();
-        try{
-            samplesInRequest = dataRecordManager.queryDataRecords("Sample", "RequestId = '" + COVID_REQUEST_ID + "' AND ExemplarSampleType = 'other'", user);
-        } catch (Exception e){
-            logError(String.format("Couldn't query sample: %s", COVID_REQUEST_ID, ExceptionUtils.getStackTrace(e)));
+    private void warnAboutExistingAccessionNumbers(List<Map<String, Object>> parsedSampleData, List<RecordFieldSnapshot> samplesInRequest) throws ServerException, RemoteException {
+        Map<String, List<String>> sampleIdsByAccessionNumber = new HashMap<>();
+        for (RecordFieldSnapshot sample : samplesInRequest) {
+            String sampleName = sample.getStringVal("OtherSampleId");
+            if ("other".equals(sample.getStringVal("ExemplarSampleType")) && StringUtils.isNotBlank(sampleName)) {
+                sampleIdsByAccessionNumber.computeIfAbsent(sampleName.toLowerCase(), k -> new ArrayList<>()).add(sample.getStringVal("SampleId"));
+            }
         }
-
-        for (DataRecord sample: samplesInRequest){
-            String sampleName = getRecordStringValue(sample, "OtherSampleId", user);
-            if (sampleName != ""){
-                String sampleId = getRecordStringValue(sample, "SampleId", user);
-                for (Map<String, Object> data : parsedSampleData){
-                    if(data.get("OtherSampleId").toString().equalsIgnoreCase(sampleName)){
-                        String warning = String.format("Duplicate Accession No '%s' in uploaded file. Sample %s already has this Accession No.", sampleName, sampleId);
-                        try {
-                            clientCallback.displayWarning(warning);
-                            logError(warning);
-                        } catch (ServerException | RemoteException e){
-                            logError(String.format("Server Exception error:\n%s",ExceptionUtils.getStackTrace(e)));
-                        }
-                    }
-                }
+        for (Map<String, Object> data : parsedSampleData) {
+            String sampleName = data.get("OtherSampleId").toString();
+            for (String sampleId : sampleIdsByAccessionNumber.getOrDefault(sampleName.toLowerCase(), Collections.emptyList())) {
+                String warning = String.format("Duplicate Accession No '%s' in uploaded file. Sample %s already has this Accession No.", sampleName, sampleId);
+                clientCallback.displayWarning(warning);
+                logError(warning);
             }
         }
-        return false;
     }
 }
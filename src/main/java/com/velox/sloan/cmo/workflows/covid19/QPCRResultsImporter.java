@@ -8,6 +8,7 @@ import com.velox.api.workflow.ActiveTask;
 import com.velox.api.workflow.ActiveWorkflow;
 import com.velox.sapioutils.server.plugin.DefaultGenericPlugin;
 import com.velox.sapioutils.shared.enums.PluginOrder;
+import com.velox.sloan.cmo.workflows.IgoLimsPluginUtils.CsvReader;
 import com.velox.sloan.cmo.workflows.IgoLimsPluginUtils.IgoLimsPluginUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.apache.poi.ss.usermodel.Cell;
@@ -87,13 +88,15 @@ public class QPCRResultsImporter extends DefaultGenericPlugin {
                 logInfo(String.format("QPCR results file re-uploaded -> Deleted %s records attached to task created by previous QPCR results upload", activeTask.getInputDataTypeName()));
             }
             //entire data from file
-            List<String> entireFile = utils.readDataFromCsvFile(clientCallback.readBytes(csvFilePath));
+            CsvReader entireFile = utils.readCsvFile(clientCallback.readBytes(csvFilePath));
 
             //data without unnecessary rows in the beginning of file with # and should be skipped.
-            List<String> qpcrValueRows = getQpcrResults(entireFile, csvFilePath);
+            if (!hasQpcrResults(entireFile, csvFilePath)) {
+                return new PluginResult(false);
+            }
 
             //parse QPCR data for each row separated by sample name.
-            Map<String, List<Map<String, Object>>> parsedData = helper.parseQpcrData(qpcrValueRows, pluginLogger);
+            Map<String, List<Map<String, Object>>> parsedData = helper.parseQpcrData(entireFile, pluginLogger);
 
             //analyze parsed data.
             List<Map<String, Object>> analyzedData = helper.analyzeParsedQpcrData(parsedData);
@@ -114,19 +117,18 @@ public class QPCRResultsImporter extends DefaultGenericPlugin {
     }
 
     /**
-     * Method to get data from user uploaded file
+     * Method to check if user uploaded file has qPCR results below the lines with # that should be skipped.
      *
      * @param fileData
      * @return
      */
-    private List<String> getQpcrResults(List<String> fileData, String fileName) throws ServerException, RemoteException {
-        List<String> data = helper.getQpcrResults(fileData);
-        if (data.size() < 2) {
+    private boolean hasQpcrResults(CsvReader fileData, String fileName) throws ServerException, RemoteException {
+        if (helper.getQpcrResultRowCount(fileData) < 2) {
             clientCallback.displayError(String.format("uploaded file '%s' does not contain data", fileName));
             logError(String.format("uploaded file '%s' does not contain data", fileName));
-            return null;
+            return false;
         }
-        return data;
+        return true;
     }
 
     /**
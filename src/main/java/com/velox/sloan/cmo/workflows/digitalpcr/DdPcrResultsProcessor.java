@@ -3,17 +3,19 @@ package com.velox.sloan.cmo.workflows.digitalpcr;
 import java.math.BigDecimal;
 import java.util.*;
 import com.velox.api.plugin.PluginLogger;
+import com.velox.sloan.cmo.workflows.IgoLimsPluginUtils.CsvReader;
+import com.velox.sloan.cmo.workflows.IgoLimsPluginUtils.CsvRow;
 import java.util.function.DoubleUnaryOperator;
 
 public class DdPcrResultsProcessor implements DdPcrResultsReader {
     @Override
-    public List<List<String>> readChannel1Data(List<String> fileData, Map<String, Integer> headerValueMap, boolean isQX200) {
+    public List<List<String>> readChannel1Data(CsvReader fileData, Map<String, Integer> headerValueMap, boolean isQX200) {
         List<List<String>> channel1RawData = new ArrayList<>();
-        for (String row : fileData) {
-            List<String> valuesInRow = Arrays.asList(row.split(","));
-            if (isQX200) {
-                if (valuesInRow.get(headerValueMap.get("TargetType")).contains("Unknown")) {
-                    channel1RawData.add(valuesInRow);
+        if (isQX200) {
+            int targetType = headerValueMap.get("TargetType");
+            for (CsvRow row : fileData.getDataRows()) {
+                if (row.contains(targetType, "Unknown")) {
+                    channel1RawData.add(row.toList());
                 }
             }
         }
@@ -21,13 +23,13 @@ public class DdPcrResultsProcessor implements DdPcrResultsReader {
     }
 
     @Override
-    public List<List<String>> readChannel2Data(List<String> fileData, Map<String, Integer> headerValueMap, boolean isQX200) {
+    public List<List<String>> readChannel2Data(CsvReader fileData, Map<String, Integer> headerValueMap, boolean isQX200) {
         List<List<String>> channel2RawData = new ArrayList<>();
-        for (String row : fileData) {
-            List<String> valuesInRow = Arrays.asList(row.split(","));
-            if (isQX200) {
-                if (valuesInRow.get(headerValueMap.get("TargetType")).contains("Ref")) {
-                    channel2RawData.add(valuesInRow);
+        if (isQX200) {
+            int targetType = headerValueMap.get("TargetType");
+            for (CsvRow row : fileData.getDataRows()) {
+                if (row.contains(targetType, "Ref")) {
+                    channel2RawData.add(row.toList());
                 }
             }
         }
@@ -35,23 +37,23 @@ public class DdPcrResultsProcessor implements DdPcrResultsReader {
     }
 
     @Override
-    public List<List<String>> readRefChannelsData(List<String> fileData, Map<String, Integer> headerValueMap, String numOfChannels, String ref) {
+    public List<List<String>> readRefChannelsData(CsvReader fileData, Map<String, Integer> headerValueMap, String numOfChannels, String ref) {
         List<List<String>> allChannelsRawData = new ArrayList<>();
-        for (String row : fileData) {
-            List<String> valuesInRow = Arrays.asList(row.split(","));
-            if (valuesInRow.get(headerValueMap.get("DyeName(s)")).equalsIgnoreCase(ref)) {
-                allChannelsRawData.add(valuesInRow);
+        int dyeName = headerValueMap.get("DyeName(s)");
+        for (CsvRow row : fileData.getDataRows()) {
+            if (row.equalsIgnoreCase(dyeName, ref)) {
+                allChannelsRawData.add(row.toList());
             }
         }
         return allChannelsRawData;
     }
     @Override
-    public List<List<String>> readTargetChannelsData(List<String> fileData, Map<String, Integer> headerValueMap, String numOfChannels, String ref) {
+    public List<List<String>> readTargetChannelsData(CsvReader fileData, Map<String, Integer> headerValueMap, String numOfChannels, String ref) {
         List<List<String>> allChannelsRawData = new ArrayList<>();
-        for (String row : fileData) {
-            List<String> valuesInRow = Arrays.asList(row.split(","));
-            if (!valuesInRow.get(headerValueMap.get("DyeName(s)")).equalsIgnoreCase(ref)) {
-                allChannelsRawData.add(valuesInRow);
+        int dyeName = headerValueMap.get("DyeName(s)");
+        for (CsvRow row : fileData.getDataRows()) {
+            if (!row.equalsIgnoreCase(dyeName, ref)) {
+                allChannelsRawData.add(row.toList());
             }
         }
         return allChannelsRawData;
@@ -59,149 +61,174 @@ public class DdPcrResultsProcessor implements DdPcrResultsReader {
 
     @Override
     public List<Map<String, Object>> concatenateChannel1AndChannel2Data(List<List<String>> channel1Data, List<List<String>> channel2Data, Map<String, Integer> headerValueMap, boolean isQX200, PluginLogger logger) {
+        List<Map<String, Object>> flatData = joinChannels(channel1Data, channel2Data, headerValueMap, isQX200);
+        logger.logInfo(String.format("Joined %d channel 1 rows with %d channel 2 rows into %d rows.", channel1Data.size(),
+                channel2Data.size(), flatData.size()));
+        return flatData;
+    }
+
+    public List<Map<String, Object>> concatenateRefTargetChannels(List<List<String>> targetChannelsData, List<List<String>> refChannelsData, Map<String, Integer> headerValueMap, String numOfChannels, PluginLogger logger) {
+        List<Map<String, Object>> flatData = joinChannels(targetChannelsData, refChannelsData, headerValueMap, false);
+        logger.logInfo(String.format("Joined %d target channel rows with %d reference channel rows into %d rows.",
+                targetChannelsData.size(), refChannelsData.size(), flatData.size()));
+        return flatData;
+    }
+
+    /**
+     * Join rows of the target (channel 1) and reference (channel 2) channels on Well and Sample, both compared ignoring
+     * case. Reference rows are indexed by (Well, Sample) and each target row is matched against the index. One result
+     * row is created for every matching pair, in order of the target rows and then of the reference rows.
+     *
+     * @param targetData
+     * @param refData
+     * @param headerValueMap
+     * @param isQX200
+     * @return flat data with one map per matching target and reference row.
+     */
+    private List<Map<String, Object>> joinChannels(List<List<String>> targetData, List<List<String>> refData, Map<String, Integer> headerValueMap, boolean isQX200) {
         List<Map<String, Object>> flatData = new ArrayList<>();
-        for (List<String> s1 : channel1Data) {
-            String s1Well = s1.get(headerValueMap.get("Well"));
-            String s1SampleId = "";
-            String s2SampleId = "";
-            logger.logInfo("s1 MergedWells = " + s1.get(headerValueMap.get("MergedWells")));
-            if (!isQX200) {
-                s1SampleId = s1.get(headerValueMap.get("Sample description 2"));
-                logger.logInfo("QX600: sample name" + s1SampleId);
-            } else { // QX200
-                s1SampleId = s1.get(headerValueMap.get("Sample"));
+        if (targetData.isEmpty() || refData.isEmpty()) {
+            return flatData;
+        }
+        ChannelColumns columns = new ChannelColumns(headerValueMap, isQX200);
+        Map<List<String>, List<List<String>>> refRowsByWellAndSample = new HashMap<>();
+        for (List<String> refRow : refData) {
+            refRowsByWellAndSample.computeIfAbsent(columns.getJoinKey(refRow), k -> new ArrayList<>()).add(refRow);
+        }
+        Map<List<String>, ChannelRow> parsedRefRows = new IdentityHashMap<>();
+        for (List<String> targetRow : targetData) {
+            List<List<String>> matchingRefRows = refRowsByWellAndSample.get(columns.getJoinKey(targetRow));
+            if (matchingRefRows == null) {
+                continue;
             }
-            for (List<String> s2 : channel2Data) {
-                String s2Well = s2.get(headerValueMap.get("Well"));
-                if (isQX200) {
-                    s2SampleId = s2.get(headerValueMap.get("Sample"));
-                } else { // QX600
-                    s2SampleId = s2.get(headerValueMap.get("Sample description 2"));
-                }
-                if (s2Well.equalsIgnoreCase(s1Well) && s2SampleId.equalsIgnoreCase(s1SampleId)) {
-                    Map<String, Object> sampleValues = new HashMap<>();
-                    sampleValues.put("Well", s1.get(headerValueMap.get("Well")));
-                    if (isQX200) {
-                        sampleValues.put("Sample", s1.get(headerValueMap.get("Sample")));
-                        sampleValues.put("ConcentrationMutation", Double.parseDouble(s1.get(headerValueMap.get("Concentration"))));
-                        sampleValues.put("ConcentrationWildType", Double.parseDouble(s2.get(headerValueMap.get("Concentration"))));
-                        sampleValues.put("AcceptedDroplets", Integer.parseInt(s1.get(headerValueMap.get("AcceptedDroplets"))));
-                        sampleValues.put("Target", s1.get(headerValueMap.get("Target")));
-                        if (Double.parseDouble(s1.get(headerValueMap.get("Concentration"))) + Double.parseDouble(s2.get(headerValueMap.get("Concentration"))) == 0) {
-                            sampleValues.put("FractionalAbundance", 0.0);
-                        }
-                        else {
-                            Double fractionalAbundance = Double.parseDouble(s1.get(headerValueMap.get("Concentration"))) /
-                                    (Double.parseDouble(s1.get(headerValueMap.get("Concentration"))) + Double.parseDouble(s2.get(headerValueMap.get("Concentration"))));
-                            sampleValues.put("FractionalAbundance", fractionalAbundance);
-                        }
-                    } else { // QX600
-                        logger.logInfo("Conc(copies/µL): " + headerValueMap.get("Conc(copies/µL)"));
-                        logger.logInfo("s1 size = " + s1.size());
-                        logger.logInfo("header value map of Conc(Copies/µl) = " + headerValueMap.get("Conc(copies/µL)"));
-                        sampleValues.put("Sample", s1.get(headerValueMap.get("Sample description 2")));
-                        int index = headerValueMap.get("Conc(copies/µL)");
-                        if (s1.get(index) != null && !s1.get(index).isEmpty() && !s1.get(index).isBlank()) {
-                            sampleValues.put("ConcentrationMutation", Double.parseDouble(s1.get(index)));
-                        }
-                        if (s2.get(index) != null && !s2.get(index).isEmpty() && !s2.get(index).isBlank()) {
-                            sampleValues.put("ConcentrationWildType", Double.parseDouble(s2.get(index)));
-                        }
-                        sampleValues.put("AcceptedDroplets", Integer.parseInt(s1.get(headerValueMap.get("Accepted Droplets"))));
-                        sampleValues.put("TargetGene", s1.get(headerValueMap.get("Target")));
-                        sampleValues.put("TargetRef", s2.get(headerValueMap.get("Target")));
-                        if (Double.parseDouble(s1.get(headerValueMap.get("Conc(copies/µL)"))) + Double.parseDouble(s2.get(headerValueMap.get("Conc(copies/µL)"))) == 0) {
-                            sampleValues.put("FractionalAbundance", 0.0);
-                        }
-                        else {
-                            Double fractionalAbundance = Double.parseDouble(s1.get(headerValueMap.get("Conc(copies/µL)"))) /
-                                    (Double.parseDouble(s1.get(headerValueMap.get("Conc(copies/µL)"))) + Double.parseDouble(s2.get(headerValueMap.get("Conc(copies/µL)"))));
-                            sampleValues.put("FractionalAbundance", fractionalAbundance);
-                        }
-                    }
-                    //sampleValues.put("Target", s1.get(headerValueMap.get("Target")));
-                    logger.logInfo("s1.get(headerValueMap.get(\"Ch1+Ch2+\")) = " + s1.get(headerValueMap.get("Ch1+Ch2+")));
-                    sampleValues.put("Channel1PosChannel2Pos", Integer.parseInt(s1.get(headerValueMap.get("Ch1+Ch2+"))));
-                    sampleValues.put("Channel1PosChannel2Neg", Integer.parseInt(s1.get(headerValueMap.get("Ch1+Ch2-"))));
-                    sampleValues.put("Channel1NegChannel2Pos", Integer.parseInt(s1.get(headerValueMap.get("Ch1-Ch2+"))));
-                    if (s1.get(headerValueMap.get("CNV")) != null && !s1.get(headerValueMap.get("CNV")).isEmpty() && !s1.get(headerValueMap.get("CNV")).isBlank()) {
-                        sampleValues.put("CNV", Double.parseDouble(s1.get(headerValueMap.get("CNV"))));
-                    }
-                    else {
-                        sampleValues.put("CNV", 0.0);
-                    }
-                    flatData.add(sampleValues);
-                }
+            ChannelRow target = new ChannelRow(targetRow, columns, true);
+            for (List<String> refRow : matchingRefRows) {
+                ChannelRow ref = parsedRefRows.computeIfAbsent(refRow, r -> new ChannelRow(r, columns, false));
+                flatData.add(getSampleValues(target, ref, isQX200));
             }
         }
         return flatData;
     }
 
-    public List<Map<String, Object>> concatenateRefTargetChannels(List<List<String>> targetChannelsData, List<List<String>> refChannelsData, Map<String, Integer> headerValueMap, String numOfChannels, PluginLogger logger) {
-        List<Map<String, Object>> flatData = new ArrayList<>();
-        logger.logInfo("Called concatenate all channels..");
-        logger.logInfo("refChannelsData size = " + refChannelsData.size());
-        logger.logInfo("targetChannelsData size = " + targetChannelsData.size());
-        for (int i  = 0; i < targetChannelsData.size(); i++) {
-            int index = headerValueMap.get("Conc(copies/µL)");
-            String targetWell = "";
-            String targetSampleId = "";
-            String refSampleId = "";
-            String refWell = "";
-            String refIndex = "";
-            String refConcentration = "";
-            logger.logInfo("Target name is: " + targetChannelsData.get(i).get(headerValueMap.get("DyeName(s)")));
-            for (int j = 0; j < refChannelsData.size(); j++) {
-                logger.logInfo("Ref name is: " + refChannelsData.get(j).get(headerValueMap.get("DyeName(s)")));
-                refSampleId = refChannelsData.get(j).get(headerValueMap.get("Sample description 2"));
-                refWell = refChannelsData.get(j).get(headerValueMap.get("Well"));
-                refIndex = refChannelsData.get(j).get(index);
-                refConcentration = refChannelsData.get(j).get(headerValueMap.get("Conc(copies/µL)"));
-                targetWell = targetChannelsData.get(i).get(headerValueMap.get("Well"));
-                targetSampleId = targetChannelsData.get(i).get(headerValueMap.get("Sample description 2"));
+    private Map<String, Object> getSampleValues(ChannelRow target, ChannelRow ref, boolean isQX200) {
+        Map<String, Object> sampleValues = new HashMap<>();
+        sampleValues.put("Well", target.well);
+        sampleValues.put("Sample", target.sampleId);
+        if (isQX200) {
+            sampleValues.put("ConcentrationMutation", target.getConcentration());
+            sampleValues.put("ConcentrationWildType", ref.getConcentration());
+            sampleValues.put("Target", target.target);
+        } else { // QX600
+            if (target.hasConcentration()) {
+                sampleValues.put("ConcentrationMutation", target.getConcentration());
+            }
+            if (ref.hasConcentration()) {
+                sampleValues.put("ConcentrationWildType", ref.getConcentration());
+            }
+            sampleValues.put("TargetGene", target.target);
+            sampleValues.put("TargetRef", ref.target);
+        }
+        sampleValues.put("AcceptedDroplets", target.acceptedDroplets);
+        if (target.getConcentration() + ref.getConcentration() == 0) {
+            sampleValues.put("FractionalAbundance", 0.0);
+        } else {
+            Double fractionalAbundance = target.getConcentration() / (target.getConcentration() + ref.getConcentration());
+            sampleValues.put("FractionalAbundance", fractionalAbundance);
+        }
+        sampleValues.put("Channel1PosChannel2Pos", target.channel1PosChannel2Pos);
+        sampleValues.put("Channel1PosChannel2Neg", target.channel1PosChannel2Neg);
+        sampleValues.put("Channel1NegChannel2Pos", target.channel1NegChannel2Pos);
+        sampleValues.put("CNV", target.cnv);
+        return sampleValues;
+    }
 
-                logger.logInfo("Ref well = " + refWell + ", target well = " + targetWell + "| ref sampleId = " + refSampleId + ", target sampleId = " + targetSampleId);
-                if (refWell.equalsIgnoreCase(targetWell) && refSampleId.equalsIgnoreCase(targetSampleId)) {
-                    logger.logInfo("iterating over same sample wells..");
-                    Map<String, Object> sampleValues = new HashMap<>();
-                    sampleValues.put("Well", targetChannelsData.get(i).get(headerValueMap.get("Well")));
-                    logger.logInfo("Conc(copies/µL): " + headerValueMap.get("Conc(copies/µL)"));
-                    logger.logInfo("target size = " + targetChannelsData.get(i).size());
-                    logger.logInfo("header value map of Conc(Copies/µl) = " + headerValueMap.get("Conc(copies/µL)"));
-                    sampleValues.put("Sample", targetChannelsData.get(i).get(headerValueMap.get("Sample description 2")));
+    /**
+     * Column indexes of the values used from a ddPCR results row. QX200 and QX600 exports use different headers for
+     * the Sample, Concentration and Accepted Droplets columns.
+     */
+    private static class ChannelColumns {
+        private final int well;
+        private final int sample;
+        private final int target;
+        private final int concentration;
+        private final Map<String, Integer> headerValueMap;
+        private final boolean isQX200;
 
-                    if (targetChannelsData.get(i).get(index) != null && !targetChannelsData.get(i).get(index).isEmpty() && !targetChannelsData.get(i).get(index).isBlank()) {
-                        sampleValues.put("ConcentrationMutation", Double.parseDouble(targetChannelsData.get(i).get(index)));
-                    }
-                    if (refChannelsData.get(j).get(index) != null && !refChannelsData.get(j).get(index).isEmpty() && !refChannelsData.get(j).get(index).isBlank()) {
-                        sampleValues.put("ConcentrationWildType", Double.parseDouble(refIndex));
-                    }
-                    sampleValues.put("AcceptedDroplets", Integer.parseInt(targetChannelsData.get(i).get(headerValueMap.get("Accepted Droplets"))));
-                    sampleValues.put("TargetGene", targetChannelsData.get(i).get(headerValueMap.get("Target")));
-                    sampleValues.put("TargetRef", refChannelsData.get(j).get(headerValueMap.get("Target")));
-                    if ((Double.parseDouble(targetChannelsData.get(i).get(headerValueMap.get("Conc(copies/µL)"))) + Double.parseDouble(refConcentration)) == 0) {
-                        sampleValues.put("FractionalAbundance", 0.0);
-                    } else {
-                        Double fractionalAbundance = Double.parseDouble(targetChannelsData.get(i).get(headerValueMap.get("Conc(copies/µL)"))) /
-                                (Double.parseDouble(targetChannelsData.get(i).get(headerValueMap.get("Conc(copies/µL)"))) + Double.parseDouble(refConcentration));
-                        sampleValues.put("FractionalAbundance", fractionalAbundance);
-                    }
+        ChannelColumns(Map<String, Integer> headerValueMap, boolean isQX200) {
+            this.headerValueMap = headerValueMap;
+            this.isQX200 = isQX200;
+            this.well = headerValueMap.get("Well");
+            this.sample = headerValueMap.get(isQX200 ? "Sample" : "Sample description 2");
+            this.target = headerValueMap.get("Target");
+            this.concentration = headerValueMap.get(isQX200 ? "Concentration" : "Conc(copies/µL)");
+        }
 
-                    logger.logInfo("taregt channel .get(headerValueMap.get(\"Ch1+Ch2+\")) = " + targetChannelsData.get(i).get(headerValueMap.get("Ch1+Ch2+")));
-                    sampleValues.put("Channel1PosChannel2Pos", Integer.parseInt(targetChannelsData.get(i).get(headerValueMap.get("Ch1+Ch2+"))));
-                    sampleValues.put("Channel1PosChannel2Neg", Integer.parseInt(targetChannelsData.get(i).get(headerValueMap.get("Ch1+Ch2-"))));
-                    sampleValues.put("Channel1NegChannel2Pos", Integer.parseInt(targetChannelsData.get(i).get(headerValueMap.get("Ch1-Ch2+"))));
-                    if (targetChannelsData.get(i).get(headerValueMap.get("CNV")) != null && !targetChannelsData.get(i).get(headerValueMap.get("CNV")).isEmpty() && !targetChannelsData.get(i).get(headerValueMap.get("CNV")).isBlank()) {
-                        sampleValues.put("CNV", Double.parseDouble(targetChannelsData.get(i).get(headerValueMap.get("CNV"))));
-                    } else {
-                        sampleValues.put("CNV", 0.0);
-                    }
-                    flatData.add(sampleValues);
-                }
+        List<String> getJoinKey(List<String> row) {
+            return Arrays.asList(foldCase(row.get(well)), foldCase(row.get(sample)));
+        }
+
+        int get(String header) {
+            return headerValueMap.get(header);
+        }
+
+        /**
+         * Fold case the same way String.equalsIgnoreCase compares characters, so that keys are equal exactly when
+         * the values are equal ignoring case.
+         */
+        private static String foldCase(String value) {
+            StringBuilder folded = new StringBuilder(value.length());
+            for (int i = 0; i < value.length(); i++) {
+                folded.append(Character.toLowerCase(Character.toUpperCase(value.charAt(i))));
             }
+            return folded.toString();
+        }
+    }
+
+    /**
+     * Values of a ddPCR results row, parsed once. Droplet counts and CNV are only parsed for target rows.
+     */
+    private static class ChannelRow {
+        private final String well;
+        private final String sampleId;
+        private final String target;
+        private final String concentration;
+        private final Double concentrationValue;
+        private Integer acceptedDroplets;
+        private Integer channel1PosChannel2Pos;
+        private Integer channel1PosChannel2Neg;
+        private Integer channel1NegChannel2Pos;
+        private Double cnv;
+
+        ChannelRow(List<String> row, ChannelColumns columns, boolean isTarget) {
+            this.well = row.get(columns.well);
+            this.sampleId = row.get(columns.sample);
+            this.target = row.get(columns.target);
+            this.concentration = row.get(columns.concentration);
+            this.concentrationValue = isBlank(concentration) ? null : Double.parseDouble(concentration);
+            if (isTarget) {
+                this.acceptedDroplets = Integer.parseInt(row.get(columns.get(columns.isQX200 ? "AcceptedDroplets" : "Accepted Droplets")));
+                this.channel1PosChannel2Pos = Integer.parseInt(row.get(columns.get("Ch1+Ch2+")));
+                this.channel1PosChannel2Neg = Integer.parseInt(row.get(columns.get("Ch1+Ch2-")));
+                this.channel1NegChannel2Pos = Integer.parseInt(row.get(columns.get("Ch1-Ch2+")));
+                String cnvValue = row.get(columns.get("CNV"));
+                this.cnv = isBlank(cnvValue) ? 0.0 : Double.parseDouble(cnvValue);
+            }
+        }
+
+        boolean hasConcentration() {
+            return concentrationValue != null;
+        }
+
+        /**
+         * Blank concentration values fail to parse with the same NumberFormatException as before.
+         */
+        double getConcentration() {
+            return concentrationValue != null ? concentrationValue : Double.parseDouble(concentration);
+        }
+
+        private static boolean isBlank(String value) {
+            return value == null || value.isBlank();
         }
-        logger.logInfo("flatted data size = " + flatData.size());
-        return flatData;
     }
 
     @Override
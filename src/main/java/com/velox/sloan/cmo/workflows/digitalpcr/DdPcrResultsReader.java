@@ -1,16 +1,17 @@
 package com.velox.sloan.cmo.workflows.digitalpcr;
 
 import com.velox.api.plugin.PluginLogger;
+import com.velox.sloan.cmo.workflows.IgoLimsPluginUtils.CsvReader;
 
 import java.util.List;
 import java.util.Map;
 
 public interface DdPcrResultsReader {
-    List<List<String>> readChannel1Data(List<String> fileData, Map<String, Integer> headerValueMap, boolean QX200);
+    List<List<String>> readChannel1Data(CsvReader fileData, Map<String, Integer> headerValueMap, boolean QX200);
 
-    List<List<String>> readChannel2Data(List<String> fileData, Map<String, Integer> headerValueMap, boolean QX200);
-    List<List<String>> readRefChannelsData(List<String> fileData, Map<String, Integer> headerValueMap, String numOfChannels, String reference);
-    List<List<String>> readTargetChannelsData(List<String> fileData, Map<String, Integer> headerValueMap, String numOfChannels, String reference);
+    List<List<String>> readChannel2Data(CsvReader fileData, Map<String, Integer> headerValueMap, boolean QX200);
+    List<List<String>> readRefChannelsData(CsvReader fileData, Map<String, Integer> headerValueMap, String numOfChannels, String reference);
+    List<List<String>> readTargetChannelsData(CsvReader fileData, Map<String, Integer> headerValueMap, String numOfChannels, String reference);
 
     List<Map<String, Object>> concatenateChannel1AndChannel2Data(List<List<String>> channel1Data, List<List<String>> channel2Data, Map<String, Integer> headerValueMap, boolean isQX200, PluginLogger logger);
 
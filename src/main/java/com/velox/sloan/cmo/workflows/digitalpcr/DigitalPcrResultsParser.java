@@ -9,7 +9,11 @@ import com.velox.api.plugin.PluginResult;
 import com.velox.api.util.ServerException;
 import com.velox.sapio.commons.exemplar.plugin.PluginOrder;
 import com.velox.sapioutils.server.plugin.DefaultGenericPlugin;
+import com.velox.sloan.cmo.workflows.IgoLimsPluginUtils.CsvReader;
 import com.velox.sloan.cmo.workflows.IgoLimsPluginUtils.IgoLimsPluginUtils;
+import com.velox.sloan.cmo.workflows.utils.DataRecordFieldCache;
+import com.velox.sloan.cmo.workflows.utils.DataRecordQuery;
+import com.velox.sloan.cmo.workflows.utils.RecordFieldSnapshot;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 
 import javax.swing.plaf.SplitPaneUI;
@@ -65,6 +69,7 @@ private final List<String> expectedQx600RawResultsHeaders = Arrays.asList("Well"
 
     IgoLimsPluginUtils igoUtils = new IgoLimsPluginUtils();
     DdPcrResultsProcessor resultsProcessor = new DdPcrResultsProcessor();
+    private DataRecordFieldCache fieldCache;
 
     public DigitalPcrResultsParser() {
         setTaskEntry(true);
@@ -79,6 +84,7 @@ private final List<String> expectedQx600RawResultsHeaders = Arrays.asList("Well"
 
     public PluginResult run() throws ServerException, RemoteException {
         try {
+            fieldCache = new DataRecordFieldCache(dataRecordManager, user);
             List<String> filesWithDigitalPcrRawData = clientCallback.showMultiFileDialog("Please upload Raw Data files", null);
             if (filesWithDigitalPcrRawData.size()==0) {
                 clientCallback.displayError("User did not upload results file.");
@@ -108,8 +114,8 @@ private final List<String> expectedQx600RawResultsHeaders = Arrays.asList("Well"
             }
             //read data from file and create new ddpcr assay results.
             for (String file : filesWithDigitalPcrRawData) {
-                List<String> fileData = igoUtils.readDataFromCsvFile(clientCallback.readBytes(file));
-                Map<String, Integer> headerValueMap = igoUtils.getCsvHeaderValueMap(fileData, pluginLogger);
+                CsvReader fileData = igoUtils.readCsvFile(clientCallback.readBytes(file));
+                Map<String, Integer> headerValueMap = fileData.getHeaderValueMap();
                 List<Map<String, Object>> combinedChannelsData = new ArrayList<>();
                 if (isQX200) {
                     List<List<String>> channel1Data = getChannel1Data(fileData, headerValueMap, isQX200);
@@ -229,7 +235,7 @@ private final List<String> expectedQx600RawResultsHeaders = Arrays.asList("Well"
      * @param headerValueMap
      * @return data related to channel1 in the raw data under "TargetType" column in ddPCR results.
      */
-    private List<List<String>> getChannel1Data(List<String> fileData, Map<String, Integer> headerValueMap, boolean isQX200) {
+    private List<List<String>> getChannel1Data(CsvReader fileData, Map<String, Integer> headerValueMap, boolean isQX200) {
         return resultsProcessor.readChannel1Data(fileData, headerValueMap, isQX200);
     }
 
@@ -238,13 +244,13 @@ private final List<String> expectedQx600RawResultsHeaders = Arrays.asList("Well"
      * @param headerValueMap
      * @return data related to channel2 in the raw data under "TargetType" column in ddPCR results.
      */
-    private List<List<String>> getChannel2Data(List<String> fileData, Map<String, Integer> headerValueMap, boolean isQX200) {
+    private List<List<String>> getChannel2Data(CsvReader fileData, Map<String, Integer> headerValueMap, boolean isQX200) {
         return resultsProcessor.readChannel2Data(fileData, headerValueMap, isQX200);
     }
-    private List<List<String>> getRefChannelsData(List<String> fileData, Map<String, Integer> headerValueMap, String numOfChannels, String ref) {
+    private List<List<String>> getRefChannelsData(CsvReader fileData, Map<String, Integer> headerValueMap, String numOfChannels, String ref) {
         return resultsProcessor.readRefChannelsData(fileData, headerValueMap, numOfChannels, ref);
     }
-    private List<List<String>> getTargetChannelsData(List<String> fileData, Map<String, Integer> headerValueMap, String numOfChannels, String ref) {
+    private List<List<String>> getTargetChannelsData(CsvReader fileData, Map<String, Integer> headerValueMap, String numOfChannels, String ref) {
         return resultsProcessor.readTargetChannelsData(fileData, headerValueMap, numOfChannels, ref);
     }
 
@@ -306,35 +312,34 @@ private final List<String> expectedQx600RawResultsHeaders = Arrays.asList("Well"
      * @throws RemoteException
      */
     private Double getTotalInputForSample(String sampleName, String assayName, List<DataRecord> protocolRecords, boolean QX200) {
-        for (DataRecord record : protocolRecords) {
+        for (DataRecord protocolRecord : protocolRecords) {
             try {
-                Object sampleNameOnProtocol = record.getValue("OtherSampleId", user);
+                RecordFieldSnapshot record = fieldCache.get(protocolRecord);
+                Object sampleNameOnProtocol = record.getValue("OtherSampleId");
                 Object assayOnProtocol = null;
                 if (QX200) {
-                    assayOnProtocol = record.getValue("Ch1Target", user);
+                    assayOnProtocol = record.getValue("Ch1Target");
                 }
                 else { //QX600
-                    assayOnProtocol = record.getValue("TargetName", user);
+                    assayOnProtocol = record.getValue("TargetName");
                 }
 
-                Object igoSampleIdOnProtocol = record.getStringVal("SampleId", user);
+                Object igoSampleIdOnProtocol = record.getStringVal("SampleId");
                 if (sampleNameOnProtocol != null && assayOnProtocol != null && sampleName.equalsIgnoreCase(sampleNameOnProtocol.toString())
                         && assayName.equalsIgnoreCase(assayOnProtocol.toString())) {
-                    Object totalInput = record.getValue("Aliq1TargetMass", user);
+                    Object totalInput = record.getValue("Aliq1TargetMass");
                     if (totalInput != null) {
                         return (Double) totalInput;
                     }
                 } else if (sampleNameOnProtocol != null && assayOnProtocol != null && sampleName.equalsIgnoreCase(igoSampleIdOnProtocol.toString())
                         && assayName.equalsIgnoreCase(assayOnProtocol.toString())) {
-                    Object totalInput = record.getValue("Aliq1TargetMass", user);
+                    Object totalInput = record.getValue("Aliq1TargetMass");
                     if (totalInput != null) {
                         return (Double) totalInput;
                     }
                 }
             } catch (RemoteException e) {
                 logError(String.format("RemoteException -> Error while reading data from InputDataType with OtherSampleId '%s':\n%s", sampleName, ExceptionUtils.getStackTrace(e)));
-            } catch (NotFound notFound) {
-                logError(String.format("NotFound Exception -> Error while reading data from InputDataType with OtherSampleId '%s':\n%s", sampleName, ExceptionUtils.getStackTrace(notFound)));
             }
         }
         return 0.0;
@@ -378,6 +383,34 @@ private final List<String> expectedQx600RawResultsHeaders = Arrays.asList("Well"
         }
     };
 
+    /**
+     * Get 'DdPcrProtocol2' records for the samples in the grouped data with a single query, grouped by OtherSampleId.
+     *
+     * @param groupedDataKeys
+     * @return Map of OtherSampleId to 'DdPcrProtocol2' records.
+     * @throws NotFound
+     * @throws IoError
+     * @throws RemoteException
+     * @throws ServerException
+     */
+    private Map<String, List<RecordFieldSnapshot>> getDdPcrProtocol2RecordsBySampleName(Set<String> groupedDataKeys) throws NotFound, IoError, RemoteException, ServerException {
+        Set<String> sampleNames = new LinkedHashSet<>();
+        for (String key : groupedDataKeys) {
+            sampleNames.add(key.split("/")[0]);
+        }
+        List<DataRecord> ddpcrprtcl2Recs = DataRecordQuery.from("DdPcrProtocol2").whereIn("OtherSampleId", sampleNames).execute(dataRecordManager, user);
+        logInfo(String.format("Found %d 'DdPcrProtocol2' records for %d samples.", ddpcrprtcl2Recs.size(), sampleNames.size()));
+        // the server compares OtherSampleId values ignoring case.
+        Map<String, List<RecordFieldSnapshot>> recordsBySampleName = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (RecordFieldSnapshot prtcl2Rec : fieldCache.prefetch(ddpcrprtcl2Recs)) {
+            String otherSampleId = prtcl2Rec.getStringVal("OtherSampleId");
+            if (otherSampleId != null) {
+                recordsBySampleName.computeIfAbsent(otherSampleId, k -> new ArrayList<>()).add(prtcl2Rec);
+            }
+        }
+        return recordsBySampleName;
+    }
+
     /**
      * Calculate final result values from the raw data.
      *
@@ -393,10 +426,10 @@ private final List<String> expectedQx600RawResultsHeaders = Arrays.asList("Well"
         // from protocol records read igo id
         List<String> igoIds = new LinkedList<>();
         try {
-            for (DataRecord ddpcrprtcl1 : protocolRecords) {
-                igoIds.add(getBaseSampleId(ddpcrprtcl1.getStringVal("SampleId", user)));
+            for (RecordFieldSnapshot ddpcrprtcl1 : fieldCache.prefetch(protocolRecords)) {
+                igoIds.add(getBaseSampleId(ddpcrprtcl1.getStringVal("SampleId")));
             }
-            String commaSeparatedIgoIds = String.join(", ", igoIds);
+            Map<String, List<RecordFieldSnapshot>> ddpcrprtcl2RecsBySampleName = getDdPcrProtocol2RecordsBySampleName(groupedData.keySet());
             for (String key : groupedData.keySet()) {
                 Map<String, Object> analyzedData = new HashMap<>();
                 String sampleName = key.split("/")[0];
@@ -408,15 +441,13 @@ private final List<String> expectedQx600RawResultsHeaders = Arrays.asList("Well"
                     logInfo("Skipping target = " + target);
                     continue;
                 }
-                String whereClause = "OtherSampleId = '" + sampleName + "'";
-                logInfo("whereClause: " + whereClause);
                 int reactionCount = 1;
-                List<DataRecord> ddpcrprtcl2Recs = dataRecordManager.queryDataRecords("DdPcrProtocol2", whereClause, user);
+                List<RecordFieldSnapshot> ddpcrprtcl2Recs = ddpcrprtcl2RecsBySampleName.getOrDefault(sampleName, Collections.emptyList());
                 if (ddpcrprtcl2Recs.size() > 0) {
-                    for (DataRecord prtcl2Rec : ddpcrprtcl2Recs) {
+                    for (RecordFieldSnapshot prtcl2Rec : ddpcrprtcl2Recs) {
                         for (String igoId : igoIds) {
-                            if (prtcl2Rec.getStringVal("SampleId", user).equals(igoId)) {
-                                reactionCount = prtcl2Rec.getIntegerVal("NumberOfReplicates", user);
+                            if (igoId.equals(prtcl2Rec.getStringVal("SampleId")) && prtcl2Rec.getValue("NumberOfReplicates") != null) {
+                                reactionCount = prtcl2Rec.getIntegerVal("NumberOfReplicates");
                             }
                         }
                     }
@@ -531,6 +562,7 @@ private final List<String> expectedQx600RawResultsHeaders = Arrays.asList("Well"
      */
     private void addResultsAsChildRecords(List<Map<String, Object>> analyzedDataValues, List<DataRecord> attachedSamples, boolean QX200) throws RemoteException, ServerException {
         List<DataRecord> recordsToAttachToTask = new ArrayList<>();
+        List<RecordFieldSnapshot> attachedSampleFields = fieldCache.prefetch(attachedSamples);
         logInfo(Integer.toString(analyzedDataValues.size()));
         logInfo("QX200 = " + QX200);
         for (Map<String, Object> data : analyzedDataValues) {
@@ -543,10 +575,11 @@ private final List<String> expectedQx600RawResultsHeaders = Arrays.asList("Well"
 //            else {
 //                analyzedDataSampleId = data.get("SampleId").toString();
 //            }
-            for (DataRecord sample : attachedSamples) {
+            for (RecordFieldSnapshot sampleFields : attachedSampleFields) {
+                DataRecord sample = sampleFields.getRecord();
                 try {
-                    Object sampleId = sample.getValue("SampleId", user);
-                    Object otherSampleId = sample.getValue("OtherSampleId", user);
+                    Object sampleId = sampleFields.getValue("SampleId");
+                    Object otherSampleId = sampleFields.getValue("OtherSampleId");
                     logInfo("analyzedDataSampleId = " + analyzedDataSampleId + " and sampleID = " + otherSampleId);
                     if (analyzedDataSampleId.equals(otherSampleId) && data.get("SampleId") == null) {
                         data.put("SampleId", sampleId);
@@ -563,8 +596,6 @@ private final List<String> expectedQx600RawResultsHeaders = Arrays.asList("Well"
 //                    }
                 } catch (RemoteException e) {
                     logError(String.format("RemoteException -> Error while setting child records on sample with recordid  '%d':\n%s", sample.getRecordId(), ExceptionUtils.getStackTrace(e)));
-                } catch (NotFound notFound) {
-                    logError(String.format("NotFound Exception -> Error while setting child records on sample with recordid  '%d':\n%s", sample.getRecordId(), ExceptionUtils.getStackTrace(notFound)));
                 } catch (ServerException e) {
                     logError(String.format("ServerException -> Error while setting child records on sample with recordid  '%d':\n%s", sample.getRecordId(), ExceptionUtils.getStackTrace(e)));
                 }
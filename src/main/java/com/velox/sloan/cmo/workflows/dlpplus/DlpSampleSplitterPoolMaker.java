@@ -6,11 +6,15 @@ import com.velox.api.plugin.PluginResult;
 import com.velox.api.util.ServerException;
 import com.velox.api.workflow.ActiveTask;
 import com.velox.sapio.commons.exemplar.plugin.PluginOrder;
-import com.velox.sapioutils.server.plugin.DefaultGenericPlugin;
 import com.velox.api.util.ServerException;
 import com.velox.sloan.cmo.recmodels.SampleModel;
 import com.velox.sloan.cmo.workflows.IgoLimsPluginUtils.AlphaNumericComparator;
+import com.velox.sloan.cmo.workflows.IgoLimsPluginUtils.ExcelReader;
+import com.velox.sloan.cmo.workflows.IgoLimsPluginUtils.ExcelRow;
 import com.velox.sloan.cmo.workflows.IgoLimsPluginUtils.IgoLimsPluginUtils;
+import com.velox.sloan.cmo.workflows.utils.ProfiledGenericPlugin;
+import com.velox.sloan.cmo.workflows.utils.SampleIdAllocator;
+import com.velox.sloan.cmo.workflows.utils.DataRecordQuery;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.apache.poi.hssf.usermodel.*;
@@ -38,7 +42,7 @@ import java.util.stream.Collectors;
  * Created by sharmaa1 on 7/23/19.
  * @author Fahimeh Mirhaj, updated: May 2023
  */
-public class DlpSampleSplitterPoolMaker extends DefaultGenericPlugin {
+public class DlpSampleSplitterPoolMaker extends ProfiledGenericPlugin {
 
     private final List<String> DLP_UPLOAD_SHEET_EXPECTED_HEADERS = Arrays.asList("Sample", "Row", "Column", "Img_Col", "File_Ch1", "File_Ch2", "Fld_Section", "Fld_Index", "Num_Live", "Num_Dead", "Num_Other",
             "Rev_Live", "Rev_Dead", "Rev_Other", "Rev_Class", "Condition", "Index_I7", "Primer_I7", "Index_I5", "Primer_I5", "Pick_Met", "Spot_Well", "Num_Drops");
@@ -56,6 +60,7 @@ public class DlpSampleSplitterPoolMaker extends DefaultGenericPlugin {
     String[] positiveContorlChoises = {"184hTERT", "rpe1htert"};
     Map<String, String> seqRunTypeByQuadrant = new HashMap<>();
     private String DLP_SMARTCHIP_PATH = "/rtssdc/mohibullahlab/LIMS/DLP/SmartchipSheet/SmartChipResults_master_template.xls";
+    private SampleIdAllocator sampleIdAllocator;
 
     public DlpSampleSplitterPoolMaker() {
         setTaskEntry(true);
@@ -68,7 +73,9 @@ public class DlpSampleSplitterPoolMaker extends DefaultGenericPlugin {
                 && !activeTask.getTask().getTaskOptions().containsKey("_DLP SPOTTING FILE PARSED");
     }
 
-    public PluginResult run() throws ServerException, RemoteException {
+    @Override
+    protected PluginResult runProfiled() throws ServerException, RemoteException {
+        sampleIdAllocator = new SampleIdAllocator(dataRecordManager, user);
         try {
             String DLPSmartChipFile = "";
             List<DataRecord> samplesAttachedToTask = activeTask.getAttachedDataRecords("Sample", user);
@@ -106,8 +113,8 @@ public class DlpSampleSplitterPoolMaker extends DefaultGenericPlugin {
             // case for multiple sample on one chip
             if (multipleSamplesOnOneChip) {
                 byte[] excelFileData = fillOutSmartChipSheetForMultiSamples(samplesAttachedToTask, file, flddata);
-                List<Row> rowData = utils.getExcelSheetDataRows(excelFileData);
-                if (!fileHasData(rowData, DLPSmartChipFile) || !hasValidHeader(rowData, DLP_UPLOAD_SHEET_EXPECTED_HEADERS, DLPSmartChipFile)) {
+                ExcelReader excelReader = new ExcelReader(excelFileData);
+                if (!fileHasData(excelReader, DLPSmartChipFile) || !hasValidHeader(excelReader, DLP_UPLOAD_SHEET_EXPECTED_HEADERS, DLPSmartChipFile)) {
                     return new PluginResult(false);
                 }
                 // add reminder to ask user to check SmartChip file
@@ -117,8 +124,8 @@ public class DlpSampleSplitterPoolMaker extends DefaultGenericPlugin {
                     return new PluginResult(false);
                 }
                 clientCallback.displayInfo("This process Will take some time. Please be patient.");
-                HashMap<String, Integer> headerValuesMap = utils.getHeaderValuesMapFromExcelRowData(rowData);
-                Map<String, List<Row>> rowsSeparatedBySampleMap = getRowsBySample(samplesAttachedToTask, rowData, headerValuesMap);
+                HashMap<String, Integer> headerValuesMap = new HashMap<>(excelReader.getHeaderValueMap());
+                Map<String, List<ExcelRow>> rowsSeparatedBySampleMap = getRowsBySample(samplesAttachedToTask, excelReader, headerValuesMap);
 
                 // TODO: to remove
                 if (rowsSeparatedBySampleMap.isEmpty()) {
@@ -150,9 +157,9 @@ public class DlpSampleSplitterPoolMaker extends DefaultGenericPlugin {
                 }
                 byte[] excelFileData = fillOutSmartChipSheet(sample, file, controlExperiment, positiveControlLoc, negativeControlLoc, flddata);
                 logInfo("After exiting the fillOutSmartChipSheet function");
-                List<Row> rowData = utils.getExcelSheetDataRows(excelFileData);
+                ExcelReader excelReader = new ExcelReader(excelFileData);
 
-                if (!fileHasData(rowData, DLPSmartChipFile) || !hasValidHeader(rowData, DLP_UPLOAD_SHEET_EXPECTED_HEADERS, DLPSmartChipFile)) {
+                if (!fileHasData(excelReader, DLPSmartChipFile) || !hasValidHeader(excelReader, DLP_UPLOAD_SHEET_EXPECTED_HEADERS, DLPSmartChipFile)) {
                     return new PluginResult(false);
                 }
                 // add reminder to ask user to check SmartChip file
@@ -163,9 +170,9 @@ public class DlpSampleSplitterPoolMaker extends DefaultGenericPlugin {
                 }
 
                 clientCallback.displayInfo("This process Will take some time. Please be patient.");
-                HashMap<String, Integer> headerValuesMap = utils.getHeaderValuesMapFromExcelRowData(rowData);
+                HashMap<String, Integer> headerValuesMap = new HashMap<>(excelReader.getHeaderValueMap());
 
-                Map<String, List<Row>> rowsSeparatedBySampleMap = getRowsBySample(samplesAttachedToTask, rowData, headerValuesMap);
+                Map<String, List<ExcelRow>> rowsSeparatedBySampleMap = getRowsBySample(samplesAttachedToTask, excelReader, headerValuesMap);
 
                 // TODO: to remove
                 if (rowsSeparatedBySampleMap.isEmpty()) {
@@ -208,6 +215,8 @@ public class DlpSampleSplitterPoolMaker extends DefaultGenericPlugin {
             clientCallback.displayError(errMsg);
             logError(errMsg);
             return new PluginResult(false);
+        } finally {
+            sampleIdAllocator.close();
         }
         return new PluginResult(true);
     }
@@ -233,13 +242,13 @@ public class DlpSampleSplitterPoolMaker extends DefaultGenericPlugin {
     /**
      * Method to validate file has data.
      *
-     * @param fileData
+     * @param excelReader
      * @param fileName
      * @return boolean true/false
      * @throws ServerException
      */
-    private boolean fileHasData(List<Row> fileData, String fileName) throws ServerException, RemoteException {
-        boolean hasData = utils.excelFileHasData(fileData);
+    private boolean fileHasData(ExcelReader excelReader, String fileName) throws ServerException, IOException, InvalidFormatException {
+        boolean hasData = utils.excelFileHasData(excelReader);
         if (!hasData) {
             clientCallback.displayError(String.format("Uploaded file '%s' is Empty", fileName));
             logError(String.format("Uploaded file '%s' is Empty", fileName));
@@ -252,14 +261,14 @@ public class DlpSampleSplitterPoolMaker extends DefaultGenericPlugin {
     /**
      * Method to validate file has valid header values.
      *
-     * @param dataRows
+     * @param excelReader
      * @param expectedHeaderValues
      * @param fileName
      * @return boolean true/false
      * @throws ServerException
      */
-    private boolean hasValidHeader(List<Row> dataRows, List<String> expectedHeaderValues, String fileName) throws ServerException, RemoteException {
-        boolean isValidHeader = utils.excelFileHasValidHeader(dataRows, expectedHeaderValues);
+    private boolean hasValidHeader(ExcelReader excelReader, List<String> expectedHeaderValues, String fileName) throws ServerException, IOException, InvalidFormatException {
+        boolean isValidHeader = utils.excelFileHasValidHeader(excelReader, expectedHeaderValues);
         if (!isValidHeader) {
             clientCallback.displayError(String.format("Uploaded file '%s' does not have a valid header. Valid file Headers are\n'%s'", fileName, utils.convertListToString(expectedHeaderValues)));
             logError(String.format("Uploaded file '%s' does not have a valid header.Valid file Headers are\n'%s'", fileName, utils.convertListToString(expectedHeaderValues)));
@@ -287,11 +296,11 @@ public class DlpSampleSplitterPoolMaker extends DefaultGenericPlugin {
      * @param headerValuesMap
      * @return
      */
-    private boolean chipHasOneliveCell(Row row, HashMap<String, Integer> headerValuesMap) {
-        Integer num_live = Integer.parseInt(row.getCell(headerValuesMap.get("Num_Live")).toString().split("\\.")[0]);
-        Integer num_dead = Integer.parseInt(row.getCell(headerValuesMap.get("Num_Dead")).toString().split("\\.")[0]);
-        Integer rev_live = Integer.parseInt(row.getCell(headerValuesMap.get("Rev_Live")).toString().split("\\.")[0]);
-        Integer rev_dead = Integer.parseInt(row.getCell(headerValuesMap.get("Rev_Dead")).toString().split("\\.")[0]);
+    private boolean chipHasOneliveCell(ExcelRow row, HashMap<String, Integer> headerValuesMap) {
+        Integer num_live = Integer.parseInt(row.getString(headerValuesMap.get("Num_Live")).split("\\.")[0]);
+        Integer num_dead = Integer.parseInt(row.getString(headerValuesMap.get("Num_Dead")).split("\\.")[0]);
+        Integer rev_live = Integer.parseInt(row.getString(headerValuesMap.get("Rev_Live")).split("\\.")[0]);
+        Integer rev_dead = Integer.parseInt(row.getString(headerValuesMap.get("Rev_Dead")).split("\\.")[0]);
         return (num_live == 1.0 && num_dead <= 0.0 && rev_dead <= 0.0 && rev_live <= 0.0) // must have only one live cell
                 || (rev_live == 1.0 && num_dead <= 0.0 && rev_dead <= 0.0 && num_live <= 0.0); // OR must have only one revised live cell
     }
@@ -303,11 +312,11 @@ public class DlpSampleSplitterPoolMaker extends DefaultGenericPlugin {
      * @param headerValuesMap
      * @return
      */
-    private boolean chipSpotHasOneDeadCell(Row row, HashMap<String, Integer> headerValuesMap) {
-        Integer num_live = Integer.parseInt(row.getCell(headerValuesMap.get("Num_Live")).toString().split("\\.")[0]);
-        Integer num_dead = Integer.parseInt(row.getCell(headerValuesMap.get("Num_Dead")).toString().split("\\.")[0]);
-        Integer rev_live = Integer.parseInt(row.getCell(headerValuesMap.get("Rev_Live")).toString().split("\\.")[0]);
-        Integer rev_dead = Integer.parseInt(row.getCell(headerValuesMap.get("Rev_Dead")).toString().split("\\.")[0]);
+    private boolean chipSpotHasOneDeadCell(ExcelRow row, HashMap<String, Integer> headerValuesMap) {
+        Integer num_live = Integer.parseInt(row.getString(headerValuesMap.get("Num_Live")).split("\\.")[0]);
+        Integer num_dead = Integer.parseInt(row.getString(headerValuesMap.get("Num_Dead")).split("\\.")[0]);
+        Integer rev_live = Integer.parseInt(row.getString(headerValuesMap.get("Rev_Live")).split("\\.")[0]);
+        Integer rev_dead = Integer.parseInt(row.getString(headerValuesMap.get("Rev_Dead")).split("\\.")[0]);
         return (num_dead == 1.0 && rev_dead <= 0.0 && rev_live <= 0.0 && num_live <= 0.0) // must have only one dead cell
                 || (rev_dead == 1.0 && num_dead <= 0.0 && num_live <= 0.0 && rev_live <= 0.0); // OR there can only be one revised dead cell
     }
@@ -320,7 +329,7 @@ public class DlpSampleSplitterPoolMaker extends DefaultGenericPlugin {
      * @param cellTypeToProcess
      * @return
      */
-    private boolean isValidCellTypeToProcess(Row row, HashMap<String, Integer> headerValuesMap, String cellTypeToProcess) {
+    private boolean isValidCellTypeToProcess(ExcelRow row, HashMap<String, Integer> headerValuesMap, String cellTypeToProcess) {
         switch (cellTypeToProcess) {
             case "Live":
                 return chipHasOneliveCell(row, headerValuesMap);
@@ -364,25 +373,25 @@ public class DlpSampleSplitterPoolMaker extends DefaultGenericPlugin {
      * The first thing in the method to do is to divide
      *
      * @param samples
-     * @param rows
+     * @param excelReader
      * @param headerValuesMap
      * @return HashMap with sample as Key and List of samples as Key Value
      * @throws NotFound
      * @throws RemoteException
      */
-    private Map<String, List<Row>> getRowsBySample(List<DataRecord> samples, List<Row> rows, HashMap<String, Integer> headerValuesMap) throws NotFound, RemoteException {
-        Map<String, List<Row>> rowDataSeparatedBySampleMap = new HashMap<>();
+    Map<String, List<ExcelRow>> getRowsBySample(List<DataRecord> samples, ExcelReader excelReader, HashMap<String, Integer> headerValuesMap) throws NotFound, IOException, InvalidFormatException {
+        Map<String, List<ExcelRow>> rowDataSeparatedBySampleMap = new HashMap<>();
         for (DataRecord sample : samples) {
             String sampleId = sample.getStringVal("SampleId", user);
             rowDataSeparatedBySampleMap.putIfAbsent(sampleId, new ArrayList<>());
         }
-        for (int i = 1; i < rows.size(); i++) {
-            rows.get(i).getCell(headerValuesMap.get("Sample")).setCellType(CellType.STRING);
-            String sampleId = rows.get(i).getCell(headerValuesMap.get("Sample")).getStringCellValue();
-            if (rowDataSeparatedBySampleMap.containsKey(sampleId)) {
-                rowDataSeparatedBySampleMap.get(sampleId).add(rows.get(i));
+        // only the rows of samples attached to the task are kept
+        excelReader.read(row -> {
+            List<ExcelRow> sampleRows = rowDataSeparatedBySampleMap.get(row.getText(headerValuesMap.get("Sample")));
+            if (sampleRows != null) {
+                sampleRows.add(row.copy());
             }
-        }
+        });
         return rowDataSeparatedBySampleMap;
     }
 
@@ -419,7 +428,7 @@ public class DlpSampleSplitterPoolMaker extends DefaultGenericPlugin {
      * @throws ServerException
      */
     private DataRecord addIndexBarcodeRecordAsChild(DataRecord sample, String barcodeId) throws IoError, RemoteException, NotFound, ServerException {
-        List<DataRecord> indexAssignments = dataRecordManager.queryDataRecords("IndexAssignment", "IndexId = '" + barcodeId + "'", user);
+        List<DataRecord> indexAssignments = DataRecordQuery.from("IndexAssignment").whereEquals("IndexId", barcodeId).execute(dataRecordManager, user);
         Map<String, Object> assignedIndexRecordValues = new HashMap<>();
         assignedIndexRecordValues.put("SampleId", sample.getStringVal("SampleId", user));
         assignedIndexRecordValues.put("OtherSampleId", sample.getStringVal("OtherSampleId", user));
@@ -525,7 +534,10 @@ public class DlpSampleSplitterPoolMaker extends DefaultGenericPlugin {
      * @throws NotFound
      */
     private String getMostRecentDLPControl(String controlTypeIdentifier) throws IoError, RemoteException, NotFound, ServerException {
-        List<DataRecord> controlSampleRecords = dataRecordManager.queryDataRecords("Sample", "IsControl = 1 AND SampleId LIKE '" + controlTypeIdentifier + "%'", user);
+        List<DataRecord> controlSampleRecords = DataRecordQuery.from("Sample")
+                .whereEquals("IsControl", true)
+                .whereLike("SampleId", controlTypeIdentifier + "%")
+                .execute(dataRecordManager, user);
         logInfo("ControlSamples Size: " + controlSampleRecords.size());
         List<String> controlSampleIds = new ArrayList<>();
         for (DataRecord record : controlSampleRecords) {
@@ -624,24 +636,24 @@ public class DlpSampleSplitterPoolMaker extends DefaultGenericPlugin {
     }
 
     /**
-     * Get the next Sample ID that we can use to start creating aliquot ID's. If the sample is being reporcessed, Some aliquot Sample ID's may already exist, and we need to find next aliquot sample ID.
+     * Get the next Sample ID that we can use to start creating aliquot ID's for each of the samples, with a single query. If a sample is being reporcessed, Some aliquot Sample ID's may already exist, and we need to find next aliquot sample ID.
+     * The returned ID's are reserved for this run, including the aliquot ID's created under them.
      *
-     * @param sampleId
-     * @return
+     * @param samples
+     * @return Map of SampleId to next Sample ID
      * @throws IoError
      * @throws RemoteException
      * @throws NotFound
      */
-    private String getNextSampleId(String sampleId) throws IoError, RemoteException, NotFound, ServerException {
-        int counter = 1;
-        String nextSampleId = sampleId + "_" + counter; //this SampleId can already exist if sample is being reprocessed for DLP. We check that in next if block
-        // if poolid exists, extend it with a number and increment the number until we have a pool id that doesn't exist in the LIMS.
-        while (dataRecordManager.queryDataRecords("Sample", "SampleId = '" + nextSampleId + "'", user).size() > 0) {
-            counter += 1;
-            nextSampleId = sampleId + "_" + counter;
+    private Map<String, String> getNextSampleIds(List<DataRecord> samples) throws IoError, RemoteException, NotFound, ServerException {
+        List<String> sampleIds = new ArrayList<>();
+        for (DataRecord sample : samples) {
+            sampleIds.add(sample.getStringVal("SampleId", user));
         }
-        logInfo("Next Sample ID : " + nextSampleId);
-        return nextSampleId;
+        //sampleId_1 and its aliquots can already exist if sample is being reprocessed for DLP, the allocator then moves on to sampleId_2 etc.
+        Map<String, String> nextSampleIds = sampleIdAllocator.getNextSampleIds(sampleIds, false);
+        logInfo("Next Sample IDs : " + nextSampleIds);
+        return nextSampleIds;
     }
 
     /**
@@ -664,7 +676,7 @@ public class DlpSampleSplitterPoolMaker extends DefaultGenericPlugin {
      * @throws ServerException
      * @throws AlreadyExists
      */
-    private Map<String, List<DataRecord>> createDlpSamplesAndProtocolRecords(Map<String, List<Row>> rowsSeparatedBySampleMap, HashMap<String, Integer> headerValuesMap, List<DataRecord> samples, String cellTypeToProcess) throws NotFound, RemoteException, IoError, InvalidValue, ServerException, AlreadyExists {
+    private Map<String, List<DataRecord>> createDlpSamplesAndProtocolRecords(Map<String, List<ExcelRow>> rowsSeparatedBySampleMap, HashMap<String, Integer> headerValuesMap, List<DataRecord> samples, String cellTypeToProcess) throws NotFound, RemoteException, IoError, InvalidValue, ServerException, AlreadyExists {
         Map<String, List<DataRecord>> newlyCreatedChildSamplesByQuadrant = new HashMap<>();
         int negativeControlIncrement = getIncrementingNumberOnControl(getMostRecentDLPControl("DLPNegativeCONTROL"));
         int salControlIncrement = getIncrementingNumberOnControl(getMostRecentDLPControl("DLPSalCONTROL"));
@@ -672,18 +684,19 @@ public class DlpSampleSplitterPoolMaker extends DefaultGenericPlugin {
         int cellControlIncrement = getIncrementingNumberOnControl(getMostRecentDLPControl("DLPcellCONTROL"));
         int noCellControlIncrement = getIncrementingNumberOnControl(getMostRecentDLPControl("DLPNoCellCONTROL"));
         recipe = samples.get(0).getStringVal("Recipe", user);
+        Map<String, String> nextAliquotSampleIds = getNextSampleIds(samples);
         for (DataRecord sample : samples) {
             String sampleId = sample.getStringVal("SampleId", user);
             String otherSampleId = sample.getStringVal("OtherSampleId", user);
             String altId = sample.getStringVal("AltId", user);
             String sequencingRunType = getSequencingRunType(sample);
-            List<Row> sampleDataRows = rowsSeparatedBySampleMap.get(sampleId);
-            String nextAliquotSampleId = getNextSampleId(sampleId); // This will provide the next sample ID that we can use to start creating aliquot ID's. If the sample is being reporcessed, the aliquot ID's may exist, and we need to find next aliquot sample ID.
+            List<ExcelRow> sampleDataRows = rowsSeparatedBySampleMap.get(sampleId);
+            String nextAliquotSampleId = nextAliquotSampleIds.get(sampleId); // This will provide the next sample ID that we can use to start creating aliquot ID's. If the sample is being reporcessed, the aliquot ID's may exist, and we need to find next aliquot sample ID.
             int aliquotIncrementValue = 1;
-            for (Row row : sampleDataRows) {
-                String chipRow = row.getCell(headerValuesMap.get("Row")).toString();
-                String chipColumn = row.getCell(headerValuesMap.get("Column")).toString();
-                String condition = row.getCell(headerValuesMap.get("Condition")).toString();
+            for (ExcelRow row : sampleDataRows) {
+                String chipRow = row.getString(headerValuesMap.get("Row"));
+                String chipColumn = row.getString(headerValuesMap.get("Column"));
+                String condition = row.getString(headerValuesMap.get("Condition"));
                 if (isValidChipSpotToProcess(chipRow, chipColumn) && isValidCellTypeToProcess(row, headerValuesMap, cellTypeToProcess)) {
                     String newSampleId;
                     String newOtherSampleId;
@@ -716,17 +729,17 @@ public class DlpSampleSplitterPoolMaker extends DefaultGenericPlugin {
                     dlpRecordValues.put("AltId", altId);
                     dlpRecordValues.put("ChipRow", chipRow);
                     dlpRecordValues.put("ChipColumn", chipColumn);
-                    dlpRecordValues.put("ImageColumn", row.getCell(headerValuesMap.get("Img_Col")).toString());
-                    dlpRecordValues.put("ImageFileChannel1", row.getCell(headerValuesMap.get("File_Ch1")).toString());
-                    dlpRecordValues.put("ImageFileChannel2", row.getCell(headerValuesMap.get("File_Ch2")).toString());
-                    dlpRecordValues.put("PrimerIDi5", row.getCell(headerValuesMap.get("Index_I5")).toString());
-                    dlpRecordValues.put("PrimerSequencei5", row.getCell(headerValuesMap.get("Primer_I5")).toString());
-                    dlpRecordValues.put("PrimerIDi7", row.getCell(headerValuesMap.get("Index_I7")).toString());
-                    dlpRecordValues.put("PrimerSequencei7", row.getCell(headerValuesMap.get("Primer_I7")).toString());
-                    dlpRecordValues.put("NumberLiveCells", row.getCell(headerValuesMap.get("Num_Live")).toString());
-                    dlpRecordValues.put("RevisedLiveCells", row.getCell(headerValuesMap.get("Rev_Live")).toString());
-                    dlpRecordValues.put("NumberDeadCells", row.getCell(headerValuesMap.get("Num_Dead")));
-                    dlpRecordValues.put("RevisedDeadCells", row.getCell(headerValuesMap.get("Rev_Dead")));
+                    dlpRecordValues.put("ImageColumn", row.getString(headerValuesMap.get("Img_Col")));
+                    dlpRecordValues.put("ImageFileChannel1", row.getString(headerValuesMap.get("File_Ch1")));
+                    dlpRecordValues.put("ImageFileChannel2", row.getString(headerValuesMap.get("File_Ch2")));
+                    dlpRecordValues.put("PrimerIDi5", row.getString(headerValuesMap.get("Index_I5")));
+                    dlpRecordValues.put("PrimerSequencei5", row.getString(headerValuesMap.get("Primer_I5")));
+                    dlpRecordValues.put("PrimerIDi7", row.getString(headerValuesMap.get("Index_I7")));
+                    dlpRecordValues.put("PrimerSequencei7", row.getString(headerValuesMap.get("Primer_I7")));
+                    dlpRecordValues.put("NumberLiveCells", row.getString(headerValuesMap.get("Num_Live")));
+                    dlpRecordValues.put("RevisedLiveCells", row.getString(headerValuesMap.get("Rev_Live")));
+                    dlpRecordValues.put("NumberDeadCells", row.getString(headerValuesMap.get("Num_Dead")));
+                    dlpRecordValues.put("RevisedDeadCells", row.getString(headerValuesMap.get("Rev_Dead")));
                     String quadrant = getQuandrant(chipRow, chipColumn);
                     addSeqRunTypeToMap(sequencingRunType, seqRunTypeByQuadrant, quadrant);
                     dlpRecordValues.put("Quadrant", quadrant);
@@ -753,9 +766,10 @@ public class DlpSampleSplitterPoolMaker extends DefaultGenericPlugin {
 
 
     private Object getDlpRequestedReads(Object recipe) throws IoError, RemoteException, NotFound , ServerException {
-        String queryClause = String.format("PlatformApplication = '%s' AND ReferenceOnly != 1", recipe);
-        List<DataRecord> coverageReqRefs = dataRecordManager.queryDataRecords("ApplicationReadCoverageRef",
-                queryClause, user);
+        List<DataRecord> coverageReqRefs = DataRecordQuery.from("ApplicationReadCoverageRef")
+                .whereEquals("PlatformApplication", recipe)
+                .whereNotEquals("ReferenceOnly", 1)
+                .execute(dataRecordManager, user);
         if (coverageReqRefs.isEmpty()){
             String message = String.format("Could not fetch 'ApplicationReadCoverageRef' for recipe '%s'. Please make " +
                     "that the recipe exists with valid reads values in 'ApplicationReadCoverageRef' table", recipe);
@@ -788,29 +802,27 @@ public class DlpSampleSplitterPoolMaker extends DefaultGenericPlugin {
 
 
     /**
-     * Get Pool ID.
+     * Get Pool ID's for the quadrants, with a single query.
      *
-     * @param requestId
-     * @param quadrant
-     * @return
+     * @param requestIdsByQuadrant
+     * @return Map of quadrant to Pool ID
      * @throws IoError
      * @throws RemoteException
      * @throws NotFound
      */
-    private String getPoolId(String requestId, String quadrant) throws IoError, RemoteException, NotFound, ServerException {
-        String poolId = "Pool-" + requestId + "-Tube" + quadrant; //this pool  ID can already exist if samples from same request were processed before. We check that in next if block
-        if (dataRecordManager.queryDataRecords("Sample", "SampleId = '" + poolId + "'", user).isEmpty()) {
-            logInfo("Pool ID : " + poolId);
-            return poolId;
+    private Map<String, String> getPoolIds(Map<String, String> requestIdsByQuadrant) throws IoError, RemoteException, NotFound, ServerException {
+        Map<String, String> basePoolIds = new HashMap<>();
+        for (Map.Entry<String, String> requestIds : requestIdsByQuadrant.entrySet()) {
+            basePoolIds.put(requestIds.getKey(), "Pool-" + requestIds.getValue() + "-Tube" + requestIds.getKey()); //this pool  ID can already exist if samples from same request were processed before.
         }
-        int counter = 1;
-        String extendedPoolId = poolId + "_" + counter; // if poolid exists, extend it with a number and increment the number until we have a pool id that doesn't exist in the LIMS.
-        while (dataRecordManager.queryDataRecords("Sample", "SampleId = '" + extendedPoolId + "'", user).size() > 0) {
-            counter += 1;
-            extendedPoolId = poolId + "_" + counter;
+        // if poolid exists, the allocator extends it with a number that is not used by a pool in the LIMS.
+        Map<String, String> nextPoolIds = sampleIdAllocator.getNextSampleIds(basePoolIds.values(), true);
+        Map<String, String> poolIds = new HashMap<>();
+        for (Map.Entry<String, String> basePoolId : basePoolIds.entrySet()) {
+            poolIds.put(basePoolId.getKey(), nextPoolIds.get(basePoolId.getValue()));
         }
-        logInfo("PoolId: " + extendedPoolId);
-        return extendedPoolId;
+        logInfo("PoolIds: " + poolIds);
+        return poolIds;
     }
 
     /**
@@ -827,14 +839,20 @@ public class DlpSampleSplitterPoolMaker extends DefaultGenericPlugin {
      */
     private void createPools(Map<String, List<DataRecord>> newlyCreatedChildSamplesByQuadrant, Double requestedReadsPerSample) throws NotFound, RemoteException, IoError, AlreadyExists, ServerException {
         List<DataRecord> pooledSampleRecords = new ArrayList<>();
+        Map<String, String> requestIdsByQuadrant = new HashMap<>();
+        for (Map.Entry<String, List<DataRecord>> entry : newlyCreatedChildSamplesByQuadrant.entrySet()) {
+            String requestIds = getRequestIdsAsString(entry.getValue(), entry.getKey());
+            logInfo("requestIds: " + requestIds);
+            requestIdsByQuadrant.put(entry.getKey(), requestIds);
+        }
+        Map<String, String> poolIds = getPoolIds(requestIdsByQuadrant);
         for (Map.Entry entry : newlyCreatedChildSamplesByQuadrant.entrySet()) {
             String quadrant = (String) entry.getKey();
             List<Map<String, Object>> newPoolRecordvalues = new ArrayList<>();
             List<DataRecord> samples = newlyCreatedChildSamplesByQuadrant.get(entry.getKey());
-            String requestIds = getRequestIdsAsString(samples, quadrant);
-            logInfo("requestIds: " + requestIds);
+            String requestIds = requestIdsByQuadrant.get(quadrant);
             Map<String, Object> pooledSampleValues = new HashMap<>();
-            String poolId = getPoolId(requestIds, quadrant);
+            String poolId = poolIds.get(quadrant);
             String otherSampleId = poolId + "_" + chipId;
             pooledSampleValues.put("SampleId", poolId);
             pooledSampleValues.put("OtherSampleId", otherSampleId);
@@ -849,7 +867,7 @@ public class DlpSampleSplitterPoolMaker extends DefaultGenericPlugin {
                 sample.addChild(pooledSample, user);
             }
             dataRecordManager.storeAndCommit("Adding pool Info for DLP sample " + poolId, null, user);
-            DataRecord seqReq = dataRecordManager.queryDataRecords("SeqRequirementPooled", "SampleId = '" + poolId + "'", user).get(0);
+            DataRecord seqReq = DataRecordQuery.from("SeqRequirementPooled").whereEquals("SampleId", poolId).execute(dataRecordManager, user).get(0);
             seqReq.setFields(getSeqRequirementPooledValues(poolId, otherSampleId, samples.size(), quadrant, requestedReadsPerSample), user);
             pooledSampleRecords.add(pooledSample);
         }
@@ -1007,7 +1025,7 @@ public class DlpSampleSplitterPoolMaker extends DefaultGenericPlugin {
         HashMap<String, Object> fldfile = new HashMap<>();
         try {
             logInfo("Looking for file which contains chipNumber: " + chipNumber);
-            List<DataRecord> matched = dataRecordManager.queryDataRecords("Attachment", "FILEPATH LIKE '%" + chipNumber + "%.fld'", user);
+            List<DataRecord> matched = DataRecordQuery.from("Attachment").whereLike("FILEPATH", "%" + chipNumber + "%.fld").execute(dataRecordManager, user);
             if (matched == null || matched.size() == 0) {
                 clientCallback.displayWarning("No DLP field file found with chip number: " + chipNumber);
                 return null;
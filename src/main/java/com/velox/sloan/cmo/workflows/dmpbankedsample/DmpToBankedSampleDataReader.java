@@ -3,21 +3,18 @@ package com.velox.sloan.cmo.workflows.dmpbankedsample;
 import com.velox.api.plugin.PluginLogger;
 import com.velox.api.util.ClientCallbackOperations;
 import com.velox.api.util.ServerException;
+import com.velox.sloan.cmo.workflows.IgoLimsPluginUtils.ExcelReader;
 import com.velox.sloan.cmo.workflows.Test;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
-import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
 import org.apache.commons.codec.binary.Base64;
-import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
 import javax.net.ssl.*;
 import java.io.*;
-import java.net.HttpURLConnection;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.security.cert.CertificateException;
@@ -27,47 +24,38 @@ import java.security.cert.X509Certificate;
 
 
 public class DmpToBankedSampleDataReader {
+    private OncoTreeResolver oncoTreeResolver = OncoTreeResolver.getInstance();
 
-    public boolean excelFileHasData(Sheet sheet) throws ServerException {
-        return sheet.getLastRowNum() >= 1;
+    public boolean excelFileHasData(ExcelReader excelReader) throws IOException, InvalidFormatException {
+        return excelReader.hasDataRows();
     }
 
     //    check excel against min. required headers
-    public boolean excelFileHasValidHeader(Sheet sheet, ArrayList<String> expectedHeaderValues) {
-        Row row = sheet.getRow(0);
-        ArrayList<String> headerValuesInFile = new ArrayList<>();
-        for (String value : expectedHeaderValues) {
-            for (Cell cell : row) {
-                if (value.equals(cell.getStringCellValue())) {
-                    headerValuesInFile.add(cell.getStringCellValue());
-                }
-            }
-        }
-        return headerValuesInFile.containsAll(expectedHeaderValues);
+    public boolean excelFileHasValidHeader(ExcelReader excelReader, ArrayList<String> expectedHeaderValues) throws IOException, InvalidFormatException {
+        return excelReader.getHeaderValueMap().keySet().containsAll(expectedHeaderValues);
     }
 
-    public Map<String, Integer> parseExcelFileHeader(Sheet sheet) {
-        Map<String, Integer> headerNames = new HashMap<>();
-        Row headerRow = sheet.getRow(0);
-        for (Cell cell : headerRow) {
-            headerNames.put(cell.getStringCellValue(), cell.getColumnIndex());
-        }
-        return headerNames;
+    public Map<String, Integer> parseExcelFileHeader(ExcelReader excelReader) throws IOException, InvalidFormatException {
+        return excelReader.getHeaderValueMap();
     }
 
-    public ArrayList<Map<String, Object>> readDmpBankedSampleRecordsFromFile(Sheet sheet, Map<String, Integer> fileHeader, String iLabsId, String username, Map<String, String>dualIdtIndices, ClientCallbackOperations clientCallback) throws IOException, ServerException {
+    public ArrayList<Map<String, Object>> readDmpBankedSampleRecordsFromFile(ExcelReader excelReader, Map<String, Integer> fileHeader, String iLabsId, String username, Map<String, String>dualIdtIndices, ClientCallbackOperations clientCallback) throws IOException, InvalidFormatException, ServerException {
         ArrayList<Map<String, Object>> dmpBankedSampleRecords = new ArrayList<>();
-        int firstRowAfterHeaderRowWithData = 1;
         // every banked sample needs a transaction id
         long transactionId = Instant.now().toEpochMilli() / 1000L;
-
-        for (int rowNum = firstRowAfterHeaderRowWithData; rowNum < sheet.getPhysicalNumberOfRows(); rowNum++) {
+        // OncoTree and CRDB lookups and error messages are done after the rows are read, so the sheet is read once.
+        // tumor types and patient ids are kept in row order.
+        List<String> tumorTypes = new ArrayList<>();
+        List<String> sampleClasses = new ArrayList<>();
+        List<String> patientIds = new ArrayList<>();
+        List<String> missingDualSequences = new ArrayList<>();
+
+        excelReader.read(row -> {
             Map<String, Object> newDmpSampleRecord = new HashMap<>();
-            Row row = sheet.getRow(rowNum);
 
             // skip rows without well positions
-            if (row.getCell(fileHeader.get("Well Position")).getStringCellValue().equals("")) {
-                continue;
+            if (row.getString(fileHeader.get("Well Position")).equals("")) {
+                return;
             }
 
             // fields required in Banked but not present in DMP excel. DMP only deals with Humans
@@ -78,45 +66,37 @@ public class DmpToBankedSampleDataReader {
             newDmpSampleRecord.put("Investigator", username);
 
             // straightforward fields
-            newDmpSampleRecord.put("PlateId", row.getCell(fileHeader.get("Barcode/Plate ID")).getStringCellValue());
-            newDmpSampleRecord.put("UserSampleID", row.getCell(fileHeader.get("Investigator Sample ID")).getStringCellValue());
-            newDmpSampleRecord.put("OtherSampleId", row.getCell(fileHeader.get("Investigator Sample ID")).getStringCellValue());
+            newDmpSampleRecord.put("PlateId", row.getString(fileHeader.get("Barcode/Plate ID")));
+            newDmpSampleRecord.put("UserSampleID", row.getString(fileHeader.get("Investigator Sample ID")));
+            newDmpSampleRecord.put("OtherSampleId", row.getString(fileHeader.get("Investigator Sample ID")));
             // these two will not be returned from DMP
             // PM's will put recipe in when the Sample Submission grid is pre-filled with the DMP data
-            newDmpSampleRecord.put("Recipe", row.getCell(fileHeader.get("Recipe")).getStringCellValue());
+            newDmpSampleRecord.put("Recipe", row.getString(fileHeader.get("Recipe")));
             // PM's will put serviceId in when the Sample Submission grid is pre-filled with the DMP data, currently the LIMS shows a prompt for them to enter on excel upload
             newDmpSampleRecord.put("ServiceId", iLabsId);
 
             // optional fields
             if (optionalExists("Collection Year", fileHeader)) {
-                newDmpSampleRecord.put("CollectionYear", row.getCell(fileHeader.get("Collection Year")).getStringCellValue());
+                newDmpSampleRecord.put("CollectionYear", row.getString(fileHeader.get("Collection Year")));
             }
             if (optionalExists("Sex", fileHeader)) {
-                newDmpSampleRecord.put("Gender", row.getCell(fileHeader.get("Sex")).getStringCellValue());
+                newDmpSampleRecord.put("Gender", row.getString(fileHeader.get("Sex")));
             }
 
 
             // might be string or numeric
-            try {
-                newDmpSampleRecord.put("Volume", row.getCell(fileHeader.get("Volume (ul)")).getNumericCellValue());
-            } catch (IllegalStateException e) {
-                newDmpSampleRecord.put("Volume", row.getCell(fileHeader.get("Volume (ul)")).getStringCellValue());
-            }
+            newDmpSampleRecord.put("Volume", row.getNumericOrString(fileHeader.get("Volume (ul)")));
             // might be string or numeric
-            try {
-                newDmpSampleRecord.put("Concentration", row.getCell(fileHeader.get("Concentration (ng/ul)")).getNumericCellValue());
-            } catch (IllegalStateException e) {
-                newDmpSampleRecord.put("Concentration", row.getCell(fileHeader.get("Concentration (ng/ul)")).getStringCellValue());
-            }
+            newDmpSampleRecord.put("Concentration", row.getNumericOrString(fileHeader.get("Concentration (ng/ul)")));
 
 
             // fields with needed translationlogic
-            String wellPos = String.valueOf(row.getCell(fileHeader.get("Well Position")).getStringCellValue());
+            String wellPos = String.valueOf(row.getString(fileHeader.get("Well Position")));
             newDmpSampleRecord.put("RowPosition", String.valueOf(wellPos.charAt(0)));
             newDmpSampleRecord.put("ColPosition", wellPos.substring(1));
 
             // comes from DMP as either Library or gDNA
-            String nucleicAcidType = row.getCell(fileHeader.get("Nucleic Acid Type (Library or DNA)")).getStringCellValue();
+            String nucleicAcidType = row.getString(fileHeader.get("Nucleic Acid Type (Library or DNA)"));
             if (nucleicAcidType.equals("gDNA")) {
                 nucleicAcidType = "DNA";
             } else nucleicAcidType = "DNA Library";
@@ -125,12 +105,11 @@ public class DmpToBankedSampleDataReader {
 
             // only Libraries come with Indexes. If the Index is named like DMP0xyz we have to remove the 0
             if (nucleicAcidType.equals("DNA Library") || nucleicAcidType.equals("Library")) {
-                String indexId = row.getCell(fileHeader.get("Index")).getStringCellValue();
-                String dmpIndexI7 = row.getCell(fileHeader.get("Index Sequence")).getStringCellValue();
+                String indexId = row.getString(fileHeader.get("Index"));
+                String dmpIndexI7 = row.getString(fileHeader.get("Index Sequence"));
                 String dmpIndexI5 = "";
-                Object i5ValFromFile = row.getCell(fileHeader.get("Index Sequence I5"));
-                if (!Objects.isNull(i5ValFromFile)){
-                    dmpIndexI5 = i5ValFromFile.toString();
+                if (optionalExists("Index Sequence I5", fileHeader)) {
+                    dmpIndexI5 = row.getString(fileHeader.get("Index Sequence I5"));
                 }
                 if (indexId.startsWith("DMP0")) {
                     indexId = indexId.replaceFirst("0", "");
@@ -139,7 +118,7 @@ public class DmpToBankedSampleDataReader {
                     String dualSequence = dmpIndexI7 + "-" + dmpIndexI5;
                     String dualIndexId = dualIdtIndices.get(dualSequence);
                     if(StringUtils.isBlank(dualIndexId)){
-                        clientCallback.displayError(String.format("Dual Index Barcode Sequence %s parsed from the sheet is not found in LIMS Index Assignment records.", dualSequence));
+                        missingDualSequences.add(dualSequence);
                     }
                     newDmpSampleRecord.put("BarcodeId", dualIndexId);
                 }
@@ -150,34 +129,25 @@ public class DmpToBankedSampleDataReader {
 
             // fields that need to be translated using other APIs
             // http://oncotree.mskcc.org/#/home
-            String cancerType = getOncoCode(row.getCell(fileHeader.get("Tumor Type")).getStringCellValue());
+            tumorTypes.add(row.getString(fileHeader.get("Tumor Type")));
             // if Metastastic then Metastasis else DMP value
-            String sampleClass = row.getCell(fileHeader.get("Sample Class (Primary, Met or Normal)")).getStringCellValue();
+            String sampleClass = row.getString(fileHeader.get("Sample Class (Primary, Met or Normal)"));
             sampleClass = sampleClass.equals("Metastatic") ? "Metastasis" : sampleClass;
             newDmpSampleRecord.put("SampleClass", sampleClass);
-            // TumorOrNormal is Normal if DMP is Normal, Tumor for everything else
-            if (cancerType.equals("") && sampleClass.equals("Normal")) {
-                cancerType = "Normal";
-                newDmpSampleRecord.put("TumorOrNormal", "Normal");
-            } else {
-                newDmpSampleRecord.put("TumorOrNormal", "Tumor");
-            }
-            newDmpSampleRecord.put("TumorType", cancerType);
+            sampleClasses.add(sampleClass);
 
             // PatientId redaction
             // CMO Patient ID is important for PMs
-            String patientId = "";
-            patientId = String.valueOf(row.getCell(fileHeader.get("MRN")).getStringCellValue());
-            newDmpSampleRecord.put("CMOPatientId", "C-" + crdb(patientId, clientCallback));
+            patientIds.add(row.getString(fileHeader.get("MRN")));
             newDmpSampleRecord.put("PatientId", "MRN_REDACTED");
 
             // preservation and sampleOrigin can only be filled after cancerType was found because they all depend on each other
             // specimenType impacts preservation AND depends on sampleClass
-            String preservation = row.getCell(fileHeader.get("Preservation (FFPE or Blood)")).getStringCellValue();
+            String preservation = row.getString(fileHeader.get("Preservation (FFPE or Blood)"));
             String sampleOrigin = preservation.equals("FFPE") ? "Tissue" : "Whole Blood";
             newDmpSampleRecord.put("SampleOrigin", sampleOrigin);
 
-            String specimenType = row.getCell(fileHeader.get("Specimen Type (Resection, Biopsy or Blood)")).getStringCellValue();
+            String specimenType = row.getString(fileHeader.get("Specimen Type (Resection, Biopsy or Blood)"));
             if (!specimenType.equals("")) {
                 if (specimenType.equals("N/A")) {
                     specimenType = "Biopsy";
@@ -194,9 +164,28 @@ public class DmpToBankedSampleDataReader {
             newDmpSampleRecord.put("SpecimenType", specimenType);
             String samplePreservation = preservation.equals("Blood") ? "EDTA-Streck" : preservation;
             newDmpSampleRecord.put("Preservation", samplePreservation);
-            newDmpSampleRecord.put("RequestedCoverage", row.getCell(fileHeader.get("Requested Coverage")).getStringCellValue());
+            newDmpSampleRecord.put("RequestedCoverage", row.getString(fileHeader.get("Requested Coverage")));
             // add to list
             dmpBankedSampleRecords.add(newDmpSampleRecord);
+        });
+
+        for (String dualSequence : missingDualSequences) {
+            clientCallback.displayError(String.format("Dual Index Barcode Sequence %s parsed from the sheet is not found in LIMS Index Assignment records.", dualSequence));
+        }
+        // tumor types repeat across the sheet, resolve each distinct tumor type once instead of once per row
+        Map<String, String> oncoCodesByTumorType = oncoTreeResolver.resolve(new HashSet<>(tumorTypes));
+        for (int i = 0; i < dmpBankedSampleRecords.size(); i++) {
+            Map<String, Object> dmpBankedSampleRecord = dmpBankedSampleRecords.get(i);
+            String cancerType = oncoCodesByTumorType.get(tumorTypes.get(i));
+            // TumorOrNormal is Normal if DMP is Normal, Tumor for everything else
+            if (cancerType.equals("") && sampleClasses.get(i).equals("Normal")) {
+                cancerType = "Normal";
+                dmpBankedSampleRecord.put("TumorOrNormal", "Normal");
+            } else {
+                dmpBankedSampleRecord.put("TumorOrNormal", "Tumor");
+            }
+            dmpBankedSampleRecord.put("TumorType", cancerType);
+            dmpBankedSampleRecord.put("CMOPatientId", "C-" + crdb(patientIds.get(i), clientCallback));
         }
         //sort list!
         // Samples need to be sorted by Well Position. Row first, then column
@@ -233,61 +222,8 @@ public class DmpToBankedSampleDataReader {
 
     // OncoTree could be in there as full name or just ID, we send it as a name first, if OncoTree can't find it, we try it as ID
     // if it is found, we put the ID in BankedSample. If we don't find it, we put an error message
-    public String getOncoCode(String oncoName) throws IOException, FileNotFoundException {
-        if (oncoName.equals("") || oncoName.toLowerCase().equals("n/a")) {
-            return "";
-        }
-        StringBuffer response = new StringBuffer();
-        // if onco name search leads to FileNotFound, DMP might have exported code instead
-        try {
-            URL url = new URL("http://oncotree.mskcc.org/api/tumorTypes/search/name/" + oncoName.replace(" ", "%20"));
-            HttpURLConnection con = (HttpURLConnection) url.openConnection();
-            con.setRequestMethod("GET");
-
-            BufferedReader in = new BufferedReader(
-                    new InputStreamReader(con.getInputStream()));
-            String inputLine;
-
-            while ((inputLine = in.readLine()) != null) {
-                response.append(inputLine);
-            }
-            in.close();
-            con.disconnect();
-        } catch (FileNotFoundException e) {
-            try {
-                URL url = new URL("http://oncotree.mskcc.org/api/tumorTypes/search/code/" + oncoName.replace(" ", "%20"));
-                HttpURLConnection con = (HttpURLConnection) url.openConnection();
-                con.setRequestMethod("GET");
-                BufferedReader in = new BufferedReader(
-                        new InputStreamReader(con.getInputStream()));
-                String inputLine;
-
-                while ((inputLine = in.readLine()) != null) {
-                    response.append(inputLine);
-                }
-                in.close();
-                con.disconnect();
-            } catch (FileNotFoundException f) {
-                return "Neither OncoTree code nor name found for: " + oncoName;
-            }
-        }
-
-        JSONParser parser = new JSONParser();
-        String code = "";
-        // onco tree returns array, has to be parsed to object
-        JSONArray oncoArray = new JSONArray();
-        try {
-            oncoArray = (JSONArray) parser.parse(response.toString());
-            Iterator i = oncoArray.iterator();
-            while (i.hasNext()) {
-                JSONObject oncoObject = (JSONObject) i.next();
-                code = (String) oncoObject.get("code");
-            }
-        } catch (
-                ParseException e) {
-            e.printStackTrace();
-        }
-        return code;
+    public String getOncoCode(String oncoName) throws IOException {
+        return oncoTreeResolver.resolve(oncoName);
     }
 
     private boolean optionalExists(String column, Map<String, Integer> fileHeader) {
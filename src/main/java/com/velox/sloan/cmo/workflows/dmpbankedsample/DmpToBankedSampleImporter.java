@@ -6,23 +6,20 @@ import com.velox.api.datarecord.NotFound;
 import com.velox.api.plugin.PluginLogger;
 import com.velox.api.plugin.PluginResult;
 import com.velox.api.util.ServerException;
-import com.velox.sapioutils.server.plugin.DefaultGenericPlugin;
 import com.velox.sloan.cmo.recmodels.IndexAssignmentModel;
+import com.velox.sloan.cmo.workflows.IgoLimsPluginUtils.ExcelReader;
+import com.velox.sloan.cmo.workflows.utils.DataRecordQuery;
+import com.velox.sloan.cmo.workflows.utils.ProfiledGenericPlugin;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.ss.usermodel.WorkbookFactory;
 
-import java.io.ByteArrayInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
 import java.rmi.RemoteException;
 import java.util.*;
 
 
-public class DmpToBankedSampleImporter extends DefaultGenericPlugin {
+public class DmpToBankedSampleImporter extends ProfiledGenericPlugin {
     private final ArrayList<String> excelFileHeaderValues =
             new ArrayList<>(Arrays.asList("Tracking ID", "PI Name", "Study of Title",
                     "Barcode/Plate ID", "Well Position", "DMP ID", "Investigator Sample ID",
@@ -37,7 +34,8 @@ public class DmpToBankedSampleImporter extends DefaultGenericPlugin {
         setLine1Text("DMP to Banked Sample Import");
     }
 
-    public PluginResult run() throws ServerException, RemoteException {
+    @Override
+    protected PluginResult runProfiled() throws ServerException, RemoteException {
         try {
 
             String dmpExcelPath = clientCallback.showFileDialog("Please upload the DMP Excel file.", null);
@@ -46,18 +44,18 @@ public class DmpToBankedSampleImporter extends DefaultGenericPlugin {
                 logInfo("DMP to Banked Sample: Path to excel file is empty. Or file not uploaded and process canceled by the user.");
                 return new PluginResult(false);
             }
-            Sheet sheet = getSheetFromFile(dmpExcelPath);
+            ExcelReader excelReader = getExcelReaderFromFile(dmpExcelPath);
 
-            if (!isValidExcelFile(sheet, excelFileHeaderValues, dmpExcelPath)) {
+            if (!isValidExcelFile(excelReader, excelFileHeaderValues, dmpExcelPath)) {
                 logInfo(excelFileHeaderValues.toString());
                 return new PluginResult(false);
             } else {
                 logInfo("DMP to Banked Sample: uploaded excel file valid.");
             }
             String iLabsId = clientCallback.showInputDialog("iLabs ID (optional, format: IGO-XXXXXX: ");
-            Map<String, Integer> headerNames = parseHeader(sheet, excelFileHeaderValues);
+            Map<String, Integer> headerNames = parseHeader(excelReader, excelFileHeaderValues);
             Map<String, String> indicesMap = getDualIdtLibIndices();
-            ArrayList<Map<String, Object>> dmpBankSampleRecords = getDmpBankedSampleRecordsFromFile(sheet, headerNames, iLabsId, indicesMap);
+            ArrayList<Map<String, Object>> dmpBankSampleRecords = getDmpBankedSampleRecordsFromFile(excelReader, headerNames, iLabsId, indicesMap);
             dataRecordManager.addDataRecords("BankedSample", dmpBankSampleRecords, user);
             dataRecordManager.storeAndCommit(user + String.format(" added %d new Banked Sample records.", dmpBankSampleRecords.size()), null, user);
             clientCallback.displayInfo(String.format("Added %d new Banked Sample records.", dmpBankSampleRecords.size()));
@@ -71,21 +69,19 @@ public class DmpToBankedSampleImporter extends DefaultGenericPlugin {
         return new PluginResult(true);
     }
 
-    private Sheet getSheetFromFile(String excelFilePath) throws IOException, InvalidFormatException, ServerException {
-        InputStream input = new ByteArrayInputStream(clientCallback.readBytes(excelFilePath));
-        Workbook workbook = WorkbookFactory.create(input);
-        return workbook.getSheetAt(0);
+    private ExcelReader getExcelReaderFromFile(String excelFilePath) throws ServerException {
+        return new ExcelReader(clientCallback.readBytes(excelFilePath));
     }
 
-    private boolean isValidExcelFile(Sheet sheet, ArrayList<String> expectedHeaderValues, String filePath) throws ServerException, RemoteException {
+    private boolean isValidExcelFile(ExcelReader excelReader, ArrayList<String> expectedHeaderValues, String filePath) throws ServerException, RemoteException, IOException, InvalidFormatException {
 
-        if (!dataReader.excelFileHasData(sheet)) {
+        if (!dataReader.excelFileHasData(excelReader)) {
             logError(String.format("File '%s' is invalid file type. Only excel file with '.xls' or '.xlsx' extensions are acceptable.", filePath));
             clientCallback.displayError(String.format("File '%s' is invalid file type. Only excel file with '.xls' or '.xlsx' extensions are acceptable.", filePath));
             return false;
         }
 
-        if (!dataReader.excelFileHasValidHeader(sheet, expectedHeaderValues)) {
+        if (!dataReader.excelFileHasValidHeader(excelReader, expectedHeaderValues)) {
             logError(String.format("File '%s' does not match minimum expected DMP column names.", filePath));
             clientCallback.displayError(String.format("File '%s' does not match expected DMP column names: '%s'", filePath,excelFileHeaderValues));
             return false;
@@ -93,8 +89,8 @@ public class DmpToBankedSampleImporter extends DefaultGenericPlugin {
         return true;
     }
 
-    private Map<String, Integer> parseHeader(Sheet sheet, ArrayList<String> headerValues) {
-        return dataReader.parseExcelFileHeader(sheet);
+    private Map<String, Integer> parseHeader(ExcelReader excelReader, ArrayList<String> headerValues) throws IOException, InvalidFormatException {
+        return dataReader.parseExcelFileHeader(excelReader);
     }
 
     /**
@@ -106,7 +102,7 @@ public class DmpToBankedSampleImporter extends DefaultGenericPlugin {
      * @throws ServerException
      */
     private Map<String, String> getDualIdtLibIndices() throws IoError, RemoteException, NotFound, ServerException {
-        List<DataRecord> indices = dataRecordManager.queryDataRecords("IndexAssignment", "IndexType = 'DUAL_IDT_LIB'" , user);
+        List<DataRecord> indices = DataRecordQuery.from("IndexAssignment").whereEquals("IndexType", "DUAL_IDT_LIB").execute(dataRecordManager, user);
         if(indices.isEmpty() || indices == null){
             clientCallback.displayError("Could not find DUAL_IDT_LIB index types in LIMS");
         }
@@ -118,11 +114,11 @@ public class DmpToBankedSampleImporter extends DefaultGenericPlugin {
         return indexMap;
     }
 
-    private ArrayList<Map<String, Object>> getDmpBankedSampleRecordsFromFile(Sheet sheet, Map<String, Integer> fileHeader, String iLabsId, Map<String, String> dualIdtIndices) throws IoError, IOException, NotFound, ServerException {
+    private ArrayList<Map<String, Object>> getDmpBankedSampleRecordsFromFile(ExcelReader excelReader, Map<String, Integer> fileHeader, String iLabsId, Map<String, String> dualIdtIndices) throws IoError, IOException, InvalidFormatException, NotFound, ServerException {
         ArrayList<Map<String, Object>> bankedSampleRecords = null;
         String username = user.getAccountName();
         try {
-            bankedSampleRecords = dataReader.readDmpBankedSampleRecordsFromFile(sheet, fileHeader, iLabsId, username, dualIdtIndices, clientCallback);
+            bankedSampleRecords = dataReader.readDmpBankedSampleRecordsFromFile(excelReader, fileHeader, iLabsId, username, dualIdtIndices, clientCallback);
             logInfo(bankedSampleRecords.toString());
         } catch (FileNotFoundException e) {
             logError("DMP to Banked Sample: Something went wrong translating '%s' using OncoTree. Please see the logs for more info.");
@@ -0,0 +1,291 @@
+package com.velox.sloan.cmo.workflows.dmpbankedsample;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Resolves DMP tumor types to OncoTree codes. A tumor type can be an OncoTree name or code, so it is searched as a name
+ * first and as a code when the name is not found.
+ * <p>
+ * Distinct tumor types are resolved once, in parallel over a shared HttpClient, and the codes are kept in a cache that
+ * is saved to cacheFile and expires after ttl. The cache can be preloaded from a snapshot of the OncoTree
+ * 'api/tumorTypes' response, matched by name and code, so that imports also work when OncoTree cannot be reached.
+ * When a lookup fails, an expired cached code is used if there is one.
+ */
+public class OncoTreeResolver {
+    public static final URI DEFAULT_SEARCH_URI = URI.create("http://oncotree.mskcc.org/api/tumorTypes/search/");
+    public static final int DEFAULT_PARALLEL_REQUESTS = 8;
+    public static final Duration DEFAULT_TTL = Duration.ofDays(7);
+    public static final String SNAPSHOT_FILE_PROPERTY = "igo.oncotree.snapshot";
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+    private static final Logger LOGGER = LogManager.getLogger(OncoTreeResolver.class);
+    private static final OncoTreeResolver INSTANCE = new OncoTreeResolver(DEFAULT_SEARCH_URI, DEFAULT_PARALLEL_REQUESTS, DEFAULT_TTL,
+            Paths.get(System.getProperty("java.io.tmpdir"), "igo-lims-plugins", "oncotree-codes.json"),
+            System.getProperty(SNAPSHOT_FILE_PROPERTY) == null ? null : Paths.get(System.getProperty(SNAPSHOT_FILE_PROPERTY)));
+
+    private final URI searchUri;
+    private final long ttlMillis;
+    private final Path cacheFile;
+    private final ExecutorService executor;
+    private final HttpClient httpClient;
+    private final Map<String, CachedCode> codesByTumorType = new ConcurrentHashMap<>();
+
+    public OncoTreeResolver(URI searchUri, int parallelRequests, Duration ttl, Path cacheFile, Path snapshotFile) {
+        this.searchUri = searchUri;
+        this.ttlMillis = ttl.toMillis();
+        this.cacheFile = cacheFile;
+        this.executor = Executors.newFixedThreadPool(parallelRequests, runnable -> {
+            Thread thread = new Thread(runnable, "OncoTreeResolver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(TIMEOUT)
+                .build();
+        loadCacheFile();
+        loadSnapshotFile(snapshotFile);
+    }
+
+    public static OncoTreeResolver getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Resolve a single tumor type to an OncoTree code.
+     *
+     * @param tumorType
+     * @return OncoTree code, "" for a blank or 'N/A' tumor type, or an error message when the tumor type is not found.
+     * @throws IOException
+     */
+    public String resolve(String tumorType) throws IOException {
+        return resolve(Collections.singletonList(tumorType)).get(tumorType);
+    }
+
+    /**
+     * Resolve tumor types to OncoTree codes. Each distinct tumor type that is not cached is looked up once.
+     *
+     * @param tumorTypes
+     * @return Map of tumor type to OncoTree code, "" for blank or 'N/A' tumor types, or an error message when the tumor
+     * type is not found.
+     * @throws IOException when OncoTree cannot be reached and there is no cached code for a tumor type.
+     */
+    public Map<String, String> resolve(Collection<String> tumorTypes) throws IOException {
+        long now = System.currentTimeMillis();
+        Map<String, String> codesByKey = new HashMap<>();
+        Map<String, String> tumorTypesToFetch = new LinkedHashMap<>();
+        for (String tumorType : tumorTypes) {
+            if (isBlankTumorType(tumorType)) {
+                continue;
+            }
+            String key = getKey(tumorType);
+            CachedCode cachedCode = codesByTumorType.get(key);
+            if (cachedCode != null && now - cachedCode.resolvedAt <= ttlMillis) {
+                codesByKey.put(key, cachedCode.code);
+            } else if (!codesByKey.containsKey(key)) {
+                tumorTypesToFetch.putIfAbsent(key, tumorType);
+            }
+        }
+
+        Map<String, Future<String>> futures = new LinkedHashMap<>();
+        for (Map.Entry<String, String> tumorType : tumorTypesToFetch.entrySet()) {
+            futures.put(tumorType.getKey(), executor.submit(() -> lookupCode(tumorType.getValue())));
+        }
+        try {
+            for (Map.Entry<String, Future<String>> future : futures.entrySet()) {
+                String key = future.getKey();
+                try {
+                    String code = future.getValue().get();
+                    codesByTumorType.put(key, new CachedCode(code, now));
+                    codesByKey.put(key, code);
+                } catch (ExecutionException e) {
+                    CachedCode expiredCode = codesByTumorType.get(key);
+                    if (expiredCode == null) {
+                        throw e.getCause() instanceof IOException ? (IOException) e.getCause()
+                                : new IOException(String.format("Failed to resolve OncoTree code for '%s'.", tumorTypesToFetch.get(key)), e.getCause());
+                    }
+                    codesByKey.put(key, expiredCode.code);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while resolving OncoTree codes.");
+        } finally {
+            for (Future<String> future : futures.values()) {
+                future.cancel(true);
+            }
+        }
+        if (!futures.isEmpty()) {
+            saveCacheFile();
+        }
+
+        Map<String, String> codes = new HashMap<>();
+        for (String tumorType : tumorTypes) {
+            codes.put(tumorType, isBlankTumorType(tumorType) ? "" : codesByKey.get(getKey(tumorType)));
+        }
+        return codes;
+    }
+
+    private boolean isBlankTumorType(String tumorType) {
+        return StringUtils.isBlank(tumorType) || tumorType.trim().equalsIgnoreCase("n/a");
+    }
+
+    private String getKey(String tumorType) {
+        return tumorType.trim().toLowerCase();
+    }
+
+    /**
+     * Search OncoTree for a tumor type as name, then as code. When the search returns more than one tumor type the
+     * code of the last one is used.
+     *
+     * @param tumorType
+     * @return OncoTree code
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    private String lookupCode(String tumorType) throws IOException, InterruptedException {
+        String response = search("name", tumorType);
+        if (response == null) {
+            response = search("code", tumorType);
+        }
+        if (response == null) {
+            return "Neither OncoTree code nor name found for: " + tumorType;
+        }
+        String code = "";
+        try {
+            for (Object oncoObject : (JSONArray) new JSONParser().parse(response)) {
+                code = (String) ((JSONObject) oncoObject).get("code");
+            }
+        } catch (ParseException | ClassCastException e) {
+            return "";
+        }
+        return code;
+    }
+
+    /**
+     * Send an OncoTree search request.
+     *
+     * @param searchBy 'name' or 'code'
+     * @param tumorType
+     * @return response body, or null when the tumor type is not found.
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    private String search(String searchBy, String tumorType) throws IOException, InterruptedException {
+        URI uri;
+        try {
+            uri = new URI(searchUri.getScheme(), searchUri.getAuthority(), searchUri.getPath() + searchBy + "/" + tumorType.trim(), null, null);
+        } catch (URISyntaxException e) {
+            throw new IOException(String.format("Invalid OncoTree search for '%s'.", tumorType), e);
+        }
+        HttpRequest request = HttpRequest.newBuilder(uri).timeout(TIMEOUT).GET().build();
+        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+        if (response.statusCode() == 404) {
+            return null;
+        }
+        if (response.statusCode() != 200) {
+            throw new IOException(String.format("OncoTree %s search for '%s' returned HTTP %d.", searchBy, tumorType, response.statusCode()));
+        }
+        return response.body();
+    }
+
+    private void loadCacheFile() {
+        if (cacheFile == null || !Files.isRegularFile(cacheFile)) {
+            return;
+        }
+        try {
+            Map<String, CachedCode> cachedCodes = new Gson().fromJson(new String(Files.readAllBytes(cacheFile), StandardCharsets.UTF_8),
+                    new TypeToken<Map<String, CachedCode>>() {
+                    }.getType());
+            if (cachedCodes != null) {
+                codesByTumorType.putAll(cachedCodes);
+            }
+        } catch (IOException | RuntimeException e) {
+            // the cache file is only an optimization, an unreadable file is replaced on the next save.
+            LOGGER.warn("Failed to load OncoTree codes from cache file {}, it is replaced on the next save.", cacheFile, e);
+        }
+    }
+
+    /**
+     * Load a snapshot of the OncoTree 'api/tumorTypes' response, a JSON array of tumor types with 'code' and 'name'.
+     * The snapshot codes are dated with the modification time of the file and do not replace newer cached codes.
+     *
+     * @param snapshotFile
+     */
+    private void loadSnapshotFile(Path snapshotFile) {
+        if (snapshotFile == null || !Files.isRegularFile(snapshotFile)) {
+            return;
+        }
+        try {
+            long snapshotTime = Files.getLastModifiedTime(snapshotFile).toMillis();
+            List<Map<String, Object>> tumorTypes = new Gson().fromJson(new String(Files.readAllBytes(snapshotFile), StandardCharsets.UTF_8),
+                    new TypeToken<List<Map<String, Object>>>() {
+                    }.getType());
+            for (Map<String, Object> tumorType : tumorTypes) {
+                Object code = tumorType.get("code");
+                Object name = tumorType.get("name");
+                if (code == null) {
+                    continue;
+                }
+                CachedCode snapshotCode = new CachedCode(code.toString(), snapshotTime);
+                codesByTumorType.merge(getKey(code.toString()), snapshotCode, CachedCode::newer);
+                if (name != null) {
+                    codesByTumorType.merge(getKey(name.toString()), snapshotCode, CachedCode::newer);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // without the snapshot, tumor types are looked up in OncoTree.
+            LOGGER.warn("Failed to load OncoTree snapshot file {}, tumor types are looked up in OncoTree.", snapshotFile, e);
+        }
+    }
+
+    private synchronized void saveCacheFile() {
+        if (cacheFile == null) {
+            return;
+        }
+        try {
+            Files.createDirectories(cacheFile.toAbsolutePath().getParent());
+            Path tempFile = Files.createTempFile(cacheFile.toAbsolutePath().getParent(), "oncotree-codes", ".tmp");
+            Files.write(tempFile, new Gson().toJson(codesByTumorType).getBytes(StandardCharsets.UTF_8));
+            Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // the cache file is only an optimization, codes are still cached in memory.
+        }
+    }
+
+    private static class CachedCode {
+        private String code;
+        private long resolvedAt;
+
+        CachedCode(String code, long resolvedAt) {
+            this.code = code;
+            this.resolvedAt = resolvedAt;
+        }
+
+        private static CachedCode newer(CachedCode code1, CachedCode code2) {
+            return code1.resolvedAt >= code2.resolvedAt ? code1 : code2;
+        }
+    }
+}
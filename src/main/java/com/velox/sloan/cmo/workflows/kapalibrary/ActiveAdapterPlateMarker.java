@@ -7,6 +7,7 @@ import com.velox.api.datarecord.NotFound;
 import com.velox.api.plugin.PluginResult;
 import com.velox.api.util.ServerException;
 import com.velox.sapioutils.server.plugin.DefaultGenericPlugin;
+import com.velox.sloan.cmo.workflows.utils.DataRecordQuery;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 
@@ -49,7 +50,7 @@ public class ActiveAdapterPlateMarker extends DefaultGenericPlugin {
                 logError(String.format("Entered plate barcode value of '%s' is invalid.", plateBarcode));
                 return new PluginResult(false);
             }
-            List<DataRecord> indexAssignmentConfigs = dataRecordManager.queryDataRecords(INDEX_ASSIGNMENT_CONFIG_DATATYPE, null, user);
+            List<DataRecord> indexAssignmentConfigs = DataRecordQuery.from(INDEX_ASSIGNMENT_CONFIG_DATATYPE).execute(dataRecordManager, user);
             Integer setIdToActivate = getSetIdToActivate(plateBarcode, indexAssignmentConfigs);
             String indexTypeToActivate = getIndexTypeToActivate(plateBarcode, indexAssignmentConfigs);
             setAdapterSetAsUsedAndDepleted(indexTypeToActivate, setIdToActivate, plateBarcode, indexAssignmentConfigs);
@@ -8,6 +8,9 @@ import com.velox.api.plugin.PluginResult;
 import com.velox.api.util.ServerException;
 import com.velox.sapioutils.server.plugin.DefaultGenericPlugin;
 import com.velox.sloan.cmo.workflows.IgoLimsPluginUtils.IgoLimsPluginUtils;
+import com.velox.sloan.cmo.workflows.utils.DataAccessUtils;
+import com.velox.sloan.cmo.workflows.utils.DataRecordQuery;
+import com.velox.sloan.cmo.workflows.utils.RecordFieldSnapshot;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 
@@ -56,7 +59,7 @@ public class IndexAssinmentConfigImporter extends DefaultGenericPlugin {
             Map<String, Integer> headerValueMap = utils.getCsvHeaderValueMap(fileDataRows, pluginLogger);
             List<Map<String, Object>> indexAssignmentConfigurations = parseIndexAssignmentConfigurations(fileDataRows, headerValueMap);
             List<String> uniqueAdapterPlateBarcodes = getUniueAdapterPlateBarcodes(fileDataRows, headerValueMap);
-            List<DataRecord> indexAssignmentsInLims = dataRecordManager.queryDataRecords("IndexAssignment", null, user);
+            List<DataRecord> indexAssignmentsInLims = DataRecordQuery.from("IndexAssignment").execute(dataRecordManager, user);
             if (!adapterPlateBarcodeAlreadyExists(uniqueAdapterPlateBarcodes) && isValidIndexAssignmentRecords(indexAssignmentsInLims, fileDataRows, headerValueMap)) {
                 List newIndexAssignmentConfigurations = dataRecordManager.addDataRecords(INDEX_ASSIGNMENT_CONFIG_DATATYPE, indexAssignmentConfigurations, user);
                 dataRecordManager.commitChanges(String.format("Added '%d' new Index Assignment Configurations records.", newIndexAssignmentConfigurations.size()), false, user);
@@ -245,8 +248,14 @@ public class IndexAssinmentConfigImporter extends DefaultGenericPlugin {
      * @throws ServerException
      */
     private boolean adapterPlateBarcodeAlreadyExists(List<String> adapterPlateBarcodes) throws IoError, RemoteException, NotFound, ServerException {
+        List<DataRecord> existingConfigs = DataRecordQuery.from(INDEX_ASSIGNMENT_CONFIG_DATATYPE).whereIn("AdapterPlateId", adapterPlateBarcodes)
+                .execute(dataRecordManager, user);
+        Set<String> existingAdapterPlateBarcodes = new HashSet<>();
+        for (RecordFieldSnapshot config : DataAccessUtils.getFieldSnapshots(existingConfigs, dataRecordManager, user)) {
+            existingAdapterPlateBarcodes.add(config.getStringVal("AdapterPlateId"));
+        }
         for (String barcode : adapterPlateBarcodes) {
-            if (dataRecordManager.queryDataRecords(INDEX_ASSIGNMENT_CONFIG_DATATYPE, "AdapterPlateId = '" + barcode + "'", user).size() > 0) {
+            if (existingAdapterPlateBarcodes.contains(barcode)) {
                 clientCallback.displayError(String.format("Adapter Plate Barcode '%s' is already assigned to previous '%s' records in LIMS.", barcode, INDEX_ASSIGNMENT_CONFIG_DATATYPE));
                 logError(String.format("Adapter Plate Barcode '%s' is already assigned to previous '%s' records in LIMS.", barcode, INDEX_ASSIGNMENT_CONFIG_DATATYPE));
                 return true;
@@ -6,10 +6,14 @@ import com.velox.api.datarecord.IoError;
 import com.velox.api.datarecord.NotFound;
 import com.velox.api.plugin.PluginResult;
 import com.velox.api.util.ServerException;
-import com.velox.sapioutils.server.plugin.DefaultGenericPlugin;
 import com.velox.sapioutils.shared.enums.PluginOrder;
 import com.velox.sloan.cmo.workflows.IgoLimsPluginUtils.AlphaNumericComparator;
 import com.velox.sloan.cmo.workflows.IgoLimsPluginUtils.IgoLimsPluginUtils;
+import com.velox.sloan.cmo.workflows.utils.DataRecordFieldCache;
+import com.velox.sloan.cmo.workflows.utils.DataRecordQuery;
+import com.velox.sloan.cmo.workflows.utils.ProfiledGenericPlugin;
+import com.velox.sloan.cmo.workflows.utils.RecordFieldSnapshot;
+import com.velox.sloan.cmo.workflows.utils.SampleLineageCache;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 
@@ -17,6 +21,10 @@ import javax.xml.crypto.Data;
 import java.io.IOError;
 import java.rmi.RemoteException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -26,11 +34,17 @@ import java.util.stream.Collectors;
  * to populate IndexBarcode values. The the metadata for 'AutoIndexAssignmentConfig' DataRecords is also updated if they are used in the process.
  * 'Index Barcode and Adapter' terms are used interchangeably and have the same meaning.
  * 'AutoIndexAssignmentConfig' is the DataType which holds the Index Barcode metadata that is used for Auto Index Assignment to the samples.
+ * <p>
+ * Plates are processed in three phases. The configs, recipes and plate size of every plate are read first, and plates that
+ * use the same 'AutoIndexAssignmentConfig' query share its result. The wells of each plate are then sorted, split into
+ * quadrants and the target adapter concentrations calculated in parallel, one plate per task, on a pool that is created
+ * for the run and shut down when the plates are done. Finally the indexes are assigned plate by plate in the order the
+ * plates are found, so the 'LastUsed' config after a run does not depend on which plate finished its calculations first.
+ * Configs that a plate depletes are dropped from the shared configs before the next plate is assigned.
  *
  * @author sharmaa1
  */
-public class IndexBarcodeToSampleAutoAssigner extends DefaultGenericPlugin {
-
+public class IndexBarcodeToSampleAutoAssigner extends ProfiledGenericPlugin {
     private final List<String> RECIPES_TO_USE_SPECIAL_ADAPTERS = Arrays.asList("DNA_CRISPR", "DNA_Amplicon", "DNA_SingleCellCNV");
     private boolean isTCRseq = false;
     private IgoLimsPluginUtils utils = new IgoLimsPluginUtils();
@@ -46,16 +60,14 @@ public class IndexBarcodeToSampleAutoAssigner extends DefaultGenericPlugin {
         return activeTask.getTask().getTaskOptions().containsKey("AUTOASSIGN INDEX BARCODES") && !activeTask.getTask().getTaskOptions().containsKey("_INDEXES_AUTO_ASIGNED");
     }
 
-    public PluginResult run() throws ServerException, RemoteException{
+    protected PluginResult runProfiled() throws ServerException, RemoteException{
         autoHelper = new AutoIndexAssignmentHelper();
         try {
             List<DataRecord> attachedSamplesList = activeTask.getAttachedDataRecords("Sample", user);
             List<DataRecord> attachedIndexBarcodeRecords = new LinkedList<>();
-            Set<DataRecord> uniquePlates = new HashSet<>();
-            for(DataRecord sample: attachedSamplesList) {
-                List<DataRecord> listOfParentPlates = sample.getParentsOfType("Plate", user);
-                uniquePlates.add(listOfParentPlates.get(listOfParentPlates.size() - 1));
-            }
+            DataRecordFieldCache fieldCache = new DataRecordFieldCache(dataRecordManager, user);
+            SampleLineageCache lineageCache = new SampleLineageCache(dataRecordManager, user, fieldCache);
+            List<DataRecord> uniquePlates = getUniquePlates(attachedSamplesList, lineageCache);
 
             if (activeTask.getTask().getTaskOptions().get("AUTOASSIGN INDEX BARCODES").toLowerCase().contains("tcr")) {
                 isTCRseq = true;
@@ -87,44 +99,55 @@ public class IndexBarcodeToSampleAutoAssigner extends DefaultGenericPlugin {
                 return new PluginResult(false);
             }
 
+            List<RecordFieldSnapshot> indexBarcodeFields = fieldCache.prefetch(attachedIndexBarcodeRecords);
+            Map<String, List<Integer>> indexBarcodePositionsBySampleId = getIndexBarcodePositionsBySampleId(indexBarcodeFields);
+            lineageCache.loadChildren(uniquePlates, "Sample");
+            List<DataRecord> allPlateSamples = new ArrayList<>();
             for (DataRecord plate : uniquePlates) {
-                List<DataRecord> IndexBarcodeRecordsForThisPlate = new LinkedList<>();
-                logInfo("plate is: " + plate.getDataField("PlateId", user));
-                DataRecord samplesInThePlate[] = plate.getChildrenOfType("Sample", user);
-                for(DataRecord barcode: attachedIndexBarcodeRecords) {
-                    for(DataRecord currentSample: samplesInThePlate) {
-                        if(currentSample.getDataField("SampleId", user).toString().equals(barcode.getDataField("SampleId", user))) {
-                            logInfo("current sample is:" + currentSample.getDataField("SampleId", user).toString());
-                            IndexBarcodeRecordsForThisPlate.add(barcode);
-                        }
-                    }
-                }
-
-                String taskOptionValueForIndexAssignment = activeTask.getTask().getTaskOptions().get("AUTOASSIGN INDEX BARCODES");
-                List<String> recipes = getUniqueSampleRecipes(Arrays.asList(samplesInThePlate));
+                allPlateSamples.addAll(lineageCache.getChildren(plate, "Sample"));
+            }
+            fieldCache.prefetch(uniquePlates);
+            fieldCache.prefetch(allPlateSamples);
+            fieldCache.prefetch(attachedSamplesList);
+
+            String taskOptionValueForIndexAssignment = activeTask.getTask().getTaskOptions().get("AUTOASSIGN INDEX BARCODES");
+            List<String> indexTypeToProcess = getIndexTypesToUse(taskOptionValueForIndexAssignment);
+            List<String> plateSizes = dataMgmtServer.getPickListManager(user).getPickListConfig("Plate Sizes").getEntryList();
+            String sampleType = fieldCache.getStringVal(attachedSamplesList.get(0), "ExemplarSampleType");
+            Map<String, List<DataRecord>> indexConfigsByQuery = new HashMap<>();
+            List<PlateLayout> plateLayouts = new ArrayList<>();
+            for (DataRecord plate : uniquePlates) {
+                List<DataRecord> samplesInThePlate = lineageCache.getChildren(plate, "Sample");
+                List<RecordFieldSnapshot> IndexBarcodeRecordsForThisPlate = getIndexBarcodesForPlateSamples(samplesInThePlate, indexBarcodeFields,
+                        indexBarcodePositionsBySampleId, fieldCache);
+                logInfo(String.format("Plate %s has %d Samples with %d IndexBarcode records attached to the task.", fieldCache.getStringVal(plate, "PlateId"),
+                        samplesInThePlate.size(), IndexBarcodeRecordsForThisPlate.size()));
 
-                String indexTypeToProcess = getIndexTypesToUse(taskOptionValueForIndexAssignment);
-                List<DataRecord> indexConfigsToUse = getIndexAssignmentConfigsForIndexType(indexTypeToProcess, recipes, Arrays.asList(samplesInThePlate));
+                List<String> recipes = getUniqueSampleRecipes(samplesInThePlate, fieldCache);
+                List<DataRecord> indexConfigsToUse = getIndexAssignmentConfigsForIndexType(indexTypeToProcess, recipes, samplesInThePlate, fieldCache, indexConfigsByQuery);
 
                 if (indexConfigsToUse.isEmpty()) {
-                    clientCallback.displayError(String.format("Could not find 'AutoIndexAssignmentConfig' for Recipes/IndexTypes values '%s/%s' given to plugin 'AUTOASSIGN INDEX BARCODES", utils.convertListToString(recipes), indexTypeToProcess));
-                    logError(String.format("Could not find 'AutoIndexAssignmentConfig' for Recipes '%s' for samples and TASK OPTION VALUE '%s' for Index Types given to Option 'AUTOASSIGN INDEX BARCODES", utils.convertListToString(recipes), indexTypeToProcess));
+                    clientCallback.displayError(String.format("Could not find 'AutoIndexAssignmentConfig' for Recipes/IndexTypes values '%s/%s' given to plugin 'AUTOASSIGN INDEX BARCODES", utils.convertListToString(recipes), String.join(",", indexTypeToProcess)));
+                    logError(String.format("Could not find 'AutoIndexAssignmentConfig' for Recipes '%s' for samples and TASK OPTION VALUE '%s' for Index Types given to Option 'AUTOASSIGN INDEX BARCODES", utils.convertListToString(recipes), String.join(",", indexTypeToProcess)));
                     return new PluginResult(false);
                 }
-                List<DataRecord> sortedProtocolRecords = getSampleProtocolRecordsSortedByWellPositionColumnWise(IndexBarcodeRecordsForThisPlate);
-                for(DataRecord sorted: sortedProtocolRecords) {
-                    logInfo("sample id of sorted protocol records: " + sorted.getStringVal("SampleId", user));
+                plateLayouts.add(new PlateLayout(IndexBarcodeRecordsForThisPlate, indexConfigsToUse, recipes, getPlateSize(plate, fieldCache, plateSizes)));
+            }
+            calculatePlateLayouts(plateLayouts, sampleType);
+            for (int i = 0; i < plateLayouts.size(); i++) {
+                PlateLayout plateLayout = plateLayouts.get(i);
+                if (i > 0) {
+                    removeInactiveConfigs(plateLayout.indexConfigs);
                 }
-                Integer plateSize = getPlateSize(attachedSamplesList);
-                Double minAdapterVol = autoHelper.getMinAdapterVolumeRequired(plateSize, isTCRseq);
-                String sampleType = attachedSamplesList.get(0).getStringVal("ExemplarSampleType", user);
-                if (plateSize == 96) {
-                    assignIndicesToSamples(sortedProtocolRecords, indexConfigsToUse, minAdapterVol, plateSize, sampleType, isTCRseq, recipes);
-                } else if (plateSize == 384) {
-                    List<List<DataRecord>> protocolsSplitByAlternateWell = getQuadrantsFromProtocols(sortedProtocolRecords);
-                    for (List<DataRecord> protocolsList : protocolsSplitByAlternateWell) {
-                        assignIndicesToSamples(protocolsList, indexConfigsToUse, minAdapterVol, plateSize, sampleType, isTCRseq, recipes);
-                    }
+                if (plateLayout.indexConfigs.isEmpty()) {
+                    clientCallback.displayError(String.format("All 'AutoIndexAssignmentConfig' for Recipes/IndexTypes values '%s/%s' were depleted by the previous plates.", utils.convertListToString(plateLayout.recipes), String.join(",", indexTypeToProcess)));
+                    logError(String.format("All 'AutoIndexAssignmentConfig' for Recipes '%s' and Index Types '%s' were depleted by the previous plates.", utils.convertListToString(plateLayout.recipes), String.join(",", indexTypeToProcess)));
+                    return new PluginResult(false);
+                }
+                Double minAdapterVol = autoHelper.getMinAdapterVolumeRequired(plateLayout.plateSize, isTCRseq);
+                for (List<RecordFieldSnapshot> protocolsList : plateLayout.sortedProtocolGroups) {
+                    assignIndicesToSamples(protocolsList, plateLayout.targetAdapterConcentrations, plateLayout.indexConfigs, minAdapterVol,
+                            plateLayout.plateSize, sampleType, isTCRseq, plateLayout.recipes);
                 }
             }
         } catch (Exception e) {
@@ -136,13 +159,79 @@ public class IndexBarcodeToSampleAutoAssigner extends DefaultGenericPlugin {
         return new PluginResult(true);
     }
 
+    /**
+     * Get the last Plate parent of each Sample, loaded for all Samples with a single call. Each Plate is returned once,
+     * in the order it is first found.
+     *
+     * @param attachedSamples
+     * @param lineageCache
+     * @return List<DataRecord>
+     * @throws IoError
+     * @throws RemoteException
+     * @throws ServerException
+     */
+    private List<DataRecord> getUniquePlates(List<DataRecord> attachedSamples, SampleLineageCache lineageCache) throws IoError, RemoteException, ServerException {
+        lineageCache.loadParents(attachedSamples, "Plate");
+        Map<Long, DataRecord> uniquePlates = new LinkedHashMap<>();
+        for (DataRecord sample : attachedSamples) {
+            List<DataRecord> listOfParentPlates = lineageCache.getParents(sample, "Plate");
+            DataRecord plate = listOfParentPlates.get(listOfParentPlates.size() - 1);
+            uniquePlates.putIfAbsent(plate.getRecordId(), plate);
+        }
+        return new ArrayList<>(uniquePlates.values());
+    }
+
+    /**
+     * Index the positions of IndexBarcode records in the list of attached IndexBarcode records by their SampleId.
+     *
+     * @param indexBarcodeFields
+     * @return Map<String, List<Integer>>
+     */
+    private Map<String, List<Integer>> getIndexBarcodePositionsBySampleId(List<RecordFieldSnapshot> indexBarcodeFields) {
+        Map<String, List<Integer>> positionsBySampleId = new HashMap<>();
+        for (int i = 0; i < indexBarcodeFields.size(); i++) {
+            Object sampleId = indexBarcodeFields.get(i).getValue("SampleId");
+            if (sampleId != null) {
+                positionsBySampleId.computeIfAbsent(sampleId.toString(), k -> new ArrayList<>()).add(i);
+            }
+        }
+        return positionsBySampleId;
+    }
+
+    /**
+     * Get the IndexBarcode records for the Samples on a plate, in the order they are attached to the task.
+     *
+     * @param samplesInThePlate
+     * @param indexBarcodeFields
+     * @param indexBarcodePositionsBySampleId
+     * @param fieldCache
+     * @return List<RecordFieldSnapshot>
+     * @throws RemoteException
+     */
+    private List<RecordFieldSnapshot> getIndexBarcodesForPlateSamples(List<DataRecord> samplesInThePlate, List<RecordFieldSnapshot> indexBarcodeFields,
+                                                             Map<String, List<Integer>> indexBarcodePositionsBySampleId, DataRecordFieldCache fieldCache) throws RemoteException {
+        List<Integer> matchedPositions = new ArrayList<>();
+        for (DataRecord sample : samplesInThePlate) {
+            Object sampleId = fieldCache.getValue(sample, "SampleId");
+            if (sampleId != null) {
+                matchedPositions.addAll(indexBarcodePositionsBySampleId.getOrDefault(sampleId.toString(), Collections.emptyList()));
+            }
+        }
+        Collections.sort(matchedPositions);
+        List<RecordFieldSnapshot> indexBarcodesForPlate = new ArrayList<>(matchedPositions.size());
+        for (Integer position : matchedPositions) {
+            indexBarcodesForPlate.add(indexBarcodeFields.get(position));
+        }
+        return indexBarcodesForPlate;
+    }
+
     /**
      * Method to get the IndexType to use for the autoassignment based on the value for Task Option 'AUTOASSIGN INDEX BARCODES' on the task.
      *
      * @param taskOptionValueForIndexAssignment
      * @return String
      */
-    private String getIndexTypesToUse(String taskOptionValueForIndexAssignment) {
+    private List<String> getIndexTypesToUse(String taskOptionValueForIndexAssignment) {
         List<String> indexTypes = new ArrayList<>();
         Matcher m = Pattern.compile("\\(([^)]+)\\)").matcher(taskOptionValueForIndexAssignment);
         if (m.find()) {
@@ -151,19 +240,20 @@ public class IndexBarcodeToSampleAutoAssigner extends DefaultGenericPlugin {
                 indexTypes.add(val.trim());
             }
         }
-        return "('" + StringUtils.join(indexTypes, "','") + "')";
+        return indexTypes;
     }
 
     /**
      * Method to get the unique Recipe values associated with Sample DataRecords.
      *
      * @param attachedSamples
+     * @param fieldCache
      * @return List<String>
      */
-    private List<String> getUniqueSampleRecipes(List<DataRecord> attachedSamples) {
+    private List<String> getUniqueSampleRecipes(List<DataRecord> attachedSamples, DataRecordFieldCache fieldCache) {
         List<String> recipes = attachedSamples.stream().map(s -> {
             try {
-                return s.getStringVal("Recipe", user);
+                return fieldCache.getStringVal(s, "Recipe");
             } catch (Exception e) {
                 logInfo(ExceptionUtils.getStackTrace(e));
                 return "";
@@ -174,52 +264,103 @@ public class IndexBarcodeToSampleAutoAssigner extends DefaultGenericPlugin {
     }
 
     /**
-     * Method to get DataRecords for 'AutoIndexAssignmentConfig' DataType that are marked as Active.
+     * Method to get DataRecords for 'AutoIndexAssignmentConfig' DataType that are marked as Active. Plates that need the
+     * same query share the records returned by its first run, configs deactivated by a plate are removed from the shared
+     * List with removeInactiveConfigs.
      *
      * @param indexTypes
      * @param recipes
+     * @param attachedSamplesList
+     * @param fieldCache
+     * @param indexConfigsByQuery
      * @return List<DataRecord>
      * @throws IoError
      * @throws RemoteException
      * @throws NotFound
      * @throws ServerException
      */
-    private List<DataRecord> getIndexAssignmentConfigsForIndexType(String indexTypes, List<String> recipes, List<DataRecord> attachedSamplesList) throws IoError, RemoteException, NotFound, ServerException {
+    private List<DataRecord> getIndexAssignmentConfigsForIndexType(List<String> indexTypes, List<String> recipes, List<DataRecord> attachedSamplesList,
+                                                                   DataRecordFieldCache fieldCache, Map<String, List<DataRecord>> indexConfigsByQuery) throws IoError, RemoteException, NotFound, ServerException {
+        DataRecordQuery query = getIndexAssignmentConfigQuery(indexTypes, recipes, fieldCache.getStringVal(attachedSamplesList.get(0), "Species"));
+        if (query == null) {
+            return new LinkedList<DataRecord>();
+        }
+        List<DataRecord> indexConfigs = indexConfigsByQuery.get(query.getWhereClause());
+        if (indexConfigs == null) {
+            indexConfigs = new ArrayList<>(query.execute(dataRecordManager, user));
+            indexConfigsByQuery.put(query.getWhereClause(), indexConfigs);
+        }
+        return indexConfigs;
+    }
+
+    /**
+     * Method to get the query for 'AutoIndexAssignmentConfig' DataRecords to use for samples with the given recipes and species.
+     *
+     * @param indexTypes
+     * @param recipes
+     * @param species
+     * @return DataRecordQuery or null if no configs should be used.
+     */
+    private DataRecordQuery getIndexAssignmentConfigQuery(List<String> indexTypes, List<String> recipes, String species) {
         boolean isCrisprOrAmpliconSeq = recipes.stream().anyMatch(RECIPES_TO_USE_SPECIAL_ADAPTERS::contains);
         String INDEX_ASSIGNMENT_CONFIG_DATATYPE = "AutoIndexAssignmentConfig";
-        String species = attachedSamplesList.get(0).getStringVal("Species", user);
 
-        if (indexTypes.toLowerCase().contains("tcrseq-igo")) {
+        if (indexTypes.stream().anyMatch(indexType -> indexType.toLowerCase().contains("tcrseq-igo"))) {
             logInfo("Library samples have recipe values TCRseq-IGO, reserved indexes in set5 will not be used.");
             boolean isAlpha = recipes.get(0).toLowerCase().contains("alpha");
             boolean isBeta = recipes.get(0).toLowerCase().contains("beta");
 
             if (species.compareToIgnoreCase("mouse") == 0) {
                 if (isAlpha) {
-                    return dataRecordManager.queryDataRecords(INDEX_ASSIGNMENT_CONFIG_DATATYPE, "IndexType IN " + indexTypes + " AND IsActive=1 AND SetId!=5 AND IndexId like 'M%' AND IndexId like '%acj%'", user);
+                    return getActiveTcrIndexConfigQuery(INDEX_ASSIGNMENT_CONFIG_DATATYPE, indexTypes, "M%", "%acj%");
                 }
                 else if (isBeta) {
-                    return dataRecordManager.queryDataRecords(INDEX_ASSIGNMENT_CONFIG_DATATYPE, "IndexType IN " + indexTypes + " AND IsActive=1 AND SetId!=5 AND IndexId like 'M%' AND IndexId like '%bcj%'", user);
+                    return getActiveTcrIndexConfigQuery(INDEX_ASSIGNMENT_CONFIG_DATATYPE, indexTypes, "M%", "%bcj%");
                 }
             }
             else { // species: human
                 if (isAlpha) {
-                    return dataRecordManager.queryDataRecords(INDEX_ASSIGNMENT_CONFIG_DATATYPE, "IndexType IN " + indexTypes + " AND IsActive=1 AND SetId!=5 AND IndexId like 'H%' AND IndexId like '%acj%'", user);
+                    return getActiveTcrIndexConfigQuery(INDEX_ASSIGNMENT_CONFIG_DATATYPE, indexTypes, "H%", "%acj%");
                 }
                 else if (isBeta) {
-                    return dataRecordManager.queryDataRecords(INDEX_ASSIGNMENT_CONFIG_DATATYPE, "IndexType IN " + indexTypes + " AND IsActive=1 AND SetId!=5 AND IndexId like 'H%' AND IndexId like '%bcj%'", user);
+                    return getActiveTcrIndexConfigQuery(INDEX_ASSIGNMENT_CONFIG_DATATYPE, indexTypes, "H%", "%bcj%");
                 }
             }
         } else if (isCrisprOrAmpliconSeq) {
             logInfo("Recipe on Library samples is Crispr or AmpliconSeq, reserved indexes in plate5 will be used.");
-            return dataRecordManager.queryDataRecords(INDEX_ASSIGNMENT_CONFIG_DATATYPE, "IndexType='DUAL_IDT_LIB' AND AdapterPlateId LIKE 'Set%Plate5' and IsActive=1", user);
+            return DataRecordQuery.from(INDEX_ASSIGNMENT_CONFIG_DATATYPE)
+                    .whereEquals("IndexType", "DUAL_IDT_LIB")
+                    .whereLike("AdapterPlateId", "Set%Plate5")
+                    .whereEquals("IsActive", true);
 
         } else {
             logInfo("Library samples do not have recipe values Crispr or AmpliconSeq, reserved indexes in plate5 will not be used.");
-            return dataRecordManager.queryDataRecords(INDEX_ASSIGNMENT_CONFIG_DATATYPE, "IndexType IN " + indexTypes + "AND IsActive=1 AND AdapterPlateId NOT LIKE 'Set%Plate5'", user);
+            return DataRecordQuery.from(INDEX_ASSIGNMENT_CONFIG_DATATYPE)
+                    .whereEquals("IsActive", true)
+                    .whereNotLike("AdapterPlateId", "Set%Plate5")
+                    .whereIn("IndexType", indexTypes);
 
         }
-        return new LinkedList<DataRecord>();
+        return null;
+    }
+
+    /**
+     * Get the query for active TCRseq 'AutoIndexAssignmentConfig' records outside of set 5 with IndexId matching both patterns.
+     *
+     * @param indexAssignmentConfigDataType
+     * @param indexTypes
+     * @param speciesPattern
+     * @param chainPattern
+     * @return DataRecordQuery
+     */
+    private DataRecordQuery getActiveTcrIndexConfigQuery(String indexAssignmentConfigDataType, List<String> indexTypes, String speciesPattern,
+                                                     String chainPattern) {
+        return DataRecordQuery.from(indexAssignmentConfigDataType)
+                .whereEquals("IsActive", true)
+                .whereNotEquals("SetId", 5)
+                .whereLike("IndexId", speciesPattern)
+                .whereLike("IndexId", chainPattern)
+                .whereIn("IndexType", indexTypes);
     }
 
     /**
@@ -282,45 +423,92 @@ public class IndexBarcodeToSampleAutoAssigner extends DefaultGenericPlugin {
      * Method to sort the DataRecords, First by 'SampleColumn' and then by 'SampleRow' field values in Ascending order.
      *
      * @param protocolRecords
-     * @return List<DataRecord>
+     * @return List<RecordFieldSnapshot>
      */
-    private List<DataRecord> getSampleProtocolRecordsSortedByWellPositionColumnWise(List<DataRecord> protocolRecords) throws RemoteException, NotFound, ServerException {
-        List<String> sampleWells = new ArrayList<>();
-
-        for (DataRecord rec : protocolRecords) {
-            sampleWells.add(rec.getSelectionVal("SampleColumn", user) + rec.getSelectionVal("SampleRow", user));
-        }
-        List<String> sortedSampleWells = sampleWells.stream().sorted(new AlphaNumericComparator()).collect(Collectors.toList());
-        List<DataRecord> sortedProtocolRecords = new ArrayList<>();
-        for (String item : sortedSampleWells) {
-            for (DataRecord rec : protocolRecords) {
-                String wellId = rec.getSelectionVal("SampleColumn", user) + rec.getSelectionVal("SampleRow", user);
-                if (wellId.equals(item)) {
-                    sortedProtocolRecords.add(rec);
-                    break;
-                }
-            }
-        }
+    private List<RecordFieldSnapshot> getSampleProtocolRecordsSortedByWellPositionColumnWise(List<RecordFieldSnapshot> protocolRecords) {
+        AlphaNumericComparator wellComparator = new AlphaNumericComparator();
+        List<RecordFieldSnapshot> sortedProtocolRecords = new ArrayList<>(protocolRecords);
+        sortedProtocolRecords.sort((rec1, rec2) -> wellComparator.compare(rec1.getStringVal("SampleColumn") + rec1.getStringVal("SampleRow"),
+                rec2.getStringVal("SampleColumn") + rec2.getStringVal("SampleRow")));
         return sortedProtocolRecords;
     }
 
     /**
-     * Get the plate size given the Sample DataRecord(s) that is on a plate.
+     * Get the plate size of a plate.
      *
-     * @param samples
+     * @param plate
+     * @param fieldCache
+     * @param plateSizes entries of the 'Plate Sizes' pick list.
      * @return Integer plate size.
-     * @throws IoError
      * @throws RemoteException
-     * @throws NotFound
-     * @throws ServerException
      */
-    private Integer getPlateSize(List<DataRecord> samples) throws IoError, RemoteException, NotFound, ServerException {
-        DataRecord plate = samples.get(0).getParentsOfType("Plate", user).get(0);
-        Integer plateSizeIndex = Integer.parseInt(plate.getValue("PlateWellCnt", user).toString());
-        String plateSize = dataMgmtServer.getPickListManager(user).getPickListConfig("Plate Sizes").getEntryList().get(plateSizeIndex);
+    private Integer getPlateSize(DataRecord plate, DataRecordFieldCache fieldCache, List<String> plateSizes) throws RemoteException {
+        Integer plateSizeIndex = Integer.parseInt(fieldCache.getValue(plate, "PlateWellCnt").toString());
+        String plateSize = plateSizes.get(plateSizeIndex);
         return Integer.parseInt(plateSize.split("-")[0]);
     }
 
+    /**
+     * Sort the IndexBarcode records of every plate by well, split them into quadrants for 384 well plates and calculate the
+     * target adapter concentration for each sample. These calculations only use field values that are already read, so
+     * the plates are calculated in parallel on at most one thread per processor. A single plate is calculated on the
+     * calling thread.
+     *
+     * @param plateLayouts
+     * @param sampleType
+     */
+    private void calculatePlateLayouts(List<PlateLayout> plateLayouts, String sampleType) {
+        int threads = Math.min(plateLayouts.size(), Runtime.getRuntime().availableProcessors());
+        if (threads <= 1) {
+            for (PlateLayout plateLayout : plateLayouts) {
+                calculatePlateLayout(plateLayout, sampleType);
+            }
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "IndexBarcodePlateLayout");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (PlateLayout plateLayout : plateLayouts) {
+                futures.add(executor.submit(() -> calculatePlateLayout(plateLayout, sampleType)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while sorting plate wells for index assignment.", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new IllegalStateException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void calculatePlateLayout(PlateLayout plateLayout, String sampleType) {
+        List<RecordFieldSnapshot> sortedProtocolRecords = getSampleProtocolRecordsSortedByWellPositionColumnWise(plateLayout.indexBarcodes);
+        if (plateLayout.plateSize == 96) {
+            plateLayout.sortedProtocolGroups = Collections.singletonList(sortedProtocolRecords);
+        } else if (plateLayout.plateSize == 384) {
+            plateLayout.sortedProtocolGroups = getQuadrantsFromProtocols(sortedProtocolRecords);
+        }
+        for (RecordFieldSnapshot indexBarcode : plateLayout.indexBarcodes) {
+            Double sampleInputAmount = 0.0;
+            if (hasInitialInput(indexBarcode)) {
+                sampleInputAmount = Double.parseDouble(indexBarcode.getStringVal("InitialInput"));
+            }
+            plateLayout.targetAdapterConcentrations.put(indexBarcode.getRecordId(),
+                    autoHelper.getCalculatedTargetAdapterConcentration(sampleInputAmount, plateLayout.plateSize, sampleType));
+        }
+    }
+
+    private boolean hasInitialInput(RecordFieldSnapshot indexBarcode) {
+        return indexBarcode.getValue("InitialInput") != null && indexBarcode.getStringVal("InitialInput").length() > 0;
+    }
+
     /**
      * Method to populate field values of 'IndexBarcode' DataRecord.
      *
@@ -328,6 +516,7 @@ public class IndexBarcodeToSampleAutoAssigner extends DefaultGenericPlugin {
      * @param indexAssignmentConfig
      * @param minVolInAdapterPlate
      * @param maxPlateVolume
+     * @param targetAdapterConc
      * @return Map<String, Object>
      * @throws NotFound
      * @throws RemoteException
@@ -335,19 +524,16 @@ public class IndexBarcodeToSampleAutoAssigner extends DefaultGenericPlugin {
      * @throws IoError
      * @throws ServerException
      */
-    private Map<String, Object> setAssignedIndicesDataRecordFieldValues(DataRecord indexBarcode, DataRecord indexAssignmentConfig,
-                                                                        Double minVolInAdapterPlate, Double maxPlateVolume,
-                                                                        Integer plateSize, String sampleType, boolean isTCRseq, boolean isCrisprOrAmpliconSeq, String recipe) throws NotFound,
+    private Map<String, Object> setAssignedIndicesDataRecordFieldValues(RecordFieldSnapshot indexBarcode, DataRecord indexAssignmentConfig,
+                                                                        Double minVolInAdapterPlate, Double maxPlateVolume, Double targetAdapterConc,
+                                                                        String sampleType, boolean isTCRseq, boolean isCrisprOrAmpliconSeq, Integer plateSize, String recipe) throws NotFound,
             RemoteException, InvalidValue, IoError, ServerException {
-        Double sampleInputAmount = 0.0;
-        if (indexBarcode.getValue("InitialInput", user) != null && indexBarcode.getStringVal("InitialInput", user).length() > 0) {
-            logInfo("Parsing InitialInput value: " + indexBarcode.getStringVal("InitialInput", user));
-            sampleInputAmount = Double.parseDouble(indexBarcode.getStringVal("InitialInput", user));
+        if (hasInitialInput(indexBarcode)) {
+            logInfo("Parsing InitialInput value: " + indexBarcode.getStringVal("InitialInput"));
         } else {
-            clientCallback.displayError(String.format("Sample Input for Sample '%s' cannot be null. Please correct the values", indexBarcode.getStringVal("SampleId", user)));
-            logError(String.format("Sample Input for Sample '%s' cannot be null. Please correct the values", indexBarcode.getStringVal("SampleId", user)));
+            clientCallback.displayError(String.format("Sample Input for Sample '%s' cannot be null. Please correct the values", indexBarcode.getStringVal("SampleId")));
+            logError(String.format("Sample Input for Sample '%s' cannot be null. Please correct the values", indexBarcode.getStringVal("SampleId")));
         }
-        Double targetAdapterConc = autoHelper.getCalculatedTargetAdapterConcentration(sampleInputAmount, plateSize, sampleType);
 
         String indexId = indexAssignmentConfig.getStringVal("IndexId", user);
         String indexTag = indexAssignmentConfig.getStringVal("IndexTag", user);
@@ -421,20 +607,17 @@ public class IndexBarcodeToSampleAutoAssigner extends DefaultGenericPlugin {
      * Split the List of DataRecords by alternate Well ID's. This is useful autoassignment when samples are on 384 well plates.
      *
      * @param protocolRecords
-     * @return List<List < DataRecord>>
-     * @throws ServerException
-     * @throws NotFound
-     * @throws RemoteException
+     * @return List<List < RecordFieldSnapshot>>
      */
-    private List<List<DataRecord>> getQuadrantsFromProtocols(List<DataRecord> protocolRecords) throws ServerException, NotFound, RemoteException {
-        List<List<DataRecord>> protocolsByQuadrant = new ArrayList<>();
-        List<DataRecord> quad1 = new ArrayList<>();
-        List<DataRecord> quad2 = new ArrayList<>();
-        List<DataRecord> quad3 = new ArrayList<>();
-        List<DataRecord> quad4 = new ArrayList<>();
-        for (DataRecord protocolRecord : protocolRecords) {
-            int rowValue = protocolRecord.getStringVal("SampleRow", user).charAt(0);
-            int colValue = Integer.parseInt(protocolRecord.getStringVal("SampleColumn", user));
+    private List<List<RecordFieldSnapshot>> getQuadrantsFromProtocols(List<RecordFieldSnapshot> protocolRecords) {
+        List<List<RecordFieldSnapshot>> protocolsByQuadrant = new ArrayList<>();
+        List<RecordFieldSnapshot> quad1 = new ArrayList<>();
+        List<RecordFieldSnapshot> quad2 = new ArrayList<>();
+        List<RecordFieldSnapshot> quad3 = new ArrayList<>();
+        List<RecordFieldSnapshot> quad4 = new ArrayList<>();
+        for (RecordFieldSnapshot protocolRecord : protocolRecords) {
+            int rowValue = protocolRecord.getStringVal("SampleRow").charAt(0);
+            int colValue = Integer.parseInt(protocolRecord.getStringVal("SampleColumn"));
 
             if (autoHelper.isOddValue(rowValue) && autoHelper.isOddValue(colValue)) {
                 quad1.add(protocolRecord);
@@ -469,6 +652,7 @@ public class IndexBarcodeToSampleAutoAssigner extends DefaultGenericPlugin {
      * Method to update 'IndexBarcode' records when samples are present on 96 well plates.
      *
      * @param indexAssignmentProtocolRecordsSortedColumnWise
+     * @param targetAdapterConcentrations
      * @param indexAssignmentConfigs
      * @param minAdapterVol
      * @param plateSize
@@ -478,8 +662,8 @@ public class IndexBarcodeToSampleAutoAssigner extends DefaultGenericPlugin {
      * @throws InvalidValue
      * @throws ServerException
      */
-    private void assignIndicesToSamples(List<DataRecord> indexAssignmentProtocolRecordsSortedColumnWise, List<DataRecord>
-            indexAssignmentConfigs, Double minAdapterVol, Integer plateSize, String sampleType, boolean isTCRseq, List<String> recipes) throws NotFound,
+    private void assignIndicesToSamples(List<RecordFieldSnapshot> indexAssignmentProtocolRecordsSortedColumnWise, Map<Long, Double> targetAdapterConcentrations,
+                                        List<DataRecord> indexAssignmentConfigs, Double minAdapterVol, Integer plateSize, String sampleType, boolean isTCRseq, List<String> recipes) throws NotFound,
             RemoteException, IoError, InvalidValue, ServerException {
         boolean isCrisprOrAmpliconSeq = recipes.stream().anyMatch(RECIPES_TO_USE_SPECIAL_ADAPTERS::contains);
         Integer positionOfLastUsedIndex = getPositionOfLastUsedIndex(indexAssignmentConfigs);
@@ -488,10 +672,10 @@ public class IndexBarcodeToSampleAutoAssigner extends DefaultGenericPlugin {
         Set<String> indexAssignmentConfigPlatesToUse = new HashSet<>();
         for (int i = updatedLastIndexUsed, j = 0; i < indexAssignmentConfigs.size() && j < indexAssignmentProtocolRecordsSortedColumnWise.size(); i++, j++) {
             DataRecord indexAssignmentConfig = indexAssignmentConfigs.get(i);
-            DataRecord indexBarcodeProtocolRecord = indexAssignmentProtocolRecordsSortedColumnWise.get(j);
-            Map<String, Object> indexAssignmentValues = setAssignedIndicesDataRecordFieldValues(indexBarcodeProtocolRecord,
-                    indexAssignmentConfig, minAdapterVol, maxPlateVolume, plateSize, sampleType, isTCRseq, isCrisprOrAmpliconSeq, recipes.get(0));
-            indexBarcodeProtocolRecord.setFields(indexAssignmentValues, user);
+            RecordFieldSnapshot indexBarcodeProtocolRecord = indexAssignmentProtocolRecordsSortedColumnWise.get(j);
+            Map<String, Object> indexAssignmentValues = setAssignedIndicesDataRecordFieldValues(indexBarcodeProtocolRecord, indexAssignmentConfig, minAdapterVol,
+                    maxPlateVolume, targetAdapterConcentrations.get(indexBarcodeProtocolRecord.getRecordId()), sampleType, isTCRseq, isCrisprOrAmpliconSeq, plateSize, recipes.get(0));
+            indexBarcodeProtocolRecord.getRecord().setFields(indexAssignmentValues, user);
             indexAssignmentConfigPlatesToUse.add(indexAssignmentConfig.getStringVal("AdapterPlateId", user));
             if (i == indexAssignmentConfigs.size() - 1 && j <= indexAssignmentProtocolRecordsSortedColumnWise.size()) {
                 i = -1; //setting to -1 because at end of this body it will increment by 1
@@ -508,6 +692,23 @@ public class IndexBarcodeToSampleAutoAssigner extends DefaultGenericPlugin {
         activeTask.getTask().getTaskOptions().put("_INDEXES_AUTO_ASIGNED", "");
     }
 
+    /**
+     * Remove the 'AutoIndexAssignmentConfig' DataRecords that were marked inactive while assigning a plate, so that the
+     * next plates using the same configs do not get depleted adapters.
+     *
+     * @param indexAssignmentConfigs
+     * @throws NotFound
+     * @throws RemoteException
+     */
+    private void removeInactiveConfigs(List<DataRecord> indexAssignmentConfigs) throws NotFound, RemoteException {
+        Iterator<DataRecord> configs = indexAssignmentConfigs.iterator();
+        while (configs.hasNext()) {
+            if (!configs.next().getBooleanVal("IsActive", user)) {
+                configs.remove();
+            }
+        }
+    }
+
     /**
      * Method to check for the DataRecords in 'AutoIndexAssignmentConfig' for which the value of 'IsDepelted' should to marked to true.
      *
@@ -564,4 +765,24 @@ public class IndexBarcodeToSampleAutoAssigner extends DefaultGenericPlugin {
         Set<Object> uniquePlates = new HashSet<>(plates);
         return new ArrayList<Object>(uniquePlates);
     }
-}
\ No newline at end of file
+
+    /**
+     * IndexBarcode records, configs and plate size of a plate, with the wells sorted into the groups that are assigned indexes
+     * together and the target adapter concentration for each IndexBarcode record by RecordId.
+     */
+    private static class PlateLayout {
+        private final List<RecordFieldSnapshot> indexBarcodes;
+        private final List<DataRecord> indexConfigs;
+        private final List<String> recipes;
+        private final Integer plateSize;
+        private List<List<RecordFieldSnapshot>> sortedProtocolGroups = Collections.emptyList();
+        private final Map<Long, Double> targetAdapterConcentrations = new HashMap<>();
+
+        PlateLayout(List<RecordFieldSnapshot> indexBarcodes, List<DataRecord> indexConfigs, List<String> recipes, Integer plateSize) {
+            this.indexBarcodes = indexBarcodes;
+            this.indexConfigs = indexConfigs;
+            this.recipes = recipes;
+            this.plateSize = plateSize;
+        }
+    }
+}
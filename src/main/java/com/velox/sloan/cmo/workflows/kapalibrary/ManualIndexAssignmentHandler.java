@@ -8,6 +8,7 @@ import com.velox.api.plugin.PluginResult;
 import com.velox.api.util.ServerException;
 import com.velox.sapioutils.server.plugin.DefaultGenericPlugin;
 import com.velox.sapioutils.shared.enums.PluginOrder;
+import com.velox.sloan.cmo.workflows.utils.DataRecordQuery;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 
 import java.rmi.RemoteException;
@@ -61,7 +62,8 @@ public class ManualIndexAssignmentHandler extends DefaultGenericPlugin {
                 logError("No Samples found attached to this task.");
                 return new PluginResult(false);
             }
-            List<DataRecord> activeIndexAssignmentConfigs = dataRecordManager.queryDataRecords(INDEX_ASSIGNMENT_CONFIG_DATATYPE, "IsActive=1", user);
+            List<DataRecord> activeIndexAssignmentConfigs = DataRecordQuery.from(INDEX_ASSIGNMENT_CONFIG_DATATYPE).whereEquals("IsActive", true)
+                    .execute(dataRecordManager, user);
             if (activeIndexAssignmentConfigs.isEmpty()) {
                 clientCallback.displayError("Could not find any active 'AutoIndexAssignmentConfig'");
                 logError("Could not find any active 'AutoIndexAssignmentConfig'");
@@ -7,10 +7,11 @@ import com.velox.api.datarecord.NotFound;
 import com.velox.api.plugin.PluginResult;
 import com.velox.api.util.ServerException;
 import com.velox.api.workflow.ActiveTask;
-import com.velox.sapioutils.server.plugin.DefaultGenericPlugin;
 import com.velox.sapioutils.shared.enums.PluginOrder;
 import com.velox.sapioutils.shared.managers.TaskUtilManager;
 import com.velox.sloan.cmo.workflows.IgoLimsPluginUtils.AlphaNumericComparator;
+import com.velox.sloan.cmo.workflows.utils.DataRecordQuery;
+import com.velox.sloan.cmo.workflows.utils.ProfiledGenericPlugin;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 
 import java.rmi.RemoteException;
@@ -32,7 +33,7 @@ import java.util.stream.Collectors;
  * @author sharmaa1@mskcc.org ~Ajay Sharma
  */
 
-public class SampleControlMaker extends DefaultGenericPlugin {
+public class SampleControlMaker extends ProfiledGenericPlugin {
     public SampleControlMaker() {
         setTaskEntry(true);
         setOrder(PluginOrder.MIDDLE.getOrder());
@@ -55,7 +56,8 @@ public class SampleControlMaker extends DefaultGenericPlugin {
         return false;
     }
 
-    public PluginResult run() throws com.velox.api.util.ServerException, RemoteException {
+    @Override
+    protected PluginResult runProfiled() throws com.velox.api.util.ServerException, RemoteException {
         try {
             List<DataRecord> attachedSampleRecords = activeTask.getAttachedDataRecords("Sample", user);
             addControls(attachedSampleRecords);
@@ -162,7 +164,7 @@ public class SampleControlMaker extends DefaultGenericPlugin {
      * @throws NotFound
      */
     private List<DataRecord> getAllControlRecordsByTypesToAdd(List<String> controlTypesToAdd) throws IoError, RemoteException, NotFound, ServerException {
-        List<DataRecord> allControlSampleRecords = dataRecordManager.queryDataRecords("Sample", "IsControl = 1", user);
+        List<DataRecord> allControlSampleRecords = DataRecordQuery.from("Sample").whereEquals("IsControl", true).execute(dataRecordManager, user);
         List<DataRecord> controlRecordsByTypesToAdd = new ArrayList<>();
         for (DataRecord pooledRecord : allControlSampleRecords) {
             String otherSampleId = pooledRecord.getStringVal("OtherSampleId", user);
@@ -269,7 +271,7 @@ public class SampleControlMaker extends DefaultGenericPlugin {
         dataRecordManager.addDataRecords("Sample", newControlSampleFields, user);
         dataRecordManager.storeAndCommit(String.format("Added Controls : %s", newControlSampleFields.toString()), user);
         activeTask.getTask().getTaskOptions().put("CONTROLS_ADDED", "");
-        List<DataRecord> updatedControlRecords = dataRecordManager.queryDataRecords("Sample", "SampleId", newControlSampleIds, user);
+        List<DataRecord> updatedControlRecords = DataRecordQuery.from("Sample").whereIn("SampleId", newControlSampleIds).execute(dataRecordManager, user);
         TaskUtilManager.attachRecordsToTask(activeTask, updatedControlRecords);
     }
 }
@@ -1,10 +1,10 @@
 package com.velox.sloan.cmo.workflows.labmedicine;
 
+import com.velox.sloan.cmo.workflows.IgoLimsPluginUtils.ExcelReader;
 import com.velox.util.DateFormatter;
-import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
 
+import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.*;
 
@@ -14,6 +14,7 @@ import java.util.*;
  * @author sharmaa1@mskcc.org ~Ajay Sharma
  */
 public class ThoracicBankedSampleDataReader implements ThoracicBankedSampleGenerator {
+    private final Random random = new Random();
 
     /**
      * Method to generate a random Alphanumeric ID for new Banked Samp to be stored in LIMS.
@@ -22,7 +23,6 @@ public class ThoracicBankedSampleDataReader implements ThoracicBankedSampleGener
      */
     @Override
     public String generateNewIdForThoracicBankedSample() {
-        Random random = new Random();
         int uuidSubstringLength = 6;
         String alphabets = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
         int lengthOfAlphabets = alphabets.length();
@@ -36,23 +36,36 @@ public class ThoracicBankedSampleDataReader implements ThoracicBankedSampleGener
 
     /**
      * Method to generate only unique IDs. If a generated unique ID exists in LIMS then it is skipped and a new ID is generated.
+     * The returned ID is added to existingUuids, so that it is not returned again.
      *
      * @param existingUuids
      * @return unique ID
      */
     @Override
-    public String compareIdToExistingIdsAndReturnUniqueId(List<String> existingUuids) {
-        String uniqueId = "";
-        if (!existingUuids.isEmpty()) {
-            do {
-                uniqueId = generateNewIdForThoracicBankedSample();
-            } while (existingUuids.contains(uniqueId));
-        } else {
+    public String compareIdToExistingIdsAndReturnUniqueId(Set<String> existingUuids) {
+        String uniqueId;
+        do {
             uniqueId = generateNewIdForThoracicBankedSample();
-        }
+        } while (!existingUuids.add(uniqueId));
         return uniqueId;
     }
 
+    /**
+     * Method to generate unique IDs for all samples in a file at once. The returned IDs are added to existingUuids.
+     *
+     * @param count
+     * @param existingUuids
+     * @return unique IDs
+     */
+    @Override
+    public List<String> generateUniqueIds(int count, Set<String> existingUuids) {
+        List<String> uniqueIds = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            uniqueIds.add(compareIdToExistingIdsAndReturnUniqueId(existingUuids));
+        }
+        return uniqueIds;
+    }
+
     /**
      * Method to valid if the excel file has valid extension.
      *
@@ -67,86 +80,90 @@ public class ThoracicBankedSampleDataReader implements ThoracicBankedSampleGener
     /**
      * Method to check if excel file has row data other than header row.
      *
-     * @param sheet
+     * @param excelReader
      * @return true/false
+     * @throws IOException
+     * @throws InvalidFormatException
      */
     @Override
-    public boolean excelFileHasData(Sheet sheet) {
-        return sheet.getLastRowNum() > 1;
+    public boolean excelFileHasData(ExcelReader excelReader) throws IOException, InvalidFormatException {
+        return excelReader.getLastRowNum() > 1;
     }
 
     /**
      * Method to check if excel file has valid Header values.
      *
-     * @param sheet
+     * @param excelReader
      * @param expectedHeaderValues
      * @param fileName
      * @return true/false
+     * @throws IOException
+     * @throws InvalidFormatException
      */
     @Override
-    public boolean excelFileHasValidHeader(Sheet sheet, List<String> expectedHeaderValues, String fileName) {
-        Row row = sheet.getRow(0);
-        List<String> headerValuesInFile = new ArrayList<>();
-        for (String value : expectedHeaderValues) {
-            for (Cell cell : row) {
-                if (value.equals(cell.getStringCellValue())) {
-                    headerValuesInFile.add(cell.getStringCellValue());
-                }
-            }
-        }
-        return headerValuesInFile.containsAll(expectedHeaderValues);
+    public boolean excelFileHasValidHeader(ExcelReader excelReader, List<String> expectedHeaderValues, String fileName) throws IOException, InvalidFormatException {
+        return excelReader.getHeaderValueMap().keySet().containsAll(expectedHeaderValues);
     }
 
     /**
      * Method to parse header values from the excel file.
      *
-     * @param sheet
+     * @param excelReader
      * @param headerValues
      * @return Map of Header value and Index position
+     * @throws IOException
+     * @throws InvalidFormatException
      */
     @Override
-    public Map<String, Integer> parseExcelFileHeader(Sheet sheet, List<String> headerValues) {
+    public Map<String, Integer> parseExcelFileHeader(ExcelReader excelReader, List<String> headerValues) throws IOException, InvalidFormatException {
         Map<String, Integer> headerNames = new HashMap<>();
-        Row headerRow = sheet.getRow(0);
         for (String value : headerValues) {
-            for (Cell cell : headerRow) {
-                if (value.equals(cell.getStringCellValue().trim())) {
-                    headerNames.put(cell.getStringCellValue(), cell.getColumnIndex());
-                }
+            Integer index = excelReader.getHeaderValueMap().get(value);
+            if (index != null) {
+                headerNames.put(value, index);
             }
         }
         return headerNames;
     }
 
     /**
-     * Method to read and create Thoracic Banked Sample records from excel file.
+     * Method to read and create Thoracic Banked Sample records from excel file. Rows are read one at a time with
+     * ExcelReader.
      *
-     * @param sheet
+     * @param excelReader
      * @param fileHeader
      * @param existingUuids
      * @return Thoracic Banked Sample records.
+     * @throws IOException
+     * @throws InvalidFormatException
      */
     @Override
-    public List<Map<String, Object>> readThoracicBankedSampleRecordsFromFile(Sheet sheet, Map<String, Integer> fileHeader, List<String> existingUuids) {
+    public List<Map<String, Object>> readThoracicBankedSampleRecordsFromFile(ExcelReader excelReader, Map<String, Integer> fileHeader, Set<String> existingUuids) throws IOException, InvalidFormatException {
         List<Map<String, Object>> thoracicBankSampleRecords = new ArrayList<>();
-        int firstRowAfterHeaderRowWithData = 1;
-        for (int rowNum = firstRowAfterHeaderRowWithData; rowNum < sheet.getPhysicalNumberOfRows(); rowNum++) {
+        SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm:ss");
+        excelReader.read(row -> {
             Map<String, Object> newThoracicSampleRecord = new HashMap<>();
-            Row row = sheet.getRow(rowNum);
-            newThoracicSampleRecord.put("Uuid", compareIdToExistingIdsAndReturnUniqueId(existingUuids));
-            newThoracicSampleRecord.put("AccessionNumber", row.getCell(fileHeader.get("Accession#")).getStringCellValue());
-            newThoracicSampleRecord.put("NumberOfTubes", row.getCell(fileHeader.get("#ofTubes")).getNumericCellValue());
-            newThoracicSampleRecord.put("TubeType", row.getCell(fileHeader.get("TubeType")).getStringCellValue());
-            newThoracicSampleRecord.put("AliquotNumber", row.getCell(fileHeader.get("Aliquot#")).getStringCellValue());
-            newThoracicSampleRecord.put("SpecimenType", row.getCell(fileHeader.get("SpecimenType")).getStringCellValue());
-            newThoracicSampleRecord.put("DrawDate", DateFormatter.formatDate(row.getCell(fileHeader.get("DrawDate")).getDateCellValue()));
-            newThoracicSampleRecord.put("Pi", row.getCell(fileHeader.get("Pi")).getStringCellValue());
-            newThoracicSampleRecord.put("DrawTime", new SimpleDateFormat("HH:mm:ss").format(row.getCell(fileHeader.get("DrawTime")).getDateCellValue()));
-            newThoracicSampleRecord.put("BoxDate", DateFormatter.formatDate(row.getCell(fileHeader.get("BoxDate")).getDateCellValue()));
-            newThoracicSampleRecord.put("Comments", row.getCell(fileHeader.get("Comments")).getStringCellValue());
+            newThoracicSampleRecord.put("AccessionNumber", row.getString(fileHeader.get("Accession#")));
+            newThoracicSampleRecord.put("NumberOfTubes", row.getNumeric(fileHeader.get("#ofTubes")));
+            newThoracicSampleRecord.put("TubeType", row.getString(fileHeader.get("TubeType")));
+            newThoracicSampleRecord.put("AliquotNumber", row.getString(fileHeader.get("Aliquot#")));
+            newThoracicSampleRecord.put("SpecimenType", row.getString(fileHeader.get("SpecimenType")));
+            newThoracicSampleRecord.put("DrawDate", DateFormatter.formatDate(row.getDate(fileHeader.get("DrawDate"))));
+            newThoracicSampleRecord.put("Pi", row.getString(fileHeader.get("Pi")));
+            newThoracicSampleRecord.put("DrawTime", timeFormat.format(row.getDate(fileHeader.get("DrawTime"))));
+            newThoracicSampleRecord.put("BoxDate", DateFormatter.formatDate(row.getDate(fileHeader.get("BoxDate"))));
+            newThoracicSampleRecord.put("Comments", row.getString(fileHeader.get("Comments")));
             newThoracicSampleRecord.put("ExemplarSampleStatus", "Received");
             thoracicBankSampleRecords.add(newThoracicSampleRecord);
-        }
+        });
+        assignUuids(thoracicBankSampleRecords, existingUuids);
         return thoracicBankSampleRecords;
     }
+
+    private void assignUuids(List<Map<String, Object>> thoracicBankSampleRecords, Set<String> existingUuids) {
+        List<String> uuids = generateUniqueIds(thoracicBankSampleRecords.size(), existingUuids);
+        for (int i = 0; i < thoracicBankSampleRecords.size(); i++) {
+            thoracicBankSampleRecords.get(i).put("Uuid", uuids.get(i));
+        }
+    }
 }
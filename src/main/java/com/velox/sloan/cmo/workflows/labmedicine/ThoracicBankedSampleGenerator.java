@@ -1,9 +1,12 @@
 package com.velox.sloan.cmo.workflows.labmedicine;
 
-import org.apache.poi.ss.usermodel.Sheet;
+import com.velox.sloan.cmo.workflows.IgoLimsPluginUtils.ExcelReader;
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Interface for reading Thoracic Banked Sample data.
@@ -13,15 +16,17 @@ import java.util.Map;
 public interface ThoracicBankedSampleGenerator {
     String generateNewIdForThoracicBankedSample();
 
-    String compareIdToExistingIdsAndReturnUniqueId(List<String> existingUuids);
+    String compareIdToExistingIdsAndReturnUniqueId(Set<String> existingUuids);
+
+    List<String> generateUniqueIds(int count, Set<String> existingUuids);
 
     boolean isValidExcelFile(String fileName);
 
-    boolean excelFileHasData(Sheet sheet);
+    boolean excelFileHasData(ExcelReader excelReader) throws IOException, InvalidFormatException;
 
-    boolean excelFileHasValidHeader(Sheet sheet, List<String> expectedHeaderValues, String fileName);
+    boolean excelFileHasValidHeader(ExcelReader excelReader, List<String> expectedHeaderValues, String fileName) throws IOException, InvalidFormatException;
 
-    Map<String, Integer> parseExcelFileHeader(Sheet sheet, List<String> headerValues);
+    Map<String, Integer> parseExcelFileHeader(ExcelReader excelReader, List<String> headerValues) throws IOException, InvalidFormatException;
 
-    List<Map<String, Object>> readThoracicBankedSampleRecordsFromFile(Sheet sheet, Map<String, Integer> fileHeader, List<String> existingUuids);
+    List<Map<String, Object>> readThoracicBankedSampleRecordsFromFile(ExcelReader excelReader, Map<String, Integer> fileHeader, Set<String> existingUuids) throws IOException, InvalidFormatException;
 }
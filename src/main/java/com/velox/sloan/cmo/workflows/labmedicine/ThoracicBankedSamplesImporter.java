@@ -3,17 +3,15 @@ package com.velox.sloan.cmo.workflows.labmedicine;
 import com.velox.api.datarecord.*;
 import com.velox.api.plugin.PluginResult;
 import com.velox.api.util.ServerException;
-import com.velox.sapioutils.server.plugin.DefaultGenericPlugin;
+import com.velox.sloan.cmo.workflows.IgoLimsPluginUtils.ExcelReader;
+import com.velox.sloan.cmo.workflows.utils.FieldValueIndex;
+import com.velox.sloan.cmo.workflows.utils.LatestRecordLookup;
+import com.velox.sloan.cmo.workflows.utils.ProfiledGenericPlugin;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.ss.usermodel.WorkbookFactory;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.rmi.RemoteException;
 import java.util.*;
 
@@ -22,7 +20,7 @@ import java.util.*;
  *
  * @author sharmaa1@mskcc.org ~Ajay Sharma
  */
-public class ThoracicBankedSamplesImporter extends DefaultGenericPlugin {
+public class ThoracicBankedSamplesImporter extends ProfiledGenericPlugin {
     private final List<String> excelFileHeaderValues = Arrays.asList("Accession#", "DrawDate", "DrawTime", "Pi", "TubeType", "#ofTubes", "BoxDate", "SpecimenType", "Aliquot#", "Comments");
     private final String LAB_MEDICINE_TRANSFER = "LabMedicineTransfer";
     private ThoracicBankedSampleDataReader dataReader = new ThoracicBankedSampleDataReader();
@@ -38,7 +36,8 @@ public class ThoracicBankedSamplesImporter extends DefaultGenericPlugin {
         return LAB_MEDICINE_TRANSFER.equals(dataTypeName);
     }
 
-    public PluginResult run() throws ServerException, RemoteException {
+    @Override
+    protected PluginResult runProfiled() throws ServerException, RemoteException {
         try {
             String excelFilePath = clientCallback.showFileDialog("Upload File with Thoracic bank sample information.", null);
             if (StringUtils.isBlank(excelFilePath)) {
@@ -48,22 +47,21 @@ public class ThoracicBankedSamplesImporter extends DefaultGenericPlugin {
             if (!isValidExcelFile(excelFilePath)) {
                 return new PluginResult(false);
             }
-            Sheet sheet = getSheetFromFile(excelFilePath);
-            if (!isValidFile(sheet, excelFileHeaderValues, excelFilePath)) {
+            ExcelReader excelReader = getExcelReaderFromFile(excelFilePath);
+            if (!isValidFile(excelReader, excelFileHeaderValues, excelFilePath)) {
                 return new PluginResult(false);
             }
-            Map<String, Integer> headerNames = parseHeader(sheet, excelFileHeaderValues);
-            List<Map<String, Object>> thoracicBankSampleRecords = getThoracicBankedSampleRecordsFromFile(sheet, headerNames);
-            long mostRecentRecordId = getMostRecentlyAddedLabMedicineRecordId();
-            List<DataRecord> labMedicineRecords = dataRecordManager.queryDataRecords(LAB_MEDICINE_TRANSFER, "RecordId= '" + mostRecentRecordId + "'", user);
-            if (labMedicineRecords.isEmpty()) {
+            Map<String, Integer> headerNames = parseHeader(excelReader, excelFileHeaderValues);
+            List<Map<String, Object>> thoracicBankSampleRecords = getThoracicBankedSampleRecordsFromFile(excelReader, headerNames);
+            DataRecord labMedicineRecord = LatestRecordLookup.getLatestRecord(LAB_MEDICINE_TRANSFER, dataRecordManager, user);
+            if (labMedicineRecord == null) {
                 clientCallback.displayError("There are no records under '" + LAB_MEDICINE_TRANSFER + "'. Please create a record under '" + LAB_MEDICINE_TRANSFER + "' and then try again.");
                 return new PluginResult(false);
             }
-            if (!shouldAddChildRecordsToLabMedicineRecord(labMedicineRecords.get(0))) {
+            if (!shouldAddChildRecordsToLabMedicineRecord(labMedicineRecord)) {
                 return new PluginResult(false);
             } else {
-                labMedicineRecords.get(0).addChildren("ThoracicBankTransfer", thoracicBankSampleRecords, user);
+                labMedicineRecord.addChildren("ThoracicBankTransfer", thoracicBankSampleRecords, user);
                 dataRecordManager.storeAndCommit(String.format("Added %d ThoracicBankTransfer samples", thoracicBankSampleRecords.size()), user);
                 clientCallback.displayInfo(String.format("Added %d new ThoracicBankTransfer sample records.", thoracicBankSampleRecords.size()));
             }
@@ -107,18 +105,14 @@ public class ThoracicBankedSamplesImporter extends DefaultGenericPlugin {
     }
 
     /**
-     * Method to get excel sheet containing data.
+     * Method to get a streaming reader for the excel file.
      *
      * @param excelFilePath
-     * @return Excel Sheet
-     * @throws IOException
-     * @throws InvalidFormatException
+     * @return ExcelReader
      * @throws ServerException
      */
-    private Sheet getSheetFromFile(String excelFilePath) throws IOException, InvalidFormatException, ServerException {
-        InputStream input = new ByteArrayInputStream(clientCallback.readBytes(excelFilePath));
-        Workbook workbook = WorkbookFactory.create(input);
-        return workbook.getSheetAt(0);
+    private ExcelReader getExcelReaderFromFile(String excelFilePath) throws ServerException {
+        return new ExcelReader(clientCallback.readBytes(excelFilePath));
     }
 
     /**
@@ -140,19 +134,19 @@ public class ThoracicBankedSamplesImporter extends DefaultGenericPlugin {
     /**
      * Method to check if excel file is valid file.
      *
-     * @param sheet
+     * @param excelReader
      * @param headerValues
      * @param fileName
      * @return true/false
      * @throws ServerException
      */
-    private boolean isValidFile(Sheet sheet, List<String> headerValues, String fileName) throws ServerException, RemoteException {
-        if (!dataReader.excelFileHasData(sheet)) {
+    private boolean isValidFile(ExcelReader excelReader, List<String> headerValues, String fileName) throws ServerException, RemoteException, IOException, InvalidFormatException {
+        if (!dataReader.excelFileHasData(excelReader)) {
             logError(String.format("uploaded File '%s' is Empty. File must have more than 1 rows with data.", fileName));
             clientCallback.displayError(String.format("uploaded File '%s' is Empty. File must have more than 1 rows with data.", fileName));
             return false;
         }
-        if (!dataReader.excelFileHasValidHeader(sheet, headerValues, fileName)) {
+        if (!dataReader.excelFileHasValidHeader(excelReader, headerValues, fileName)) {
             logError(String.format("Uploaded file '%s' Has invalid header row.", fileName));
             clientCallback.displayError(String.format("Uploaded file '%s' Has invalid header row.", fileName));
             return false;
@@ -163,68 +157,40 @@ public class ThoracicBankedSamplesImporter extends DefaultGenericPlugin {
     /**
      * Method to parse header values from the excel file.
      *
-     * @param sheet
+     * @param excelReader
      * @param headerValues
      * @return
      */
-    private Map<String, Integer> parseHeader(Sheet sheet, List<String> headerValues) {
-        return dataReader.parseExcelFileHeader(sheet, headerValues);
+    private Map<String, Integer> parseHeader(ExcelReader excelReader, List<String> headerValues) throws IOException, InvalidFormatException {
+        return dataReader.parseExcelFileHeader(excelReader, headerValues);
     }
 
     /**
      * Method to read Thoracic Banked Sample records from excel file.
      *
-     * @param sheet
+     * @param excelReader
      * @param fileHeader
      * @return List of Maps for Thoracic Banked Sample records
      * @throws IoError
      * @throws RemoteException
      * @throws NotFound
      */
-    private List<Map<String, Object>> getThoracicBankedSampleRecordsFromFile(Sheet sheet, Map<String, Integer> fileHeader) throws IoError, RemoteException, NotFound, ServerException {
-        List<String> existingUuids = getExistingUuids();
-        return dataReader.readThoracicBankedSampleRecordsFromFile(sheet, fileHeader, existingUuids);
+    private List<Map<String, Object>> getThoracicBankedSampleRecordsFromFile(ExcelReader excelReader, Map<String, Integer> fileHeader) throws IoError, IOException, InvalidFormatException, NotFound, ServerException {
+        Set<String> existingUuids = getExistingUuids();
+        return dataReader.readThoracicBankedSampleRecordsFromFile(excelReader, fileHeader, existingUuids);
     }
 
     /**
-     * Method to get the last LabMedicine DataRecord added to LIMS.
+     * Get all the existing Uuids related to Thoracic Banked Sample in LIMS. Only the Uuids of records added since the last
+     * import are fetched from LIMS, the others are kept in a FieldValueIndex.
      *
-     * @return RecordID for the DataRecord
-     * @throws ServerException
-     * @throws NotFound
-     * @throws RemoteException
-     * @throws IoError
-     */
-    private long getMostRecentlyAddedLabMedicineRecordId() throws ServerException, NotFound, RemoteException, IoError {
-        List<DataRecord> listOfRecords = dataRecordManager.queryDataRecords(LAB_MEDICINE_TRANSFER, null, user);
-        List<Long> listOfLabMedicineRecordIds = new ArrayList<>();
-        for (DataRecord record : listOfRecords) {
-            Long recordId = record.getLongVal("RecordId", user);
-            listOfLabMedicineRecordIds.add(recordId);
-        }
-        String errorMessage = "There are no records under " + LAB_MEDICINE_TRANSFER + ". Please create a record under '" + LAB_MEDICINE_TRANSFER + "' and then try again.";
-        if (listOfLabMedicineRecordIds.isEmpty()) {
-            clientCallback.displayError(errorMessage);
-            throw new NotFound(errorMessage);
-        }
-        return Collections.max(listOfLabMedicineRecordIds);
-    }
-
-    /**
-     * Get all the existing Uuids related to Thoracic Banked Sample in LIMS.
-     *
-     * @return List of existing UUIDS
+     * @return Set of existing UUIDS
      * @throws RemoteException
      * @throws NotFound
      * @throws IoError
      */
-    private List<String> getExistingUuids() throws RemoteException, NotFound, IoError, ServerException {
-        List<String> existingUuids = new ArrayList<>();
-        List<DataRecord> thoracicBankedSamples = dataRecordManager.queryDataRecords("ThoracicBankTransfer", null, user);
-        for (DataRecord record : thoracicBankedSamples) {
-            existingUuids.add(record.getStringVal("Uuid", user));
-        }
-        return existingUuids;
+    private Set<String> getExistingUuids() throws RemoteException, NotFound, IoError, ServerException {
+        return FieldValueIndex.forField("ThoracicBankTransfer", "Uuid").getValues(dataRecordManager, user);
     }
 
     /**
@@ -258,7 +224,7 @@ public class ThoracicBankedSamplesImporter extends DefaultGenericPlugin {
     private boolean shouldAddChildRecordsToLabMedicineRecord(DataRecord mostRecentLabMedicineRecord) throws IoError, RemoteException, NotFound, ServerException {
         boolean addChildRecords = true;
         if (mostRecentLabMedicineRecord.hasChildren(user)) {
-            Long recordId = mostRecentLabMedicineRecord.getLongVal("RecordId", user);
+            long recordId = mostRecentLabMedicineRecord.getRecordId();
             logInfo(String.format("Found child samples on record Id '%d", recordId));
             List<DataRecord> childRecords = mostRecentLabMedicineRecord.getDescendantsOfType("ThoracicBankTransfer", user);
             addChildRecords = clientCallback.showOkCancelDialog(String.format("The LabMedicine DataRecordId '%d' has child samples", recordId)
@@ -0,0 +1,171 @@
+package com.velox.sloan.cmo.workflows.micronics;
+
+import com.velox.api.datarecord.DataRecord;
+import com.velox.api.datarecord.DataRecordManager;
+import com.velox.api.datarecord.IoError;
+import com.velox.api.datarecord.NotFound;
+import com.velox.api.user.User;
+import com.velox.api.util.ServerException;
+import com.velox.sloan.cmo.workflows.utils.DataAccessUtils;
+import com.velox.sloan.cmo.workflows.utils.DataRecordQuery;
+import com.velox.sloan.cmo.workflows.utils.RecordFieldSnapshot;
+
+import java.rmi.RemoteException;
+import java.util.*;
+import java.util.function.LongSupplier;
+
+/**
+ * Process wide read-through cache of 'MicronicTubesTareWeight' values by MicronicTubeBarcode, shared by the Micronic
+ * plugins. The same racks are scanned many times a day, so tubes read once are served from memory and only barcodes
+ * that are not cached are queried.
+ * <p>
+ * The cache holds at most maxEntries tubes and evicts the least recently used tubes first. Plugins that create or
+ * update tubes invalidate their barcodes. Entries expire after maxAgeMillis to pick up edits made outside the plugins. Barcodes without a tube in LIMS are not cached.
+ */
+public class MicronicTubeTareWeightCache {
+    public static final int MAX_ENTRIES = 20000;
+    public static final long MAX_AGE_MILLIS = 60 * 60 * 1000L;
+    private static final String MICRONIC_TUBE_DATATYPE = "MicronicTubesTareWeight";
+    private static final MicronicTubeTareWeightCache INSTANCE = new MicronicTubeTareWeightCache(MAX_ENTRIES, MAX_AGE_MILLIS, System::currentTimeMillis);
+
+    private final long maxAgeMillis;
+    private final LongSupplier clock;
+    private final Map<String, MicronicTube> tubesByBarcode;
+
+    MicronicTubeTareWeightCache(int maxEntries, long maxAgeMillis, LongSupplier clock) {
+        this.maxAgeMillis = maxAgeMillis;
+        this.clock = clock;
+        this.tubesByBarcode = new LinkedHashMap<String, MicronicTube>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, MicronicTube> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public static MicronicTubeTareWeightCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Get the tubes with the passed barcodes. Barcodes that are not cached are fetched with a single IN query.
+     *
+     * @param barcodes
+     * @param dataRecordManager
+     * @param user
+     * @return Map of MicronicTubeBarcode to tube, without the barcodes that have no tube in LIMS.
+     * @throws NotFound
+     * @throws IoError
+     * @throws RemoteException
+     * @throws ServerException
+     */
+    public Map<String, MicronicTube> getTubes(Collection<String> barcodes, DataRecordManager dataRecordManager, User user) throws NotFound, IoError, RemoteException, ServerException {
+        Map<String, MicronicTube> tubes = new HashMap<>();
+        Set<String> barcodesToFetch = new LinkedHashSet<>();
+        synchronized (tubesByBarcode) {
+            long now = clock.getAsLong();
+            for (String barcode : barcodes) {
+                MicronicTube tube = tubesByBarcode.get(barcode);
+                if (tube != null && now - tube.loadedAt <= maxAgeMillis) {
+                    tubes.put(barcode, tube);
+                } else {
+                    barcodesToFetch.add(barcode);
+                }
+            }
+        }
+        if (barcodesToFetch.isEmpty()) {
+            return tubes;
+        }
+        List<DataRecord> records = DataRecordQuery.from(MICRONIC_TUBE_DATATYPE).whereIn("MicronicTubeBarcode", barcodesToFetch)
+                .execute(dataRecordManager, user);
+        Map<String, List<RecordFieldSnapshot>> recordsByBarcode = new HashMap<>();
+        for (RecordFieldSnapshot record : DataAccessUtils.getFieldSnapshots(records, dataRecordManager, user)) {
+            String barcode = record.getStringVal("MicronicTubeBarcode");
+            if (barcode != null && barcodesToFetch.contains(barcode)) {
+                recordsByBarcode.computeIfAbsent(barcode, k -> new ArrayList<>()).add(record);
+            }
+        }
+        long loadedAt = clock.getAsLong();
+        Map<String, MicronicTube> fetchedTubes = new HashMap<>();
+        for (Map.Entry<String, List<RecordFieldSnapshot>> entry : recordsByBarcode.entrySet()) {
+            fetchedTubes.put(entry.getKey(), MicronicTube.fromRecords(entry.getKey(), entry.getValue(), loadedAt));
+        }
+        synchronized (tubesByBarcode) {
+            tubesByBarcode.putAll(fetchedTubes);
+        }
+        tubes.putAll(fetchedTubes);
+        return tubes;
+    }
+
+    /**
+     * Remove the tubes with the passed barcodes from the cache. Call after creating, updating or deleting tubes.
+     *
+     * @param barcodes
+     */
+    public void invalidate(Collection<String> barcodes) {
+        synchronized (tubesByBarcode) {
+            for (String barcode : barcodes) {
+                tubesByBarcode.remove(barcode);
+            }
+        }
+    }
+
+    public void clear() {
+        synchronized (tubesByBarcode) {
+            tubesByBarcode.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (tubesByBarcode) {
+            return tubesByBarcode.size();
+        }
+    }
+
+    /**
+     * Values of the 'MicronicTubesTareWeight' records with a barcode. When a barcode has more than one record, the tare
+     * weight of the last record is used and the tube is assigned if any of the records is assigned to a sample.
+     */
+    public static class MicronicTube {
+        private final String barcode;
+        private final Double tareWeight;
+        private final boolean assignedToSample;
+        private final List<Long> recordIds;
+        private final long loadedAt;
+
+        MicronicTube(String barcode, Double tareWeight, boolean assignedToSample, List<Long> recordIds, long loadedAt) {
+            this.barcode = barcode;
+            this.tareWeight = tareWeight;
+            this.assignedToSample = assignedToSample;
+            this.recordIds = Collections.unmodifiableList(new ArrayList<>(recordIds));
+            this.loadedAt = loadedAt;
+        }
+
+        private static MicronicTube fromRecords(String barcode, List<RecordFieldSnapshot> records, long loadedAt) {
+            List<Long> recordIds = new ArrayList<>();
+            boolean assignedToSample = false;
+            for (RecordFieldSnapshot record : records) {
+                recordIds.add(record.getRecordId());
+                assignedToSample = assignedToSample || record.getBooleanVal("AssignedToSample");
+            }
+            Double tareWeight = records.get(records.size() - 1).getDoubleVal("MicronicTubeWeight");
+            return new MicronicTube(barcode, tareWeight, assignedToSample, recordIds, loadedAt);
+        }
+
+        public String getBarcode() {
+            return barcode;
+        }
+
+        public Double getTareWeight() {
+            return tareWeight;
+        }
+
+        public boolean isAssignedToSample() {
+            return assignedToSample;
+        }
+
+        public List<Long> getRecordIds() {
+            return recordIds;
+        }
+    }
+}
@@ -1,12 +1,11 @@
 package com.velox.sloan.cmo.workflows.micronics;
 
-import com.velox.api.datarecord.DataRecord;
 import com.velox.api.datarecord.InvalidValue;
 import com.velox.api.datarecord.IoError;
 import com.velox.api.datarecord.NotFound;
 import com.velox.api.plugin.PluginResult;
 import com.velox.api.util.ServerException;
-import com.velox.sapioutils.server.plugin.DefaultGenericPlugin;
+import com.velox.sloan.cmo.workflows.utils.ProfiledGenericPlugin;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 
@@ -20,9 +19,10 @@ import java.util.Map;
  *
  * @author sharmaa1@mskcc.org ~Ajay Sharma
  */
-public class NewMicronicTubeRecordGenerator extends DefaultGenericPlugin {
+public class NewMicronicTubeRecordGenerator extends ProfiledGenericPlugin {
     private String[] permittedUsers = {"Sample Receiving", "Sapio Admin"};
     private NewMicronicTubeTareWeightImporter fileDataReader = new NewMicronicTubeTareWeightImporter();
+    private MicronicTubeTareWeightCache tareWeightCache = MicronicTubeTareWeightCache.getInstance();
 
     public NewMicronicTubeRecordGenerator() {
         setActionMenu(true);
@@ -34,7 +34,7 @@ public class NewMicronicTubeRecordGenerator extends DefaultGenericPlugin {
     }
 
     @Override
-    public PluginResult run() throws ServerException, RemoteException {
+    protected PluginResult runProfiled() throws ServerException, RemoteException {
         try {
             String excelFilePath = clientCallback.showFileDialog("Upload File with micronic tube information.", null);
             byte[] fileToBytes = clientCallback.readBytes(excelFilePath);
@@ -50,6 +50,7 @@ public class NewMicronicTubeRecordGenerator extends DefaultGenericPlugin {
             if (shouldAddNewMicronicRecords(micronicTubes)) {
                 dataRecordManager.addDataRecords("MicronicTubesTareWeight", micronicTubes, user);
                 dataRecordManager.storeAndCommit(String.format("Added %d new micronic tubes with weights.", micronicTubes.size()), user);
+                tareWeightCache.invalidate(getMicronicTubeBarcodes(micronicTubes));
                 clientCallback.displayInfo(String.format("Added %d new 'Micronic Tube Tare Weight' records", micronicTubes.size()));
             } else {
                 return new PluginResult(false);
@@ -161,19 +162,18 @@ public class NewMicronicTubeRecordGenerator extends DefaultGenericPlugin {
     }
 
     /**
-     * Method to get existing MicronicTube Barcodes stored under MicronicTubeTareWeight DataType
+     * Method to get the barcodes in the passed list that already exist under MicronicTubeTareWeight DataType. Only the
+     * passed barcodes are looked up, through the shared tare weight cache.
      *
-     * @param existingMicronicTubes
-     * @return List of MicronicTube Barcodes
+     * @param micronicTubeBarcodes
+     * @return List of existing MicronicTube Barcodes
      * @throws NotFound
+     * @throws IoError
      * @throws RemoteException
+     * @throws ServerException
      */
-    private List<String> getExistingMicronicBarcodes(List<DataRecord> existingMicronicTubes) throws NotFound, RemoteException {
-        List<String> existingMicronicBarcodes = new ArrayList<>();
-        for (DataRecord record : existingMicronicTubes) {
-            existingMicronicBarcodes.add(record.getStringVal("MicronicTubeBarcode", user));
-        }
-        return existingMicronicBarcodes;
+    private List<String> getExistingMicronicBarcodes(List<String> micronicTubeBarcodes) throws NotFound, IoError, RemoteException, ServerException {
+        return new ArrayList<>(tareWeightCache.getTubes(micronicTubeBarcodes, dataRecordManager, user).keySet());
     }
 
     /**
@@ -236,14 +236,8 @@ public class NewMicronicTubeRecordGenerator extends DefaultGenericPlugin {
                     + "\ncorrect file with correct formatting.");
             return false;
         }
-        List<DataRecord> existingMicronicTubes = dataRecordManager.queryDataRecords("MicronicTubesTareWeight", null, user);
-        List<String> existingMicronicTubeBarcodes = new ArrayList<>();
-        if (existingMicronicTubes.isEmpty()) {
-            logInfo("No 'MicronicTubesTareWeight' datatype records exist yet. Probably because this is the first import of New Micronic Tube Records.");
-        } else {
-            existingMicronicTubeBarcodes = getExistingMicronicBarcodes(existingMicronicTubes);
-        }
         List<String> newMicronicBarcodes = getMicronicTubeBarcodes(micronicTubes);
+        List<String> existingMicronicTubeBarcodes = getExistingMicronicBarcodes(newMicronicBarcodes);
         return !hasDuplicateBarcodesInData(existingMicronicTubeBarcodes, newMicronicBarcodes);
     }
 }
@@ -6,10 +6,12 @@ import com.velox.api.datarecord.IoError;
 import com.velox.api.datarecord.NotFound;
 import com.velox.api.plugin.PluginResult;
 import com.velox.api.util.ServerException;
-import com.velox.api.exception.recoverability.serverexception.UnrecoverableServerException;
 import com.velox.sapio.commons.exemplar.plugin.PluginOrder;
-import com.velox.sapioutils.server.plugin.DefaultGenericPlugin;
 import com.velox.sloan.cmo.recmodels.QCDatumModel;
+import com.velox.sloan.cmo.workflows.utils.DataRecordFieldCache;
+import com.velox.sloan.cmo.workflows.utils.ProfiledGenericPlugin;
+import com.velox.sloan.cmo.workflows.utils.RecordFieldSnapshot;
+import com.velox.sloan.cmo.workflows.utils.SampleLineageCache;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 
@@ -22,7 +24,7 @@ import java.util.*;
  *
  * @author sharmaa1@mskcc.org ~Ajay Sharma
  */
-public class CustomFieldsRetriever extends DefaultGenericPlugin {
+public class CustomFieldsRetriever extends ProfiledGenericPlugin {
 
     private static Set<String> unpooledLibTypes = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
            "dna/cdna library", "dna library", "cdna library", "protein library", "ont library"
@@ -30,6 +32,7 @@ public class CustomFieldsRetriever extends DefaultGenericPlugin {
     private static Set<String> pooledLibTypes = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
             "pooled library"
     )));
+    private SampleLineageCache lineageCache;
 
     public CustomFieldsRetriever() {
         setTaskEntry(true);
@@ -42,7 +45,7 @@ public class CustomFieldsRetriever extends DefaultGenericPlugin {
     }
 
     @Override
-    public PluginResult run() throws ServerException, RemoteException {
+    protected PluginResult runProfiled() throws ServerException, RemoteException {
         try {
             List<DataRecord> attachedSamples = activeTask.getAttachedDataRecords("Sample", user);
             List<DataRecord> attachedPlanningProtocols = activeTask.getAttachedDataRecords("PlanningStepProtocol1", user);
@@ -92,32 +95,6 @@ public class CustomFieldsRetriever extends DefaultGenericPlugin {
     }
 
 
-    /**
-     * This method is designed to find and return the Sample in hierarchy with a desired child DataType
-     *
-     * @param sample
-     * @param childDataType
-     * @return Sample DataRecord
-     * @throws IoError
-     * @throws RemoteException
-     */
-    private DataRecord getSampleParentWithDesiredChildRecord(DataRecord sample, String childDataType) throws IoError, RemoteException, NotFound, UnrecoverableServerException, ServerException {
-        DataRecord record = null;
-        Stack<DataRecord> samplePile = new Stack<>();
-        samplePile.push(sample);
-        do {
-            DataRecord startSample = samplePile.pop();
-            List<DataRecord> parentRecords = startSample.getParentsOfType("Sample", user);
-            if (!parentRecords.isEmpty() && parentRecords.get(0).getChildrenOfType(childDataType, user).length > 0) {
-                record = parentRecords.get(0);
-            }
-            if (!parentRecords.isEmpty() && record == null) {
-                samplePile.push(parentRecords.get(0));
-            }
-        } while (!samplePile.empty());
-        return record;
-    }
-
     /**
      * This method looks for Sample that has a child record of type IndexBarcode. If not found on the first sample,
      * the method keep looking upstream the parent hierarchy of the sample until a parent with a child record of IndexBarcode
@@ -130,15 +107,14 @@ public class CustomFieldsRetriever extends DefaultGenericPlugin {
      * @throws IoError
      */
     private String getSampleLibraryIndexId(DataRecord sample) throws NotFound, RemoteException, IoError, ServerException {
-        DataRecord[] indexBarcodeRecord = sample.getChildrenOfType("IndexBarcode", user);
+        List<DataRecord> indexBarcodeRecords = lineageCache.getChildren(sample, "IndexBarcode");
         String indexId = null;
-        if (indexBarcodeRecord.length > 0) {
-            return indexBarcodeRecord[0].getStringVal("IndexId", user);
+        if (!indexBarcodeRecords.isEmpty()) {
+            return indexBarcodeRecords.get(0).getStringVal("IndexId", user);
         } else {
-            DataRecord parentSample = getSampleParentWithDesiredChildRecord(sample, "IndexBarcode");
-            if (parentSample != null && parentSample.getChildrenOfType("IndexBarcode", user).length > 0
-                    && parentSample.getChildrenOfType("IndexBarcode", user)[0].getValue("IndexId", user) != null) {
-                indexId = parentSample.getChildrenOfType("IndexBarcode", user)[0].getStringVal("IndexId", user);
+            DataRecord parentSample = lineageCache.getParentSampleWithChildOfType(sample, "IndexBarcode");
+            if (parentSample != null && lineageCache.getChildren(parentSample, "IndexBarcode").get(0).getValue("IndexId", user) != null) {
+                indexId = lineageCache.getChildren(parentSample, "IndexBarcode").get(0).getStringVal("IndexId", user);
             }
         }
         if (indexId != null) {
@@ -163,14 +139,13 @@ public class CustomFieldsRetriever extends DefaultGenericPlugin {
      */
     private String getSampleLibraryIndexTag(DataRecord sample) throws NotFound, RemoteException, IoError, ServerException {
         String indexTag = null;
-        DataRecord[] indexBarcodeRecords = sample.getChildrenOfType("IndexBarcode", user);
-        if (indexBarcodeRecords.length > 0) {
-            return indexBarcodeRecords[0].getStringVal("IndexTag", user);
+        List<DataRecord> indexBarcodeRecords = lineageCache.getChildren(sample, "IndexBarcode");
+        if (!indexBarcodeRecords.isEmpty()) {
+            return indexBarcodeRecords.get(0).getStringVal("IndexTag", user);
         } else {
-            DataRecord parentSample = getSampleParentWithDesiredChildRecord(sample, "IndexBarcode");
-            if (parentSample != null && parentSample.getChildrenOfType("IndexBarcode", user).length > 0
-                    && parentSample.getChildrenOfType("IndexBarcode", user)[0].getValue("IndexTag", user) != null) {
-                indexTag = parentSample.getChildrenOfType("IndexBarcode", user)[0].getStringVal("IndexTag", user);
+            DataRecord parentSample = lineageCache.getParentSampleWithChildOfType(sample, "IndexBarcode");
+            if (parentSample != null && lineageCache.getChildren(parentSample, "IndexBarcode").get(0).getValue("IndexTag", user) != null) {
+                indexTag = lineageCache.getChildren(parentSample, "IndexBarcode").get(0).getStringVal("IndexTag", user);
             }
         }
         if (indexTag != null) {
@@ -197,15 +172,15 @@ public class CustomFieldsRetriever extends DefaultGenericPlugin {
         List<DataRecord> samplesInPool = new ArrayList<>();
         boolean found = false;
         do {
-            List<DataRecord> parentSamples = startingSample.getParentsOfType("Sample", user);
-            String sampleType = parentSamples.get(0).getStringVal("ExemplarSampleType", user).toLowerCase();
+            List<DataRecord> parentSamples = lineageCache.getParents(startingSample, "Sample");
+            String sampleType = lineageCache.getFieldCache().getStringVal(parentSamples.get(0), "ExemplarSampleType").toLowerCase();
             if(parentSamples.size() > 0 && unpooledLibTypes.contains(sampleType)){
                 samplesInPool = parentSamples;
                 found = true;
             } else {
                 startingSample = parentSamples.get(0);
             }
-        } while (!found && startingSample.getParentsOfType("Sample", user).size() > 0);
+        } while (!found && !lineageCache.getParents(startingSample, "Sample").isEmpty());
         return samplesInPool;
     }
 
@@ -268,14 +243,13 @@ public class CustomFieldsRetriever extends DefaultGenericPlugin {
     private Double getRequestedReadsForSample(DataRecord sample) throws IoError, RemoteException, NotFound, ServerException, InvalidValue {
         String sequencingRequirementDatatype = getSequencingRequirementDataType(sample);
         Double requestedReads = null;
-        DataRecord[] sequencingRequirementRecords = sample.getChildrenOfType(sequencingRequirementDatatype, user);
-        if (sequencingRequirementRecords.length > 0 && sequencingRequirementRecords[0].getValue("RequestedReads", user) != null) {
-            requestedReads = sequencingRequirementRecords[0].getDoubleVal("RequestedReads", user);
+        List<DataRecord> sequencingRequirementRecords = lineageCache.getChildren(sample, sequencingRequirementDatatype);
+        if (!sequencingRequirementRecords.isEmpty() && sequencingRequirementRecords.get(0).getValue("RequestedReads", user) != null) {
+            requestedReads = sequencingRequirementRecords.get(0).getDoubleVal("RequestedReads", user);
         } else {
-            DataRecord parentSample = getSampleParentWithDesiredChildRecord(sample, sequencingRequirementDatatype);
-            if (parentSample != null && parentSample.getChildrenOfType(sequencingRequirementDatatype, user).length > 0
-                    && parentSample.getChildrenOfType(sequencingRequirementDatatype, user)[0].getValue("RequestedReads", user) != null) {
-                requestedReads = parentSample.getChildrenOfType(sequencingRequirementDatatype, user)[0].getDoubleVal("RequestedReads", user);
+            DataRecord parentSample = lineageCache.getParentSampleWithChildOfType(sample, sequencingRequirementDatatype);
+            if (parentSample != null && lineageCache.getChildren(parentSample, sequencingRequirementDatatype).get(0).getValue("RequestedReads", user) != null) {
+                requestedReads = lineageCache.getChildren(parentSample, sequencingRequirementDatatype).get(0).getDoubleVal("RequestedReads", user);
             }
         }
         if (requestedReads != null && requestedReads > 0.0) {
@@ -302,14 +276,13 @@ public class CustomFieldsRetriever extends DefaultGenericPlugin {
     private Integer getCoverageTargetForSample(DataRecord sample) throws IoError, RemoteException, NotFound, ServerException, InvalidValue {
         String sequencingRequirementDatatype = getSequencingRequirementDataType(sample);
         Integer coverageTarget = null;
-        DataRecord[] sequencingRequirementRecords = sample.getChildrenOfType(sequencingRequirementDatatype, user);
-        if (sequencingRequirementRecords.length > 0 && sequencingRequirementRecords[0].getValue("CoverageTarget", user) != null) {
-            coverageTarget = sequencingRequirementRecords[0].getIntegerVal("CoverageTarget", user);
+        List<DataRecord> sequencingRequirementRecords = lineageCache.getChildren(sample, sequencingRequirementDatatype);
+        if (!sequencingRequirementRecords.isEmpty() && sequencingRequirementRecords.get(0).getValue("CoverageTarget", user) != null) {
+            coverageTarget = sequencingRequirementRecords.get(0).getIntegerVal("CoverageTarget", user);
         } else {
-            DataRecord parentSample = getSampleParentWithDesiredChildRecord(sample, sequencingRequirementDatatype);
-            if (parentSample != null && parentSample.getChildrenOfType(sequencingRequirementDatatype, user).length > 0
-                    && parentSample.getChildrenOfType(sequencingRequirementDatatype, user)[0].getValue("CoverageTarget", user) != null) {
-                coverageTarget = parentSample.getChildrenOfType(sequencingRequirementDatatype, user)[0].getIntegerVal("CoverageTarget", user);
+            DataRecord parentSample = lineageCache.getParentSampleWithChildOfType(sample, sequencingRequirementDatatype);
+            if (parentSample != null && lineageCache.getChildren(parentSample, sequencingRequirementDatatype).get(0).getValue("CoverageTarget", user) != null) {
+                coverageTarget = lineageCache.getChildren(parentSample, sequencingRequirementDatatype).get(0).getIntegerVal("CoverageTarget", user);
             }
         }
         if (coverageTarget != null && coverageTarget > 0) {
@@ -360,14 +333,13 @@ public class CustomFieldsRetriever extends DefaultGenericPlugin {
     private String getSequencingRunTypeForSample(DataRecord sample) throws IoError, RemoteException, NotFound, ServerException, InvalidValue {
         String sequencingRequirementDatatype = getSequencingRequirementDataType(sample);
         String sequencingRunType = null;
-        DataRecord[] sequencingRequirementRecords = sample.getChildrenOfType(sequencingRequirementDatatype, user);
-        if (sequencingRequirementRecords.length > 0 && sequencingRequirementRecords[0].getValue("SequencingRunType", user) != null) {
-            sequencingRunType = sequencingRequirementRecords[0].getStringVal("SequencingRunType", user);
+        List<DataRecord> sequencingRequirementRecords = lineageCache.getChildren(sample, sequencingRequirementDatatype);
+        if (!sequencingRequirementRecords.isEmpty() && sequencingRequirementRecords.get(0).getValue("SequencingRunType", user) != null) {
+            sequencingRunType = sequencingRequirementRecords.get(0).getStringVal("SequencingRunType", user);
         } else {
-            DataRecord parentSample = getSampleParentWithDesiredChildRecord(sample, sequencingRequirementDatatype);
-            if (parentSample != null && parentSample.getChildrenOfType(sequencingRequirementDatatype, user).length > 0
-                    && parentSample.getChildrenOfType(sequencingRequirementDatatype, user)[0].getValue("SequencingRunType", user) != null) {
-                sequencingRunType = parentSample.getChildrenOfType(sequencingRequirementDatatype, user)[0].getStringVal("SequencingRunType", user);
+            DataRecord parentSample = lineageCache.getParentSampleWithChildOfType(sample, sequencingRequirementDatatype);
+            if (parentSample != null && lineageCache.getChildren(parentSample, sequencingRequirementDatatype).get(0).getValue("SequencingRunType", user) != null) {
+                sequencingRunType = lineageCache.getChildren(parentSample, sequencingRequirementDatatype).get(0).getStringVal("SequencingRunType", user);
             }
         }
         if (sequencingRunType != null) {
@@ -407,13 +379,13 @@ public class CustomFieldsRetriever extends DefaultGenericPlugin {
      */
     private Double getAvgSizeForSample(DataRecord sample) throws NotFound, RemoteException, IoError, ServerException {
         Double avgSize = null;
-        DataRecord[] qcDatumRecords = sample.getChildrenOfType(QCDatumModel.DATA_TYPE_NAME, user);
-        if (qcDatumRecords.length > 0 && qcDatumRecords[0].getValue("AvgSize", user) != null) {
-            avgSize = qcDatumRecords[0].getDoubleVal("AvgSize", user);
+        List<DataRecord> qcDatumRecords = lineageCache.getChildren(sample, QCDatumModel.DATA_TYPE_NAME);
+        if (!qcDatumRecords.isEmpty() && qcDatumRecords.get(0).getValue("AvgSize", user) != null) {
+            avgSize = qcDatumRecords.get(0).getDoubleVal("AvgSize", user);
         } else {
-            DataRecord parentSample = getSampleParentWithDesiredChildRecord(sample, QCDatumModel.DATA_TYPE_NAME);
-            if (parentSample != null && parentSample.getChildrenOfType(QCDatumModel.DATA_TYPE_NAME, user).length > 0) {
-                avgSize = getAverageSizeFromQcData(Arrays.asList(parentSample.getChildrenOfType(QCDatumModel.DATA_TYPE_NAME, user)));
+            DataRecord parentSample = lineageCache.getParentSampleWithChildOfType(sample, QCDatumModel.DATA_TYPE_NAME);
+            if (parentSample != null) {
+                avgSize = getAverageSizeFromQcData(lineageCache.getChildren(parentSample, QCDatumModel.DATA_TYPE_NAME));
             }
         }
         if (avgSize != null && avgSize > 0.0) {
@@ -424,6 +396,44 @@ public class CustomFieldsRetriever extends DefaultGenericPlugin {
         }
     }
 
+    /**
+     * Load the parent hierarchy the field lookups below walk for all samples, one level of the hierarchy at a time,
+     * instead of walking it separately for every sample.
+     *
+     * @param sampleSnapshots
+     * @throws IoError
+     * @throws RemoteException
+     * @throws ServerException
+     */
+    private void loadLineage(List<RecordFieldSnapshot> sampleSnapshots) throws IoError, RemoteException, ServerException {
+        Map<String, List<DataRecord>> samplesBySeqRequirementType = new HashMap<>();
+        List<DataRecord> samples = new ArrayList<>();
+        List<DataRecord> unpooledSamples = new ArrayList<>();
+        for (RecordFieldSnapshot sampleFields : sampleSnapshots) {
+            String sampleType = sampleFields.getStringVal("ExemplarSampleType");
+            samples.add(sampleFields.getRecord());
+            if (sampleType == null) {
+                continue;
+            }
+            if (!pooledLibTypes.contains(sampleType.toLowerCase())) {
+                unpooledSamples.add(sampleFields.getRecord());
+            }
+            if (unpooledLibTypes.contains(sampleType.toLowerCase())) {
+                samplesBySeqRequirementType.computeIfAbsent("SeqRequirement", k -> new ArrayList<>()).add(sampleFields.getRecord());
+            } else if (pooledLibTypes.contains(sampleType.toLowerCase())) {
+                samplesBySeqRequirementType.computeIfAbsent("SeqRequirementPooled", k -> new ArrayList<>()).add(sampleFields.getRecord());
+            }
+        }
+        lineageCache.loadChildren(unpooledSamples, "IndexBarcode");
+        lineageCache.loadParentSamplesWithChildOfType(unpooledSamples, "IndexBarcode");
+        lineageCache.loadChildren(samples, QCDatumModel.DATA_TYPE_NAME);
+        lineageCache.loadParentSamplesWithChildOfType(samples, QCDatumModel.DATA_TYPE_NAME);
+        for (Map.Entry<String, List<DataRecord>> entry : samplesBySeqRequirementType.entrySet()) {
+            lineageCache.loadChildren(entry.getValue(), entry.getKey());
+            lineageCache.loadParentSamplesWithChildOfType(entry.getValue(), entry.getKey());
+        }
+    }
+
     /**
      * This method loops through the planningStepProtocolRecords and updates the values for fields.
      *
@@ -436,26 +446,39 @@ public class CustomFieldsRetriever extends DefaultGenericPlugin {
      * @throws InvalidValue
      */
     private void setPlanningStepValues(List<DataRecord> samples, List<DataRecord> planningStepProtocolRecords) throws IoError, RemoteException, NotFound, ServerException, InvalidValue {
-        for (DataRecord sample : samples) {
-            String sampleId = sample.getStringVal("SampleId", user);
-            String sampleType = sample.getStringVal("ExemplarSampleType", user);
-            for (DataRecord rec : planningStepProtocolRecords) {
-                String protocolSampleId = rec.getStringVal("SampleId", user);
-                if (protocolSampleId.equals(sampleId)) {
-                    Map<String, Object> fieldValues = new HashMap<>();
-                    if ( pooledLibTypes.contains(sampleType.toLowerCase()) ){
-                        fieldValues.put("IndexId", getIndexIdsForPooledSample(sample));
-                        fieldValues.put("IndexTag", getIndexTagsForPooledSample(sample));
-                    } else {
-                        fieldValues.put("IndexId", getSampleLibraryIndexId(sample));
-                        fieldValues.put("IndexTag", getSampleLibraryIndexTag(sample));
-                    }
-                    fieldValues.put("RequestedReads", getRequestedReadsForSample(sample));
-                    fieldValues.put("CoverageTarget", getCoverageTargetForSample(sample));
-                    fieldValues.put("SequencingRunType", getSequencingRunTypeForSample(sample));
-                    fieldValues.put("AvgSize", getAvgSizeForSample(sample));
-                    rec.setFields(fieldValues, user);
-                }
+        DataRecordFieldCache fieldCache = new DataRecordFieldCache(dataRecordManager, user);
+        lineageCache = new SampleLineageCache(dataRecordManager, user, fieldCache);
+        Map<String, List<DataRecord>> protocolRecordsBySampleId = new HashMap<>();
+        for (RecordFieldSnapshot protocolFields : fieldCache.prefetch(planningStepProtocolRecords)) {
+            String protocolSampleId = protocolFields.getStringVal("SampleId");
+            if (protocolSampleId != null) {
+                protocolRecordsBySampleId.computeIfAbsent(protocolSampleId, k -> new ArrayList<>()).add(protocolFields.getRecord());
+            }
+        }
+        List<RecordFieldSnapshot> sampleSnapshots = fieldCache.prefetch(samples);
+        loadLineage(sampleSnapshots);
+        for (RecordFieldSnapshot sampleFields : sampleSnapshots) {
+            DataRecord sample = sampleFields.getRecord();
+            String sampleId = sampleFields.getStringVal("SampleId");
+            String sampleType = sampleFields.getStringVal("ExemplarSampleType");
+            List<DataRecord> protocolRecordsForSample = protocolRecordsBySampleId.get(sampleId);
+            if (protocolRecordsForSample == null) {
+                continue;
+            }
+            Map<String, Object> fieldValues = new HashMap<>();
+            if ( pooledLibTypes.contains(sampleType.toLowerCase()) ){
+                fieldValues.put("IndexId", getIndexIdsForPooledSample(sample));
+                fieldValues.put("IndexTag", getIndexTagsForPooledSample(sample));
+            } else {
+                fieldValues.put("IndexId", getSampleLibraryIndexId(sample));
+                fieldValues.put("IndexTag", getSampleLibraryIndexTag(sample));
+            }
+            fieldValues.put("RequestedReads", getRequestedReadsForSample(sample));
+            fieldValues.put("CoverageTarget", getCoverageTargetForSample(sample));
+            fieldValues.put("SequencingRunType", getSequencingRunTypeForSample(sample));
+            fieldValues.put("AvgSize", getAvgSizeForSample(sample));
+            for (DataRecord rec : protocolRecordsForSample) {
+                rec.setFields(fieldValues, user);
             }
         }
     }
@@ -0,0 +1,107 @@
+package com.velox.sloan.cmo.workflows.qualitycontrol;
+
+import com.velox.sloan.cmo.workflows.utils.RecordFieldSnapshot;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.*;
+
+/**
+ * In-memory index over QCDatum records used by QcReportGenerator. The index is built once per plugin run from a
+ * single bulk field fetch and groups records by SampleId and then by lower case DatumType. Records in each group are
+ * kept sorted by RecordId so that the most recent record is always the last element.
+ */
+public class QcDatumIndex {
+
+    private static final String SAMPLE_ID = "SampleId";
+    private static final String DATUM_TYPE = "DatumType";
+
+    private final Map<String, Map<String, List<RecordFieldSnapshot>>> entriesBySampleAndType = new HashMap<>();
+    private final Map<String, Map<String, List<RecordFieldSnapshot>>> lookupCache = new HashMap<>();
+
+    /**
+     * Build index from prefetched QCDatum field snapshots.
+     *
+     * @param qcRecordSnapshots
+     */
+    public QcDatumIndex(List<RecordFieldSnapshot> qcRecordSnapshots) {
+        for (RecordFieldSnapshot snapshot : qcRecordSnapshots) {
+            String sampleId = snapshot.getStringVal(SAMPLE_ID);
+            String datumType = snapshot.getStringVal(DATUM_TYPE);
+            if (sampleId == null || datumType == null) {
+                continue;
+            }
+            entriesBySampleAndType.computeIfAbsent(sampleId, k -> new HashMap<>())
+                    .computeIfAbsent(datumType.toLowerCase(), k -> new ArrayList<>())
+                    .add(snapshot);
+        }
+        for (Map<String, List<RecordFieldSnapshot>> entriesByType : entriesBySampleAndType.values()) {
+            for (List<RecordFieldSnapshot> entries : entriesByType.values()) {
+                entries.sort(Comparator.comparingLong(RecordFieldSnapshot::getRecordId));
+            }
+        }
+    }
+
+    /**
+     * Get QCDatum entries for a sample where DatumType is part of the passed QC type list. Matching is the same as
+     * the previous linear scan, ie. the lower case DatumType must be contained in the lower case QC type string.
+     *
+     * @param sampleId
+     * @param qcType
+     * @return List<RecordFieldSnapshot> sorted by RecordId
+     */
+    public List<RecordFieldSnapshot> getEntries(String sampleId, String qcType) {
+        Map<String, List<RecordFieldSnapshot>> entriesForType = lookupCache.computeIfAbsent(qcType, k -> new HashMap<>());
+        List<RecordFieldSnapshot> cached = entriesForType.get(sampleId);
+        if (cached != null) {
+            return cached;
+        }
+        List<RecordFieldSnapshot> matchingEntries = new ArrayList<>();
+        Map<String, List<RecordFieldSnapshot>> entriesByType = entriesBySampleAndType.get(sampleId);
+        if (entriesByType != null) {
+            String qcTypeLowerCase = qcType.toLowerCase();
+            for (Map.Entry<String, List<RecordFieldSnapshot>> entry : entriesByType.entrySet()) {
+                if (qcTypeLowerCase.contains(entry.getKey())) {
+                    matchingEntries.addAll(entry.getValue());
+                }
+            }
+            if (matchingEntries.size() > 1) {
+                matchingEntries.sort(Comparator.comparingLong(RecordFieldSnapshot::getRecordId));
+            }
+        }
+        List<RecordFieldSnapshot> result = Collections.unmodifiableList(matchingEntries);
+        entriesForType.put(sampleId, result);
+        return result;
+    }
+
+    /**
+     * Get most recently added QCDatum entry (highest RecordId) for a sample and QC type.
+     *
+     * @param sampleId
+     * @param qcType
+     * @return RecordFieldSnapshot or null if there is no matching entry
+     */
+    public RecordFieldSnapshot getMostRecentEntry(String sampleId, String qcType) {
+        List<RecordFieldSnapshot> entries = getEntries(sampleId, qcType);
+        return entries.isEmpty() ? null : entries.get(entries.size() - 1);
+    }
+
+    /**
+     * Get value of a field from the most recent entry for a sample and QC type that has a non blank value for the
+     * field.
+     *
+     * @param sampleId
+     * @param qcType
+     * @param fieldName
+     * @return Object or null if none of the entries has a value for the field.
+     */
+    public Object getLatestValue(String sampleId, String qcType, String fieldName) {
+        List<RecordFieldSnapshot> entries = getEntries(sampleId, qcType);
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            Object value = entries.get(i).getValue(fieldName);
+            if (value != null && !StringUtils.isBlank(value.toString())) {
+                return value;
+            }
+        }
+        return null;
+    }
+}
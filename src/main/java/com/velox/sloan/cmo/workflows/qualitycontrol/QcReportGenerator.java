@@ -6,8 +6,11 @@ import com.velox.api.datarecord.NotFound;
 import com.velox.api.plugin.PluginResult;
 import com.velox.api.util.ServerException;
 import com.velox.api.workflow.ActiveTask;
-import com.velox.sapioutils.server.plugin.DefaultGenericPlugin;
 import com.velox.sapioutils.shared.enums.PluginOrder;
+import com.velox.sloan.cmo.workflows.utils.DataRecordFieldCache;
+import com.velox.sloan.cmo.workflows.utils.DataRecordQuery;
+import com.velox.sloan.cmo.workflows.utils.ProfiledGenericPlugin;
+import com.velox.sloan.cmo.workflows.utils.RecordFieldSnapshot;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 
@@ -23,7 +26,7 @@ import java.util.*;
  *
  * @author sharmaa1@mskcc.org ~Ajay Sharma
  */
-public class QcReportGenerator extends DefaultGenericPlugin {
+public class QcReportGenerator extends ProfiledGenericPlugin {
 
     private final String QC_TYPE_FOR_DIN = "tapestation sampletable";
     private final String QC_TYPE_FOR_RQN = "fragment analyzer rna quality, fragment analyzer peak table";
@@ -40,6 +43,7 @@ public class QcReportGenerator extends DefaultGenericPlugin {
     private final List<String> RNA_SAMPLE_TYPES = Arrays.asList("rna");
     private final List<String> LIBRARY_SAMPLE_TYPES = Arrays.asList("dna library", "cdna library", "dna/cdna library", "pooled library", "protein library");
     private final double NANOMOLAR_TO_FEMTOMOLAR_CONVERSION_FACTOR = 1000000.00;
+    private DataRecordFieldCache fieldCache;
 
     public QcReportGenerator() {
         setTaskEntry(true);
@@ -65,35 +69,23 @@ public class QcReportGenerator extends DefaultGenericPlugin {
         return false;
     }
 
-    public PluginResult run() throws ServerException, RemoteException {
+    protected PluginResult runProfiled() throws ServerException, RemoteException {
         try {
             List<DataRecord> samples = activeTask.getAttachedDataRecords("Sample", user);
             if (samples.size() == 0) {
                 clientCallback.displayError(String.format("Sample attachments not found on task: %s", activeTask.getTask().getTaskName()));
                 return new PluginResult(false);
             }
+            fieldCache = new DataRecordFieldCache(dataRecordManager, user);
+            fieldCache.prefetch(samples);
             boolean hasPool = false;
-            String poolsSampleNamesStr = "(";
             // Pools
-            for (int i = 0; i < samples.size(); i++) {
-                if (samples.get(i).getStringVal("SampleId", user).toLowerCase().startsWith("pool-")) {
-                    hasPool = true;
-                    if (!StringUtils.isBlank(samples.get(i).getStringVal("OtherSampleId", user))) {
-                        if (i < samples.size() - 1) {
-                            poolsSampleNamesStr += "'" + samples.get(i).getStringVal("OtherSampleId", user) + "',";
-                        } else {
-                            poolsSampleNamesStr += "'" + samples.get(i).getStringVal("OtherSampleId", user);
-                        }
-                    }
-                }
-            }
-            poolsSampleNamesStr += "')";
-            logInfo("poolsSampleNames is: " + poolsSampleNamesStr);
-
             List<Object> listOfPoolSampleNames = new LinkedList<>();
             for (DataRecord s : samples) {
-                if (s.getStringVal("SampleId", user).toLowerCase().startsWith("pool-")) {
-                    String [] arrayOfNames = s.getDataField("OtherSampleId", user).toString().split(",");
+                RecordFieldSnapshot sampleFields = fieldCache.get(s);
+                if (sampleFields.getStringVal("SampleId").toLowerCase().startsWith("pool-")) {
+                    hasPool = true;
+                    String [] arrayOfNames = sampleFields.getStringVal("OtherSampleId").split(",");
                     for (int i = 0; i < arrayOfNames.length; i++) {
                         listOfPoolSampleNames.add(arrayOfNames[i]);
                     }
@@ -122,8 +114,12 @@ public class QcReportGenerator extends DefaultGenericPlugin {
                 clientCallback.displayWarning(String.format("Number of QC Records found: %d are LESS than number of samples attached %d." +
                         "\nPlease make sure all the samples have at least one QC record.", qcRecords.size(), sampleIds.size()));
             }
-            generateQcReport(samples, qcRecords, qcProtocolRecords, seqReqRecords);
-        } catch (NotFound | RemoteException e) {
+            QcDatumIndex qcDatumIndex = buildQcDatumIndex(qcRecords);
+            fieldCache.prefetch(seqReqRecords);
+            fieldCache.prefetch(qcProtocolRecords);
+            generateQcReport(samples, qcDatumIndex, qcProtocolRecords, seqReqRecords);
+            logInfo(String.format("QC report field values read with %d server calls.", fieldCache.getServerCalls()));
+        } catch (RemoteException e) {
             String errMsg = String.format("Remote Exception while QC report generation:\n%s", ExceptionUtils.getStackTrace(e));
             clientCallback.displayError(errMsg);
             logError(errMsg);
@@ -201,12 +197,10 @@ public class QcReportGenerator extends DefaultGenericPlugin {
         for (DataRecord sample : samples) {
             String sampleId = null;
             try {
-                sampleId = sample.getStringVal("SampleId", user);
+                sampleId = fieldCache.getStringVal(sample, "SampleId");
                 logInfo("getSampleIds returns: " + sampleId);
             } catch (RemoteException e) {
                 logError(String.format("Remote Exception while reading SampleId for sample with recordid %d:\n%s", sample.getRecordId(), ExceptionUtils.getStackTrace(e)));
-            } catch (NotFound e) {
-                logError(String.format("SampleId missing for sample with recordid %d:\n%s", sample.getRecordId(), ExceptionUtils.getStackTrace(e)));
             }
             if (!StringUtils.isBlank(sampleId)) {
                 sampleIds.add(sampleId);
@@ -228,7 +222,7 @@ public class QcReportGenerator extends DefaultGenericPlugin {
     private List<DataRecord> getQcRecordsForSamples(List<Object> sampleIdList) {
         List<DataRecord> qcRecords = new ArrayList<>();
         try {
-            qcRecords = dataRecordManager.queryDataRecords("QCDatum", "SampleId", sampleIdList, user);
+            qcRecords = DataRecordQuery.from("QCDatum").whereIn("SampleId", sampleIdList).execute(dataRecordManager, user);
         } catch (NotFound notFound) {
             logError(String.format("NotFound Exception while getting QC records for attached Samples:\n%s", ExceptionUtils.getStackTrace(notFound)));
         } catch (IoError ioError) {
@@ -245,15 +239,15 @@ public class QcReportGenerator extends DefaultGenericPlugin {
         List<DataRecord> seqReqRecords = new ArrayList<>();
         try {
             if (hasPool) {
-                List<DataRecord> poolSeqReqs = dataRecordManager.queryDataRecords("SeqRequirement", "OtherSampleId", poolsSampleNames, user);
+                List<DataRecord> poolSeqReqs = DataRecordQuery.from("SeqRequirement").whereIn("OtherSampleId", poolsSampleNames).execute(dataRecordManager, user);
                 logInfo("poolSeqReqs.size() = " + poolSeqReqs.size());
                 List<DataRecord> poolSeqReqExact = new LinkedList<>();
 
 
-                for(DataRecord psr : poolSeqReqs) {
-                    logInfo("igo id: " + psr.getStringVal("SampleId", user));
+                for(RecordFieldSnapshot psr : fieldCache.prefetch(poolSeqReqs)) {
+                    logInfo("igo id: " + psr.getStringVal("SampleId"));
                     String idOfSample = "";
-                    String[] sampleIdParts = psr.getStringVal("SampleId", user).split("_");
+                    String[] sampleIdParts = psr.getStringVal("SampleId").split("_");
                     if (sampleIdParts != null && sampleIdParts.length >= 2) {
                         idOfSample = sampleIdParts[0] + "_" + sampleIdParts[1];
                     }
@@ -262,7 +256,7 @@ public class QcReportGenerator extends DefaultGenericPlugin {
                     }
                     logInfo("id of the sample = " + idOfSample);
                     if (strOfPoolSampleIds.contains(idOfSample)) {
-                        poolSeqReqExact.add(psr);
+                        poolSeqReqExact.add(psr.getRecord());
                     }
                 }
 
@@ -272,7 +266,7 @@ public class QcReportGenerator extends DefaultGenericPlugin {
                 }
             }
 
-            List<DataRecord> libSeqReqs = dataRecordManager.queryDataRecords("SeqRequirement", "SampleId", sampleIdList, user);
+            List<DataRecord> libSeqReqs = DataRecordQuery.from("SeqRequirement").whereIn("SampleId", sampleIdList).execute(dataRecordManager, user);
             for (DataRecord d : libSeqReqs) {
                 seqReqRecords.add(d);
             }
@@ -285,82 +279,38 @@ public class QcReportGenerator extends DefaultGenericPlugin {
     }
 
     /**
-     * get QCDatum records based on type of QC.
-     *
-     * @param sampleId
-     * @param qcDataRecords
-     * @param QcType
-     * @return List<DataRecord>
-     * @throws NotFound
-     * @throws RemoteException
-     */
-    private List<DataRecord> getQcRecordsByQcType(String sampleId, List<DataRecord> qcDataRecords, String QcType) {
-        List<DataRecord> sampleQcRecordsByQcType = new ArrayList<>();
-        for (DataRecord qcRecord : qcDataRecords) {
-            try {
-                String qcRecordSampleId = qcRecord.getStringVal("SampleId", user);
-                String qcDatumType = qcRecord.getStringVal("DatumType", user).toLowerCase();
-                if (qcRecordSampleId.equals(sampleId) && QcType.toLowerCase().contains(qcDatumType)) {
-                    sampleQcRecordsByQcType.add(qcRecord);
-                }
-            } catch (NotFound notFound) {
-                logError(String.format("NotFound Exception while finding QcRecord field(s) SampleId/DatumType values for Sample with recordid %d:\n%s", ExceptionUtils.getStackTrace(notFound)));
-            } catch (RemoteException e) {
-                logError(String.format("Error while finding QcRecord field(s) SampleId/DatumType values for Sample with recordid %d:\n%s", ExceptionUtils.getStackTrace(e)));
-            }
-
-        }
-        return sampleQcRecordsByQcType;
-    }
-
-    /**
-     * get most recently added QCDatum record for a sample
+     * Build QcDatumIndex for QCDatum records using a single bulk fetch of record field values.
      *
      * @param qcRecords
-     * @return DataRecord
-     * @throws NotFound
+     * @return QcDatumIndex
+     * @throws ServerException
      * @throws RemoteException
      */
-    private DataRecord getMostRecentQcRecord(List<DataRecord> qcRecords) {
-        if (qcRecords.size() == 1) {
-            return qcRecords.get(0);
-        }
-        DataRecord mostRecentQcRecord = qcRecords.get(0);
-        for (DataRecord record : qcRecords) {
-            long recordId = record.getRecordId();
-            if (recordId > mostRecentQcRecord.getRecordId()) {
-                mostRecentQcRecord = record;
-            }
-        }
-        return mostRecentQcRecord;
+    private QcDatumIndex buildQcDatumIndex(List<DataRecord> qcRecords) throws ServerException, RemoteException {
+        return new QcDatumIndex(fieldCache.prefetch(qcRecords));
     }
 
     /**
      * get DIN value from QCDatum records for sample.
      *
      * @param sampleId
-     * @param qcRecords
+     * @param qcDatumIndex
      * @return Double
-     * @throws NotFound
-     * @throws RemoteException
-     * @throws ServerException
      */
-    private Double getDinValueFromQcRecord(String sampleId, List<DataRecord> qcRecords) {
-        List<DataRecord> qcRecordsForSample = getQcRecordsByQcType(sampleId, qcRecords, QC_TYPE_FOR_DIN);
+    private Double getDinValueFromQcRecord(String sampleId, QcDatumIndex qcDatumIndex) {
+        RecordFieldSnapshot mostRecentQcRecord = qcDatumIndex.getMostRecentEntry(sampleId, QC_TYPE_FOR_DIN);
         Double dinValue = 0.00;
         try {
-            if (!qcRecordsForSample.isEmpty() && getMostRecentQcRecord(qcRecordsForSample).getValue("DIN", user) != null) {
-                dinValue = getMostRecentQcRecord(qcRecordsForSample).getDoubleVal("DIN", user);
+            if (mostRecentQcRecord != null && mostRecentQcRecord.getValue("DIN") != null) {
+                dinValue = mostRecentQcRecord.getDoubleVal("DIN");
             }
-            if (qcRecordsForSample.isEmpty() || getMostRecentQcRecord(qcRecordsForSample).getValue("DIN", user) == null || dinValue <= 0) {
+            if (mostRecentQcRecord == null || mostRecentQcRecord.getValue("DIN") == null || dinValue <= 0) {
                 clientCallback.displayWarning(String.format("DIN value not found for '%s'.", sampleId));
                 logInfo(String.format("WARNING: DIN value not found for '%s'.", sampleId));
                 return 0.00;
             }
         } catch (RemoteException e) {
             logError(String.format("RemoteException while getting DIN Value for sample with Sample ID %s:\n%s", sampleId, ExceptionUtils.getStackTrace(e)));
-        } catch (NotFound notFound) {
-            logError(String.format("NotFound -> Missing DIN Value for sample with Sample ID %s:\n%s", sampleId, ExceptionUtils.getStackTrace(notFound)));
         } catch (ServerException se) {
             logError(String.format("ServerException while getting DIN Value for sample with Sample ID %s:\n%s", sampleId, ExceptionUtils.getStackTrace(se)));
         }
@@ -371,189 +321,115 @@ public class QcReportGenerator extends DefaultGenericPlugin {
      * get RQN value from QCDatum records for sample.
      *
      * @param sampleId
-     * @param qcRecords
+     * @param qcDatumIndex
      * @return Double
-     * @throws NotFound
-     * @throws RemoteException
-     * @throws ServerException
      */
-    private Double getRqnValueFromQcRecord(String sampleId, List<DataRecord> qcRecords) {
-        List<DataRecord> qcRecordsWithRqnForSample = getQcRecordsByQcType(sampleId, qcRecords, QC_TYPE_FOR_RQN);
-        Double rqnValue = 0.00;
-        try {
-            if (!qcRecordsWithRqnForSample.isEmpty()) {
-                for (DataRecord qcRecord : qcRecordsWithRqnForSample) {
-                    if (qcRecord.getValue("RQN", user) != null) {
-                        rqnValue = qcRecord.getDoubleVal("RQN", user);
-                    }
-                }
-            }
-            if (qcRecordsWithRqnForSample.isEmpty() || rqnValue.isNaN() || rqnValue <= 0) {
-                clientCallback.displayWarning(String.format("RQN value not found for '%s'.", sampleId));
-                logInfo(String.format("WARNING: RQN value not found for '%s'.", sampleId));
-                return 0.00;
-            }
-        } catch (RemoteException e) {
-            logError(String.format("RemoteException while getting RQN Value for sample with Sample ID %s:\n%s", sampleId, ExceptionUtils.getStackTrace(e)));
-        } catch (NotFound notFound) {
-            logError(String.format("NotFound -> Missing RQN Value for sample with Sample ID %s:\n%s", sampleId, ExceptionUtils.getStackTrace(notFound)));
-        } catch (ServerException se) {
-            logError(String.format("ServerException while getting RQN Value for sample with Sample ID %s:\n%s", sampleId, ExceptionUtils.getStackTrace(se)));
-        }
-        return rqnValue;
+    private Double getRqnValueFromQcRecord(String sampleId, QcDatumIndex qcDatumIndex) {
+        return getDoubleValueFromQcRecord(sampleId, qcDatumIndex, QC_TYPE_FOR_RQN, "RQN", "RQN");
     }
 
     /**
      * get RIN value from QCDatum records for sample.
      *
      * @param sampleId
-     * @param qcRecords
+     * @param qcDatumIndex
      * @return String
-     * @throws NotFound
-     * @throws RemoteException
-     * @throws ServerException
      */
-    private String getRinValueFromQcRecord(String sampleId, List<DataRecord> qcRecords) {
-        List<DataRecord> qcRecordsWithRinForSample = getQcRecordsByQcType(sampleId, qcRecords, QC_TYPE_FOR_RIN);
-        String rinValue = "";
+    private String getRinValueFromQcRecord(String sampleId, QcDatumIndex qcDatumIndex) {
+        Object rinValue = qcDatumIndex.getLatestValue(sampleId, QC_TYPE_FOR_RIN, "RIN");
         try {
-            if (!qcRecordsWithRinForSample.isEmpty()) {
-                for (DataRecord qcRecord : qcRecordsWithRinForSample) {
-                    if (qcRecord.getValue("RIN", user) != null && !StringUtils.isBlank(qcRecord.getValue("RIN", user).toString())) {
-                        rinValue = qcRecord.getStringVal("RIN", user);
-                    }
-                }
-            }
-            if (qcRecordsWithRinForSample.isEmpty() || StringUtils.isBlank(rinValue)) {
+            if (rinValue == null) {
                 clientCallback.displayWarning(String.format("RIN value not found for '%s'.", sampleId));
                 logInfo(String.format("WARNING: RIN value not found for '%s'.", sampleId));
                 return "";
             }
         } catch (RemoteException e) {
             logError(String.format("RemoteException while getting RIN Value for sample with Sample ID %s:\n%s", sampleId, ExceptionUtils.getStackTrace(e)));
-        } catch (NotFound notFound) {
-            logError(String.format("NotFound -> Missing RIN Value for sample with Sample ID %s:\n%s", sampleId, ExceptionUtils.getStackTrace(notFound)));
         } catch (ServerException se) {
             logError(String.format("ServerException while getting RIN Value for sample with Sample ID %s:\n%s", sampleId, ExceptionUtils.getStackTrace(se)));
         }
-        return rinValue;
+        return rinValue == null ? "" : rinValue.toString();
     }
 
     /**
      * get DV200 value from QCDatum records for sample.
      *
      * @param sampleId
-     * @param qcRecords
+     * @param qcDatumIndex
      * @return Double
-     * @throws NotFound
-     * @throws RemoteException
-     * @throws ServerException
      */
-    private Double getDv200ValueFromQcRecord(String sampleId, List<DataRecord> qcRecords) {
-        List<DataRecord> qcRecordswithDv200ForSample = getQcRecordsByQcType(sampleId, qcRecords, QC_TYPE_FOR_DV200);
-        Double dv200Value = 0.00;
-        try {
-            if (!qcRecordswithDv200ForSample.isEmpty()) {
-                for (DataRecord qcRecord : qcRecordswithDv200ForSample) {
-                    if (qcRecord.getValue("DV200", user) != null) {
-                        dv200Value = qcRecord.getDoubleVal("DV200", user);
-                    }
-                }
-            }
-            if (qcRecordswithDv200ForSample.isEmpty() || dv200Value.isNaN() || dv200Value <= 0) {
-                clientCallback.displayWarning(String.format("DV200 value not found for '%s'.", sampleId));
-                logError(String.format("WARNING: DV200 value not found for '%s'.", sampleId));
-                return 0.00;
-            }
-        } catch (RemoteException e) {
-            logError(String.format("RemoteException while getting DV200 Value for sample with Sample ID %s:\n%s", sampleId, ExceptionUtils.getStackTrace(e)));
-        } catch (NotFound notFound) {
-            logError(String.format("NotFound -> Missing DV200 Value for sample with Sample ID %s:\n%s", sampleId, ExceptionUtils.getStackTrace(notFound)));
-        } catch (ServerException se) {
-            logError(String.format("ServerException while getting DV200 Value for sample with Sample ID %s:\n%s", sampleId, ExceptionUtils.getStackTrace(se)));
-        }
-        return dv200Value;
+    private Double getDv200ValueFromQcRecord(String sampleId, QcDatumIndex qcDatumIndex) {
+        return getDoubleValueFromQcRecord(sampleId, qcDatumIndex, QC_TYPE_FOR_DV200, "DV200", "DV200");
     }
 
-    private Double getA260280FromQcRecord(String sampleId, List<DataRecord> qcRecords) {
-        List<DataRecord> qcRecordswithA260280ForSample = getQcRecordsByQcType(sampleId, qcRecords, QC_TYPE_FOR_A260280);
-        Double A260280 = 0.00;
-        try {
-            if (!qcRecordswithA260280ForSample.isEmpty()) {
-                for (DataRecord qcRecord : qcRecordswithA260280ForSample) {
-                    if (qcRecord.getValue("A260280", user) != null) {
-                        A260280 = qcRecord.getDoubleVal("A260280", user);
-                    }
-                }
-            }
-            if (qcRecordswithA260280ForSample.isEmpty() || A260280.isNaN() || A260280 <= 0) {
-                clientCallback.displayWarning(String.format("A260280 value not found for '%s'.", sampleId));
-                logError(String.format("WARNING: A260280 value not found for '%s'.", sampleId));
-                return 0.00;
-            }
-        } catch (RemoteException e) {
-            logError(String.format("RemoteException while getting A260280 Value for sample with Sample ID %s:\n%s", sampleId, ExceptionUtils.getStackTrace(e)));
-        } catch (NotFound notFound) {
-            logError(String.format("NotFound -> Missing A260280 Value for sample with Sample ID %s:\n%s", sampleId, ExceptionUtils.getStackTrace(notFound)));
-        } catch (ServerException se) {
-            logError(String.format("ServerException while getting A260280 Value for sample with Sample ID %s:\n%s", sampleId, ExceptionUtils.getStackTrace(se)));
-        }
-        return A260280;
+    private Double getA260280FromQcRecord(String sampleId, QcDatumIndex qcDatumIndex) {
+        return getDoubleValueFromQcRecord(sampleId, qcDatumIndex, QC_TYPE_FOR_A260280, "A260280", "A260280");
     }
 
-    private Double getA260230FromQcRecord(String sampleId, List<DataRecord> qcRecords) {
-        List<DataRecord> qcRecordswithA260230ForSample = getQcRecordsByQcType(sampleId, qcRecords, QC_TYPE_FOR_A260230);
-        Double A260230 = 0.00;
+    private Double getA260230FromQcRecord(String sampleId, QcDatumIndex qcDatumIndex) {
+        return getDoubleValueFromQcRecord(sampleId, qcDatumIndex, QC_TYPE_FOR_A260230, "A260230", "A260230");
+    }
+
+    /**
+     * get numeric QC value from the most recent QCDatum record of given QC type that has a value for the field.
+     * Displays a warning and returns 0 when the value is missing, NaN or not positive.
+     *
+     * @param sampleId
+     * @param qcDatumIndex
+     * @param qcType
+     * @param fieldName
+     * @param displayName
+     * @return Double
+     */
+    private Double getDoubleValueFromQcRecord(String sampleId, QcDatumIndex qcDatumIndex, String qcType, String fieldName, String displayName) {
+        Double value = 0.00;
         try {
-            if (!qcRecordswithA260230ForSample.isEmpty()) {
-                for (DataRecord qcRecord : qcRecordswithA260230ForSample) {
-                    if (qcRecord.getValue("A260230", user) != null) {
-                        A260230 = qcRecord.getDoubleVal("A260230", user);
-                    }
-                }
+            Object qcValue = qcDatumIndex.getLatestValue(sampleId, qcType, fieldName);
+            if (qcValue != null) {
+                value = qcValue instanceof Number ? ((Number) qcValue).doubleValue() : Double.parseDouble(qcValue.toString());
             }
-            if (qcRecordswithA260230ForSample.isEmpty() || A260230.isNaN() || A260230 <= 0) {
-                clientCallback.displayWarning(String.format("A260230 value not found for '%s'.", sampleId));
-                logError(String.format("WARNING: A260280 value not found for '%s'.", sampleId));
+            if (qcValue == null || value.isNaN() || value <= 0) {
+                clientCallback.displayWarning(String.format("%s value not found for '%s'.", displayName, sampleId));
+                logInfo(String.format("WARNING: %s value not found for '%s'.", displayName, sampleId));
                 return 0.00;
             }
+        } catch (NumberFormatException e) {
+            logError(String.format("Invalid %s Value for sample with Sample ID %s:\n%s", displayName, sampleId, ExceptionUtils.getStackTrace(e)));
+            return 0.00;
         } catch (RemoteException e) {
-            logError(String.format("RemoteException while getting A260230 Value for sample with Sample ID %s:\n%s", sampleId, ExceptionUtils.getStackTrace(e)));
-        } catch (NotFound notFound) {
-            logError(String.format("NotFound -> Missing A260230 Value for sample with Sample ID %s:\n%s", sampleId, ExceptionUtils.getStackTrace(notFound)));
+            logError(String.format("RemoteException while getting %s Value for sample with Sample ID %s:\n%s", displayName, sampleId, ExceptionUtils.getStackTrace(e)));
         } catch (ServerException se) {
-            logError(String.format("ServerException while getting A260230 Value for sample with Sample ID %s:\n%s", sampleId, ExceptionUtils.getStackTrace(se)));
+            logError(String.format("ServerException while getting %s Value for sample with Sample ID %s:\n%s", displayName, sampleId, ExceptionUtils.getStackTrace(se)));
         }
-        return A260230;
+        return value;
     }
 
     private String getNumOfReadsFromSeqReqRecord(String sampleId, String sampleName, List<DataRecord> seqReqRecords, boolean isPool) {
         String numOfReads = "";
         double poolNumOfReads = 0.0;
 
-        for (DataRecord eachSeqRec : seqReqRecords) {
+        for (DataRecord seqReqRecord : seqReqRecords) {
             try {
-                if (eachSeqRec.getDataField("RequestedReads", user) != null) {
-                    if (isPool && eachSeqRec != null) {
+                RecordFieldSnapshot eachSeqRec = fieldCache.get(seqReqRecord);
+                if (eachSeqRec.getValue("RequestedReads") != null) {
+                    if (isPool) {
                         String SampleRequest = sampleId.split("-")[1]; // input: Pool-05500_IY-Tube1, output: 05500_IY
-                        if (eachSeqRec.getStringVal("SampleId", user).contains(SampleRequest) &&
-                                sampleName.contains(eachSeqRec.getStringVal("OtherSampleId", user))) {
+                        if (eachSeqRec.getStringVal("SampleId").contains(SampleRequest) &&
+                                sampleName.contains(eachSeqRec.getStringVal("OtherSampleId"))) {
 
-                            poolNumOfReads += Double.parseDouble(eachSeqRec.getDataField("RequestedReads", user).toString());
-                            logInfo("eachSeqRec igo id = " + eachSeqRec.getStringVal("SampleId", user) +
-                                    " eachSeqRec sample name = " + eachSeqRec.getStringVal("OtherSampleId", user));
+                            poolNumOfReads += Double.parseDouble(eachSeqRec.getStringVal("RequestedReads"));
+                            logInfo("eachSeqRec igo id = " + eachSeqRec.getStringVal("SampleId") +
+                                    " eachSeqRec sample name = " + eachSeqRec.getStringVal("OtherSampleId"));
                             logInfo("poolNumOfReads = " + poolNumOfReads);
                             numOfReads = String.valueOf(poolNumOfReads);
                         }
 
                     }
-                    else if (sampleId.equals(eachSeqRec.getStringVal("SampleId", user))) {
-                        numOfReads = eachSeqRec.getDataField("RequestedReads", user).toString();
+                    else if (sampleId.equals(eachSeqRec.getStringVal("SampleId"))) {
+                        numOfReads = eachSeqRec.getStringVal("RequestedReads");
                     }
                 }
 
-            } catch (NotFound e) {
-                logError("NotFound while getting requested reads from sequencing requirement record of the sample.");
             } catch (RemoteException e) {
                 logError("RemoteException while getting requested reads from sequencing requirement record of the sample.");
             }
@@ -573,7 +449,7 @@ public class QcReportGenerator extends DefaultGenericPlugin {
     private List<DataRecord> getQcProtocolRecordsForSamples(List<Object> sampleIdList) {
         List<DataRecord> protocolRecords = new ArrayList<>();
         try {
-            protocolRecords = dataRecordManager.queryDataRecords("QCProtocol", "SampleId", sampleIdList, user);
+            protocolRecords = DataRecordQuery.from("QCProtocol").whereIn("SampleId", sampleIdList).execute(dataRecordManager, user);
         } catch (NotFound notFound) {
             logError(String.format("NotFound Error while getting QcProtocol Records:\n%s", ExceptionUtils.getStackTrace(notFound)));
         } catch (IoError ioError) {
@@ -600,9 +476,10 @@ public class QcReportGenerator extends DefaultGenericPlugin {
         String igoRecommendationValue = "";
         try {
             if (!qcProtocolRecords.isEmpty()) {
-                for (DataRecord qcRecord : qcProtocolRecords) {
-                    if (qcRecord.getValue("SampleId", user).equals(sampleId) && qcRecord.getValue("IGOQC", user) != null) {
-                        igoRecommendationValue = qcRecord.getStringVal("IGOQC", user);
+                for (DataRecord protocolRecord : qcProtocolRecords) {
+                    RecordFieldSnapshot qcRecord = fieldCache.get(protocolRecord);
+                    if (sampleId.equals(qcRecord.getValue("SampleId")) && qcRecord.getValue("IGOQC") != null) {
+                        igoRecommendationValue = qcRecord.getStringVal("IGOQC");
                     }
                 }
             }
@@ -613,8 +490,6 @@ public class QcReportGenerator extends DefaultGenericPlugin {
             }
         } catch (RemoteException e) {
             logError(String.format("RemoteException while getting IGOQC Value for sample with Sample ID %s:\n%s", sampleId, ExceptionUtils.getStackTrace(e)));
-        } catch (NotFound notFound) {
-            logError(String.format("NotFound -> Missing IGOQC Value for sample with Sample ID %s:\n%s", sampleId, ExceptionUtils.getStackTrace(notFound)));
         } catch (ServerException se) {
             logError(String.format("ServerException while getting IGOQC Value for sample with Sample ID %s:\n%s", sampleId, ExceptionUtils.getStackTrace(se)));
         }
@@ -634,9 +509,10 @@ public class QcReportGenerator extends DefaultGenericPlugin {
         String igoQcCommentsValue = "";
         try {
             if (!qcDataRecords.isEmpty()) {
-                for (DataRecord qcRecord : qcDataRecords) {
-                    if (qcRecord.getValue("SampleId", user).equals(sampleId) && qcRecord.getValue("Comments_Field", user) != null) {
-                        igoQcCommentsValue = qcRecord.getStringVal("Comments_Field", user);
+                for (DataRecord protocolRecord : qcDataRecords) {
+                    RecordFieldSnapshot qcRecord = fieldCache.get(protocolRecord);
+                    if (sampleId.equals(qcRecord.getValue("SampleId")) && qcRecord.getValue("Comments_Field") != null) {
+                        igoQcCommentsValue = qcRecord.getStringVal("Comments_Field");
                     }
                 }
             }
@@ -646,93 +522,60 @@ public class QcReportGenerator extends DefaultGenericPlugin {
             }
         } catch (RemoteException e) {
             logError(String.format("RemoteException while getting Comments_Field Value for sample with Sample ID %s:\n%s", sampleId, ExceptionUtils.getStackTrace(e)));
-        } catch (NotFound notFound) {
-            logError(String.format("NotFound -> Missing Comments_Field Value for sample with Sample ID %s:\n%s", sampleId, ExceptionUtils.getStackTrace(notFound)));
         }
         return igoQcCommentsValue;
     }
 
     /**
-     * get AverageSize of Library for a Sample from QcProtocol records.
+     * get AverageSize of Library for a Sample from QCDatum records.
      *
      * @param sampleId
-     * @param qcRecords
+     * @param qcDatumIndex
      * @return Double
-     * @throws NotFound
-     * @throws RemoteException
-     * @throws ServerException
      */
-    private Double getAverageLibrarySizeValue(String sampleId, List<DataRecord> qcRecords/*, int selectedQcFile*/) {
-        List<DataRecord> qcRecordsWithAvgBpSizeForSample = new LinkedList<>();
-        //if (selectedQcFile == 0) {
-            qcRecordsWithAvgBpSizeForSample = getQcRecordsByQcType(sampleId, qcRecords, QC_TYPE_FOR_AVERAGE_BP_SIZE);
-        //}
-//        else {
-//            qcRecordsWithAvgBpSizeForSample = getQcRecordsByQcType(sampleId, qcRecords, TAPESTATION_QC_FOR_AVERAGE_BP_SIZE);
-//        }
-
-        Double averageBasePairSize = 0.0;
-        try {
-            if (!qcRecordsWithAvgBpSizeForSample.isEmpty()) {
-                for (DataRecord qcRecord : qcRecordsWithAvgBpSizeForSample) {
-                    if (qcRecord.getValue("AvgSize", user) != null && qcRecord.getValue("SampleId", user).equals(sampleId)) {
-                        averageBasePairSize = qcRecord.getDoubleVal("AvgSize", user);
-                    }
-                }
-            }
-            if (qcRecordsWithAvgBpSizeForSample.isEmpty() || averageBasePairSize <= 0) {
-                clientCallback.displayWarning(String.format("Average Size value not found for '%s'.", sampleId));
-                logInfo(String.format("WARNING: Average Size value not found for '%s'.", sampleId));
-                return 0.0;
-            }
-        } catch (RemoteException e) {
-            logError(String.format("RemoteException while getting 'AvgSize' Value for sample with Sample ID %s:\n%s", sampleId, ExceptionUtils.getStackTrace(e)));
-        } catch (NotFound notFound) {
-            logError(String.format("NotFound -> Missing 'AvgSize' Value for sample with Sample ID %s:\n%s", sampleId, ExceptionUtils.getStackTrace(notFound)));
-        } catch (ServerException se) {
-            logError(String.format("ServerException while getting 'AvgSize' Value for sample with Sample ID %s:\n%s", sampleId, ExceptionUtils.getStackTrace(se)));
-        }
-        return averageBasePairSize;
+    private Double getAverageLibrarySizeValue(String sampleId, QcDatumIndex qcDatumIndex) {
+        return getDoubleValueFromQcRecord(sampleId, qcDatumIndex, QC_TYPE_FOR_AVERAGE_BP_SIZE, "AvgSize", "Average Size");
     }
 
     /**
      * Create DNA QC REPORT DataRecords for Samples.
      *
      * @param samples
-     * @param qcDataRecords
+     * @param qcDatumIndex
      * @param qcProtocolRecords
      * @return List<DataRecord>
      * @throws NotFound
      * @throws RemoteException
      * @throws ServerException
      */
-    private List<DataRecord> generateDnaQcReportFieldValuesMap(List<DataRecord> samples, List<DataRecord> qcDataRecords, List<DataRecord> qcProtocolRecords) {
+    private List<DataRecord> generateDnaQcReportFieldValuesMap(List<DataRecord> samples, QcDatumIndex qcDatumIndex, List<DataRecord> qcProtocolRecords) {
         List<DataRecord> dnaQcRecords = new ArrayList<>();
         for (DataRecord sample : samples) {
             Map<String, Object> qcRecord = new HashMap<>();
             try {
-                String sampleId = sample.getStringVal("SampleId", user);
+                RecordFieldSnapshot sampleFields = fieldCache.get(sample);
+                String sampleId = sampleFields.getStringVal("SampleId");
                 qcRecord.put("SampleId", sampleId);
-                qcRecord.put("OtherSampleId", sample.getStringVal("OtherSampleId", user));
-                qcRecord.put("UserSampleID", sample.getStringVal("UserSampleID", user));
-                qcRecord.put("AltId", sample.getStringVal("AltId", user));
-                qcRecord.put("RequestId", sample.getStringVal("RequestId", user));
-                qcRecord.put("Concentration", sample.getDoubleVal("Concentration", user));
-                qcRecord.put("ConcentrationUnits", sample.getStringVal("ConcentrationUnits", user));
-                qcRecord.put("Volume", sample.getDoubleVal("Volume", user));
-                qcRecord.put("TotalMass", sample.getDoubleVal("TotalMass", user));
-                qcRecord.put("SpecimenType", sample.getStringVal("SpecimenType", user));
-                qcRecord.put("TumorOrNormal", sample.getStringVal("TumorOrNormal", user));
-                qcRecord.put("Preservation", sample.getStringVal("Preservation", user));
-                qcRecord.put("Recipe", sample.getStringVal("Recipe", user));
-                qcRecord.put("SampleOrigin", sample.getStringVal("SampleOrigin", user));
+                qcRecord.put("OtherSampleId", sampleFields.getStringVal("OtherSampleId"));
+                qcRecord.put("UserSampleID", sampleFields.getStringVal("UserSampleID"));
+                qcRecord.put("AltId", sampleFields.getStringVal("AltId"));
+                qcRecord.put("RequestId", sampleFields.getStringVal("RequestId"));
+                qcRecord.put("Concentration", sampleFields.getDoubleVal("Concentration"));
+                qcRecord.put("ConcentrationUnits", sampleFields.getStringVal("ConcentrationUnits"));
+                qcRecord.put("Volume", sampleFields.getDoubleVal("Volume"));
+                qcRecord.put("TotalMass", sampleFields.getDoubleVal("TotalMass"));
+                qcRecord.put("SpecimenType", sampleFields.getStringVal("SpecimenType"));
+                qcRecord.put("TumorOrNormal", sampleFields.getStringVal("TumorOrNormal"));
+                qcRecord.put("Preservation", sampleFields.getStringVal("Preservation"));
+                qcRecord.put("Recipe", sampleFields.getStringVal("Recipe"));
+                qcRecord.put("SampleOrigin", sampleFields.getStringVal("SampleOrigin"));
                 List<DataRecord> listOfSamplesAncestors = sample.getAncestorsOfType("Sample", user);
                 if(listOfSamplesAncestors != null && listOfSamplesAncestors.size() > 0) {
                     qcRecord.put("SourceSampleId", listOfSamplesAncestors.get(0).getValue("SampleId", user));
                 }
-                Double dinValue = getDinValueFromQcRecord(sampleId, qcDataRecords);
-                Double A260280 = getA260280FromQcRecord(sampleId, qcDataRecords);
-                Double A260230 = getA260230FromQcRecord(sampleId, qcDataRecords);
+                Double dinValue = getDinValueFromQcRecord(sampleId, qcDatumIndex);
+                Double A260280 = getA260280FromQcRecord(sampleId, qcDatumIndex);
+                Double A260230 = getA260230FromQcRecord(sampleId, qcDatumIndex);
                 String igoRecommendation = getIgoRecommendationValue(sampleId, qcProtocolRecords);
                 String comments = getQcCommentsValue(sampleId, qcProtocolRecords);
                 if (dinValue > 0) {
@@ -772,40 +615,41 @@ public class QcReportGenerator extends DefaultGenericPlugin {
      * generate RNA QC REPORT DataRecords for Samples.
      *
      * @param samples
-     * @param qcRecords
+     * @param qcDatumIndex
      * @param qcProtocolRecords
      * @return List<DataRecord>
      * @throws NotFound
      * @throws RemoteException
      * @throws ServerException
      */
-    private List<DataRecord> generateRnaQcReportFieldValuesMap(List<DataRecord> samples, List<DataRecord> qcRecords, List<DataRecord> qcProtocolRecords){
+    private List<DataRecord> generateRnaQcReportFieldValuesMap(List<DataRecord> samples, QcDatumIndex qcDatumIndex, List<DataRecord> qcProtocolRecords){
         List<DataRecord> rnaQcRecords = new ArrayList<>();
         for (DataRecord sample : samples) {
             Map<String, Object> qcRecord = new HashMap<>();
             try {
-                String sampleId = sample.getStringVal("SampleId", user);
+                RecordFieldSnapshot sampleFields = fieldCache.get(sample);
+                String sampleId = sampleFields.getStringVal("SampleId");
                 qcRecord.put("SampleId", sampleId);
-                qcRecord.put("OtherSampleId", sample.getStringVal("OtherSampleId", user));
-                qcRecord.put("UserSampleID", sample.getStringVal("UserSampleID", user));
-                qcRecord.put("AltId", sample.getStringVal("AltId", user));
-                qcRecord.put("RequestId", sample.getStringVal("RequestId", user));
-                qcRecord.put("Concentration", sample.getDoubleVal("Concentration", user));
-                qcRecord.put("ConcentrationUnits", sample.getStringVal("ConcentrationUnits", user));
-                qcRecord.put("Volume", sample.getDoubleVal("Volume", user));
-                qcRecord.put("TotalMass", sample.getDoubleVal("TotalMass", user));
-                qcRecord.put("Preservation", sample.getStringVal("Preservation", user));
-                qcRecord.put("Recipe", sample.getStringVal("Recipe", user));
-                qcRecord.put("SampleOrigin", sample.getStringVal("SampleOrigin", user));
+                qcRecord.put("OtherSampleId", sampleFields.getStringVal("OtherSampleId"));
+                qcRecord.put("UserSampleID", sampleFields.getStringVal("UserSampleID"));
+                qcRecord.put("AltId", sampleFields.getStringVal("AltId"));
+                qcRecord.put("RequestId", sampleFields.getStringVal("RequestId"));
+                qcRecord.put("Concentration", sampleFields.getDoubleVal("Concentration"));
+                qcRecord.put("ConcentrationUnits", sampleFields.getStringVal("ConcentrationUnits"));
+                qcRecord.put("Volume", sampleFields.getDoubleVal("Volume"));
+                qcRecord.put("TotalMass", sampleFields.getDoubleVal("TotalMass"));
+                qcRecord.put("Preservation", sampleFields.getStringVal("Preservation"));
+                qcRecord.put("Recipe", sampleFields.getStringVal("Recipe"));
+                qcRecord.put("SampleOrigin", sampleFields.getStringVal("SampleOrigin"));
                 List<DataRecord> listOfSamplesAncestors = sample.getAncestorsOfType("Sample", user);
                 if(listOfSamplesAncestors != null && listOfSamplesAncestors.size() > 0) {
                     qcRecord.put("SourceSampleId", listOfSamplesAncestors.get(0).getValue("SampleId", user));
                 }
-                String rinValue = getRinValueFromQcRecord(sampleId, qcRecords);
-                Double dv200Value = getDv200ValueFromQcRecord(sampleId, qcRecords);
-                Double A260280 = getA260280FromQcRecord(sampleId, qcRecords);
-                Double A260230 = getA260230FromQcRecord(sampleId, qcRecords);
-                Double rqnValue = getRqnValueFromQcRecord(sampleId, qcRecords);
+                String rinValue = getRinValueFromQcRecord(sampleId, qcDatumIndex);
+                Double dv200Value = getDv200ValueFromQcRecord(sampleId, qcDatumIndex);
+                Double A260280 = getA260280FromQcRecord(sampleId, qcDatumIndex);
+                Double A260230 = getA260230FromQcRecord(sampleId, qcDatumIndex);
+                Double rqnValue = getRqnValueFromQcRecord(sampleId, qcDatumIndex);
                 String igoRecommendation = getIgoRecommendationValue(sampleId, qcProtocolRecords);
                 String comments = getQcCommentsValue(sampleId, qcProtocolRecords);
                 if (!StringUtils.isBlank(rinValue)) {
@@ -845,14 +689,14 @@ public class QcReportGenerator extends DefaultGenericPlugin {
      * Generate LIBRARY QC REPORT DataRecords for Samples.
      *
      * @param samples
-     * @param qcRecords
+     * @param qcDatumIndex
      * @param qcProtocolRecords
      * @return List<DataRecord>
      * @throws NotFound
      * @throws RemoteException
      * @throws ServerException
      */
-    private List<DataRecord> generateLibraryQcReportFieldValuesMap(List<DataRecord> samples, List<DataRecord> qcRecords, List<DataRecord> qcProtocolRecords, List<DataRecord> seqReqRecords) throws NotFound, RemoteException, ServerException {
+    private List<DataRecord> generateLibraryQcReportFieldValuesMap(List<DataRecord> samples, QcDatumIndex qcDatumIndex, List<DataRecord> qcProtocolRecords, List<DataRecord> seqReqRecords) throws NotFound, RemoteException, ServerException {
         List<DataRecord> libraryQcRecords = new ArrayList<>();
         //String[] stringListOfQcFiles = {"BioAnalyzer", "TapeStation"};
         //int selectedQcFile = 0;
@@ -866,32 +710,33 @@ public class QcReportGenerator extends DefaultGenericPlugin {
         for (DataRecord sample : samples) {
             Map<String, Object> qcRecord = new HashMap<>();
             try {
-                String sampleId = sample.getStringVal("SampleId", user);
-                String sampleName = sample.getStringVal("OtherSampleId", user);
+                RecordFieldSnapshot sampleFields = fieldCache.get(sample);
+                String sampleId = sampleFields.getStringVal("SampleId");
+                String sampleName = sampleFields.getStringVal("OtherSampleId");
                 qcRecord.put("SampleId", sampleId);
-                qcRecord.put("OtherSampleId", sample.getStringVal("OtherSampleId", user));
-                qcRecord.put("UserSampleID", sample.getStringVal("UserSampleID", user));
-                qcRecord.put("AltId", sample.getStringVal("AltId", user));
-                qcRecord.put("RequestId", sample.getStringVal("RequestId", user));
-                qcRecord.put("Concentration", sample.getDoubleVal("Concentration", user));
-                qcRecord.put("ConcentrationUnits", sample.getStringVal("ConcentrationUnits", user));
-                qcRecord.put("Volume", sample.getDoubleVal("Volume", user));
-                String attachedSampleTypes = samples.get(0).getStringVal("ExemplarSampleType", user);
+                qcRecord.put("OtherSampleId", sampleFields.getStringVal("OtherSampleId"));
+                qcRecord.put("UserSampleID", sampleFields.getStringVal("UserSampleID"));
+                qcRecord.put("AltId", sampleFields.getStringVal("AltId"));
+                qcRecord.put("RequestId", sampleFields.getStringVal("RequestId"));
+                qcRecord.put("Concentration", sampleFields.getDoubleVal("Concentration"));
+                qcRecord.put("ConcentrationUnits", sampleFields.getStringVal("ConcentrationUnits"));
+                qcRecord.put("Volume", sampleFields.getDoubleVal("Volume"));
+                String attachedSampleTypes = fieldCache.getStringVal(samples.get(0), "ExemplarSampleType");
                 List<DataRecord> listOfSamplesAncestors = sample.getAncestorsOfType("Sample", user);
                 if(listOfSamplesAncestors != null && listOfSamplesAncestors.size() > 0 && !attachedSampleTypes.toLowerCase().equals("pooled library")) {
                     qcRecord.put("SourceSampleId", listOfSamplesAncestors.get(0).getValue("SampleId", user));
                 }
-                if (sample.getStringVal("ConcentrationUnits", user).trim().equalsIgnoreCase("ng/uL")) {
-                    qcRecord.put("TotalMass", sample.getDoubleVal("Concentration", user) * sample.getDoubleVal("Volume", user));
+                if (sampleFields.getStringVal("ConcentrationUnits").trim().equalsIgnoreCase("ng/uL")) {
+                    qcRecord.put("TotalMass", sampleFields.getDoubleVal("Concentration") * sampleFields.getDoubleVal("Volume"));
                 } else {
-                    qcRecord.put("TotalMass", sample.getDoubleVal("TotalMass", user) * NANOMOLAR_TO_FEMTOMOLAR_CONVERSION_FACTOR); //convert nM to fM by multiplying by 1000000
+                    qcRecord.put("TotalMass", sampleFields.getDoubleVal("TotalMass") * NANOMOLAR_TO_FEMTOMOLAR_CONVERSION_FACTOR); //convert nM to fM by multiplying by 1000000
                 }
-                qcRecord.put("TumorOrNormal", sample.getStringVal("TumorOrNormal", user));
-                qcRecord.put("Recipe", sample.getStringVal("Recipe", user));
+                qcRecord.put("TumorOrNormal", sampleFields.getStringVal("TumorOrNormal"));
+                qcRecord.put("Recipe", sampleFields.getStringVal("Recipe"));
                 boolean isPool = sampleId.toLowerCase().startsWith("pool-");
                 String numOfReads = getNumOfReadsFromSeqReqRecord(sampleId, sampleName, seqReqRecords, isPool);
                 logInfo("num of reads = " + numOfReads);
-                Double averageBpSize = getAverageLibrarySizeValue(sampleId, qcRecords/*, selectedQcFile*/);
+                Double averageBpSize = getAverageLibrarySizeValue(sampleId, qcDatumIndex);
                 String igoRecommendation = getIgoRecommendationValue(sampleId, qcProtocolRecords);
                 String comments = getQcCommentsValue(sampleId, qcProtocolRecords);
                 if (averageBpSize > 0) {
@@ -922,25 +767,25 @@ public class QcReportGenerator extends DefaultGenericPlugin {
      * Generate QC report records
      *
      * @param samples
-     * @param qcRecords
+     * @param qcDatumIndex
      * @param qcProtocolRecords
      * @throws ServerException
      * @throws RemoteException
      * @throws NotFound
      */
-    private void generateQcReport(List<DataRecord> samples, List<DataRecord> qcRecords, List<DataRecord> qcProtocolRecords, List<DataRecord> seqReqRecords) {
+    private void generateQcReport(List<DataRecord> samples, QcDatumIndex qcDatumIndex, List<DataRecord> qcProtocolRecords, List<DataRecord> seqReqRecords) {
         try {
-            String attachedSampleTypes = samples.get(0).getStringVal("ExemplarSampleType", user);
+            String attachedSampleTypes = fieldCache.getStringVal(samples.get(0), "ExemplarSampleType");
             if (DNA_SAMPLE_TYPES.contains(attachedSampleTypes.toLowerCase())) {
-                List<DataRecord> dnaQcRecords = generateDnaQcReportFieldValuesMap(samples, qcRecords, qcProtocolRecords);
+                List<DataRecord> dnaQcRecords = generateDnaQcReportFieldValuesMap(samples, qcDatumIndex, qcProtocolRecords);
                 activeTask.addAttachedDataRecords(dnaQcRecords);
             }
             if (RNA_SAMPLE_TYPES.contains(attachedSampleTypes.toLowerCase())) {
-                List<DataRecord> rnaQcRecords = generateRnaQcReportFieldValuesMap(samples, qcRecords, qcProtocolRecords);
+                List<DataRecord> rnaQcRecords = generateRnaQcReportFieldValuesMap(samples, qcDatumIndex, qcProtocolRecords);
                 activeTask.addAttachedDataRecords(rnaQcRecords);
             }
             if (LIBRARY_SAMPLE_TYPES.contains(attachedSampleTypes.toLowerCase())) {
-                List<DataRecord> libraryQcRecords = generateLibraryQcReportFieldValuesMap(samples, qcRecords, qcProtocolRecords, seqReqRecords);
+                List<DataRecord> libraryQcRecords = generateLibraryQcReportFieldValuesMap(samples, qcDatumIndex, qcProtocolRecords, seqReqRecords);
                 activeTask.addAttachedDataRecords(libraryQcRecords);
             }
         }catch (NotFound notFound) {
@@ -5,7 +5,10 @@ import com.velox.api.plugin.PluginLogger;
 import com.velox.api.user.User;
 import com.velox.api.util.ClientCallbackOperations;
 import com.velox.api.util.ServerException;
+import com.velox.sloan.cmo.workflows.IgoLimsPluginUtils.CsvReader;
+import com.velox.sloan.cmo.workflows.IgoLimsPluginUtils.CsvRow;
 import com.velox.sloan.cmo.workflows.IgoLimsPluginUtils.IgoLimsPluginUtils;
+import com.velox.sloan.cmo.workflows.utils.SampleLineageCache;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 
@@ -18,83 +21,99 @@ public class BioAnalyzerResultsParser {
     private final double TO_BP_1KB = 1000.0;
     private final String LOWER_MARKER = "Lower Marker";
     private final String UPPER_MARKER = "Upper Marker";
+    private final String SAMPLE_BEGIN_IDENTIFIER = "Sample Name";
+    private final String SIZE_BP = "Size [bp]";
+    // the micro sign of the unit is read differently depending on the encoding of the export, match the column by prefix.
+    private final String CONCENTRATION_PREFIX = "Conc. [pg/";
+    private final String OBSERVATIONS = "Observations";
+    private final String PERCENT_FRACTION = "% of Total";
     private Map<String, Integer> headerMapValues;
-    private List<String> fileData;
+    private CsvReader fileData;
     private String fileName;
     private ClientCallbackOperations clientCallback;
     private PluginLogger logger;
     private User user;
-    private final List<String> IDENTIFIER_TO_SKIP_LINE = Arrays.asList("Data File Path", "Date Created", "Date Last Modified",
-            "Version Created", "Assay Name", "Assay Path", "Assay Title", "Assay Version", "Number of Samples Run", "Peak Table",
-            "Size [bp]", "Region Table", "Name", "Region 1");
+    private SampleLineageCache lineageCache;
     IgoLimsPluginUtils utils = new IgoLimsPluginUtils();
 
-    public BioAnalyzerResultsParser(List<String> fileData, String fileName, Map<String, Integer> headerMapValues, ClientCallbackOperations clientCallback, PluginLogger logger, User user) {
+    /**
+     * States of the parser while reading a Bioanalyzer export. A chip export has a block per well starting with a
+     * 'Sample Name' line, and only the Peak Table rows of a block are sample data.
+     */
+    private enum ParserState {
+        // before the first Sample Name line, or in the block of a well without a Sample Name.
+        OUTSIDE_SAMPLE,
+        // in the block of a sample, outside of the Peak Table.
+        IN_SAMPLE,
+        // in the Peak Table of a sample, until the first blank line.
+        IN_PEAK_TABLE
+    }
+
+    public BioAnalyzerResultsParser(CsvReader fileData, String fileName, Map<String, Integer> headerMapValues, ClientCallbackOperations clientCallback, PluginLogger logger, User user) {
         this.fileData = fileData;
         this.fileName = fileName;
         this.headerMapValues = headerMapValues;
         this.clientCallback = clientCallback;
         this.logger = logger;
         this.user = user;
+        this.lineageCache = new SampleLineageCache(user);
     }
 
 
     /**
-     * Method to group data by sample.
+     * Method to group data by sample. The file is read in a single pass, rows are only turned into QualityControlData
+     * when they are in the Peak Table of a sample and numeric values are read from the row without copying the cells.
      *
-     * @return
+     * @return Map of Sample Name to the Peak Table rows of the sample, in the order of the file.
      * @throws ServerException
      */
-    private Map<String, List<QualityControlData>> groupQualityControlDataBySampleId() throws ServerException, RemoteException {
-        Map<String, List<QualityControlData>> groupedData = new HashMap<>();
-        String SAMPLE_BEGIN_IDENTIFIER = "Sample Name";
-        String SAMPLE_DATA_BEGIN_IDENTIFIER = "Size [bp]";
-        String SIZE_BP = "Size [bp]";
-        String CONCENTRATION = "Conc. [pg/�l]";
-        String OBSERVATIONS = "Observations";
-        String PERCENT_FRACTION = "% of Total";
+    Map<String, List<QualityControlData>> groupQualityControlDataBySampleId() throws ServerException, RemoteException {
+        Map<String, List<QualityControlData>> groupedData = new LinkedHashMap<>();
         try {
+            int sizeIndex = getHeaderIndex(SIZE_BP);
+            int concentrationIndex = getHeaderIndexByPrefix(CONCENTRATION_PREFIX);
+            int fractionIndex = getHeaderIndex(PERCENT_FRACTION);
+            int observationIndex = getHeaderIndex(OBSERVATIONS);
+            ParserState state = ParserState.OUTSIDE_SAMPLE;
+            List<QualityControlData> sampleData = null;
             String sampleId = null;
             int rowFromBp = 0;
-            logger.logInfo("Header value map: " + headerMapValues.toString());
-            for (String fileDatum : fileData) {
-                logger.logInfo("Line before comma removal from numeric values: " + fileDatum);
-                String line = utils.removeThousandSeparator(fileDatum); //If numeric values have 1000 separator, remove 1000 separator which is "comma" from such values.
-                logger.logInfo("Line after comma removal from numeric values: " + line);
-                List<String> lineValues = Arrays.asList(line.split(","));
-                logger.logInfo("Line values" + lineValues.toString());
-                logger.logInfo("Line values size: " + lineValues.size());
-                if (line.contains(SAMPLE_BEGIN_IDENTIFIER) && lineValues.size()>1) {
-                    logger.logInfo("Sample Name value: " + lineValues.get(1));
-                    sampleId = lineValues.get(1);
-                    continue;
-                }
-                // Set sampleid to null if the Sample Name is missing in Bioanalyzer file. It happens samples fewer than
-                // limit of Bioanalyzer chip are run. This will prevent the reading of Sample data blocks that are empty
-                // on the chip and are not required to be processed.
-                if (line.contains(SAMPLE_BEGIN_IDENTIFIER) && lineValues.size()<2){
-                    sampleId = null;
-                }
-                String lineStartValue = lineValues.size() > 0 ? lineValues.get(0) : null;
-                // Skip lines that does not contain miscellaneous data not required for sample QC annotation.
-                if (lineValues.contains(SAMPLE_DATA_BEGIN_IDENTIFIER) || StringUtils.isBlank(lineStartValue) || IDENTIFIER_TO_SKIP_LINE.contains(lineStartValue)) {
+            for (CsvRow row : fileData) {
+                // A Sample Name line starts the block of the next well. The Sample Name is missing for wells that
+                // were not used when fewer samples than the limit of the chip are run, these blocks are skipped.
+                if (row.equals(0, SAMPLE_BEGIN_IDENTIFIER)) {
+                    state = row.isBlank(1) ? ParserState.OUTSIDE_SAMPLE : ParserState.IN_SAMPLE;
+                    sampleId = row.isBlank(1) ? null : row.get(1);
+                    sampleData = null;
+                    rowFromBp = 0;
                     continue;
                 }
-                // Start processing data for sample. This will continue until code finds a new line with Sample Name
-                // block with new Sample Name.
-                if (sampleId != null) {
-                    logger.logInfo(String.format("Bioanalyzer data from file %s.\n%s", fileName, lineValues.toString()));
-                    int startBp = rowFromBp;
-                    int toBp = Integer.parseInt(lineValues.get(headerMapValues.get(SIZE_BP)).replace(",", "")); // replace any comma separators in numbers.
-                    rowFromBp = toBp;
-                    double concentration = Double.parseDouble(lineValues.get(headerMapValues.get(CONCENTRATION)).replace(",", ""));
-                    double fraction = Double.parseDouble(lineValues.get(headerMapValues.get(PERCENT_FRACTION)).replace(",", ""));
-                    String observation = lineValues.get(headerMapValues.get(OBSERVATIONS));
-                    QualityControlData QualityControlData = new QualityControlData(sampleId, startBp, toBp, concentration, fraction, observation);
-                    groupedData.putIfAbsent(sampleId, new ArrayList<>());
-                    groupedData.get(sampleId).add(QualityControlData);
+                switch (state) {
+                    case IN_SAMPLE:
+                        if (row.equals(0, SIZE_BP)) {
+                            state = ParserState.IN_PEAK_TABLE;
+                        }
+                        break;
+                    case IN_PEAK_TABLE:
+                        if (row.isBlank(0)) {
+                            state = ParserState.IN_SAMPLE;
+                            break;
+                        }
+                        if (sampleData == null) {
+                            sampleData = groupedData.computeIfAbsent(sampleId, k -> new ArrayList<>());
+                        }
+                        int toBp = row.getInt(sizeIndex);
+                        sampleData.add(new QualityControlData(sampleId, rowFromBp, toBp, row.getDouble(concentrationIndex),
+                                row.getDouble(fractionIndex), row.get(observationIndex)));
+                        rowFromBp = toBp;
+                        break;
+                    default:
+                        break;
                 }
             }
+            for (Map.Entry<String, List<QualityControlData>> sample : groupedData.entrySet()) {
+                logger.logDebug(String.format("Bioanalyzer Sample Name %s: %d Peak Table rows.", sample.getKey(), sample.getValue().size()));
+            }
         } catch (Exception e) {
             String errMsg = String.format("Error while grouping the data by 'SampleId'.\n%s", ExceptionUtils.getStackTrace(e));
             clientCallback.displayInfo(errMsg);
@@ -104,6 +123,23 @@ public class BioAnalyzerResultsParser {
         return groupedData;
     }
 
+    private int getHeaderIndex(String header) {
+        Integer index = headerMapValues.get(header);
+        if (index == null) {
+            throw new IllegalArgumentException(String.format("Column '%s' not found in Bioanalyzer file %s.", header, fileName));
+        }
+        return index;
+    }
+
+    private int getHeaderIndexByPrefix(String headerPrefix) {
+        for (Map.Entry<String, Integer> header : headerMapValues.entrySet()) {
+            if (header.getKey().startsWith(headerPrefix)) {
+                return header.getValue();
+            }
+        }
+        throw new IllegalArgumentException(String.format("Column '%s' not found in Bioanalyzer file %s.", headerPrefix, fileName));
+    }
+
     /**
      * Method to get adapterPercentage
      *
@@ -115,8 +151,6 @@ public class BioAnalyzerResultsParser {
         double adapterPercentage = 0.0;
         try {
             for (QualityControlData data : QualityControlDataVals) {
-                logger.logInfo(data.toString());
-                int fromBpVal = data.getFromBp();
                 int toBpVal = data.getToBp();
                 String lowerMarker = data.getObservation();
                 if (StringUtils.isBlank(lowerMarker) && toBpVal >= ADAPTER_FROM_BP && toBpVal <= ADAPTER_TO_BP) {
@@ -142,15 +176,10 @@ public class BioAnalyzerResultsParser {
         double percentageFragmentsUpto1kb = 0.0;
         try {
             for (QualityControlData data : QualityControlDataVals) {
-                logger.logInfo("Bioanalyzer sample data row: " + data.toString());
-                int fromBpVal = data.getFromBp();
                 int toBp = data.getToBp();
                 String observation = data.getObservation();
-                logger.logInfo(String.format("From BP: %d, To BP: %d", fromBpVal, toBp));
                 if (StringUtils.isBlank(observation) && toBp > ADAPTER_TO_BP && toBp <= TO_BP_1KB ) {
-                    logger.logInfo(String.format(" Adding row with From BP: %d, To BP: %d",  fromBpVal, toBp));
                     percentageFragmentsUpto1kb += data.getFractionVal();
-                    logger.logInfo(String.format("Percentage upto 1 kb: %f", percentageFragmentsUpto1kb));
                 }
             }
         } catch (Exception e) {
@@ -175,16 +204,10 @@ public class BioAnalyzerResultsParser {
                     double adapterPercentage = calculateAdapterPercentage(QualityControlData);
                     double percentFragmentsUpto1kb = calculatePercentageFragmentsUpto1kb(QualityControlData);
                     double percentFragmentLargerThan1Kb = Math.abs((adapterPercentage + percentFragmentsUpto1kb) - 100.0);
-                    boolean isUserLibrary = utils.isUserLibrary(sample, user, clientCallback);
+                    boolean isUserLibrary = utils.isUserLibrary(sample, lineageCache, user, clientCallback);
                     SampleQcResult qcResult = new SampleQcResult(key, quantity, adapterPercentage, percentFragmentLargerThan1Kb, isUserLibrary);
-                    logger.logInfo("Sample ID: " + key);
-                    logger.logInfo("Quantity: " + quantity);
-                    logger.logInfo("Adapter percent: " + adapterPercentage);
-                    logger.logInfo("Percent upto 1 kb: " + percentFragmentsUpto1kb);
-                    logger.logInfo("Percent > 1kb: " + percentFragmentLargerThan1Kb);
-                    logger.logInfo(String.format("Is user Lib: %s", isUserLibrary));
-                    logger.logInfo("Igo recommendation: " + qcResult.getIgoRecommendationAnnotation());
-                    logger.logInfo(qcResult.toString());
+                    logger.logDebug(String.format("%s, Percent upto 1 kb: %f, Igo recommendation: %s", qcResult, percentFragmentsUpto1kb,
+                            qcResult.getIgoRecommendationAnnotation()));
                     qcResults.add(qcResult);
                 }
             }
@@ -207,7 +230,7 @@ public class BioAnalyzerResultsParser {
         try {
             Map<String, List<QualityControlData>> groupedData = groupQualityControlDataBySampleId();
             qcResults = getQualityControlData(groupedData, attachedSamples);
-            logger.logInfo(String.format("Parsed SampleQcResults: %s", qcResults.toString()));
+            logger.logInfo(String.format("Parsed %d SampleQcResults from %s.", qcResults.size(), fileName));
         }catch (Exception e){
             String errMsg = String.format("%s -> while parsing Tapestation data.\n%s", ExceptionUtils.getRootCauseMessage(e), ExceptionUtils.getStackTrace(e));
             clientCallback.displayInfo(errMsg);
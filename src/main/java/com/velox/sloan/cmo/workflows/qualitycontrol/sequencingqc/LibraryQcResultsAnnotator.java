@@ -12,6 +12,7 @@ import com.velox.api.workflow.ActiveTask;
 import com.velox.api.workflow.ActiveWorkflow;
 import com.velox.sapioutils.server.plugin.DefaultGenericPlugin;
 import com.velox.sloan.cmo.recmodels.SampleModel;
+import com.velox.sloan.cmo.workflows.IgoLimsPluginUtils.CsvReader;
 import com.velox.sloan.cmo.workflows.IgoLimsPluginUtils.IgoLimsPluginUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 
@@ -84,7 +85,8 @@ public class LibraryQcResultsAnnotator extends DefaultGenericPlugin {
                 if (!isValidFileType(file)) {
                     return new PluginResult(true);
                 }
-                List<String> fileData = utils.readDataFromCsvFile(clientCallback.readBytes(file));
+                byte[] fileContent = clientCallback.readBytes(file);
+                CsvReader fileData = utils.readCsvFile(fileContent);
                 boolean isBioanalyzerFile = utils.isBioanalyzerFile(fileData, BIOA_IDENTIFIERS, clientCallback, pluginLogger);
                 if (isBioanalyzerFile && isValidBioanalyzerData(fileData, file)) {
                     List<SampleQcResult> bioaData = new ArrayList<>(getBioAnalyzerData(fileData, file, samples));
@@ -128,7 +130,7 @@ public class LibraryQcResultsAnnotator extends DefaultGenericPlugin {
      * @param fileName
      * @return
      */
-    private List<SampleQcResult> getBioAnalyzerData(List<String> fileData, String fileName, List<DataRecord> attachedSamples) throws ServerException, RemoteException {
+    private List<SampleQcResult> getBioAnalyzerData(CsvReader fileData, String fileName, List<DataRecord> attachedSamples) throws ServerException, RemoteException {
         List<SampleQcResult> qcResults = new ArrayList<>();
         try {
             Map<String, Integer> headerValueMap = utils.getBioanalyzerFileHeaderMap(fileData, fileName, BIOA_HEADER_IDENTIFIER, pluginLogger);
@@ -150,10 +152,10 @@ public class LibraryQcResultsAnnotator extends DefaultGenericPlugin {
      * @param fileName
      * @return
      */
-    private List<SampleQcResult> getTapeStationData(List<String> fileData, String fileName, List<DataRecord> attachedSamples) throws ServerException, RemoteException {
+    private List<SampleQcResult> getTapeStationData(CsvReader fileData, String fileName, List<DataRecord> attachedSamples) throws ServerException, RemoteException {
         List<SampleQcResult> qcResults = new ArrayList<>();
         try {
-            Map<String, Integer> headerValueMap = utils.getCsvHeaderValueMap(fileData, pluginLogger);
+            Map<String, Integer> headerValueMap = fileData.getHeaderValueMap();
             TapeStationResultParser parser = new TapeStationResultParser(fileData, fileName, headerValueMap, clientCallback, pluginLogger, user);
             qcResults = parser.parseData(attachedSamples);
         } catch (Exception e) {
@@ -188,9 +190,11 @@ public class LibraryQcResultsAnnotator extends DefaultGenericPlugin {
      * @return
      * @throws ServerException
      */
-    public boolean isValidTapestationData(List<String> fileData, String file) throws ServerException, RemoteException {
+    public boolean isValidTapestationData(CsvReader fileData, String file) throws ServerException, RemoteException {
         try {
-            logInfo(String.format("Header line from file %s %s", fileData.get(0), file));
+            if (!fileData.isEmpty()) {
+                logInfo(String.format("Header line from file %s %s", fileData.iterator().next().getLine(), file));
+            }
             if (fileData.isEmpty() || !utils.csvFileContainsRequiredHeaders(fileData, EXPECTED_TAPESTATION_HEADER_VALS, pluginLogger)) {
                 String errMsg = String.format("Uploaded file %s is missing valid header values. Expected header values are %s or \n%s.", file, EXPECTED_TAPESTATION_HEADER_VALS, EXPECTED_BIOA_HEADER_VALS);
                 clientCallback.displayError(errMsg);
@@ -220,7 +224,7 @@ public class LibraryQcResultsAnnotator extends DefaultGenericPlugin {
      * @return
      * @throws ServerException
      */
-    public boolean isValidBioanalyzerData(List<String> fileData, String file) throws ServerException, RemoteException {
+    public boolean isValidBioanalyzerData(CsvReader fileData, String file) throws ServerException, RemoteException {
         try {
             if (fileData.isEmpty() || !utils.hasValidBioanalyzerHeader(fileData, file, EXPECTED_BIOA_HEADER_VALS, pluginLogger)) {
                 String errMsg = String.format("Uploaded file %s is missing valid header values. Expected header values are %s.", file, EXPECTED_BIOA_HEADER_VALS);
@@ -6,7 +6,10 @@ import com.velox.api.user.User;
 import com.velox.api.util.ClientCallbackOperations;
 import com.velox.api.util.ServerException;
 import com.velox.sapio.commons.exemplar.context.ManagerBase;
+import com.velox.sloan.cmo.workflows.IgoLimsPluginUtils.CsvReader;
+import com.velox.sloan.cmo.workflows.IgoLimsPluginUtils.CsvRow;
 import com.velox.sloan.cmo.workflows.IgoLimsPluginUtils.IgoLimsPluginUtils;
+import com.velox.sloan.cmo.workflows.utils.SampleLineageCache;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 
 import java.rmi.RemoteException;
@@ -17,47 +20,55 @@ class TapeStationResultParser extends ManagerBase {
     private final double ADAPTER_TO_BP = 180.0;
     private final double LIB_TO_1KBP = 1000.0;
     private final String FROM_BP = "From [bp]";
+    // the micro sign in the concentration header depends on the encoding of the exported file.
+    private final String CONCENTRATION_PREFIX = "Conc. [ng/";
     private IgoLimsPluginUtils utils = new IgoLimsPluginUtils();
+    private SampleLineageCache lineageCache;
     private Map<String, Integer> headerMapValues;
-    private List<String> fileData;
+    private CsvReader fileData;
     private String fileName;
     private ClientCallbackOperations clientCallback;
     private PluginLogger logger;
     private User user;
 
-    TapeStationResultParser(List<String> data, String fileName, Map<String, Integer> headerMapValues, ClientCallbackOperations clientCallback, PluginLogger logger, User user) {
+    TapeStationResultParser(CsvReader data, String fileName, Map<String, Integer> headerMapValues, ClientCallbackOperations clientCallback, PluginLogger logger, User user) {
         this.fileData = data;
         this.fileName = fileName;
         this.headerMapValues = headerMapValues;
         this.clientCallback = clientCallback;
         this.user = user;
+        this.lineageCache = new SampleLineageCache(user);
         this.logger = logger;
     }
 
 
     /**
-     * Method to group data by sample.
+     * Method to group data by sample. Rows are read from the file one at a time and numeric values are read from the
+     * row without splitting the line, so quoted values with a thousand separator are read as one cell.
      *
-     * @param tapeStationFileData
      * @return
      * @throws ServerException
      */
-    private Map<String, List<QualityControlData>> groupQualityControlDataBySampleId(List<String> tapeStationFileData) throws ServerException, RemoteException {
+    Map<String, List<QualityControlData>> groupQualityControlDataBySampleId() throws ServerException, RemoteException {
         Map<String, List<QualityControlData>> groupedData = new HashMap<>();
         String SAMPLE_DESCRIPTION = "Sample Description";
         String TO_BP = "To [bp]";
-        String CONCENTRATION = "Conc. [ng/�l]";
         String PERCENT_FRACTION = "% of Total";
         try {
-            for (int i = 1; i < tapeStationFileData.size(); i++) {
-                String row = utils.removeThousandSeparator(tapeStationFileData.get(i));
-                List<String> rowDataValues = Arrays.asList(row.split(","));
-                logger.logInfo(String.format("Tapestation data from file %s.\n%s", fileName, rowDataValues.toString()));
-                String sampleId = rowDataValues.get(headerMapValues.get(SAMPLE_DESCRIPTION));
-                int fromBp = Integer.parseInt(rowDataValues.get(headerMapValues.get(FROM_BP)));
-                int toBp = Integer.parseInt(rowDataValues.get(headerMapValues.get(TO_BP)));
-                double concentration = Double.parseDouble(rowDataValues.get(headerMapValues.get(CONCENTRATION)));
-                double fraction = Double.parseDouble(rowDataValues.get(headerMapValues.get(PERCENT_FRACTION)));
+            int sampleIdIndex = getHeaderIndex(SAMPLE_DESCRIPTION);
+            int fromBpIndex = getHeaderIndex(FROM_BP);
+            int toBpIndex = getHeaderIndex(TO_BP);
+            int concentrationIndex = getHeaderIndexByPrefix(CONCENTRATION_PREFIX);
+            int fractionIndex = getHeaderIndex(PERCENT_FRACTION);
+            for (CsvRow row : fileData.getDataRows()) {
+                if (row.size() == 1 && row.isBlank(0)) {
+                    continue;
+                }
+                String sampleId = row.get(sampleIdIndex);
+                int fromBp = row.getInt(fromBpIndex);
+                int toBp = row.getInt(toBpIndex);
+                double concentration = row.getDouble(concentrationIndex);
+                double fraction = row.getDouble(fractionIndex);
                 String observation = ""; //observation value are only present in Bioanalyzer Data.
                 QualityControlData QualityControlData = new QualityControlData(sampleId, fromBp, toBp, concentration, fraction, observation);
                 groupedData.putIfAbsent(sampleId, new ArrayList<>());
@@ -72,6 +83,23 @@ class TapeStationResultParser extends ManagerBase {
         return groupedData;
     }
 
+    private int getHeaderIndex(String header) {
+        Integer index = headerMapValues.get(header);
+        if (index == null) {
+            throw new IllegalArgumentException(String.format("Column '%s' not found in Tapestation file %s.", header, fileName));
+        }
+        return index;
+    }
+
+    private int getHeaderIndexByPrefix(String headerPrefix) {
+        for (Map.Entry<String, Integer> header : headerMapValues.entrySet()) {
+            if (header.getKey().startsWith(headerPrefix)) {
+                return header.getValue();
+            }
+        }
+        throw new IllegalArgumentException(String.format("Column '%s' not found in Tapestation file %s.", headerPrefix, fileName));
+    }
+
 
     /**
      * Method to sort Tapestation objects in Ascending order by fromBp property values.
@@ -245,7 +273,7 @@ class TapeStationResultParser extends ManagerBase {
                     double sumConcGreaterThan1Kb = getConcentrationSumForGreaterThan1kb(qualityControlData);
                     double percentFragmentLargerThan1Kb = Math.abs(calculatePercentageFragmentsGreaterThan1kb(qualityControlData, sumConcGreaterThan1Kb));
 //                    }
-                    boolean isUserLibrary = utils.isUserLibrary(sample, user, clientCallback);
+                    boolean isUserLibrary = utils.isUserLibrary(sample, lineageCache, user, clientCallback);
                     SampleQcResult qcResult = new SampleQcResult(key, quantity, adapterPercentage, percentFragmentLargerThan1Kb, isUserLibrary);
                     logger.logInfo("Sample ID: " + key);
                     logger.logInfo("Quantity: " + quantity);
@@ -275,7 +303,7 @@ class TapeStationResultParser extends ManagerBase {
     List<SampleQcResult> parseData(List<DataRecord> attachedSamples) throws ServerException, RemoteException {
         List<SampleQcResult> qcResults = new ArrayList<>();
         try {
-            Map<String, List<QualityControlData>> groupedData = groupQualityControlDataBySampleId(this.fileData);
+            Map<String, List<QualityControlData>> groupedData = groupQualityControlDataBySampleId();
             qcResults = getQualityControlData(groupedData, attachedSamples);
             logger.logInfo(String.format("Parsed SampleQcResults: %s", qcResults.toString()));
         }catch (Exception e){
@@ -11,6 +11,7 @@ import com.velox.api.workflow.ActiveWorkflow;
 import com.velox.api.workflow.Workflow;
 import com.velox.sapioutils.server.plugin.DefaultGenericPlugin;
 import com.velox.sapioutils.shared.managers.TaskUtilManager;
+import com.velox.sloan.cmo.workflows.utils.DataRecordQuery;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 
@@ -44,7 +45,7 @@ public class BankedSampleStatusReporter extends DefaultGenericPlugin {
             if (StringUtils.isEmpty(iLabsRequestId)) {
                 return new PluginResult(false);
             }
-            List<DataRecord> bankedSamples = dataRecordManager.queryDataRecords("BankedSample", "ServiceId = '" + iLabsRequestId + "'", user);
+            List<DataRecord> bankedSamples = DataRecordQuery.from("BankedSample").whereEquals("ServiceId", iLabsRequestId).execute(dataRecordManager, user);
             String samplesNotFound = String.format("No Banked Samples found for the entered request ID '%s'.\n" +
                     "Please make sure you have correct iLabs request ID.", iLabsRequestId);
             if (bankedSamples == null || bankedSamples.size() == 0) {
@@ -188,7 +189,7 @@ public class BankedSampleStatusReporter extends DefaultGenericPlugin {
         List<DataRecord> request;
         List<DataRecord> samples = new ArrayList<>();
         try {
-            request = dataRecordManager.queryDataRecords("Request", "RequestId = '" + requestId + "'", user);
+            request = DataRecordQuery.from("Request").whereEquals("RequestId", requestId).execute(dataRecordManager, user);
             if (!request.isEmpty() && request.size() == 1) {
                 samples = Arrays.asList(request.get(0).getChildrenOfType("Sample", user));
             }
@@ -8,8 +8,11 @@ import com.velox.api.plugin.PluginResult;
 import com.velox.api.util.ServerException;
 import com.velox.api.workflow.ActiveTask;
 import com.velox.api.workflow.ActiveWorkflow;
-import com.velox.sapioutils.server.plugin.DefaultGenericPlugin;
+import com.velox.sloan.cmo.workflows.micronics.MicronicTubeTareWeightCache;
+import com.velox.sloan.cmo.workflows.micronics.MicronicTubeTareWeightCache.MicronicTube;
 import com.velox.sloan.cmo.workflows.micronics.NewMicronicTubeTareWeightImporter;
+import com.velox.sloan.cmo.workflows.utils.DataRecordQuery;
+import com.velox.sloan.cmo.workflows.utils.ProfiledGenericPlugin;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 
@@ -19,13 +22,15 @@ import java.util.*;
 /**
  * This plugin is designed to import Sample Volume values using a file upload. The plugin calculates the volume using
  * MicronicTube info in 'MicronicTubesTareWeight' table and values present in the uploaded file. The calculated volume
- * is then saved on the corresponding samples.
+ * is then saved on the corresponding samples. Tube values are read through the shared MicronicTubeTareWeightCache, so
+ * repeated uploads of the same rack do not query the tubes again.
  */
 
-public class MicronicTubeVolumeImporter extends DefaultGenericPlugin {
+public class MicronicTubeVolumeImporter extends ProfiledGenericPlugin {
     private String[] permittedUsers = {"Sample Receiving", "Sapio Admin", "Admin"};
     private MicronicTubeVolumeDataReader volumeDataReader = new MicronicTubeVolumeDataReader();
     private NewMicronicTubeTareWeightImporter excelFileValidator = new NewMicronicTubeTareWeightImporter();
+    private MicronicTubeTareWeightCache tareWeightCache = MicronicTubeTareWeightCache.getInstance();
 
     public MicronicTubeVolumeImporter() {
         setTaskToolbar(true);
@@ -49,7 +54,8 @@ public class MicronicTubeVolumeImporter extends DefaultGenericPlugin {
         return false;
     }
 
-    public PluginResult run() throws ServerException, RemoteException {
+    @Override
+    protected PluginResult runProfiled() throws ServerException, RemoteException {
         try {
             String fileWithMicronicTubeData = clientCallback.showFileDialog("Please upload micronic file", null);
             if (StringUtils.isEmpty(fileWithMicronicTubeData)) {
@@ -65,7 +71,7 @@ public class MicronicTubeVolumeImporter extends DefaultGenericPlugin {
                 clientCallback.displayError("There are no samples attached to this task.");
                 return new PluginResult(false);
             }
-            List<DataRecord> existingMicronicTubes = dataRecordManager.queryDataRecords("MicronicTubesTareWeight", null, user);
+            Map<String, MicronicTube> existingMicronicTubes = getMicronicTubesByBarcode(getMicronicBarcodesInFile(tubeDataInFile));
             List<Map<String, Object>> micronicTubeDataReadFromFile = readMicronicInfoFromFileData(tubeDataInFile, existingMicronicTubes, samples);
             if (micronicTubeDataReadFromFile.size() > 0 && existingMicronicTubes.size() > 0) {
                 assignNewVolumeAndStorageToSamples(samples, micronicTubeDataReadFromFile, existingMicronicTubes);
@@ -179,6 +185,42 @@ public class MicronicTubeVolumeImporter extends DefaultGenericPlugin {
         return volumeDataReader.getHeaderValues(fileData);
     }
 
+    /**
+     * Method to get the micronic tube barcodes present in the file rows.
+     *
+     * @param fileData
+     * @return Set<String>
+     */
+    private Set<String> getMicronicBarcodesInFile(String[] fileData) {
+        Map<String, Integer> header = parseFileHeader(fileData);
+        int barcodeColumn = header.get("Barcode");
+        Set<String> barcodes = new LinkedHashSet<>();
+        for (int i = 1; i < fileData.length; i++) {
+            String[] rowValues = fileData[i].split(",");
+            if (rowValues.length > barcodeColumn && !StringUtils.isBlank(rowValues[barcodeColumn])) {
+                barcodes.add(rowValues[barcodeColumn]);
+            }
+        }
+        return barcodes;
+    }
+
+    /**
+     * Method to get 'MicronicTubesTareWeight' values for the barcodes in the file, indexed by MicronicTubeBarcode.
+     * Only the tubes in the uploaded file that are not in the tare weight cache are fetched.
+     *
+     * @param barcodes
+     * @return Map of MicronicTubeBarcode to 'MicronicTubesTareWeight' values of the barcode.
+     * @throws NotFound
+     * @throws IoError
+     * @throws RemoteException
+     * @throws ServerException
+     */
+    private Map<String, MicronicTube> getMicronicTubesByBarcode(Set<String> barcodes) throws NotFound, IoError, RemoteException, ServerException {
+        Map<String, MicronicTube> micronicTubesByBarcode = tareWeightCache.getTubes(barcodes, dataRecordManager, user);
+        logInfo(String.format("Found 'MicronicTubesTareWeight' values for %d of %d barcodes in file.", micronicTubesByBarcode.size(), barcodes.size()));
+        return micronicTubesByBarcode;
+    }
+
     /**
      * Method to get micronic records from passed LIMS DataRecords.
      *
@@ -220,23 +262,20 @@ public class MicronicTubeVolumeImporter extends DefaultGenericPlugin {
      * Method to get MicronicTubeWeight from LIMS.
      *
      * @param tubeBarcode
-     * @param micronicTubeRecordsInLims
+     * @param micronicTubesByBarcode
      * @return
      * @throws NotFound
      * @throws RemoteException
      * @throws ServerException
      */
-    private double getTubeTareWeight(String tubeBarcode, List<DataRecord> micronicTubeRecordsInLims){
+    private double getTubeTareWeight(String tubeBarcode, Map<String, MicronicTube> micronicTubesByBarcode){
         double tareWeight = 0.0;
-        boolean barcodeFound = false;
         try {
-            for (DataRecord record : micronicTubeRecordsInLims) {
-                if (Objects.equals(record.getStringVal("MicronicTubeBarcode", user), tubeBarcode)) {
-                    tareWeight = record.getDoubleVal("MicronicTubeWeight", user);
-                    barcodeFound = true;
-                }
-            }
-            if (!barcodeFound) {
+            MicronicTube micronicTube = micronicTubesByBarcode.get(tubeBarcode);
+            if (micronicTube != null) {
+                Double tubeWeight = micronicTube.getTareWeight();
+                tareWeight = tubeWeight == null ? 0.0 : tubeWeight;
+            } else {
                 String errMsg = String.format("TARE WEIGHT not found for sample with Micronic Tube Barcode: %s", tubeBarcode);
                 logError(errMsg);
                 clientCallback.displayError(errMsg);
@@ -279,20 +318,20 @@ public class MicronicTubeVolumeImporter extends DefaultGenericPlugin {
      *
      * @param row
      * @param header
-     * @param micronicTubeRecordsInLims
+     * @param micronicTubesByBarcode
      * @return
      * @throws ServerException
      * @throws NotFound
      * @throws RemoteException
      */
-    private Map<String, Object> getTubeValueMapFromFileRowData(String row, Map<String, Integer> header, List<DataRecord> micronicTubeRecordsInLims) throws ServerException, RemoteException {
+    private Map<String, Object> getTubeValueMapFromFileRowData(String row, Map<String, Integer> header, Map<String, MicronicTube> micronicTubesByBarcode) throws ServerException, RemoteException {
         Map<String, Object> tubeValuesMap = new HashMap<>();
         String storageLocationBarcode = row.split(",")[header.get("Rack")];
         char tubeRowPosition = row.split(",")[header.get("Tube")].charAt(0);
         String tubeColumnPosition = getMicronicTubeColumnPosition(row, header);
         String micronicTubeBarcode = row.split(",")[header.get("Barcode")];
         String containerType = "Micronic Rack";
-        double tubeTareWeight = getTubeTareWeight(micronicTubeBarcode, micronicTubeRecordsInLims);
+        double tubeTareWeight = getTubeTareWeight(micronicTubeBarcode, micronicTubesByBarcode);
         double tubeWeightWithSampleVolume = Double.parseDouble(row.split(",")[header.get("Weight")]);
         double newSampleVolumeInTube = getNewVolume(tubeWeightWithSampleVolume, tubeTareWeight, micronicTubeBarcode);
         tubeValuesMap.put("StorageLocationBarcode", storageLocationBarcode);
@@ -308,15 +347,15 @@ public class MicronicTubeVolumeImporter extends DefaultGenericPlugin {
      * Method to read MicronicTube volume data from file data.
      *
      * @param fileData
-     * @param micronicTubeRecordsInLims
+     * @param micronicTubesByBarcode
      * @param Samples
      * @return
      * @throws ServerException
      * @throws NotFound
      * @throws RemoteException
      */
-    private List<Map<String, Object>> readMicronicInfoFromFileData(String[] fileData, List<DataRecord> micronicTubeRecordsInLims, List<DataRecord> Samples) throws ServerException, RemoteException {
-        List<String> sampleMicronicBarcodes = getMicronicBarcodesFromRecordsInLims(Samples);
+    private List<Map<String, Object>> readMicronicInfoFromFileData(String[] fileData, Map<String, MicronicTube> micronicTubesByBarcode, List<DataRecord> Samples) throws ServerException, RemoteException {
+        Set<String> sampleMicronicBarcodes = new HashSet<>(getMicronicBarcodesFromRecordsInLims(Samples));
         Map<String, Integer> header = parseFileHeader(fileData);
         List<Map<String, Object>> micronicTubeData = new ArrayList<>();
         for (int i = 1; i < fileData.length; i++) {
@@ -324,8 +363,8 @@ public class MicronicTubeVolumeImporter extends DefaultGenericPlugin {
             Map<String, Object> newTube;
             String row = fileData[i];
             String tubeBarcodeInRow = row.split(",")[header.get("Barcode")];
-                if (rowHasAllValues(row) && sampleMicronicBarcodes.contains(tubeBarcodeInRow) && !isMicronicTubeAssignedToSample(tubeBarcodeInRow, micronicTubeRecordsInLims)) {
-                    newTube = getTubeValueMapFromFileRowData(row, header, micronicTubeRecordsInLims);
+                if (rowHasAllValues(row) && sampleMicronicBarcodes.contains(tubeBarcodeInRow) && !isMicronicTubeAssignedToSample(tubeBarcodeInRow, micronicTubesByBarcode)) {
+                    newTube = getTubeValueMapFromFileRowData(row, header, micronicTubesByBarcode);
                     micronicTubeData.add(newTube);
                 } else {
                     logError(String.format("Micronic barcode %s in file is not present on any of attached samples. It will be ignored.", tubeBarcodeInRow));
@@ -342,49 +381,66 @@ public class MicronicTubeVolumeImporter extends DefaultGenericPlugin {
     /**
      * Method to check if MicronicTubeBarcode is already assigned to another sample.
      * @param barcode
-     * @param micronicTubeRecordsInLims
+     * @param micronicTubesByBarcode
      * @return
      */
-    private boolean isMicronicTubeAssignedToSample(String barcode, List<DataRecord> micronicTubeRecordsInLims){
+    private boolean isMicronicTubeAssignedToSample(String barcode, Map<String, MicronicTube> micronicTubesByBarcode){
         try {
-            for (DataRecord micronicRecord : micronicTubeRecordsInLims) {
-                if (micronicRecord.getStringVal(("MicronicTubeBarcode"), user).equals(barcode) && micronicRecord.getBooleanVal("AssignedToSample", user)) {
-                    logError(String.format("Micronic tube '%s' in file is assigned to another sample. It will be ignored.", barcode));
-                    clientCallback.displayError(String.format("Micronic tube '%s' in file is assigned to another sample. It will be ignored.", barcode));
-                    return true;
-                }
+            MicronicTube micronicTube = micronicTubesByBarcode.get(barcode);
+            if (micronicTube != null && micronicTube.isAssignedToSample()) {
+                logError(String.format("Micronic tube '%s' in file is assigned to another sample. It will be ignored.", barcode));
+                clientCallback.displayError(String.format("Micronic tube '%s' in file is assigned to another sample. It will be ignored.", barcode));
+                return true;
             }
         } catch (RemoteException re) {
             logError(String.format("RemoteException -> Error validating if MicronicTube with barcode %s is linked to another sample:\n%s", barcode, ExceptionUtils.getStackTrace(re)));
-        } catch (NotFound notFound) {
-            logError(String.format("NotFound ->Error validating if MicronicTube with barcode %s is linked to another sample:\n%s", barcode, ExceptionUtils.getStackTrace(notFound)));
         } catch (ServerException se) {
             logError(String.format("ServerException ->Error validating if MicronicTube with barcode %s is linked to another sample:\n%s", barcode, ExceptionUtils.getStackTrace(se)));
         }
         return false;
     }
 
-    private void setMicronicTubeAsAssignedInLims(String tubeBarcode, List<DataRecord> micronicTubeRecordsInLims) throws NotFound, ServerException, RemoteException, IoError, InvalidValue {
-        for (DataRecord micronicRecord : micronicTubeRecordsInLims) {
-            if (Objects.equals(micronicRecord.getStringVal("MicronicTubeBarcode", user), tubeBarcode)) {
-                micronicRecord.setDataField("AssignedToSample", true, user);
+    /**
+     * Method to set 'AssignedToSample' on the 'MicronicTubesTareWeight' records of the passed barcodes. The records are
+     * fetched with one query and the tubes are removed from the tare weight cache. The change is committed by the
+     * workflow, the next lookup of the tubes reads them from LIMS again.
+     *
+     * @param tubeBarcodes
+     * @param micronicTubesByBarcode
+     * @throws NotFound
+     * @throws ServerException
+     * @throws RemoteException
+     * @throws IoError
+     * @throws InvalidValue
+     */
+    private void setMicronicTubesAsAssignedInLims(Set<String> tubeBarcodes, Map<String, MicronicTube> micronicTubesByBarcode) throws NotFound, ServerException, RemoteException, IoError, InvalidValue {
+        List<Long> recordIds = new ArrayList<>();
+        for (String tubeBarcode : tubeBarcodes) {
+            MicronicTube micronicTube = micronicTubesByBarcode.get(tubeBarcode);
+            if (micronicTube != null) {
+                recordIds.addAll(micronicTube.getRecordIds());
             }
         }
+        for (DataRecord micronicRecord : DataRecordQuery.from("MicronicTubesTareWeight").whereIn("RecordId", recordIds).execute(dataRecordManager, user)) {
+            micronicRecord.setDataField("AssignedToSample", true, user);
+        }
+        tareWeightCache.invalidate(tubeBarcodes);
     }
 
     /**
      * Method to set Volume and Storage information on Samples.
      * @param samples
      * @param recordsReadFromFile
-     * @param micronicTubeRecordsInLims
+     * @param micronicTubesByBarcode
      * @throws NotFound
      * @throws RemoteException
      * @throws ServerException
      * @throws IoError
      * @throws InvalidValue
      */
-    private void assignNewVolumeAndStorageToSamples(List<DataRecord> samples, List<Map<String, Object>> recordsReadFromFile, List<DataRecord> micronicTubeRecordsInLims) {
+    private void assignNewVolumeAndStorageToSamples(List<DataRecord> samples, List<Map<String, Object>> recordsReadFromFile, Map<String, MicronicTube> micronicTubesByBarcode) {
         String sampleTubeBarcodeInLims;
+        Set<String> assignedTubeBarcodes = new LinkedHashSet<>();
         for (DataRecord sampleRecord : samples) {
             try {
                 sampleTubeBarcodeInLims = sampleRecord.getStringVal("MicronicTubeBarcode", user);
@@ -392,9 +448,9 @@ public class MicronicTubeVolumeImporter extends DefaultGenericPlugin {
                 if (!StringUtils.isEmpty(sampleTubeBarcodeInLims)) {
                     for (Map<String, Object> fileRecord : recordsReadFromFile) {
                         String tubeBarcodeInFileRecord = fileRecord.get("MicronicTubeBarcode").toString();
-                        if (tubeBarcodeInFileRecord.equals(sampleTubeBarcodeInLims) && getTubeTareWeight(tubeBarcodeInFileRecord, micronicTubeRecordsInLims) > 0) {
+                        if (tubeBarcodeInFileRecord.equals(sampleTubeBarcodeInLims) && getTubeTareWeight(tubeBarcodeInFileRecord, micronicTubesByBarcode) > 0) {
                             sampleRecord.setFields(fileRecord, user);
-                            setMicronicTubeAsAssignedInLims(sampleTubeBarcodeInLims, micronicTubeRecordsInLims);
+                            assignedTubeBarcodes.add(sampleTubeBarcodeInLims);
                             sampleBarcodeFoundInFile = true;
                         }
                     }
@@ -415,6 +471,11 @@ public class MicronicTubeVolumeImporter extends DefaultGenericPlugin {
                 logError(String.format("NotFound Exception -> Error while setting Volume and Storage value for sample with recordId %d:\n%s", sampleRecord.getRecordId(), ExceptionUtils.getStackTrace(notFound)));
             }
         }
+        try {
+            setMicronicTubesAsAssignedInLims(assignedTubeBarcodes, micronicTubesByBarcode);
+        } catch (NotFound | ServerException | RemoteException | IoError | InvalidValue e) {
+            logError(String.format("Error while setting 'AssignedToSample' on Micronic tubes %s:\n%s", assignedTubeBarcodes, ExceptionUtils.getStackTrace(e)));
+        }
     }
 }
 
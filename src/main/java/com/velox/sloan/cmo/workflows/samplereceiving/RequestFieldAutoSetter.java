@@ -7,15 +7,15 @@ import com.velox.api.datarecord.NotFound;
 import com.velox.api.plugin.PluginResult;
 import com.velox.api.util.ServerException;
 import com.velox.api.workflow.ActiveTask;
-import com.velox.sapioutils.server.plugin.DefaultGenericPlugin;
 import com.velox.sapioutils.shared.enums.PluginOrder;
+import com.velox.sloan.cmo.workflows.utils.ProfiledGenericPlugin;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 
 import java.rmi.RemoteException;
 import java.util.*;
 
-public class RequestFieldAutoSetter extends DefaultGenericPlugin {
+public class RequestFieldAutoSetter extends ProfiledGenericPlugin {
     private static final String[] NEEDS_EXTRACTION_FALSE = {
             "ATACSeq", "DNALibraryPrep", "QualityControl", "SAILcDNA", "SingleCell", "UserLibrary"
     };
@@ -44,7 +44,7 @@ public class RequestFieldAutoSetter extends DefaultGenericPlugin {
     }
 
     @Override
-    public PluginResult run() throws ServerException, RemoteException {
+    protected PluginResult runProfiled() throws ServerException, RemoteException {
         try {
             List<DataRecord> attachedRequests = activeTask.getAttachedDataRecords("Request", user);
             if (attachedRequests.isEmpty()) {
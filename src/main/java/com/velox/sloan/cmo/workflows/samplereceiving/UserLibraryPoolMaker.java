@@ -7,18 +7,19 @@ import com.velox.api.datarecord.NotFound;
 import com.velox.api.plugin.PluginResult;
 import com.velox.api.util.ServerException;
 import com.velox.api.workflow.ActiveTask;
-import com.velox.sapioutils.server.plugin.DefaultGenericPlugin;
 import com.velox.sapioutils.shared.enums.PluginOrder;
 import com.velox.sapioutils.shared.managers.TaskUtilManager;
 import com.velox.sloan.cmo.recmodels.SampleModel;
 import com.velox.sloan.cmo.recmodels.SeqRequirementModel;
 import com.velox.sloan.cmo.workflows.IgoLimsPluginUtils.AlphaNumericComparator;
+import com.velox.sloan.cmo.workflows.utils.ProfiledGenericPlugin;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 
 import java.rmi.RemoteException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -30,7 +31,7 @@ import java.util.stream.Collectors;
  * pools. Libraries present in the pools are imported as individual samples and pooled together during pooling workflow.
  */
 
-public class UserLibraryPoolMaker extends DefaultGenericPlugin {
+public class UserLibraryPoolMaker extends ProfiledGenericPlugin {
     private String[] permittedUsers = {"Sample Receiving", "Sapio Admin"};
 
     public UserLibraryPoolMaker() {
@@ -46,7 +47,7 @@ public class UserLibraryPoolMaker extends DefaultGenericPlugin {
                 && !activeTask.getTask().getTaskOptions().containsKey("USER POOLS CREATED");
     }
 
-    public PluginResult run() throws ServerException, RemoteException {
+    protected PluginResult runProfiled() throws ServerException, RemoteException {
         try {
             List<DataRecord> attachedSamples = activeTask.getAttachedDataRecords("Sample", user);
             if (attachedSamples.size() == 0) {
@@ -66,13 +67,17 @@ public class UserLibraryPoolMaker extends DefaultGenericPlugin {
                 return new PluginResult(false);
             }
             createPoolsForAllSamples(samplesSeparatedByPools, attachedSamples);
-            setSampleStatusForSamples(attachedSamples);
             activeTask.getTask().getTaskOptions().put("USER POOLS CREATED", "");
         } catch (RemoteException e) {
             String errMsg = String.format("RemoteException -> Error while creating user pools. CAUSE:\n%s", ExceptionUtils.getStackTrace(e));
             clientCallback.displayError(errMsg);
             logError(errMsg);
             return new PluginResult(false);
+        } catch (Exception e) {
+            String errMsg = String.format("Exception -> Error while creating user pools, no pools were created. CAUSE:\n%s", ExceptionUtils.getStackTrace(e));
+            clientCallback.displayError(errMsg);
+            logError(errMsg);
+            return new PluginResult(false);
         }
         return new PluginResult(true);
     }
@@ -364,7 +369,8 @@ public class UserLibraryPoolMaker extends DefaultGenericPlugin {
     }
 
     /**
-     * Method to created sample pools.
+     * Method to plan a sample pool: the field values of the pool Sample and of its SeqRequirementPooled child. Nothing
+     * is written to the LIMS.
      *
      * @param userPoolSamples
      * @param counter
@@ -372,61 +378,110 @@ public class UserLibraryPoolMaker extends DefaultGenericPlugin {
      * @throws ServerException
      * @throws RemoteException
      * @throws NotFound
+     */
+    private PoolPlan planSamplePool(List<DataRecord> userPoolSamples, int counter) throws ServerException, RemoteException, NotFound {
+        Map<String, Object> poolValuesMap = new HashMap<>();
+        Map<String, Object> sequencingRequirementsPooled = new HashMap<>();
+        String requestId = getRequestIdForSample(userPoolSamples.get(0));
+        if (StringUtils.isBlank(requestId)) {
+            throw new NotFound(String.format("RequestId not found for sample with recordId %d", userPoolSamples.get(0).getRecordId()));
+        }
+        String sampleId = getPoolId(requestId, counter);
+        String altId = concatenateStringValues(userPoolSamples, "AltId");
+        String otherSampleId = concatenateStringValues(userPoolSamples, "OtherSampleId");
+        String userSampleId = concatenateStringValues(userPoolSamples, "UserSampleID");
+        String species = userPoolSamples.get(0).getStringVal("Species", user);
+        String recipe = userPoolSamples.get(0).getStringVal("Recipe", user);
+        String micronicTubeBarcode = userPoolSamples.get(0).getStringVal("MicronicTubeBarcode", user);
+        String sampleType = userPoolSamples.get(0).getStringVal("ExemplarSampleType", user);
+        String sequencingRunType = getSequencingRunType(userPoolSamples);
+        double totalRequestedReadsForPool = getTotalRequestedReadsForPool(userPoolSamples);
+        poolValuesMap.put("SampleId", sampleId);
+        sequencingRequirementsPooled.put("SampleId", sampleId);
+        poolValuesMap.put("OtherSampleId", otherSampleId);
+        poolValuesMap.put("AltId", altId);
+        sequencingRequirementsPooled.put("OtherSampleId", otherSampleId);
+        sequencingRequirementsPooled.put("AltId", altId);
+        sequencingRequirementsPooled.put("SequencingRunType", sequencingRunType);
+        sequencingRequirementsPooled.put("RequestedReads", totalRequestedReadsForPool);
+        poolValuesMap.put("UserSampleID", userSampleId);
+        poolValuesMap.put("ExemplarSampleType", sampleType);
+        poolValuesMap.put("Species", species);
+        poolValuesMap.put("Recipe", recipe);
+        poolValuesMap.put("MicronicTubeBarcode", micronicTubeBarcode);
+        return new PoolPlan(userPoolSamples, poolValuesMap, sequencingRequirementsPooled);
+    }
+
+    /**
+     * Method to create the planned pools, link them to their samples and set the status of the attached samples, with
+     * a single commit. The pool Samples and SeqRequirementPooled records are each added with one call and used as
+     * returned. When any step fails, the new records are deleted and the sample statuses are restored before the
+     * exception is thrown, so either all pools are created or none.
+     *
+     * @param poolPlans
+     * @param attachedSamples
+     * @return pool Samples in the order of poolPlans.
+     * @throws ServerException
+     * @throws RemoteException
+     * @throws NotFound
      * @throws IoError
+     * @throws InvalidValue
      */
-    private DataRecord createSamplePool(List<DataRecord> userPoolSamples, int counter) {
-        List<DataRecord> pooledSampleRecords = new ArrayList<>();
+    private List<DataRecord> savePools(List<PoolPlan> poolPlans, List<DataRecord> attachedSamples) throws ServerException, RemoteException,
+            NotFound, IoError, InvalidValue {
+        List<Map<String, Object>> poolValuesMapList = new ArrayList<>();
+        List<Map<String, Object>> sequencingRequirementsPooledList = new ArrayList<>();
+        for (PoolPlan poolPlan : poolPlans) {
+            poolValuesMapList.add(poolPlan.poolValues);
+            sequencingRequirementsPooledList.add(poolPlan.sequencingRequirementsPooled);
+        }
+        List<DataRecord> createdRecords = new ArrayList<>();
+        Map<DataRecord, Object> previousSampleStatuses = new LinkedHashMap<>();
         try {
-            List<Map<String, Object>> poolValuesMapList = new ArrayList<>();
-            Map<String, Object> poolValuesMap = new HashMap<>();
-            Map<String, Object> sequencingRequirementsPooled = new HashMap<>();
-            String requestId = getRequestIdForSample(userPoolSamples.get(0));
-            String sampleId = getPoolId(requestId, counter);
-            String altId = concatenateStringValues(userPoolSamples, "AltId");
-            String otherSampleId = concatenateStringValues(userPoolSamples, "OtherSampleId");
-            String userSampleId = concatenateStringValues(userPoolSamples, "UserSampleID");
-            String species = userPoolSamples.get(0).getStringVal("Species", user);
-            String recipe = userPoolSamples.get(0).getStringVal("Recipe", user);
-            String micronicTubeBarcode = userPoolSamples.get(0).getStringVal("MicronicTubeBarcode", user);
-            String sampleType = userPoolSamples.get(0).getStringVal("ExemplarSampleType", user);
-            String sequencingRunType = getSequencingRunType(userPoolSamples);
-            double totalRequestedReadsForPool = getTotalRequestedReadsForPool(userPoolSamples);
-            poolValuesMap.put("SampleId", sampleId);
-            sequencingRequirementsPooled.put("SampleId", sampleId);
-            poolValuesMap.put("OtherSampleId", otherSampleId);
-            poolValuesMap.put("AltId", altId);
-            sequencingRequirementsPooled.put("OtherSampleId", otherSampleId);
-            sequencingRequirementsPooled.put("AltId", altId);
-            sequencingRequirementsPooled.put("SequencingRunType", sequencingRunType);
-            sequencingRequirementsPooled.put("RequestedReads", totalRequestedReadsForPool);
-            poolValuesMap.put("UserSampleID", userSampleId);
-            poolValuesMap.put("ExemplarSampleType", sampleType);
-            poolValuesMap.put("Species", species);
-            poolValuesMap.put("Recipe", recipe);
-            poolValuesMap.put("MicronicTubeBarcode", micronicTubeBarcode);
-            poolValuesMapList.add(poolValuesMap);
+            List<DataRecord> pools = dataRecordManager.addDataRecords("Sample", poolValuesMapList, user);
+            createdRecords.addAll(pools);
+            List<DataRecord> sequencingRequirements = dataRecordManager.addDataRecords("SeqRequirementPooled", sequencingRequirementsPooledList, user);
+            createdRecords.addAll(sequencingRequirements);
+            for (int i = 0; i < poolPlans.size(); i++) {
+                pools.get(i).addChild(sequencingRequirements.get(i), user);
+                for (DataRecord sample : poolPlans.get(i).samples) {
+                    sample.addChildIfNotExists(pools.get(i), user);
+                }
+            }
+            for (DataRecord sample : attachedSamples) {
+                previousSampleStatuses.put(sample, sample.getValue(SampleModel.EXEMPLAR_SAMPLE_STATUS, user));
+                sample.setDataField(SampleModel.EXEMPLAR_SAMPLE_STATUS, "Processing Completed", user);
+            }
+            dataRecordManager.storeAndCommit(String.format("Created %d user pools and changed Exemplar Sample Status of %d samples.", pools.size(),
+                    attachedSamples.size()), null, user);
+            return pools;
+        } catch (Exception e) {
+            rollBackPools(createdRecords, previousSampleStatuses);
+            throw e;
+        }
+    }
 
-            dataRecordManager.addDataRecords("Sample", poolValuesMapList, user);
-            dataRecordManager.storeAndCommit(String.format("Created user pool %s", sampleId), null, user);
-            pooledSampleRecords = dataRecordManager.queryDataRecords("Sample", "SampleId= '" + sampleId + "'", user);
-            pooledSampleRecords.get(0).addChild("SeqRequirementPooled", sequencingRequirementsPooled, user);
-            for (DataRecord sample : userPoolSamples) {
-                sample.addChildIfNotExists(pooledSampleRecords.get(0), user);
+    /**
+     * Method to undo the changes of savePools that were not committed.
+     *
+     * @param createdRecords
+     * @param previousSampleStatuses
+     */
+    private void rollBackPools(List<DataRecord> createdRecords, Map<DataRecord, Object> previousSampleStatuses) {
+        try {
+            for (Map.Entry<DataRecord, Object> sampleStatus : previousSampleStatuses.entrySet()) {
+                sampleStatus.getKey().setDataField(SampleModel.EXEMPLAR_SAMPLE_STATUS, sampleStatus.getValue(), user);
             }
-        } catch (RemoteException e) {
-            logError(String.format("RemoteException -> Error while creating Sample pools:\n%s", ExceptionUtils.getStackTrace(e)));
-        } catch (IoError ioError) {
-            logError(String.format("IoError Exception -> Error while creating Sample pools:\n%s", ExceptionUtils.getStackTrace(ioError)));
-        } catch (NotFound notFound) {
-            logError(String.format("NotFound Exception -> Error while creating Sample pools:\n%s", ExceptionUtils.getStackTrace(notFound)));
-        } catch (ServerException e) {
-            logError(String.format("ServerException -> Error while creating Sample pools:\n%s", ExceptionUtils.getStackTrace(e)));
+            if (!createdRecords.isEmpty()) {
+                dataRecordManager.deleteDataRecords(createdRecords, null, false, user);
+            }
+        } catch (Exception e) {
+            logError(String.format("Exception -> Error while removing user pools that were not created:\n%s", ExceptionUtils.getStackTrace(e)));
         }
-        return pooledSampleRecords.get(0);
     }
 
     /**
-     * Method to create pools for all samples.
+     * Method to create pools for all samples. All pools are planned before any of them is created.
      *
      * @param userPools
      * @param attachedSamples
@@ -434,14 +489,17 @@ public class UserLibraryPoolMaker extends DefaultGenericPlugin {
      * @throws RemoteException
      * @throws NotFound
      * @throws IoError
+     * @throws InvalidValue
      */
-    private void createPoolsForAllSamples(List<List<DataRecord>> userPools, List<DataRecord> attachedSamples) {
-        List<DataRecord> sampleIdsForSamplePools = new ArrayList<>();
+    private void createPoolsForAllSamples(List<List<DataRecord>> userPools, List<DataRecord> attachedSamples) throws ServerException,
+            RemoteException, NotFound, IoError, InvalidValue {
+        List<PoolPlan> poolPlans = new ArrayList<>();
         int counter = 1;
         for (List<DataRecord> samplesToPoolTogether : userPools) {
-            sampleIdsForSamplePools.add(createSamplePool(samplesToPoolTogether, counter));
+            poolPlans.add(planSamplePool(samplesToPoolTogether, counter));
             counter++;
         }
+        List<DataRecord> sampleIdsForSamplePools = savePools(poolPlans, attachedSamples);
         try {
             List<ActiveTask> activeTasks = activeWorkflow.getActiveTaskList();
             for (ActiveTask task : activeTasks) {
@@ -458,30 +516,15 @@ public class UserLibraryPoolMaker extends DefaultGenericPlugin {
         }
     }
 
-    /**
-     * Method to set ExemplarSampleStatus.
-     *
-     * @param attachedSamples
-     * @throws ServerException
-     * @throws RemoteException
-     * @throws NotFound
-     */
-    private void setSampleStatusForSamples(List<DataRecord> attachedSamples) {
-        for (DataRecord sample : attachedSamples) {
-            try {
-                sample.setDataField(SampleModel.EXEMPLAR_SAMPLE_STATUS, "Processing Completed", user);
-                dataRecordManager.storeAndCommit("Exemplar Sample Status changed.",null, user);
-            } catch (RemoteException e) {
-                logError(String.format("RemoteException -> Error while setting '%s' of sample with RecordId %d:\n%s", SampleModel.EXEMPLAR_SAMPLE_STATUS, sample.getRecordId(), ExceptionUtils.getStackTrace(e)));
-            } catch (NotFound notFound) {
-                logError(String.format("NotFound -> Error while setting '%s' of sample with RecordId %d:\n%s", SampleModel.EXEMPLAR_SAMPLE_STATUS, sample.getRecordId(), ExceptionUtils.getStackTrace(notFound)));
-            } catch (ServerException e) {
-                logError(String.format("ServerException -> Error while setting '%s' of sample with RecordId %d:\n%s", SampleModel.EXEMPLAR_SAMPLE_STATUS, sample.getRecordId(), ExceptionUtils.getStackTrace(e)));
-            } catch (InvalidValue invalidValue) {
-                logError(String.format("InvalidValue -> Error while setting '%s' of sample with RecordId %d:\n%s", SampleModel.EXEMPLAR_SAMPLE_STATUS, sample.getRecordId(), ExceptionUtils.getStackTrace(invalidValue)));
-            } catch (IoError ioError) {
-                logError(String.format("IoError -> Error while setting '%s' of sample with RecordId %d:\n%s", SampleModel.EXEMPLAR_SAMPLE_STATUS, sample.getRecordId(), ExceptionUtils.getStackTrace(ioError)));
-            }
+    private static class PoolPlan {
+        private final List<DataRecord> samples;
+        private final Map<String, Object> poolValues;
+        private final Map<String, Object> sequencingRequirementsPooled;
+
+        PoolPlan(List<DataRecord> samples, Map<String, Object> poolValues, Map<String, Object> sequencingRequirementsPooled) {
+            this.samples = samples;
+            this.poolValues = poolValues;
+            this.sequencingRequirementsPooled = sequencingRequirementsPooled;
         }
     }
-}
\ No newline at end of file
+}
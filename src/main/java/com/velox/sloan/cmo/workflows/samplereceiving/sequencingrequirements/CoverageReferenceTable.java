@@ -0,0 +1,126 @@
+package com.velox.sloan.cmo.workflows.samplereceiving.sequencingrequirements;
+
+import com.velox.api.datarecord.DataRecord;
+import com.velox.api.datarecord.DataRecordManager;
+import com.velox.api.user.User;
+import com.velox.api.util.ServerException;
+import com.velox.sloan.cmo.workflows.utils.DataAccessUtils;
+import com.velox.sloan.cmo.workflows.utils.RecordFieldSnapshot;
+
+import java.rmi.RemoteException;
+import java.util.*;
+
+/**
+ * Lookup table over 'ApplicationReadCoverageRef' records used to find read requirements for samples. The table is
+ * built once from the reference records and indexes them on (Recipe, CapturePanel, TumorOrNormal, Coverage)
+ * combinations, so that lookups do not scan the reference records.
+ * <p>
+ * Lookups return the same reference record as a scan over the records in the order they were passed: when more
+ * than one reference record matches, the one that comes first in the list is returned.
+ */
+final class CoverageReferenceTable {
+    static final String PLATFORM_APPLICATION = "PlatformApplication";
+    static final String CAPTURE_PANEL = "CapturePanel";
+    static final String TUMOR_NORMAL = "TumorNormal";
+    static final String COVERAGE = "Coverage";
+
+    private final List<RecordFieldSnapshot> references;
+    // (Recipe, Coverage, TumorOrNormal) for references without CapturePanel.
+    private final Map<List<Object>, Integer> noPanelIndex = new HashMap<>();
+    // (Recipe, Coverage) for references without CapturePanel and TumorOrNormal.
+    private final Map<List<Object>, Integer> noPanelNoTumorNormalIndex = new HashMap<>();
+    // (Recipe, Panel, Coverage) for references with CapturePanel and Coverage.
+    private final Map<List<Object>, Integer> panelCoverageIndex = new HashMap<>();
+    // (Recipe, TumorOrNormal) for references with CapturePanel.
+    private final Map<List<Object>, Integer> panelIndex = new HashMap<>();
+    // (Recipe, TumorOrNormal) for references with CapturePanel and without Coverage.
+    private final Map<List<Object>, Integer> panelNoCoverageIndex = new HashMap<>();
+
+    CoverageReferenceTable(List<RecordFieldSnapshot> references) {
+        this.references = Collections.unmodifiableList(new ArrayList<>(references));
+        for (int i = 0; i < references.size(); i++) {
+            RecordFieldSnapshot ref = references.get(i);
+            Object dRecipe = ref.getValue(PLATFORM_APPLICATION);
+            Object dPanel = ref.getValue(CAPTURE_PANEL);
+            Object dTumorOrNormal = ref.getValue(TUMOR_NORMAL);
+            Object dCoverage = ref.getValue(COVERAGE);
+            if (isBlank(dPanel)) {
+                noPanelIndex.putIfAbsent(Arrays.asList(dRecipe, trimmed(dCoverage), dTumorOrNormal), i);
+                if (isBlank(dTumorOrNormal)) {
+                    noPanelNoTumorNormalIndex.putIfAbsent(Arrays.asList(dRecipe, trimmed(dCoverage)), i);
+                }
+            } else {
+                panelIndex.putIfAbsent(Arrays.asList(dRecipe, dTumorOrNormal), i);
+                if (dCoverage != null) {
+                    panelCoverageIndex.putIfAbsent(Arrays.asList(dRecipe, dPanel, trimmed(dCoverage)), i);
+                } else {
+                    panelNoCoverageIndex.putIfAbsent(Arrays.asList(dRecipe, dTumorOrNormal), i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Build the lookup table for the reference records of a run. Field values of the records are fetched with a single
+     * server call.
+     *
+     * @param coverageReqRefs
+     * @param dataRecordManager
+     * @param user
+     * @return CoverageReferenceTable
+     * @throws ServerException
+     * @throws RemoteException
+     */
+    static CoverageReferenceTable fromRecords(List<DataRecord> coverageReqRefs, DataRecordManager dataRecordManager, User user)
+            throws ServerException, RemoteException {
+        return new CoverageReferenceTable(DataAccessUtils.getFieldSnapshots(coverageReqRefs, dataRecordManager, user));
+    }
+
+    List<RecordFieldSnapshot> getReferences() {
+        return references;
+    }
+
+    /**
+     * Get first reference record matching the Recipe, Panel, TumorOrNormal and Coverage.
+     * <ul>
+     * <li>References without CapturePanel must match Recipe and Coverage, and TumorOrNormal unless the reference has
+     * no TumorOrNormal value.</li>
+     * <li>References with CapturePanel and Coverage must match Recipe, Panel and Coverage when Coverage is given.</li>
+     * <li>Otherwise references with CapturePanel must match Recipe and TumorOrNormal.</li>
+     * </ul>
+     *
+     * @return RecordFieldSnapshot or null if there is no match.
+     */
+    RecordFieldSnapshot getRefRecord(Object recipe, Object panel, Object tumorOrNormal, Object coverage) {
+        recipe = emptyIfNull(recipe);
+        panel = emptyIfNull(panel);
+        tumorOrNormal = emptyIfNull(tumorOrNormal);
+        String coverageVal = trimmed(emptyIfNull(coverage));
+        int first = Integer.MAX_VALUE;
+        first = min(first, noPanelIndex.get(Arrays.asList(recipe, coverageVal, tumorOrNormal)));
+        first = min(first, noPanelNoTumorNormalIndex.get(Arrays.asList(recipe, coverageVal)));
+        if (coverageVal.isEmpty()) {
+            first = min(first, panelIndex.get(Arrays.asList(recipe, tumorOrNormal)));
+        } else {
+            first = min(first, panelCoverageIndex.get(Arrays.asList(recipe, panel, coverageVal)));
+            first = min(first, panelNoCoverageIndex.get(Arrays.asList(recipe, tumorOrNormal)));
+        }
+        return first == Integer.MAX_VALUE ? null : references.get(first);
+    }
+
+    private static int min(int first, Integer index) {
+        return index == null ? first : Math.min(first, index);
+    }
+
+    private static Object emptyIfNull(Object value) {
+        return Objects.isNull(value) ? "" : value;
+    }
+
+    private static String trimmed(Object value) {
+        return Objects.isNull(value) ? "" : value.toString().trim();
+    }
+
+    private static boolean isBlank(Object value) {
+        return Objects.isNull(value) || value.toString().trim().isEmpty();
+    }
+}
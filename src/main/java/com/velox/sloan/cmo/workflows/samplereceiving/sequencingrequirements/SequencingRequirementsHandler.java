@@ -10,11 +10,14 @@ import com.velox.api.plugin.PluginResult;
 import com.velox.api.servermanager.PickListConfig;
 import com.velox.api.user.User;
 import com.velox.api.util.ServerException;
-import com.velox.sapioutils.server.plugin.DefaultGenericPlugin;
 import com.velox.sapioutils.shared.enums.PluginOrder;
 import com.velox.sloan.cmo.recmodels.BankedSampleModel;
 import com.velox.sloan.cmo.recmodels.SampleModel;
 import com.velox.sloan.cmo.workflows.IgoLimsPluginUtils.IgoLimsPluginUtils;
+import com.velox.sloan.cmo.workflows.utils.DataRecordFieldCache;
+import com.velox.sloan.cmo.workflows.utils.DataRecordQuery;
+import com.velox.sloan.cmo.workflows.utils.ProfiledGenericPlugin;
+import com.velox.sloan.cmo.workflows.utils.RecordFieldSnapshot;
 
 import java.rmi.RemoteException;
 import java.util.*;
@@ -31,7 +34,7 @@ import org.apache.commons.lang3.StringUtils;
  *
  * @author sharmaa1, Fahimeh Mirhaj
  */
-public class SequencingRequirementsHandler extends DefaultGenericPlugin {
+public class SequencingRequirementsHandler extends ProfiledGenericPlugin {
     IgoLimsPluginUtils util = new IgoLimsPluginUtils();
     private Object runType = null;
     private Object panelName = null;
@@ -47,10 +50,11 @@ public class SequencingRequirementsHandler extends DefaultGenericPlugin {
         return this.activeTask.getTask().getTaskOptions().containsKey("UPDATE SEQUENCING REQUIREMENTS FROM REFERENCE TABLE") && !this.activeTask.getTask().getTaskOptions().containsKey("SEQUENCING REQUIREMENTS UPDATED");
     }
 
-    public PluginResult run() {
+    protected PluginResult runProfiled() {
         try {
             this.logInfo("Running sequencing requirements handler plugin");
-            List<DataRecord> coverageReqRefs = this.dataRecordManager.queryDataRecords("ApplicationReadCoverageRef", "ReferenceOnly != 1", this.user);
+            List<DataRecord> coverageReqRefs = DataRecordQuery.from("ApplicationReadCoverageRef").whereNotEquals("ReferenceOnly", 1)
+                    .execute(this.dataRecordManager, this.user);
             List<DataRecord> attachedSamples = this.activeTask.getAttachedDataRecords("Sample", this.user);
             List<DataRecord> seqRequirements = this.activeTask.getAttachedDataRecords("SeqRequirement", this.user);
             if (coverageReqRefs.isEmpty()) {
@@ -83,6 +87,9 @@ public class SequencingRequirementsHandler extends DefaultGenericPlugin {
             }
             PluginLogger logger = this.pluginLogger;
             List<DataRecord> relatedBankedSampleInfo = this.getBankedSamples(attachedSamples);
+            if (relatedBankedSampleInfo.size() != attachedSamples.size()) {
+                return new PluginResult(false);
+            }
             this.updateSeqReq(attachedSamples, relatedBankedSampleInfo, seqRequirements, coverageReqRefs, this.user, this.dataMgmtServer, logger);
             this.activeTask.getTask().getTaskOptions().put("SEQUENCING REQUIREMENTS UPDATED", "");
         } catch (NotFound | ServerException | IoError | InvalidValue | RemoteException var6) {
@@ -93,28 +100,66 @@ public class SequencingRequirementsHandler extends DefaultGenericPlugin {
     }
 
     /**
-     * Method to get banked samples related to samples attached to the task.
+     * Method to get banked samples related to samples attached to the task. Samples are grouped by RequestId and
+     * BankedSamples for each request are fetched with a single query, then matched to the samples on UserSampleID.
+     * If a BankedSample is not found for some of the samples, an error listing those samples is displayed and only the
+     * BankedSamples that were found are returned.
      *
      * @param attachedSamples
-     * @return
+     * @return BankedSamples in the same order as attachedSamples.
      * @throws NotFound
      * @throws RemoteException
      * @throws IoError
      */
     public List<DataRecord> getBankedSamples(List<DataRecord> attachedSamples) throws NotFound, ServerException, RemoteException, IoError {
-        List<DataRecord> bankedSamples = new LinkedList<>();
         this.logInfo("attached samples size: " + attachedSamples.size());
-        for (int i = 0; i < attachedSamples.size(); i++) {
-            Object requestId = ((DataRecord) attachedSamples.get(i)).getValue("RequestId", this.user);
-            Object userSampleId = ((DataRecord) attachedSamples.get(i)).getValue("UserSampleID", this.user);
-            //this.logInfo("RequestId: " + requestId);
-            String whereClause = String.format("%s='%s' AND %s='%s'", "UserSampleID", userSampleId, "RequestId", requestId);
-//            this.logInfo("WHERE CLAUSE: " + whereClause);
-//            this.logInfo("I am in get banked sample query");
-            bankedSamples.add(this.dataRecordManager.queryDataRecords("BankedSample", whereClause, this.user).get(0));
+        DataRecordFieldCache fieldCache = new DataRecordFieldCache(this.dataRecordManager, this.user);
+        List<RecordFieldSnapshot> sampleFields = fieldCache.prefetch(attachedSamples);
+        Map<String, Set<String>> userSampleIdsByRequest = new LinkedHashMap<>();
+        for (RecordFieldSnapshot sample : sampleFields) {
+            String requestId = sample.getStringVal("RequestId");
+            String userSampleId = sample.getStringVal("UserSampleID");
+            if (requestId != null && userSampleId != null) {
+                userSampleIdsByRequest.computeIfAbsent(requestId, k -> new LinkedHashSet<>()).add(userSampleId);
+            }
         }
-        return bankedSamples;
+        Map<String, Map<String, DataRecord>> bankedSamplesByRequest = new HashMap<>();
+        for (Map.Entry<String, Set<String>> entry : userSampleIdsByRequest.entrySet()) {
+            List<DataRecord> bankedSamplesForRequest = DataRecordQuery.from("BankedSample")
+                    .whereEquals("RequestId", entry.getKey())
+                    .whereIn("UserSampleID", entry.getValue())
+                    .execute(this.dataRecordManager, this.user);
+            Map<String, DataRecord> bankedSamplesByUserSampleId = new HashMap<>();
+            for (RecordFieldSnapshot bankedSample : fieldCache.prefetch(bankedSamplesForRequest)) {
+                String userSampleId = bankedSample.getStringVal("UserSampleID");
+                if (userSampleId != null) {
+                    bankedSamplesByUserSampleId.putIfAbsent(userSampleId, bankedSample.getRecord());
+                }
+            }
+            bankedSamplesByRequest.put(entry.getKey(), bankedSamplesByUserSampleId);
+        }
+        this.logInfo(String.format("Fetched BankedSamples for %d requests.", userSampleIdsByRequest.size()));
 
+        List<DataRecord> bankedSamples = new LinkedList<>();
+        List<String> samplesWithoutBankedSample = new ArrayList<>();
+        for (RecordFieldSnapshot sample : sampleFields) {
+            String requestId = sample.getStringVal("RequestId");
+            String userSampleId = sample.getStringVal("UserSampleID");
+            DataRecord bankedSample = bankedSamplesByRequest.getOrDefault(requestId, Collections.emptyMap()).get(userSampleId);
+            if (bankedSample == null) {
+                samplesWithoutBankedSample.add(String.format("%s (UserSampleID: %s, RequestId: %s)",
+                        sample.getStringVal("SampleId"), userSampleId, requestId));
+            } else {
+                bankedSamples.add(bankedSample);
+            }
+        }
+        if (!samplesWithoutBankedSample.isEmpty()) {
+            String errMsg = String.format("Could not find BankedSample records for %d of %d samples:\n%s",
+                    samplesWithoutBankedSample.size(), sampleFields.size(), String.join("\n", samplesWithoutBankedSample));
+            this.clientCallback.displayError(errMsg);
+            this.logError(errMsg);
+        }
+        return bankedSamples;
     }
 
     /**
@@ -143,18 +188,19 @@ public class SequencingRequirementsHandler extends DefaultGenericPlugin {
             re.printStackTrace();
         }
         //******************Create the required mappings from Ref table**************
-        Iterator refIter = coverageReqRefs.iterator();
+        CoverageReferenceTable refTable = CoverageReferenceTable.fromRecords(coverageReqRefs, this.dataRecordManager, user);
+        Iterator<RecordFieldSnapshot> refIter = refTable.getReferences().iterator();
         Map<String, Set<Object>> refRecipeToCoverageMap = new HashMap<String, Set<Object>>();
         Map<String, Object> refRecipeToTranslatedReadsHumanMap = new HashMap<String, Object>();
         Map<String, Set<Object>> recipeToCapturePanelMap = new HashMap<String, Set<Object>>();
         Map<String, Object> recipeToSequencingRunTypeMap = new HashMap<String, Object>();
         while (refIter.hasNext()) {
-            DataRecord ref = (DataRecord) refIter.next();
-            String refRecipe = ref.getValue("PlatformApplication", user).toString();
-            Object refCoverage = ref.getValue("Coverage", user);
-            Object refCapturePanel = ref.getValue("CapturePanel", user);
-            Object refSeqRunType = ref.getValue("SequencingRunType", user);
-            Object refHumanTranslatedReadsHuman = ref.getValue("MillionReadsHuman", user);
+            RecordFieldSnapshot ref = refIter.next();
+            String refRecipe = ref.getValue("PlatformApplication").toString();
+            Object refCoverage = ref.getValue("Coverage");
+            Object refCapturePanel = ref.getValue("CapturePanel");
+            Object refSeqRunType = ref.getValue("SequencingRunType");
+            Object refHumanTranslatedReadsHuman = ref.getValue("MillionReadsHuman");
             Set<Object> coverageSet = null;
             Set<Object> capturePanelSet = null;
             if (!refRecipeToCoverageMap.containsKey(refRecipe)) {
@@ -367,9 +413,8 @@ public class SequencingRequirementsHandler extends DefaultGenericPlugin {
                                             }
                                         }
                                     }
-                                    DataRecord refRecord = CoverageToReadsUtil.getRefRecordFromRecipeAndCapturePanel
-                                            (recipe, this.panelName, tumorOrNormal, coverage, coverageReqRefs,
-                                                    user, this.pluginLogger);
+                                    RecordFieldSnapshot refRecord = refTable.getRefRecord(recipe, this.panelName,
+                                            tumorOrNormal, coverage);
                                     if (Objects.isNull(refRecord)) {
                                         String errMsg = String.format("Could not find read requirements for Sample %s based " +
                                                         "on metadata Recipe: %s, Species: %s, Panel: %s, RunType: %s, TumorOrNormal: " +
@@ -381,24 +426,19 @@ public class SequencingRequirementsHandler extends DefaultGenericPlugin {
                                     }
                                     else {
                                         if (species.toString().equalsIgnoreCase("Human")) {
-                                            seqReq.setDataField("RequestedReads", refRecord.getValue(
-                                                    "MillionReadsHuman", user), user);
+                                            seqReq.setDataField("RequestedReads", refRecord.getValue("MillionReadsHuman"), user);
                                         } else if (species.toString().equalsIgnoreCase("Mouse")) {
-                                            if (Objects.nonNull(refRecord.getValue(
-                                                    "MillionReadsMouse", user)) && !refRecord.getValue(
-                                                    "MillionReadsMouse", user).toString().trim().isEmpty()) {
-                                                seqReq.setDataField("RequestedReads", refRecord.getValue(
-                                                        "MillionReadsMouse", user), user);
+                                            if (Objects.nonNull(refRecord.getValue("MillionReadsMouse")) &&
+                                                    !refRecord.getValue("MillionReadsMouse").toString().trim().isEmpty()) {
+                                                seqReq.setDataField("RequestedReads", refRecord.getValue("MillionReadsMouse"), user);
                                             } else {
-                                                seqReq.setDataField("RequestedReads", refRecord.getValue(
-                                                        "MillionReadsHuman", user), user);
+                                                seqReq.setDataField("RequestedReads", refRecord.getValue("MillionReadsHuman"), user);
                                             }
 
                                         }
                                         if (refRecipeToCoverageMap.get(recipe).size() > 0 &&
                                                 !Objects.isNull(refRecipeToCoverageMap.get(recipe.toString()))) {
-                                            seqReq.setDataField("CoverageTarget", refRecord.getValue(
-                                                    "Coverage", user), user);
+                                            seqReq.setDataField("CoverageTarget", refRecord.getValue("Coverage"), user);
                                         }
                                     }
 
@@ -414,8 +454,8 @@ public class SequencingRequirementsHandler extends DefaultGenericPlugin {
                                         }
                                     }
                                    
-                                    DataRecord refRecord = CoverageToReadsUtil.getRefRecordFromRecipeAndCapturePanel(
-                                            recipe, this.panelName, tumorOrNormal, coverage, coverageReqRefs, user, this.pluginLogger);
+                                    RecordFieldSnapshot refRecord = refTable.getRefRecord(recipe, this.panelName,
+                                            tumorOrNormal, coverage);
                                     if (Objects.isNull(refRecord)) {
                                         String errMsg = String.format("Could not find read requirements for Sample %s based " +
                                                         "on metadata Recipe: %s, Species: %s, Panel: %s, RunType: %s, TumorOrNormal: " +
@@ -427,24 +467,19 @@ public class SequencingRequirementsHandler extends DefaultGenericPlugin {
                                     }
                                     else {
                                         if (species.toString().equalsIgnoreCase("Human")) {
-                                            seqReq.setDataField("RequestedReads", refRecord.getValue(
-                                                    "MillionReadsHuman", user), user);
+                                            seqReq.setDataField("RequestedReads", refRecord.getValue("MillionReadsHuman"), user);
                                         } else if (species.toString().equalsIgnoreCase("Mouse")) {
-                                            if (Objects.nonNull(refRecord.getValue(
-                                                    "MillionReadsMouse", user)) && !refRecord.getValue(
-                                                    "MillionReadsMouse", user).toString().trim().isEmpty()) {
-                                                seqReq.setDataField("RequestedReads", refRecord.getValue(
-                                                        "MillionReadsMouse", user), user);
+                                            if (Objects.nonNull(refRecord.getValue("MillionReadsMouse")) &&
+                                                    !refRecord.getValue("MillionReadsMouse").toString().trim().isEmpty()) {
+                                                seqReq.setDataField("RequestedReads", refRecord.getValue("MillionReadsMouse"), user);
                                             } else {
-                                                seqReq.setDataField("RequestedReads", refRecord.getValue(
-                                                        "MillionReadsHuman", user), user);
+                                                seqReq.setDataField("RequestedReads", refRecord.getValue("MillionReadsHuman"), user);
                                             }
 
                                         }
                                         if (refRecipeToCoverageMap.get(recipe).size() > 0 &&
                                                 !Objects.isNull(refRecipeToCoverageMap.get(recipe))) {
-                                            seqReq.setDataField("CoverageTarget", refRecord.getValue(
-                                                    "Coverage", user), user);
+                                            seqReq.setDataField("CoverageTarget", refRecord.getValue("Coverage"), user);
                                         }
                                     }
                                 }
@@ -0,0 +1,274 @@
+package com.velox.sloan.cmo.workflows.strauthentication;
+
+import com.google.gson.Gson;
+import com.velox.api.plugin.PluginLogger;
+import org.apache.commons.lang3.StringUtils;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Client for the Cellosaurus STR batch search API. Samples are sent in batches of at most batchSize samples, and the
+ * batches are posted in parallel over a single pooled HttpClient with request timeouts. Requests that time out or fail
+ * with HTTP 429/5xx are retried with exponential backoff.
+ * <p>
+ * Results are cached on disk, one file per sample, keyed by a hash of the normalized STR profile of the sample (markers,
+ * alleles and search parameters, without the sample name). Re-running a report for the same profiles only posts the
+ * samples that are not in the cache. Set cacheDirectory to null to disable the cache.
+ */
+public class CellosaurusStrClient {
+    public static final URI DEFAULT_API_URI = URI.create("https://web.expasy.org/cellosaurus-str-search/api/batch");
+    public static final int DEFAULT_BATCH_SIZE = 24;
+    public static final int DEFAULT_PARALLEL_REQUESTS = 4;
+    public static final int DEFAULT_MAX_RETRIES = 3;
+    public static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(60);
+    public static final Duration DEFAULT_INITIAL_BACKOFF = Duration.ofSeconds(1);
+    public static final Duration DEFAULT_CACHE_MAX_AGE = Duration.ofDays(30);
+    private static final String SAMPLE_NAME_KEY = "description";
+
+    private final URI apiUri;
+    private final int batchSize;
+    private final int maxRetries;
+    private final Duration timeout;
+    private final Duration initialBackoff;
+    private final Path cacheDirectory;
+    private final Duration cacheMaxAge;
+    private final ExecutorService executor;
+    private final HttpClient httpClient;
+
+    public CellosaurusStrClient(Path cacheDirectory) {
+        this(DEFAULT_API_URI, DEFAULT_BATCH_SIZE, DEFAULT_PARALLEL_REQUESTS, DEFAULT_MAX_RETRIES, DEFAULT_TIMEOUT,
+                DEFAULT_INITIAL_BACKOFF, cacheDirectory, DEFAULT_CACHE_MAX_AGE);
+    }
+
+    public CellosaurusStrClient(URI apiUri, int batchSize, int parallelRequests, int maxRetries, Duration timeout,
+                                Duration initialBackoff, Path cacheDirectory, Duration cacheMaxAge) {
+        if (batchSize < 1 || parallelRequests < 1 || maxRetries < 0) {
+            throw new IllegalArgumentException(String.format("Invalid STR client settings: batchSize=%d, parallelRequests=%d, maxRetries=%d",
+                    batchSize, parallelRequests, maxRetries));
+        }
+        this.apiUri = apiUri;
+        this.batchSize = batchSize;
+        this.maxRetries = maxRetries;
+        this.timeout = timeout;
+        this.initialBackoff = initialBackoff;
+        this.cacheDirectory = cacheDirectory;
+        this.cacheMaxAge = cacheMaxAge;
+        this.executor = Executors.newFixedThreadPool(parallelRequests, runnable -> {
+            Thread thread = new Thread(runnable, "CellosaurusStrClient");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(timeout)
+                .build();
+    }
+
+    /**
+     * Get the STR search results for the passed sample profiles, as aggregated by StrHelper.aggregateDataBySample.
+     * The results are returned in the order of the profiles. Samples without a result in the API response are left out.
+     *
+     * @param sampleProfiles
+     * @param logger
+     * @return JSONArray with one result object per sample.
+     * @throws IOException
+     * @throws ParseException
+     */
+    public JSONArray getStrResults(Collection<Map<String, Object>> sampleProfiles, PluginLogger logger) throws IOException, ParseException {
+        List<Map<String, Object>> profiles = new ArrayList<>(sampleProfiles);
+        JSONObject[] results = new JSONObject[profiles.size()];
+        List<String> profileKeys = new ArrayList<>();
+        List<Integer> samplesToFetch = new ArrayList<>();
+        for (int i = 0; i < profiles.size(); i++) {
+            String profileKey = getProfileKey(profiles.get(i));
+            profileKeys.add(profileKey);
+            JSONObject cachedResult = readCachedResult(profileKey, logger);
+            if (cachedResult != null) {
+                cachedResult.put(SAMPLE_NAME_KEY, profiles.get(i).get(SAMPLE_NAME_KEY));
+                results[i] = cachedResult;
+            } else {
+                samplesToFetch.add(i);
+            }
+        }
+        logger.logInfo(String.format("Found cached STR results for %d of %d samples.", profiles.size() - samplesToFetch.size(), profiles.size()));
+
+        List<List<Integer>> batches = new ArrayList<>();
+        for (int i = 0; i < samplesToFetch.size(); i += batchSize) {
+            batches.add(samplesToFetch.subList(i, Math.min(i + batchSize, samplesToFetch.size())));
+        }
+        List<Future<JSONArray>> futures = new ArrayList<>();
+        for (List<Integer> batch : batches) {
+            List<Map<String, Object>> batchProfiles = new ArrayList<>();
+            for (int i : batch) {
+                batchProfiles.add(profiles.get(i));
+            }
+            futures.add(executor.submit(() -> postBatch(batchProfiles, logger)));
+        }
+        try {
+            for (int b = 0; b < batches.size(); b++) {
+                Map<Object, JSONObject> resultsBySampleName = new HashMap<>();
+                for (Object result : futures.get(b).get()) {
+                    JSONObject resultObj = (JSONObject) result;
+                    resultsBySampleName.put(resultObj.get(SAMPLE_NAME_KEY), resultObj);
+                }
+                for (int i : batches.get(b)) {
+                    JSONObject result = resultsBySampleName.get(profiles.get(i).get(SAMPLE_NAME_KEY));
+                    if (result != null) {
+                        writeCachedResult(profileKeys.get(i), result, logger);
+                        results[i] = result;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for STR API results.");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof ParseException) {
+                throw (ParseException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Error while getting STR API results.", cause);
+        } finally {
+            for (Future<JSONArray> future : futures) {
+                future.cancel(true);
+            }
+        }
+
+        JSONArray strResults = new JSONArray();
+        for (JSONObject result : results) {
+            if (result != null) {
+                strResults.add(result);
+            }
+        }
+        return strResults;
+    }
+
+    /**
+     * Post one batch of sample profiles to the API, retrying timeouts, connection errors and HTTP 429/5xx responses.
+     *
+     * @param batchProfiles
+     * @param logger
+     * @return JSONArray returned by the API.
+     * @throws IOException
+     * @throws ParseException
+     * @throws InterruptedException
+     */
+    private JSONArray postBatch(List<Map<String, Object>> batchProfiles, PluginLogger logger) throws IOException, ParseException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(apiUri)
+                .timeout(timeout)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(new Gson().toJson(batchProfiles), StandardCharsets.UTF_8))
+                .build();
+        IOException lastError = null;
+        for (int attempt = 0; attempt <= maxRetries; attempt++) {
+            if (attempt > 0) {
+                long backoffMillis = initialBackoff.toMillis() << (attempt - 1);
+                logger.logWarning(String.format("STR API request for %d samples failed, retrying in %d ms: %s", batchProfiles.size(), backoffMillis, lastError.getMessage()));
+                Thread.sleep(backoffMillis + ThreadLocalRandom.current().nextLong(backoffMillis / 2 + 1));
+            }
+            HttpResponse<String> response;
+            try {
+                response = httpClient.send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                lastError = e;
+                continue;
+            }
+            int status = response.statusCode();
+            if (status == 200) {
+                String body = response.body().trim();
+                return body.isEmpty() ? new JSONArray() : (JSONArray) new JSONParser().parse(body);
+            }
+            lastError = new IOException(String.format("STR API returned HTTP %d for %d samples: %s", status, batchProfiles.size(), response.body()));
+            if (status != 429 && status < 500) {
+                throw lastError;
+            }
+        }
+        throw lastError;
+    }
+
+    /**
+     * Get the cache key of a sample profile. Field names are sorted, alleles are trimmed and sorted, and the sample
+     * name is left out, so the same profile always gets the same key.
+     *
+     * @param profile
+     * @return SHA-256 hex digest of the normalized profile.
+     */
+    static String getProfileKey(Map<String, Object> profile) {
+        StringBuilder normalizedProfile = new StringBuilder();
+        Map<String, Object> sortedProfile = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        sortedProfile.putAll(profile);
+        for (Map.Entry<String, Object> entry : sortedProfile.entrySet()) {
+            if (SAMPLE_NAME_KEY.equals(entry.getKey()) || entry.getValue() == null) {
+                continue;
+            }
+            List<String> values = new ArrayList<>();
+            for (String value : entry.getValue().toString().split(",")) {
+                if (!StringUtils.isBlank(value)) {
+                    values.add(value.trim().toLowerCase());
+                }
+            }
+            Collections.sort(values);
+            normalizedProfile.append(entry.getKey().trim().toLowerCase()).append('=').append(String.join(",", values)).append(';');
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(normalizedProfile.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+    }
+
+    private JSONObject readCachedResult(String profileKey, PluginLogger logger) {
+        if (cacheDirectory == null) {
+            return null;
+        }
+        Path cacheFile = cacheDirectory.resolve(profileKey + ".json");
+        try {
+            if (!Files.isRegularFile(cacheFile)
+                    || System.currentTimeMillis() - Files.getLastModifiedTime(cacheFile).toMillis() > cacheMaxAge.toMillis()) {
+                return null;
+            }
+            return (JSONObject) new JSONParser().parse(new String(Files.readAllBytes(cacheFile), StandardCharsets.UTF_8));
+        } catch (IOException | ParseException | ClassCastException e) {
+            logger.logWarning(String.format("Ignoring unreadable STR cache file %s: %s", cacheFile, e));
+            return null;
+        }
+    }
+
+    private void writeCachedResult(String profileKey, JSONObject result, PluginLogger logger) {
+        if (cacheDirectory == null) {
+            return;
+        }
+        try {
+            Files.createDirectories(cacheDirectory);
+            Path tempFile = Files.createTempFile(cacheDirectory, profileKey, ".tmp");
+            Files.write(tempFile, result.toJSONString().getBytes(StandardCharsets.UTF_8));
+            Files.move(tempFile, cacheDirectory.resolve(profileKey + ".json"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.logWarning(String.format("Failed to write STR cache file for profile %s: %s", profileKey, e));
+        }
+    }
+}
@@ -13,24 +13,18 @@ import com.velox.sloan.cmo.workflows.IgoLimsPluginUtils.IgoLimsPluginUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.json.simple.JSONArray;
-import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.ProtocolException;
-import java.net.URL;
+import java.nio.file.Paths;
 import java.rmi.RemoteException;
 import java.util.*;
 
 /**
  * This plugin is designed to process the STR cell line authentication results using an external API from Cellosaurus company.
  * The user will upload raw results file generated by STR raw results analysis tool and upload it to LIMS when prompted. The
- * plugin returns a formatted csv file with results from API.
+ * plugin returns a formatted csv file with results from API. API results are cached on disk by STR profile, so
+ * re-running the report for the same profiles only calls the API for new profiles.
  *
  * @author sharmaa1
  */
@@ -47,6 +41,8 @@ public class StrReportGenerator extends DefaultGenericPlugin {
             "Mouse STR 15-3", "Mouse STR 17-2", "Mouse STR 18-3", "Mouse STR 19-2", "Mouse STR 2-1", "Mouse STR 3-2",
             "Mouse STR 4-2", "Mouse STR 5-5", "Mouse STR 6-4", "Mouse STR 6-7", "Mouse STR 7-1", "Mouse STR 8-1", "Mouse STR X-1");
     private final String STR_REPORT_TAG = "GENERATE STR REPORT";
+    private static final CellosaurusStrClient strClient = new CellosaurusStrClient(
+            Paths.get(System.getProperty("java.io.tmpdir"), "igo-lims-plugins", "cellosaurus-str-cache"));
     IgoLimsPluginUtils utils = new IgoLimsPluginUtils();
 
     /*
@@ -116,11 +112,13 @@ public class StrReportGenerator extends DefaultGenericPlugin {
             }
             //read and clean data for posting to api
             Map<String, Map<String, Object>> data = strHelper.aggregateDataBySample(fileData, headerValueMap, species);
-            List<String> jsonData = strHelper.convertSampleDataToJson(data);
-            //call method to get data from api
-            JSONArray results = getStrResultsFromApi(jsonData.toString());
+            //get data from api, in batches and from the cache when the profiles were searched before
+            JSONArray results = strClient.getStrResults(data.values(), pluginLogger);
             //process data coming from api
-            if (results == null) throw new AssertionError();
+            if (results.isEmpty()) {
+                clientCallback.displayInfo(String.format("API returned 0 result hits.\nData sent to server is:\n%s", strHelper.convertSampleDataToJson(data)));
+                return new PluginResult(false);
+            }
             Map<String, Map<String, Map<String, Object>>> sampleData = strHelper.getSampleDataFromApiData(results);
             if (attachedSamples.size() == 0) {
                 clientCallback.displayError("Samples not found attached to this task.");
@@ -283,61 +281,6 @@ public class StrReportGenerator extends DefaultGenericPlugin {
         return !StringUtils.isBlank(species) && reportHeaders.size() != 0 && markers.size() != 0;
     }
 
-    /**
-     * Method to send HTTP request to the API and receive results back from API.
-     *
-     * @param sampleData
-     * @return JSONArray
-     * @throws ServerException
-     * @throws ParseException
-     */
-    private JSONArray getStrResultsFromApi(String sampleData) {
-        StringBuilder response = new StringBuilder();
-        JSONParser parser = new JSONParser();
-        JSONArray finalResponse = null;
-        try {
-            URL obj = new URL("https://web.expasy.org/cellosaurus-str-search/api/batch");
-            HttpURLConnection postConnection = (HttpURLConnection) obj.openConnection();
-            postConnection.setRequestMethod("POST");
-            postConnection.setRequestProperty("Content-Type", "application/json");
-            postConnection.setDoOutput(true);
-            OutputStream os = postConnection.getOutputStream();
-            os.write(sampleData.getBytes());
-            os.flush();
-            os.close();
-            int responseCode = postConnection.getResponseCode();
-            if (responseCode == HttpURLConnection.HTTP_OK) { //success
-                BufferedReader in = new BufferedReader(new InputStreamReader(
-                        postConnection.getInputStream()));
-                String inputLine;
-                while ((inputLine = in.readLine()) != null) {
-                    response.append(inputLine.trim());
-                }
-                in.close();
-            } else {
-                clientCallback.displayInfo(String.format("API REQUEST DID NOT WORK: %s", postConnection.getResponseMessage()));
-            }
-
-            if (response.toString().length() == 0) {
-                clientCallback.displayInfo(String.format("API returned 0 result hits.\nData sent to server is:\n%s",
-                        sampleData));
-                return null;
-            }
-            finalResponse = (JSONArray) parser.parse(response.toString());
-        } catch (ProtocolException e) {
-            logError(String.format("ProtocolException -> Failed to get response from API:\n%s", ExceptionUtils.getStackTrace(e)));
-        } catch (MalformedURLException e) {
-            logError(String.format("MalformedURLException -> Failed to get response from API:\n%s", ExceptionUtils.getStackTrace(e)));
-        } catch (IOException e) {
-            logError(String.format("IOException -> Failed to get response from API:\n%s", ExceptionUtils.getStackTrace(e)));
-        } catch (ServerException e) {
-            logError(String.format("ServerException -> Failed to get response from API:\n%s", ExceptionUtils.getStackTrace(e)));
-        } catch (ParseException e) {
-            logError(String.format("ParseException -> Failed to parse response from API:\n%s", ExceptionUtils.getStackTrace(e)));
-        }
-        return finalResponse;
-    }
-
     /**
      * Method to get IGO ID for samples in the report.
      *
@@ -1,9 +1,16 @@
 package com.velox.sloan.cmo.workflows.utils;
 
 import com.velox.api.datarecord.DataRecord;
+import com.velox.api.datarecord.DataRecordManager;
 import com.velox.api.datarecord.NotFound;
 import com.velox.api.user.User;
+import com.velox.api.util.ServerException;
+
 import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 public class DataAccessUtils {
     /**
@@ -24,4 +31,28 @@ public class DataAccessUtils {
         }
         return "";
     }
-}
\ No newline at end of file
+
+    /**
+     * Fetches the field values of all passed records with a single server call and returns immutable snapshots in the
+     * same order as the records.
+     *
+     * @param records
+     * @param dataRecordManager
+     * @param user
+     * @return
+     */
+    public static List<RecordFieldSnapshot> getFieldSnapshots(List<DataRecord> records, DataRecordManager dataRecordManager, User user) throws ServerException, RemoteException {
+        if (records.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Map<String, Object>> fieldsForRecords = dataRecordManager.getFieldsForRecords(records, user);
+        if (fieldsForRecords.size() != records.size()) {
+            throw new IllegalStateException(String.format("Expected field values for %d records but received %d", records.size(), fieldsForRecords.size()));
+        }
+        List<RecordFieldSnapshot> snapshots = new ArrayList<>(records.size());
+        for (int i = 0; i < records.size(); i++) {
+            snapshots.add(new RecordFieldSnapshot(records.get(i), fieldsForRecords.get(i)));
+        }
+        return snapshots;
+    }
+}
@@ -0,0 +1,109 @@
+package com.velox.sloan.cmo.workflows.utils;
+
+import com.velox.api.datarecord.DataRecord;
+import com.velox.api.datarecord.DataRecordManager;
+import com.velox.api.user.User;
+import com.velox.api.util.ServerException;
+
+import java.rmi.RemoteException;
+import java.util.*;
+
+/**
+ * Per plugin run cache of DataRecord field values. Plugins opt in by creating a cache at the start of run() and
+ * prefetching the records they are going to read in a loop. Field values for all records passed to prefetch are
+ * fetched with a single server call, and subsequent reads are local map lookups.
+ * <p>
+ * Snapshots are not updated when records are changed. Call invalidate for records that are modified by the plugin
+ * and read again afterwards.
+ */
+public class DataRecordFieldCache {
+    private final DataRecordManager dataRecordManager;
+    private final User user;
+    private final Map<Long, RecordFieldSnapshot> snapshotsByRecordId = new HashMap<>();
+    private int serverCalls = 0;
+
+    public DataRecordFieldCache(DataRecordManager dataRecordManager, User user) {
+        this.dataRecordManager = dataRecordManager;
+        this.user = user;
+    }
+
+    /**
+     * Fetch field values for the records that are not cached yet with a single server call.
+     *
+     * @param records
+     * @return snapshots for all passed records in the same order as the records.
+     * @throws ServerException
+     * @throws RemoteException
+     */
+    public List<RecordFieldSnapshot> prefetch(List<DataRecord> records) throws ServerException, RemoteException {
+        List<DataRecord> recordsToFetch = new ArrayList<>();
+        Set<Long> recordIdsToFetch = new HashSet<>();
+        for (DataRecord record : records) {
+            if (!snapshotsByRecordId.containsKey(record.getRecordId()) && recordIdsToFetch.add(record.getRecordId())) {
+                recordsToFetch.add(record);
+            }
+        }
+        if (!recordsToFetch.isEmpty()) {
+            serverCalls++;
+            for (RecordFieldSnapshot snapshot : DataAccessUtils.getFieldSnapshots(recordsToFetch, dataRecordManager, user)) {
+                snapshotsByRecordId.put(snapshot.getRecordId(), snapshot);
+            }
+        }
+        List<RecordFieldSnapshot> snapshots = new ArrayList<>(records.size());
+        for (DataRecord record : records) {
+            snapshots.add(snapshotsByRecordId.get(record.getRecordId()));
+        }
+        return snapshots;
+    }
+
+    /**
+     * Get snapshot for a record. Records that were not prefetched are fetched individually and cached.
+     *
+     * @param record
+     * @return RecordFieldSnapshot
+     * @throws RemoteException
+     */
+    public RecordFieldSnapshot get(DataRecord record) throws RemoteException {
+        RecordFieldSnapshot snapshot = snapshotsByRecordId.get(record.getRecordId());
+        if (snapshot == null) {
+            serverCalls++;
+            snapshot = new RecordFieldSnapshot(record, record.getFields(user));
+            snapshotsByRecordId.put(record.getRecordId(), snapshot);
+        }
+        return snapshot;
+    }
+
+    public Object getValue(DataRecord record, String key) throws RemoteException {
+        return get(record).getValue(key);
+    }
+
+    public String getStringVal(DataRecord record, String key) throws RemoteException {
+        return get(record).getStringVal(key);
+    }
+
+    public Double getDoubleVal(DataRecord record, String key) throws RemoteException {
+        return get(record).getDoubleVal(key);
+    }
+
+    /**
+     * Remove cached snapshot for a record, so that the next read fetches current values from the server.
+     *
+     * @param record
+     */
+    public void invalidate(DataRecord record) {
+        snapshotsByRecordId.remove(record.getRecordId());
+    }
+
+    public void clear() {
+        snapshotsByRecordId.clear();
+    }
+
+    /**
+     * Number of server calls made by this cache. Useful to log how many round trips a plugin run needed.
+     *
+     * @return int
+     */
+    public int getServerCalls() {
+        return serverCalls;
+    }
+}
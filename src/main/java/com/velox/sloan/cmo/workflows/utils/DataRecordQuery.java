@@ -0,0 +1,187 @@
+package com.velox.sloan.cmo.workflows.utils;
+
+import com.velox.api.datarecord.DataRecord;
+import com.velox.api.datarecord.DataRecordManager;
+import com.velox.api.datarecord.IoError;
+import com.velox.api.datarecord.NotFound;
+import com.velox.api.user.User;
+import com.velox.api.util.ServerException;
+
+import java.rmi.RemoteException;
+import java.util.*;
+
+/**
+ * Builder for DataRecordManager.queryDataRecords calls, used instead of concatenating where clauses by hand.
+ * Values are rendered by type: Strings are quoted with embedded quotes escaped, Numbers are written as is, Booleans
+ * as 1/0 and null values turn into IS NULL / IS NOT NULL checks. The same query always builds the same where clause.
+ * <p>
+ * Values of a whereIn condition are de-duplicated and split into chunks of at most MAX_IN_CLAUSE_VALUES values to stay
+ * under the server limits. The chunks are queried one after the other on the calling
+ * thread, with the caller's DataRecordManager and User, and the results are merged in chunk order.
+ * <p>
+ * Example:
+ * <pre>
+ *     List&lt;DataRecord&gt; samples = DataRecordQuery.from("Sample")
+ *             .whereEquals("RequestId", requestId)
+ *             .whereIn("SampleId", sampleIds)
+ *             .execute(dataRecordManager, user);
+ * </pre>
+ */
+public class DataRecordQuery {
+    public static final int MAX_IN_CLAUSE_VALUES = 500;
+
+    private final String dataTypeName;
+    private final List<String> conditions = new ArrayList<>();
+    private String inFieldName;
+    private List<Object> inValues;
+
+    private DataRecordQuery(String dataTypeName) {
+        this.dataTypeName = dataTypeName;
+    }
+
+    /**
+     * Start a query for records of a DataType. Without conditions the query returns all records of the DataType.
+     *
+     * @param dataTypeName
+     * @return DataRecordQuery
+     */
+    public static DataRecordQuery from(String dataTypeName) {
+        return new DataRecordQuery(dataTypeName);
+    }
+
+    public DataRecordQuery whereEquals(String fieldName, Object value) {
+        conditions.add(value == null ? fieldName + " IS NULL" : fieldName + " = " + toSqlValue(value));
+        return this;
+    }
+
+    public DataRecordQuery whereNotEquals(String fieldName, Object value) {
+        conditions.add(value == null ? fieldName + " IS NOT NULL" : fieldName + " != " + toSqlValue(value));
+        return this;
+    }
+
+    public DataRecordQuery whereGreaterThan(String fieldName, Object value) {
+        conditions.add(fieldName + " > " + toSqlValue(value));
+        return this;
+    }
+
+    /**
+     * Add a LIKE condition. Quotes in the pattern are escaped, '%' and '_' keep their meaning as wildcards.
+     *
+     * @param fieldName
+     * @param pattern
+     * @return DataRecordQuery
+     */
+    public DataRecordQuery whereLike(String fieldName, String pattern) {
+        conditions.add(fieldName + " LIKE " + toSqlValue(pattern));
+        return this;
+    }
+
+    /**
+     * Add a condition that matches if the field is LIKE any of the patterns. The patterns are joined with OR.
+     *
+     * @param fieldName
+     * @param patterns at least one pattern.
+     * @return DataRecordQuery
+     */
+    public DataRecordQuery whereLikeAny(String fieldName, Collection<String> patterns) {
+        Set<String> distinctPatterns = new LinkedHashSet<>(patterns);
+        if (distinctPatterns.isEmpty()) {
+            throw new IllegalArgumentException(String.format("Query for '%s' has no patterns for '%s'.", dataTypeName, fieldName));
+        }
+        if (distinctPatterns.size() == 1) {
+            return whereLike(fieldName, distinctPatterns.iterator().next());
+        }
+        StringJoiner joiner = new StringJoiner(" OR ", "(", ")");
+        for (String pattern : distinctPatterns) {
+            joiner.add(fieldName + " LIKE " + toSqlValue(pattern));
+        }
+        conditions.add(joiner.toString());
+        return this;
+    }
+
+    public DataRecordQuery whereNotLike(String fieldName, String pattern) {
+        conditions.add(fieldName + " NOT LIKE " + toSqlValue(pattern));
+        return this;
+    }
+
+    /**
+     * Add an IN condition. A query can have a single IN condition, which is split into chunks when it has more than
+     * MAX_IN_CLAUSE_VALUES values.
+     *
+     * @param fieldName
+     * @param values
+     * @return DataRecordQuery
+     */
+    public DataRecordQuery whereIn(String fieldName, Collection<?> values) {
+        if (inFieldName != null) {
+            throw new IllegalStateException(String.format("Query for '%s' already has an IN condition on '%s'.", dataTypeName, inFieldName));
+        }
+        inFieldName = fieldName;
+        inValues = new ArrayList<>(new LinkedHashSet<>(values));
+        return this;
+    }
+
+    /**
+     * Get the where clause of the query, with all values of the IN condition. Returns null for a query without
+     * conditions.
+     *
+     * @return String
+     */
+    public String getWhereClause() {
+        return getWhereClause(inValues);
+    }
+
+    /**
+     * Run the query. A query with an empty IN condition returns an empty List without calling the server.
+     *
+     * @param dataRecordManager
+     * @param user
+     * @return List of matching records.
+     * @throws NotFound
+     * @throws IoError
+     * @throws RemoteException
+     * @throws ServerException
+     */
+    public List<DataRecord> execute(DataRecordManager dataRecordManager, User user) throws NotFound, IoError, RemoteException, ServerException {
+        if (inFieldName == null) {
+            return dataRecordManager.queryDataRecords(dataTypeName, getWhereClause(), user);
+        }
+        if (inValues.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<DataRecord> records = new ArrayList<>();
+        for (int i = 0; i < inValues.size(); i += MAX_IN_CLAUSE_VALUES) {
+            records.addAll(executeChunk(inValues.subList(i, Math.min(i + MAX_IN_CLAUSE_VALUES, inValues.size())), dataRecordManager, user));
+        }
+        return records;
+    }
+
+    private List<DataRecord> executeChunk(List<Object> chunk, DataRecordManager dataRecordManager, User user) throws NotFound, IoError, RemoteException, ServerException {
+        if (conditions.isEmpty()) {
+            return dataRecordManager.queryDataRecords(dataTypeName, inFieldName, chunk, user);
+        }
+        return dataRecordManager.queryDataRecords(dataTypeName, getWhereClause(chunk), user);
+    }
+
+    private String getWhereClause(List<Object> values) {
+        List<String> clauses = new ArrayList<>(conditions);
+        if (inFieldName != null) {
+            StringJoiner joiner = new StringJoiner(", ", inFieldName + " IN (", ")");
+            for (Object value : values) {
+                joiner.add(toSqlValue(value));
+            }
+            clauses.add(joiner.toString());
+        }
+        return clauses.isEmpty() ? null : String.join(" AND ", clauses);
+    }
+
+    private static String toSqlValue(Object value) {
+        if (value instanceof Boolean) {
+            return (Boolean) value ? "1" : "0";
+        }
+        if (value instanceof Number) {
+            return value.toString();
+        }
+        return "'" + value.toString().replace("'", "''") + "'";
+    }
+}
@@ -0,0 +1,125 @@
+package com.velox.sloan.cmo.workflows.utils;
+
+import com.velox.api.datarecord.DataRecord;
+import com.velox.api.datarecord.DataRecordManager;
+import com.velox.api.datarecord.IoError;
+import com.velox.api.datarecord.NotFound;
+import com.velox.api.user.User;
+import com.velox.api.util.ServerException;
+
+import java.rmi.RemoteException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hashed set of the values of a field over all records of a DataType, eg. the Uuids of all ThoracicBankTransfer
+ * records. Indexes returned by forField are kept until the server restarts and are shared by all plugin runs.
+ * <p>
+ * The first refresh loads the field of every record, later refreshes only query the records with a RecordId above the
+ * highest RecordId seen so far minus RESCAN_RECORD_IDS. RecordIds are handed out when records are created, not when
+ * they are committed, so a record committed by a concurrent run can become visible after records with a higher
+ * RecordId. The margin re-reads those records. The field values of the queried records are fetched with a single server
+ * call, so a refresh costs two round trips and its size depends on the number of new records instead of the size of
+ * the DataType.
+ * <p>
+ * Values are never removed, the value of a deleted record stays in the index. This makes the index fit to check that a
+ * new value is not used yet, not to list the values that are in use.
+ */
+public class FieldValueIndex {
+    private static final Map<String, FieldValueIndex> INDEXES = new HashMap<>();
+    static final long RESCAN_RECORD_IDS = 10000;
+
+    private final String dataTypeName;
+    private final String fieldName;
+    // read without the lock by the sets returned from getValues.
+    private final Set<String> values = ConcurrentHashMap.newKeySet();
+    private long lastRecordId = 0;
+
+    FieldValueIndex(String dataTypeName, String fieldName) {
+        this.dataTypeName = dataTypeName;
+        this.fieldName = fieldName;
+    }
+
+    /**
+     * Get the shared index for a field of a DataType.
+     *
+     * @param dataTypeName
+     * @param fieldName
+     * @return FieldValueIndex
+     */
+    public static FieldValueIndex forField(String dataTypeName, String fieldName) {
+        synchronized (INDEXES) {
+            return INDEXES.computeIfAbsent(dataTypeName + "." + fieldName, key -> new FieldValueIndex(dataTypeName, fieldName));
+        }
+    }
+
+    /**
+     * Load the values of the records added since the last call and return a view of all values. The view belongs to the
+     * caller, values added to it are kept in the view and are not added to the index.
+     *
+     * @param dataRecordManager
+     * @param user
+     * @return Set of field values.
+     * @throws NotFound
+     * @throws IoError
+     * @throws RemoteException
+     * @throws ServerException
+     */
+    public synchronized Set<String> getValues(DataRecordManager dataRecordManager, User user) throws NotFound, IoError, RemoteException, ServerException {
+        long fromRecordId = Math.max(lastRecordId - RESCAN_RECORD_IDS, 0);
+        List<DataRecord> newRecords = DataRecordQuery.from(dataTypeName).whereGreaterThan("RecordId", fromRecordId).execute(dataRecordManager, user);
+        for (RecordFieldSnapshot record : DataAccessUtils.getFieldSnapshots(newRecords, dataRecordManager, user)) {
+            Object value = record.getValue(fieldName);
+            if (value != null) {
+                values.add(value.toString());
+            }
+            lastRecordId = Math.max(lastRecordId, record.getRecordId());
+        }
+        return new OverlaySet(values);
+    }
+
+    /**
+     * Set of the values of the index plus the values added by the caller. The index values are not copied, values
+     * loaded into the index by later refreshes show up in the set as well.
+     */
+    private static class OverlaySet extends AbstractSet<String> {
+        private final Set<String> indexValues;
+        private final Set<String> addedValues = new HashSet<>();
+
+        OverlaySet(Set<String> indexValues) {
+            this.indexValues = indexValues;
+        }
+
+        @Override
+        public boolean contains(Object value) {
+            return addedValues.contains(value) || indexValues.contains(value);
+        }
+
+        @Override
+        public boolean add(String value) {
+            return !indexValues.contains(value) && addedValues.add(value);
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            List<String> allValues = new ArrayList<>(indexValues);
+            for (String value : addedValues) {
+                if (!indexValues.contains(value)) {
+                    allValues.add(value);
+                }
+            }
+            return Collections.unmodifiableList(allValues).iterator();
+        }
+
+        @Override
+        public int size() {
+            int size = indexValues.size();
+            for (String value : addedValues) {
+                if (!indexValues.contains(value)) {
+                    size++;
+                }
+            }
+            return size;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.velox.sloan.cmo.workflows.utils;
+
+import com.velox.api.datarecord.DataRecord;
+import com.velox.api.datarecord.DataRecordManager;
+import com.velox.api.datarecord.IoError;
+import com.velox.api.datarecord.NotFound;
+import com.velox.api.user.User;
+import com.velox.api.util.ServerException;
+
+import java.rmi.RemoteException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Finds the record of a DataType with the highest RecordId, ie. the record added last. queryDataRecords cannot sort or
+ * limit its results, so the RecordId of the latest record of each DataType is remembered until the server restarts.
+ * The next lookup only queries the records with a RecordId from the remembered one up, which normally returns just the
+ * remembered record or the few records added since. Only the first lookup of a DataType, or a lookup after the latest
+ * record was deleted, queries all records of the DataType.
+ * <p>
+ * The RecordIds are compared with DataRecord.getRecordId, which does not call the server.
+ */
+public class LatestRecordLookup {
+    private static final Map<String, Long> LATEST_RECORD_IDS = new ConcurrentHashMap<>();
+
+    /**
+     * Get the record of a DataType with the highest RecordId.
+     *
+     * @param dataTypeName
+     * @param dataRecordManager
+     * @param user
+     * @return DataRecord, or null when the DataType has no records.
+     * @throws NotFound
+     * @throws IoError
+     * @throws RemoteException
+     * @throws ServerException
+     */
+    public static DataRecord getLatestRecord(String dataTypeName, DataRecordManager dataRecordManager, User user) throws NotFound, IoError, RemoteException, ServerException {
+        Long latestRecordId = LATEST_RECORD_IDS.get(dataTypeName);
+        DataRecord latestRecord = null;
+        if (latestRecordId != null) {
+            // RecordIds are whole numbers, '> id - 1' includes the remembered record itself.
+            latestRecord = getRecordWithHighestId(DataRecordQuery.from(dataTypeName).whereGreaterThan("RecordId", latestRecordId - 1).execute(dataRecordManager, user));
+        }
+        if (latestRecord == null) {
+            latestRecord = getRecordWithHighestId(DataRecordQuery.from(dataTypeName).execute(dataRecordManager, user));
+        }
+        if (latestRecord == null) {
+            LATEST_RECORD_IDS.remove(dataTypeName);
+        } else {
+            LATEST_RECORD_IDS.put(dataTypeName, latestRecord.getRecordId());
+        }
+        return latestRecord;
+    }
+
+    private static DataRecord getRecordWithHighestId(List<DataRecord> records) {
+        DataRecord recordWithHighestId = null;
+        for (DataRecord record : records) {
+            if (recordWithHighestId == null || record.getRecordId() > recordWithHighestId.getRecordId()) {
+                recordWithHighestId = record;
+            }
+        }
+        return recordWithHighestId;
+    }
+}
@@ -0,0 +1,286 @@
+package com.velox.sloan.cmo.workflows.utils;
+
+import com.google.gson.GsonBuilder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Per plugin totals and time histograms of the PluginRunProfiles recorded in this JVM, to rank the plugins that take
+ * the most time. The metrics cover a rolling window of the last 'igo.plugin.metrics.windowHours' hours, 24 by default.
+ * Runs are kept in WINDOW_SLICES slices of the window, the oldest slice is dropped as soon as it is out of the window,
+ * so the metrics always cover between the window minus one slice and the whole window.
+ * <p>
+ * When the system property 'igo.plugin.metrics.file' is set, the metrics are written to that file as JSON, with the
+ * plugins ranked by total wall time. Recording a run only updates the metrics in memory. The file is written by a
+ * single background thread shared by all PluginMetrics, at most once per SAVE_INTERVAL_MILLIS and only after new runs
+ * were recorded, so plugin runs never wait on the disk.
+ */
+public class PluginMetrics {
+    public static final String METRICS_FILE_PROPERTY = "igo.plugin.metrics.file";
+    public static final String WINDOW_HOURS_PROPERTY = "igo.plugin.metrics.windowHours";
+    public static final long DEFAULT_WINDOW_HOURS = 24;
+    static final int WINDOW_SLICES = 24;
+    static final long SAVE_INTERVAL_MILLIS = 60 * 1000L;
+    // upper bounds of the histogram buckets, the last bucket counts everything slower.
+    static final long[] BUCKET_UPPER_BOUNDS_MS = {100, 500, 1000, 5000, 10000, 30000, 60000, 300000};
+    private static final Logger LOGGER = LogManager.getLogger(PluginMetrics.class);
+    private static final ScheduledExecutorService WRITER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "PluginMetricsWriter");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final PluginMetrics INSTANCE = new PluginMetrics(
+            System.getProperty(METRICS_FILE_PROPERTY) == null ? null : Paths.get(System.getProperty(METRICS_FILE_PROPERTY)),
+            Duration.ofHours(Long.getLong(WINDOW_HOURS_PROPERTY, DEFAULT_WINDOW_HOURS)));
+
+    private final Path metricsFile;
+    private final long windowMillis;
+    private final long sliceMillis;
+    private final LongSupplier clock;
+    // stats of the runs in each slice of the window, by slice number.
+    private final TreeMap<Long, Map<String, PluginStats>> statsBySlice = new TreeMap<>();
+    private boolean saveScheduled;
+    // only used by the thread saving the file.
+    private boolean saveFailed;
+
+    public PluginMetrics(Path metricsFile, Duration window) {
+        this(metricsFile, window, System::currentTimeMillis);
+    }
+
+    PluginMetrics(Path metricsFile, Duration window, LongSupplier clock) {
+        this.metricsFile = metricsFile;
+        this.windowMillis = window.toMillis();
+        this.sliceMillis = Math.max(windowMillis / WINDOW_SLICES, 1);
+        this.clock = clock;
+    }
+
+    public static PluginMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Add a finished run to the metrics of its plugin. The metrics file is saved by the writer thread, at the latest
+     * SAVE_INTERVAL_MILLIS after the run.
+     *
+     * @param profile
+     */
+    public synchronized void record(PluginRunProfile profile) {
+        statsBySlice.computeIfAbsent(Math.floorDiv(clock.getAsLong(), sliceMillis), slice -> new HashMap<>())
+                .computeIfAbsent(profile.getPluginName(), PluginStats::new).add(profile);
+        if (metricsFile != null && !saveScheduled) {
+            saveScheduled = true;
+            WRITER.schedule(this::saveMetricsFile, SAVE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Get the metrics of the runs in the window, ranked by total wall time with the slowest plugin first.
+     *
+     * @return List<PluginStats>
+     */
+    public synchronized List<PluginStats> getPluginsByWallTime() {
+        return getPluginsByWallTime(clock.getAsLong());
+    }
+
+    private List<PluginStats> getPluginsByWallTime(long now) {
+        // slices that end before the window starts are dropped.
+        statsBySlice.headMap(Math.floorDiv(now - windowMillis, sliceMillis) + 1).clear();
+        Map<String, PluginStats> statsByPlugin = new HashMap<>();
+        for (Map<String, PluginStats> sliceStats : statsBySlice.values()) {
+            for (PluginStats stats : sliceStats.values()) {
+                statsByPlugin.computeIfAbsent(stats.getPlugin(), PluginStats::new).add(stats);
+            }
+        }
+        List<PluginStats> ranked = new ArrayList<>(statsByPlugin.values());
+        ranked.sort(Comparator.comparingLong(PluginStats::getTotalWallMs).reversed().thenComparing(PluginStats::getPlugin));
+        return ranked;
+    }
+
+    /**
+     * Write the metrics of the runs in the window to the metrics file. The metrics are copied under the lock, the file is
+     * written without holding it.
+     */
+    void saveMetricsFile() {
+        if (metricsFile == null) {
+            return;
+        }
+        MetricsSnapshot snapshot;
+        synchronized (this) {
+            saveScheduled = false;
+            long now = clock.getAsLong();
+            snapshot = new MetricsSnapshot(now - windowMillis, now, getPluginsByWallTime(now));
+        }
+        try {
+            Path directory = metricsFile.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            Path tempFile = Files.createTempFile(directory, "plugin-metrics", ".tmp");
+            String json = new GsonBuilder().setPrettyPrinting().create().toJson(snapshot);
+            Files.write(tempFile, json.getBytes(StandardCharsets.UTF_8));
+            Files.move(tempFile, metricsFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            saveFailed = false;
+        } catch (IOException e) {
+            // the metrics file is only a report, the metrics are still kept in memory. The failure is logged once
+            // instead of at every save, until the file is saved again.
+            if (!saveFailed) {
+                LOGGER.warn("Failed to save plugin metrics to {}.", metricsFile, e);
+                saveFailed = true;
+            }
+        }
+    }
+
+    /**
+     * Totals of all runs of a plugin, with histograms of the wall, compute and client wait times. Bucket i of a
+     * histogram counts the runs up to BUCKET_UPPER_BOUNDS_MS[i], the last bucket the runs that took longer.
+     */
+    public static class PluginStats {
+        private final String plugin;
+        private long runs;
+        private long failedRuns;
+        private long totalWallMs;
+        private long maxWallMs;
+        private long totalComputeMs;
+        private long totalClientWaitMs;
+        private long totalAttachedRecords;
+        private long totalQueries;
+        private long totalQueryMs;
+        private long totalCommits;
+        private long totalCommitMs;
+        private long totalManagerCalls;
+        private long totalManagerMs;
+        private long totalClientCalls;
+        private final long[] wallMsHistogram = new long[BUCKET_UPPER_BOUNDS_MS.length + 1];
+        private final long[] computeMsHistogram = new long[BUCKET_UPPER_BOUNDS_MS.length + 1];
+        private final long[] clientWaitMsHistogram = new long[BUCKET_UPPER_BOUNDS_MS.length + 1];
+
+        PluginStats(String plugin) {
+            this.plugin = plugin;
+        }
+
+        void add(PluginRunProfile profile) {
+            runs++;
+            if (profile.getExceptionName() != null) {
+                failedRuns++;
+            }
+            totalWallMs += profile.getWallMillis();
+            maxWallMs = Math.max(maxWallMs, profile.getWallMillis());
+            totalComputeMs += profile.getComputeMillis();
+            totalClientWaitMs += profile.getClientWaitMillis();
+            totalAttachedRecords += profile.getAttachedRecordCount();
+            totalQueries += profile.getQueryCount();
+            totalQueryMs += profile.getQueryMillis();
+            totalCommits += profile.getCommitCount();
+            totalCommitMs += profile.getCommitMillis();
+            totalManagerCalls += profile.getOtherManagerCallCount();
+            totalManagerMs += profile.getOtherManagerCallMillis();
+            totalClientCalls += profile.getClientCallCount();
+            wallMsHistogram[getBucket(profile.getWallMillis())]++;
+            computeMsHistogram[getBucket(profile.getComputeMillis())]++;
+            clientWaitMsHistogram[getBucket(profile.getClientWaitMillis())]++;
+        }
+
+        void add(PluginStats stats) {
+            runs += stats.runs;
+            failedRuns += stats.failedRuns;
+            totalWallMs += stats.totalWallMs;
+            maxWallMs = Math.max(maxWallMs, stats.maxWallMs);
+            totalComputeMs += stats.totalComputeMs;
+            totalClientWaitMs += stats.totalClientWaitMs;
+            totalAttachedRecords += stats.totalAttachedRecords;
+            totalQueries += stats.totalQueries;
+            totalQueryMs += stats.totalQueryMs;
+            totalCommits += stats.totalCommits;
+            totalCommitMs += stats.totalCommitMs;
+            totalManagerCalls += stats.totalManagerCalls;
+            totalManagerMs += stats.totalManagerMs;
+            totalClientCalls += stats.totalClientCalls;
+            for (int i = 0; i < wallMsHistogram.length; i++) {
+                wallMsHistogram[i] += stats.wallMsHistogram[i];
+                computeMsHistogram[i] += stats.computeMsHistogram[i];
+                clientWaitMsHistogram[i] += stats.clientWaitMsHistogram[i];
+            }
+        }
+
+        private static int getBucket(long millis) {
+            for (int i = 0; i < BUCKET_UPPER_BOUNDS_MS.length; i++) {
+                if (millis <= BUCKET_UPPER_BOUNDS_MS[i]) {
+                    return i;
+                }
+            }
+            return BUCKET_UPPER_BOUNDS_MS.length;
+        }
+
+        public String getPlugin() {
+            return plugin;
+        }
+
+        public long getRuns() {
+            return runs;
+        }
+
+        public long getFailedRuns() {
+            return failedRuns;
+        }
+
+        public long getTotalWallMs() {
+            return totalWallMs;
+        }
+
+        public long getMaxWallMs() {
+            return maxWallMs;
+        }
+
+        public long getTotalComputeMs() {
+            return totalComputeMs;
+        }
+
+        public long getTotalClientWaitMs() {
+            return totalClientWaitMs;
+        }
+
+        public long getTotalAttachedRecords() {
+            return totalAttachedRecords;
+        }
+
+        public long getTotalQueries() {
+            return totalQueries;
+        }
+
+        public long getTotalCommits() {
+            return totalCommits;
+        }
+
+        public long getTotalCommitMs() {
+            return totalCommitMs;
+        }
+
+        public long[] getWallMsHistogram() {
+            return wallMsHistogram.clone();
+        }
+    }
+
+    private static class MetricsSnapshot {
+        private final long windowStart;
+        private final long updated;
+        private final long[] bucketUpperBoundsMs = BUCKET_UPPER_BOUNDS_MS;
+        private final List<PluginStats> plugins;
+
+        MetricsSnapshot(long windowStart, long updated, List<PluginStats> plugins) {
+            this.windowStart = windowStart;
+            this.updated = updated;
+            this.plugins = plugins;
+        }
+    }
+}
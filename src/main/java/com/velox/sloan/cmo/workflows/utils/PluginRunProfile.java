@@ -0,0 +1,220 @@
+package com.velox.sloan.cmo.workflows.utils;
+
+import com.velox.api.datarecord.DataRecord;
+import com.velox.api.datarecord.DataRecordManager;
+import com.velox.api.util.ClientCallbackOperations;
+import com.velox.api.workflow.ActiveTask;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters for a single run of a plugin: wall time, records attached to the task, queries, storeAndCommit calls, other
+ * DataRecordManager calls and the time spent waiting on ClientCallbackOperations calls, which include the dialogs
+ * shown to the user. The counters are filled by the proxies returned from the wrap methods, which the plugin uses in
+ * place of its ActiveTask, DataRecordManager and ClientCallbackOperations. Calls on the DataRecords are not counted.
+ * <p>
+ * Compute time is the wall time less the time spent in DataRecordManager and ClientCallbackOperations calls. Calls
+ * made after finish still add to the call times but not to the wall time, so compute time is capped at 0.
+ */
+public class PluginRunProfile {
+    private final String pluginName;
+    private final long startNanos = System.nanoTime();
+    private final Set<Long> attachedRecordIds = ConcurrentHashMap.newKeySet();
+    private final CallCounter queries = new CallCounter();
+    private final CallCounter commits = new CallCounter();
+    private final CallCounter otherManagerCalls = new CallCounter();
+    private final CallCounter clientCalls = new CallCounter();
+    private volatile long wallNanos = -1;
+    private volatile String exceptionName;
+
+    public PluginRunProfile(String pluginName) {
+        this.pluginName = pluginName;
+    }
+
+    /**
+     * Wrap the ActiveTask of the plugin to count the distinct records returned by getAttachedDataRecords calls.
+     *
+     * @param activeTask
+     * @return ActiveTask proxy, or the ActiveTask itself when it cannot be proxied.
+     */
+    public ActiveTask wrap(ActiveTask activeTask) {
+        return proxy(ActiveTask.class, activeTask, (method, elapsedNanos, result) -> {
+            if (method.getName().startsWith("getAttachedDataRecords") && result instanceof Collection) {
+                for (Object record : (Collection<?>) result) {
+                    if (record instanceof DataRecord) {
+                        attachedRecordIds.add(((DataRecord) record).getRecordId());
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Wrap the DataRecordManager of the plugin to count and time queries, storeAndCommit calls and other calls.
+     *
+     * @param dataRecordManager
+     * @return DataRecordManager proxy, or the DataRecordManager itself when it cannot be proxied.
+     */
+    public DataRecordManager wrap(DataRecordManager dataRecordManager) {
+        return proxy(DataRecordManager.class, dataRecordManager, (method, elapsedNanos, result) -> {
+            if (method.getName().startsWith("query")) {
+                queries.add(elapsedNanos);
+            } else if (method.getName().equals("storeAndCommit")) {
+                commits.add(elapsedNanos);
+            } else {
+                otherManagerCalls.add(elapsedNanos);
+            }
+        });
+    }
+
+    /**
+     * Wrap the ClientCallbackOperations of the plugin to count and time the calls that wait on the client.
+     *
+     * @param clientCallback
+     * @return ClientCallbackOperations proxy, or the ClientCallbackOperations itself when it cannot be proxied.
+     */
+    public ClientCallbackOperations wrap(ClientCallbackOperations clientCallback) {
+        return proxy(ClientCallbackOperations.class, clientCallback, (method, elapsedNanos, result) -> clientCalls.add(elapsedNanos));
+    }
+
+    /**
+     * Record the exception the run ended with.
+     *
+     * @param throwable
+     */
+    public void failed(Throwable throwable) {
+        exceptionName = throwable.getClass().getSimpleName();
+    }
+
+    /**
+     * Stop the wall time clock. Calls made after finish are still counted, but the wall time no longer changes.
+     */
+    public void finish() {
+        if (wallNanos < 0) {
+            wallNanos = System.nanoTime() - startNanos;
+        }
+    }
+
+    public String getPluginName() {
+        return pluginName;
+    }
+
+    public String getExceptionName() {
+        return exceptionName;
+    }
+
+    public long getWallMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(wallNanos < 0 ? System.nanoTime() - startNanos : wallNanos);
+    }
+
+    public long getComputeMillis() {
+        long serverAndClientMillis = queries.getMillis() + commits.getMillis() + otherManagerCalls.getMillis() + clientCalls.getMillis();
+        return Math.max(0, getWallMillis() - serverAndClientMillis);
+    }
+
+    public int getAttachedRecordCount() {
+        return attachedRecordIds.size();
+    }
+
+    public long getQueryCount() {
+        return queries.getCount();
+    }
+
+    public long getQueryMillis() {
+        return queries.getMillis();
+    }
+
+    public long getCommitCount() {
+        return commits.getCount();
+    }
+
+    public long getCommitMillis() {
+        return commits.getMillis();
+    }
+
+    public long getOtherManagerCallCount() {
+        return otherManagerCalls.getCount();
+    }
+
+    public long getOtherManagerCallMillis() {
+        return otherManagerCalls.getMillis();
+    }
+
+    public long getClientCallCount() {
+        return clientCalls.getCount();
+    }
+
+    public long getClientWaitMillis() {
+        return clientCalls.getMillis();
+    }
+
+    /**
+     * Get the profile as a single log line of space separated key=value pairs, starting with 'plugin_metrics'.
+     *
+     * @return String
+     */
+    public String toLogLine() {
+        return String.format("plugin_metrics plugin=%s status=%s wallMs=%d computeMs=%d attachedRecords=%d queries=%d queryMs=%d commits=%d " +
+                        "commitMs=%d managerCalls=%d managerMs=%d clientCalls=%d clientWaitMs=%d", pluginName,
+                exceptionName == null ? "completed" : "failed:" + exceptionName, getWallMillis(), getComputeMillis(), getAttachedRecordCount(),
+                getQueryCount(), getQueryMillis(), getCommitCount(), getCommitMillis(), getOtherManagerCallCount(), getOtherManagerCallMillis(),
+                getClientCallCount(), getClientWaitMillis());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, T target, CallListener listener) {
+        if (target == null || !type.isInterface()) {
+            return target;
+        }
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                return invoke(method, target, args);
+            }
+            long start = System.nanoTime();
+            Object result = null;
+            try {
+                result = invoke(method, target, args);
+                return result;
+            } finally {
+                listener.called(method, System.nanoTime() - start, result);
+            }
+        });
+    }
+
+    private static Object invoke(Method method, Object target, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private interface CallListener {
+        void called(Method method, long elapsedNanos, Object result);
+    }
+
+    private static class CallCounter {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong nanos = new AtomicLong();
+
+        void add(long elapsedNanos) {
+            count.incrementAndGet();
+            nanos.addAndGet(elapsedNanos);
+        }
+
+        long getCount() {
+            return count.get();
+        }
+
+        long getMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(nanos.get());
+        }
+    }
+}
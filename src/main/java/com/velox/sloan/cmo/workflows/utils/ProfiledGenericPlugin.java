@@ -0,0 +1,56 @@
+package com.velox.sloan.cmo.workflows.utils;
+
+import com.velox.api.datarecord.DataRecordManager;
+import com.velox.api.plugin.PluginResult;
+import com.velox.api.util.ClientCallbackOperations;
+import com.velox.api.util.ServerException;
+import com.velox.api.workflow.ActiveTask;
+import com.velox.sapioutils.server.plugin.DefaultGenericPlugin;
+
+import java.rmi.RemoteException;
+
+/**
+ * Base class for plugins that record a PluginRunProfile of every run. Subclasses implement runProfiled instead of run.
+ * While runProfiled runs, the activeTask, dataRecordManager and clientCallback fields hold counting wrappers of the
+ * originals, the originals are put back afterwards. Every run is logged as a 'plugin_metrics' line and added to the
+ * PluginMetrics of the plugin.
+ */
+public abstract class ProfiledGenericPlugin extends DefaultGenericPlugin {
+
+    @Override
+    public final PluginResult run() throws ServerException, RemoteException {
+        PluginRunProfile profile = new PluginRunProfile(getClass().getSimpleName());
+        ActiveTask originalActiveTask = activeTask;
+        DataRecordManager originalDataRecordManager = dataRecordManager;
+        ClientCallbackOperations originalClientCallback = clientCallback;
+        activeTask = profile.wrap(originalActiveTask);
+        dataRecordManager = profile.wrap(originalDataRecordManager);
+        clientCallback = profile.wrap(originalClientCallback);
+        try {
+            return runProfiled();
+        } catch (Throwable e) {
+            profile.failed(e);
+            throw e;
+        } finally {
+            activeTask = originalActiveTask;
+            dataRecordManager = originalDataRecordManager;
+            clientCallback = originalClientCallback;
+            profile.finish();
+            logInfo(profile.toLogLine());
+            getPluginMetrics().record(profile);
+        }
+    }
+
+    /**
+     * The work of the plugin, called by run.
+     *
+     * @return PluginResult
+     * @throws ServerException
+     * @throws RemoteException
+     */
+    protected abstract PluginResult runProfiled() throws ServerException, RemoteException;
+
+    protected PluginMetrics getPluginMetrics() {
+        return PluginMetrics.getInstance();
+    }
+}
@@ -0,0 +1,117 @@
+package com.velox.sloan.cmo.workflows.utils;
+
+import com.velox.api.datarecord.DataRecord;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable copy of the field values of a DataRecord taken at prefetch time. Reading values from a snapshot is a
+ * local map lookup and does not make a call to the LIMS server.
+ */
+public class RecordFieldSnapshot {
+    private final DataRecord record;
+    private final Map<String, Object> fields;
+
+    public RecordFieldSnapshot(DataRecord record, Map<String, Object> fields) {
+        this.record = record;
+        this.fields = fields == null ? Collections.emptyMap() : Collections.unmodifiableMap(new HashMap<>(fields));
+    }
+
+    public DataRecord getRecord() {
+        return record;
+    }
+
+    public long getRecordId() {
+        return record.getRecordId();
+    }
+
+    public Map<String, Object> getFields() {
+        return fields;
+    }
+
+    public boolean hasField(String key) {
+        return fields.containsKey(key);
+    }
+
+    public Object getValue(String key) {
+        return fields.get(key);
+    }
+
+    /**
+     * Get String value of a field.
+     *
+     * @param key
+     * @return String value or null when the field has no value.
+     */
+    public String getStringVal(String key) {
+        Object value = fields.get(key);
+        return value == null ? null : value.toString();
+    }
+
+    /**
+     * Get Double value of a field. String values are parsed.
+     *
+     * @param key
+     * @return Double value or null when the field has no value or a blank value.
+     */
+    public Double getDoubleVal(String key) {
+        Object value = fields.get(key);
+        if (value == null || value.toString().trim().isEmpty()) {
+            return null;
+        }
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        return Double.parseDouble(value.toString().trim());
+    }
+
+    /**
+     * Get Integer value of a field. String values are parsed.
+     *
+     * @param key
+     * @return Integer value or null when the field has no value or a blank value.
+     */
+    public Integer getIntegerVal(String key) {
+        Object value = fields.get(key);
+        if (value == null || value.toString().trim().isEmpty()) {
+            return null;
+        }
+        if (value instanceof Number) {
+            return ((Number) value).intValue();
+        }
+        return Integer.parseInt(value.toString().trim());
+    }
+
+    /**
+     * Get Long value of a field. String values are parsed.
+     *
+     * @param key
+     * @return Long value or null when the field has no value or a blank value.
+     */
+    public Long getLongVal(String key) {
+        Object value = fields.get(key);
+        if (value == null || value.toString().trim().isEmpty()) {
+            return null;
+        }
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        return Long.parseLong(value.toString().trim());
+    }
+
+    /**
+     * Get boolean value of a field.
+     *
+     * @param key
+     * @return true if the field value is true, false if the field has no value.
+     */
+    public boolean getBooleanVal(String key) {
+        Object value = fields.get(key);
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        return value != null && Boolean.parseBoolean(value.toString().trim());
+    }
+}
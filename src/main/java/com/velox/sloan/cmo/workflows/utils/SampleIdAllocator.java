@@ -0,0 +1,243 @@
+package com.velox.sloan.cmo.workflows.utils;
+
+import com.velox.api.datarecord.DataRecord;
+import com.velox.api.datarecord.DataRecordManager;
+import com.velox.api.datarecord.IoError;
+import com.velox.api.datarecord.NotFound;
+import com.velox.api.user.User;
+import com.velox.api.util.ServerException;
+
+import java.rmi.RemoteException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Allocates unused SampleIds that extend a base SampleId with an incrementing number, eg. 'Pool-12345-Tube1_2', and
+ * blocks of consecutive sample numbers for new Samples of a request, eg. 10858_101 to 10858_196. SampleIds that start
+ * with the base IDs of a call are fetched with a single LIKE query, instead of querying every candidate ID until an
+ * unused one is found.
+ * <p>
+ * A numbered ID is in use if a Sample with the ID exists, or if it was already used as base for aliquot IDs, ie. a
+ * Sample with a SampleId starting with the ID followed by '_' exists. This way the caller can create aliquots
+ * 'ID_1', 'ID_2', ... 'ID_n' under the returned ID without checking each of them.
+ * <p>
+ * IDs returned by an allocator are reserved in memory until the allocator is closed, so that concurrent plugin runs
+ * never get the same ID before the records created with it are committed. Create one allocator per plugin run and
+ * close it in a finally block after the new records are committed. Runs that allocate IDs for different base IDs
+ * usually do not wait for each other.
+ */
+public class SampleIdAllocator implements AutoCloseable {
+    private static final int LOCK_STRIPES = 64;
+    private static final ReentrantLock[] LOCKS = new ReentrantLock[LOCK_STRIPES];
+    // numbers reserved by allocators that are not closed yet, by base ID. Number 0 stands for the base ID itself.
+    private static final Map<String, Set<Integer>> RESERVED_NUMBERS = new ConcurrentHashMap<>();
+    // highest number ever reserved by base ID, also after the allocator is closed.
+    private static final Map<String, Integer> HIGHEST_RESERVED_NUMBERS = new ConcurrentHashMap<>();
+
+    static {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            LOCKS[i] = new ReentrantLock();
+        }
+    }
+
+    private final DataRecordManager dataRecordManager;
+    private final User user;
+    private final Map<String, Set<Integer>> reservedNumbers = new HashMap<>();
+
+    public SampleIdAllocator(DataRecordManager dataRecordManager, User user) {
+        this.dataRecordManager = dataRecordManager;
+        this.user = user;
+    }
+
+    /**
+     * Get the first unused SampleId 'baseId_n' with n starting at 1. When useBaseId is true, the baseId itself is
+     * returned if no Sample with the baseId exists.
+     *
+     * @param baseId
+     * @param useBaseId
+     * @return unused SampleId reserved for the caller.
+     * @throws IoError
+     * @throws RemoteException
+     * @throws NotFound
+     * @throws ServerException
+     */
+    public String getNextSampleId(String baseId, boolean useBaseId) throws IoError, RemoteException, NotFound, ServerException {
+        return getNextSampleIds(Collections.singletonList(baseId), useBaseId).get(baseId);
+    }
+
+    /**
+     * Get the first unused SampleId 'baseId_n' for each of the base IDs, with a single query for all of them. When
+     * useBaseId is true, a baseId itself is returned if no Sample with the baseId exists.
+     *
+     * @param baseIds
+     * @param useBaseId
+     * @return Map of base ID to unused SampleId reserved for the caller.
+     * @throws IoError
+     * @throws RemoteException
+     * @throws NotFound
+     * @throws ServerException
+     */
+    public Map<String, String> getNextSampleIds(Collection<String> baseIds, boolean useBaseId) throws IoError, RemoteException, NotFound, ServerException {
+        Set<String> distinctBaseIds = new LinkedHashSet<>(baseIds);
+        Map<String, String> nextSampleIds = new LinkedHashMap<>();
+        if (distinctBaseIds.isEmpty()) {
+            return nextSampleIds;
+        }
+        // the query runs while holding the locks, otherwise an ID reserved and committed by another run after the query
+        // could be handed out again once that run releases it.
+        List<ReentrantLock> locks = lock(distinctBaseIds);
+        try {
+            Map<String, Set<Integer>> usedNumbers = getUsedNumbers(distinctBaseIds);
+            for (String baseId : distinctBaseIds) {
+                Set<Integer> used = usedNumbers.get(baseId);
+                int number = useBaseId && !used.contains(0) ? 0 : 1;
+                while (number > 0 && used.contains(number)) {
+                    number++;
+                }
+                reserve(baseId, number, 1);
+                nextSampleIds.put(baseId, number == 0 ? baseId : baseId + "_" + number);
+            }
+        } finally {
+            unlock(locks);
+        }
+        return nextSampleIds;
+    }
+
+    /**
+     * Reserve count consecutive sample numbers 'baseId_n' following the highest number in use or reserved for the
+     * baseId, eg. the RequestId.
+     *
+     * @param baseId
+     * @param count
+     * @return first reserved sample number.
+     * @throws IoError
+     * @throws RemoteException
+     * @throws NotFound
+     * @throws ServerException
+     */
+    public int reserveSampleNumbers(String baseId, int count) throws IoError, RemoteException, NotFound, ServerException {
+        List<ReentrantLock> locks = lock(Collections.singleton(baseId));
+        try {
+            int firstNumber = 1;
+            for (int number : getUsedNumbers(Collections.singleton(baseId)).get(baseId)) {
+                firstNumber = Math.max(firstNumber, number + 1);
+            }
+            reserve(baseId, firstNumber, count);
+            return firstNumber;
+        } finally {
+            unlock(locks);
+        }
+    }
+
+    /**
+     * Reserve count consecutive sample numbers 'baseId_n' following the highest number in use, as already read by the
+     * caller, without querying Samples. The block also follows every number reserved for the baseId since the server
+     * started, so numbers committed by other runs after the caller read the Samples are not handed out again. Only the
+     * reservation runs under the lock.
+     *
+     * @param baseId
+     * @param count
+     * @param highestUsedNumber highest n of the Samples 'baseId_n' in LIMS.
+     * @return first reserved sample number.
+     */
+    public int reserveSampleNumbers(String baseId, int count, int highestUsedNumber) {
+        List<ReentrantLock> locks = lock(Collections.singleton(baseId));
+        try {
+            int firstNumber = Math.max(highestUsedNumber, HIGHEST_RESERVED_NUMBERS.getOrDefault(baseId, 0)) + 1;
+            for (int number : RESERVED_NUMBERS.getOrDefault(baseId, Collections.emptySet())) {
+                firstNumber = Math.max(firstNumber, number + 1);
+            }
+            reserve(baseId, firstNumber, count);
+            return firstNumber;
+        } finally {
+            unlock(locks);
+        }
+    }
+
+    /**
+     * Release all IDs reserved by this allocator. Call this after the records created with the IDs are committed or
+     * when they will not be created.
+     */
+    @Override
+    public void close() {
+        for (Map.Entry<String, Set<Integer>> reserved : reservedNumbers.entrySet()) {
+            List<ReentrantLock> locks = lock(Collections.singleton(reserved.getKey()));
+            try {
+                RESERVED_NUMBERS.computeIfPresent(reserved.getKey(), (baseId, numbers) -> {
+                    numbers.removeAll(reserved.getValue());
+                    return numbers.isEmpty() ? null : numbers;
+                });
+            } finally {
+                unlock(locks);
+            }
+        }
+        reservedNumbers.clear();
+    }
+
+    /**
+     * Get numbers n of IDs 'baseId_n' that are in use by Samples in LIMS or reserved by open allocators. Number 0 is
+     * in use if a Sample with the baseId exists or the baseId is reserved.
+     */
+    private Map<String, Set<Integer>> getUsedNumbers(Set<String> baseIds) throws IoError, RemoteException, NotFound, ServerException {
+        Map<String, Set<Integer>> usedNumbers = new HashMap<>();
+        List<String> patterns = new ArrayList<>();
+        for (String baseId : baseIds) {
+            usedNumbers.put(baseId, new HashSet<>(RESERVED_NUMBERS.getOrDefault(baseId, Collections.emptySet())));
+            patterns.add(baseId + "%");
+        }
+        List<DataRecord> samples = DataRecordQuery.from("Sample").whereLikeAny("SampleId", patterns).execute(dataRecordManager, user);
+        for (RecordFieldSnapshot sample : DataAccessUtils.getFieldSnapshots(samples, dataRecordManager, user)) {
+            String sampleId = sample.getStringVal("SampleId");
+            if (sampleId == null) {
+                continue;
+            }
+            for (String baseId : baseIds) {
+                if (sampleId.equals(baseId)) {
+                    usedNumbers.get(baseId).add(0);
+                } else if (sampleId.startsWith(baseId + "_")) {
+                    int numberEnd = sampleId.indexOf('_', baseId.length() + 1);
+                    String number = numberEnd < 0 ? sampleId.substring(baseId.length() + 1) : sampleId.substring(baseId.length() + 1, numberEnd);
+                    try {
+                        usedNumbers.get(baseId).add(Integer.parseInt(number));
+                    } catch (NumberFormatException e) {
+                        // not a numbered ID of the base ID, eg. 'baseId_A'.
+                    }
+                }
+            }
+        }
+        return usedNumbers;
+    }
+
+    private void reserve(String baseId, int firstNumber, int count) {
+        Set<Integer> numbers = RESERVED_NUMBERS.computeIfAbsent(baseId, k -> new HashSet<>());
+        Set<Integer> ownNumbers = reservedNumbers.computeIfAbsent(baseId, k -> new HashSet<>());
+        for (int number = firstNumber; number < firstNumber + Math.max(count, 0); number++) {
+            numbers.add(number);
+            ownNumbers.add(number);
+            HIGHEST_RESERVED_NUMBERS.merge(baseId, number, Math::max);
+        }
+    }
+
+    /**
+     * Lock the stripes of the base IDs in ascending order, so that runs locking more than one stripe do not deadlock.
+     */
+    private static List<ReentrantLock> lock(Collection<String> baseIds) {
+        SortedSet<Integer> stripes = new TreeSet<>();
+        for (String baseId : baseIds) {
+            stripes.add(Math.floorMod(baseId.hashCode(), LOCK_STRIPES));
+        }
+        List<ReentrantLock> locks = new ArrayList<>();
+        for (int stripe : stripes) {
+            LOCKS[stripe].lock();
+            locks.add(LOCKS[stripe]);
+        }
+        return locks;
+    }
+
+    private static void unlock(List<ReentrantLock> locks) {
+        for (int i = locks.size() - 1; i >= 0; i--) {
+            locks.get(i).unlock();
+        }
+    }
+}
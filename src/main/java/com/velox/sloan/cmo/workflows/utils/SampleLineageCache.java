@@ -0,0 +1,376 @@
+package com.velox.sloan.cmo.workflows.utils;
+
+import com.velox.api.datarecord.DataRecord;
+import com.velox.api.datarecord.DataRecordManager;
+import com.velox.api.datarecord.IoError;
+import com.velox.api.user.User;
+import com.velox.api.util.ServerException;
+
+import java.rmi.RemoteException;
+import java.util.*;
+
+/**
+ * Per task cache of the Sample lineage graph. Parents and children of a DataType are loaded for a whole level of the
+ * hierarchy with one server call, and every record's relatives are loaded only once. Sibling aliquots share their
+ * ancestors, so walking the lineage of all Samples attached to a task does not fetch the same ancestors again.
+ * <p>
+ * The walks below first load the part of the graph they can visit level by level, and then traverse it in memory in
+ * the same order as the per record walks they replace, so they return the same records.
+ * <p>
+ * Without a DataRecordManager relatives and field values are fetched per record, but are still memoized.
+ */
+public class SampleLineageCache {
+    private static final String SAMPLE = "Sample";
+    private static final String REQUEST = "Request";
+    private static final String REQUEST_ID = "RequestId";
+
+    private final DataRecordManager dataRecordManager;
+    private final User user;
+    private final DataRecordFieldCache fieldCache;
+    private final Map<String, Map<Long, List<DataRecord>>> parentsByType = new HashMap<>();
+    private final Map<String, Map<Long, List<DataRecord>>> childrenByType = new HashMap<>();
+    private int serverCalls = 0;
+
+    public SampleLineageCache(DataRecordManager dataRecordManager, User user) {
+        this(dataRecordManager, user, new DataRecordFieldCache(dataRecordManager, user));
+    }
+
+    public SampleLineageCache(DataRecordManager dataRecordManager, User user, DataRecordFieldCache fieldCache) {
+        this.dataRecordManager = dataRecordManager;
+        this.user = user;
+        this.fieldCache = fieldCache;
+    }
+
+    public SampleLineageCache(User user) {
+        this(null, user);
+    }
+
+    /**
+     * Get parents of a DataType for a record. Parents are loaded from the server if they were not loaded before.
+     *
+     * @param record
+     * @param dataType
+     * @return List of parent records.
+     */
+    public List<DataRecord> getParents(DataRecord record, String dataType) throws IoError, ServerException, RemoteException {
+        loadParents(Collections.singletonList(record), dataType);
+        return Collections.unmodifiableList(parentsByType.get(dataType).get(record.getRecordId()));
+    }
+
+    /**
+     * Get children of a DataType for a record. Children are loaded from the server if they were not loaded before.
+     *
+     * @param record
+     * @param dataType
+     * @return List of child records.
+     */
+    public List<DataRecord> getChildren(DataRecord record, String dataType) throws IoError, ServerException, RemoteException {
+        loadChildren(Collections.singletonList(record), dataType);
+        return Collections.unmodifiableList(childrenByType.get(dataType).get(record.getRecordId()));
+    }
+
+    /**
+     * Load parents of a DataType for all records that were not loaded before with a single server call.
+     *
+     * @param records
+     * @param dataType
+     */
+    public void loadParents(Collection<DataRecord> records, String dataType) throws IoError, ServerException, RemoteException {
+        Map<Long, List<DataRecord>> parentsByRecordId = parentsByType.computeIfAbsent(dataType, k -> new HashMap<>());
+        List<DataRecord> recordsToLoad = getRecordsToLoad(records, parentsByRecordId);
+        if (recordsToLoad.isEmpty()) {
+            return;
+        }
+        if (dataRecordManager == null) {
+            for (DataRecord record : recordsToLoad) {
+                serverCalls++;
+                parentsByRecordId.put(record.getRecordId(), new ArrayList<>(record.getParentsOfType(dataType, user)));
+            }
+            return;
+        }
+        serverCalls++;
+        addRelatives(recordsToLoad, dataRecordManager.getParentsOfType(recordsToLoad, dataType, user), parentsByRecordId);
+    }
+
+    /**
+     * Load children of a DataType for all records that were not loaded before with a single server call.
+     *
+     * @param records
+     * @param dataType
+     */
+    public void loadChildren(Collection<DataRecord> records, String dataType) throws IoError, ServerException, RemoteException {
+        Map<Long, List<DataRecord>> childrenByRecordId = childrenByType.computeIfAbsent(dataType, k -> new HashMap<>());
+        List<DataRecord> recordsToLoad = getRecordsToLoad(records, childrenByRecordId);
+        if (recordsToLoad.isEmpty()) {
+            return;
+        }
+        if (dataRecordManager == null) {
+            for (DataRecord record : recordsToLoad) {
+                serverCalls++;
+                childrenByRecordId.put(record.getRecordId(), new ArrayList<>(Arrays.asList(record.getChildrenOfType(dataType, user))));
+            }
+            return;
+        }
+        serverCalls++;
+        addRelatives(recordsToLoad, dataRecordManager.getChildrenOfType(recordsToLoad, dataType, user), childrenByRecordId);
+    }
+
+    /**
+     * Get first Sample in the parent hierarchy of the sample that is directly under a Request. Only parents with the
+     * same RequestId as the sample are followed.
+     *
+     * @param sample
+     * @return Sample DataRecord or null if not found.
+     */
+    public DataRecord getParentSampleUnderRequest(DataRecord sample) throws IoError, ServerException, RemoteException {
+        loadParentSamplesUnderRequest(Collections.singletonList(sample));
+        Object requestId = fieldCache.getValue(sample, REQUEST_ID);
+        Stack<DataRecord> sampleStack = new Stack<>();
+        sampleStack.push(sample);
+        do {
+            DataRecord stackSample = sampleStack.pop();
+            if (!getParents(stackSample, REQUEST).isEmpty()) {
+                return stackSample;
+            }
+            for (DataRecord sa : getParents(stackSample, SAMPLE)) {
+                if (isSameRequest(requestId, fieldCache.getValue(sa, REQUEST_ID))) {
+                    sampleStack.push(sa);
+                }
+            }
+        } while (!sampleStack.isEmpty());
+        return null;
+    }
+
+    /**
+     * Load the part of the lineage needed to find the first parent under Request for all samples, one level at a time.
+     *
+     * @param samples
+     */
+    public void loadParentSamplesUnderRequest(List<DataRecord> samples) throws IoError, ServerException, RemoteException {
+        Set<Long> visited = new HashSet<>();
+        List<DataRecord> level = unvisited(samples, visited);
+        prefetchFields(level);
+        while (!level.isEmpty()) {
+            loadParents(level, REQUEST);
+            List<DataRecord> samplesToExpand = new ArrayList<>();
+            for (DataRecord sample : level) {
+                if (getParents(sample, REQUEST).isEmpty()) {
+                    samplesToExpand.add(sample);
+                }
+            }
+            loadParents(samplesToExpand, SAMPLE);
+            List<DataRecord> parentSamples = new ArrayList<>();
+            for (DataRecord sample : samplesToExpand) {
+                parentSamples.addAll(getParents(sample, SAMPLE));
+            }
+            prefetchFields(parentSamples);
+            // parents are only followed within the same request, which is the request of the sample they are reached from.
+            List<DataRecord> nextLevel = new ArrayList<>();
+            for (DataRecord sample : samplesToExpand) {
+                Object requestId = fieldCache.getValue(sample, REQUEST_ID);
+                for (DataRecord parentSample : getParents(sample, SAMPLE)) {
+                    if (isSameRequest(requestId, fieldCache.getValue(parentSample, REQUEST_ID))) {
+                        nextLevel.add(parentSample);
+                    }
+                }
+            }
+            level = unvisited(nextLevel, visited);
+        }
+    }
+
+    /**
+     * Get records of a DataType that are children of the sample or of its descendant Samples with the same RequestId.
+     *
+     * @param sample
+     * @param requestId
+     * @param dataType
+     * @return List of records in the order they are found walking down from the sample.
+     */
+    public List<DataRecord> getDescendantRecordsUnderRequest(DataRecord sample, Object requestId, String dataType) throws IoError, ServerException, RemoteException {
+        Set<Long> visited = new HashSet<>();
+        List<DataRecord> level = unvisited(Collections.singletonList(sample), visited);
+        while (!level.isEmpty()) {
+            loadChildren(level, dataType);
+            loadChildren(level, SAMPLE);
+            List<DataRecord> childSamples = new ArrayList<>();
+            for (DataRecord levelSample : level) {
+                childSamples.addAll(getChildren(levelSample, SAMPLE));
+            }
+            prefetchFields(childSamples);
+            List<DataRecord> nextLevel = new ArrayList<>();
+            for (DataRecord childSample : childSamples) {
+                if (isSameRequest(requestId, fieldCache.getValue(childSample, REQUEST_ID))) {
+                    nextLevel.add(childSample);
+                }
+            }
+            level = unvisited(nextLevel, visited);
+        }
+
+        List<DataRecord> records = new ArrayList<>();
+        Stack<DataRecord> sampleStack = new Stack<>();
+        sampleStack.push(sample);
+        do {
+            DataRecord stackSample = sampleStack.pop();
+            records.addAll(getChildren(stackSample, dataType));
+            for (DataRecord sa : getChildren(stackSample, SAMPLE)) {
+                if (isSameRequest(requestId, fieldCache.getValue(sa, REQUEST_ID))) {
+                    sampleStack.push(sa);
+                }
+            }
+        } while (!sampleStack.isEmpty());
+        return records;
+    }
+
+    /**
+     * Get children of targetDataType of the record, or of the first record in its parentDataType hierarchy that has
+     * children of targetDataType.
+     *
+     * @param record
+     * @param parentDataType
+     * @param targetDataType
+     * @return List of records, empty if no record in the hierarchy has children of targetDataType.
+     */
+    public List<DataRecord> getRecordsOfTypeFromParents(DataRecord record, String parentDataType, String targetDataType) throws IoError, ServerException, RemoteException {
+        Set<Long> visited = new HashSet<>();
+        List<DataRecord> level = unvisited(Collections.singletonList(record), visited);
+        while (!level.isEmpty()) {
+            loadChildren(level, targetDataType);
+            List<DataRecord> recordsToExpand = new ArrayList<>();
+            for (DataRecord levelRecord : level) {
+                if (getChildren(levelRecord, targetDataType).isEmpty()) {
+                    recordsToExpand.add(levelRecord);
+                }
+            }
+            loadParents(recordsToExpand, parentDataType);
+            List<DataRecord> nextLevel = new ArrayList<>();
+            for (DataRecord levelRecord : recordsToExpand) {
+                nextLevel.addAll(getParents(levelRecord, parentDataType));
+            }
+            level = unvisited(nextLevel, visited);
+        }
+
+        if (!getChildren(record, targetDataType).isEmpty()) {
+            return new ArrayList<>(getChildren(record, targetDataType));
+        }
+        Stack<DataRecord> recordsStack = new Stack<>();
+        recordsStack.addAll(getParents(record, parentDataType));
+        while (!recordsStack.isEmpty()) {
+            DataRecord poppedRecord = recordsStack.pop();
+            if (!getChildren(poppedRecord, targetDataType).isEmpty()) {
+                return new ArrayList<>(getChildren(poppedRecord, targetDataType));
+            }
+            recordsStack.addAll(getParents(poppedRecord, parentDataType));
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Get the nearest Sample up the first parent line of the sample that has a child of childDataType. The sample
+     * itself is not checked.
+     *
+     * @param sample
+     * @param childDataType
+     * @return Sample DataRecord or null if not found.
+     */
+    public DataRecord getParentSampleWithChildOfType(DataRecord sample, String childDataType) throws IoError, ServerException, RemoteException {
+        loadParentSamplesWithChildOfType(Collections.singletonList(sample), childDataType);
+        DataRecord startSample = sample;
+        while (true) {
+            List<DataRecord> parentSamples = getParents(startSample, SAMPLE);
+            if (parentSamples.isEmpty()) {
+                return null;
+            }
+            if (!getChildren(parentSamples.get(0), childDataType).isEmpty()) {
+                return parentSamples.get(0);
+            }
+            startSample = parentSamples.get(0);
+        }
+    }
+
+    /**
+     * Load the part of the lineage needed to find the nearest parent Sample with a child of childDataType for all
+     * samples, one level at a time.
+     *
+     * @param samples
+     * @param childDataType
+     */
+    public void loadParentSamplesWithChildOfType(List<DataRecord> samples, String childDataType) throws IoError, ServerException, RemoteException {
+        Set<Long> visited = new HashSet<>();
+        List<DataRecord> level = unvisited(samples, visited);
+        while (!level.isEmpty()) {
+            loadParents(level, SAMPLE);
+            List<DataRecord> firstParents = new ArrayList<>();
+            for (DataRecord sample : level) {
+                List<DataRecord> parentSamples = getParents(sample, SAMPLE);
+                if (!parentSamples.isEmpty()) {
+                    firstParents.add(parentSamples.get(0));
+                }
+            }
+            loadChildren(firstParents, childDataType);
+            List<DataRecord> nextLevel = new ArrayList<>();
+            for (DataRecord parentSample : firstParents) {
+                if (getChildren(parentSample, childDataType).isEmpty()) {
+                    nextLevel.add(parentSample);
+                }
+            }
+            level = unvisited(nextLevel, visited);
+        }
+    }
+
+    public DataRecordFieldCache getFieldCache() {
+        return fieldCache;
+    }
+
+    /**
+     * Number of server calls made to load relatives. Field values are counted by the DataRecordFieldCache.
+     *
+     * @return int
+     */
+    public int getServerCalls() {
+        return serverCalls;
+    }
+
+    private void prefetchFields(List<DataRecord> records) throws ServerException, RemoteException {
+        if (dataRecordManager != null && !records.isEmpty()) {
+            fieldCache.prefetch(records);
+        }
+    }
+
+    private List<DataRecord> getRecordsToLoad(Collection<DataRecord> records, Map<Long, List<DataRecord>> loaded) {
+        List<DataRecord> recordsToLoad = new ArrayList<>();
+        Set<Long> recordIds = new HashSet<>();
+        for (DataRecord record : records) {
+            if (!loaded.containsKey(record.getRecordId()) && recordIds.add(record.getRecordId())) {
+                recordsToLoad.add(record);
+            }
+        }
+        return recordsToLoad;
+    }
+
+    private void addRelatives(List<DataRecord> records, Map<DataRecord, List<DataRecord>> relatives, Map<Long, List<DataRecord>> relativesByRecordId) {
+        Map<Long, List<DataRecord>> loaded = new HashMap<>();
+        if (relatives != null) {
+            for (Map.Entry<DataRecord, List<DataRecord>> entry : relatives.entrySet()) {
+                loaded.put(entry.getKey().getRecordId(), entry.getValue() == null ? new ArrayList<>() : new ArrayList<>(entry.getValue()));
+            }
+        }
+        for (DataRecord record : records) {
+            List<DataRecord> recordRelatives = loaded.get(record.getRecordId());
+            relativesByRecordId.put(record.getRecordId(), recordRelatives == null ? new ArrayList<>() : recordRelatives);
+        }
+    }
+
+    private List<DataRecord> unvisited(List<DataRecord> records, Set<Long> visited) {
+        List<DataRecord> unvisited = new ArrayList<>();
+        for (DataRecord record : records) {
+            if (visited.add(record.getRecordId())) {
+                unvisited.add(record);
+            }
+        }
+        return unvisited;
+    }
+
+    private boolean isSameRequest(Object requestId, Object otherRequestId) {
+        return requestId != null && otherRequestId != null && requestId.toString().equalsIgnoreCase(otherRequestId.toString());
+    }
+}
@@ -5,6 +5,7 @@ import com.velox.api.plugin.PluginResult;
 import com.velox.api.workflow.ActiveTask;
 import com.velox.sapioutils.server.plugin.DefaultGenericPlugin;
 import com.velox.sapioutils.shared.enums.PluginOrder;
+import com.velox.sloan.cmo.workflows.utils.DataRecordQuery;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 
 import java.rmi.RemoteException;
@@ -133,8 +134,8 @@ public class ControlFieldsPopulator extends DefaultGenericPlugin {
      */
     private DataRecord getDummyRecord() {
         try {
-            List<DataRecord> dummyRecords = dataRecordManager.queryDataRecords("Request", 
-                "RequestId = '" + DUMMY_REQUEST_ID + "'", user);
+            List<DataRecord> dummyRecords = DataRecordQuery.from("Request")
+                .whereEquals("RequestId", DUMMY_REQUEST_ID).execute(dataRecordManager, user);
             
             if (dummyRecords != null && !dummyRecords.isEmpty()) {
                 logInfo("Found existing dummy request record with ID: " + DUMMY_REQUEST_ID);
@@ -5,6 +5,7 @@ import com.velox.api.plugin.PluginResult;
 import com.velox.api.workflow.ActiveTask;
 import com.velox.sapio.commons.exemplar.plugin.PluginOrder;
 import com.velox.sapioutils.server.plugin.DefaultGenericPlugin;
+import com.velox.sloan.cmo.workflows.utils.DataRecordQuery;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 
 import java.rmi.RemoteException;
@@ -27,8 +28,10 @@ public class CreateSeqReqForControls extends DefaultGenericPlugin {
 
     public PluginResult run() throws Exception {
         try {
-            List<DataRecord> coverageReqRefs = this.dataRecordManager.queryDataRecords("ApplicationReadCoverageRef",
-                    "ReferenceOnly != 1 AND isControl = 1 ", this.user);
+            List<DataRecord> coverageReqRefs = DataRecordQuery.from("ApplicationReadCoverageRef")
+                    .whereNotEquals("ReferenceOnly", 1)
+                    .whereEquals("isControl", 1)
+                    .execute(this.dataRecordManager, this.user);
             logInfo("coverageReqRefs size = " + coverageReqRefs.size());
             List<DataRecord> samples = activeTask.getAttachedDataRecords("Sample", user);
             List<DataRecord> seqReuirements = new LinkedList<>();
@@ -6,8 +6,8 @@ import com.velox.api.datarecord.NotFound;
 import com.velox.api.plugin.PluginResult;
 import com.velox.api.util.ServerException;
 import com.velox.sapio.commons.exemplar.plugin.PluginOrder;
-import com.velox.sapioutils.server.plugin.DefaultGenericPlugin;
 import com.velox.sloan.cmo.workflows.IgoLimsPluginUtils.IgoLimsPluginUtils;
+import com.velox.sloan.cmo.workflows.utils.ProfiledGenericPlugin;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 
@@ -41,7 +41,7 @@ import java.util.regex.Pattern;
  * <p>
  * Field updated: {@value #FIELD_PCR_CYCLE}. Enable via task option: {@value #TASK_OPTION_KEY}.
  */
-public class ICONPCRReader extends DefaultGenericPlugin {
+public class ICONPCRReader extends ProfiledGenericPlugin {
 
     public static final String TASK_OPTION_KEY = "IMPORT ICON PCR OUTPUT";
     public static final String PROTOCOL_DATA_TYPE = "TCRSeqPrepProtocol3";
@@ -69,7 +69,7 @@ public class ICONPCRReader extends DefaultGenericPlugin {
     }
 
     @Override
-    public PluginResult run() throws Throwable {
+    protected PluginResult runProfiled() throws ServerException, RemoteException {
         try {
             String path = clientCallback.showFileDialog("Select IconPCR CSV export", ".csv");
             if (StringUtils.isBlank(path)) {
@@ -177,6 +177,10 @@ public class ICONPCRReader extends DefaultGenericPlugin {
             logError(ExceptionUtils.getStackTrace(ex));
             clientCallback.displayError(ex.getMessage());
             return new PluginResult(false);
+        } catch (Exception ex) {
+            logError(ExceptionUtils.getStackTrace(ex));
+            clientCallback.displayError("Failed to import IconPCR results: " + ex.getMessage());
+            return new PluginResult(false);
         }
     }
 
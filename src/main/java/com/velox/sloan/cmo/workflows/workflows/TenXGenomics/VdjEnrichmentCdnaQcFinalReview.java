@@ -6,9 +6,10 @@ import com.velox.api.datarecord.NotFound;
 import com.velox.api.plugin.PluginResult;
 import com.velox.api.util.ServerException;
 import com.velox.api.workflow.ActiveTask;
-import com.velox.sapioutils.server.plugin.DefaultGenericPlugin;
 import com.velox.sapioutils.shared.enums.PluginOrder;
 import com.velox.sapioutils.shared.managers.TaskUtilManager;
+import com.velox.sloan.cmo.workflows.utils.DataRecordQuery;
+import com.velox.sloan.cmo.workflows.utils.ProfiledGenericPlugin;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 
@@ -21,7 +22,7 @@ import java.util.*;
  *
  * @author patelo2
  */
-public class VdjEnrichmentCdnaQcFinalReview extends DefaultGenericPlugin {
+public class VdjEnrichmentCdnaQcFinalReview extends ProfiledGenericPlugin {
     private static final List<String> PASS_DECISIONS = Arrays.asList("Passed", "Pass");
     private static final List<String> TRY_DECISIONS = Arrays.asList("Try");
     private static final List<String> FAIL_DECISIONS = Arrays.asList("Failed", "Fail");
@@ -42,7 +43,7 @@ public class VdjEnrichmentCdnaQcFinalReview extends DefaultGenericPlugin {
     }
 
     @Override
-    public PluginResult run() throws ServerException, RemoteException {
+    protected PluginResult runProfiled() throws ServerException, RemoteException {
         try {
             List<DataRecord> attachedSamples = activeTask.getAttachedDataRecords("Sample", user);
 
@@ -135,7 +136,7 @@ public class VdjEnrichmentCdnaQcFinalReview extends DefaultGenericPlugin {
                 long requestRecordId = 0;
                 String requestId = sample.getStringVal("RequestId", user);
                 if (!StringUtils.isBlank(requestId)) {
-                    List<DataRecord> requests = dataRecordManager.queryDataRecords("Request", "RequestId = '" + requestId + "'", user);
+                    List<DataRecord> requests = DataRecordQuery.from("Request").whereEquals("RequestId", requestId).execute(dataRecordManager, user);
                     if (!requests.isEmpty()) {
                         requestRecordId = requests.get(0).getRecordId();
                     }
@@ -237,8 +238,8 @@ public class VdjEnrichmentCdnaQcFinalReview extends DefaultGenericPlugin {
             String sampleId = sample.getStringVal("SampleId", user);
 
             // QcReportDna is the only authoritative table for VDJ Enrichment cDNA QC
-            List<DataRecord> queriedQcReportDna = dataRecordManager.queryDataRecords(
-                "QcReportDna", "SampleId = '" + sampleId + "'", user);
+            List<DataRecord> queriedQcReportDna = DataRecordQuery.from("QcReportDna").whereEquals("SampleId", sampleId)
+                .execute(dataRecordManager, user);
             for (DataRecord qcReport : queriedQcReportDna) {
                 String recommendation = getIgoRecommendationFromRecord(qcReport);
                 if (!StringUtils.isBlank(recommendation)) {
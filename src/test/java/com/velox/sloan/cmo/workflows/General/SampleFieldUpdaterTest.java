@@ -0,0 +1,132 @@
+package com.velox.sloan.cmo.workflows.General;
+
+import com.velox.api.datarecord.DataRecord;
+import com.velox.api.plugin.PluginLogger;
+import com.velox.api.user.User;
+import com.velox.api.util.ClientCallbackOperations;
+import com.velox.sloan.cmo.workflows.InMemoryDataRecordManager;
+import com.velox.sloan.cmo.workflows.TestUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.velox.sloan.cmo.workflows.InMemoryDataRecordManager.fields;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SampleFieldUpdaterTest {
+    private static final int SAMPLES = 48;
+    // one call per level of the hierarchy for the child Samples and their fields, one per child DataType, one to set
+    // the fields and one to commit, for any number of samples.
+    private static final int MAX_MANAGER_CALLS = 16;
+    // getChildAttributesList on the sample, its aliquot and library, and once on the shared pool.
+    private static final int MAX_RECORD_CALLS = 3 * SAMPLES + 1;
+
+    private User user;
+    private InMemoryDataRecordManager server;
+    private ClientCallbackOperations clientCallback;
+    private List<DataRecord> samples;
+    private List<DataRecord> aliquots;
+    private List<DataRecord> seqRequirements;
+    private List<DataRecord> otherRequestAliquots;
+    private DataRecord pool;
+    private DataRecord poolQc;
+
+    @Before
+    public void setUp() throws Exception {
+        user = Mockito.mock(User.class);
+        server = new InMemoryDataRecordManager();
+        clientCallback = Mockito.mock(ClientCallbackOperations.class);
+        Mockito.when(clientCallback.showInputDialog(Mockito.anyString())).thenReturn("OtherSampleId");
+        samples = new ArrayList<>();
+        aliquots = new ArrayList<>();
+        seqRequirements = new ArrayList<>();
+        otherRequestAliquots = new ArrayList<>();
+        List<String> oldNames = new ArrayList<>();
+        List<DataRecord> libraries = new ArrayList<>();
+        for (int i = 0; i < SAMPLES; i++) {
+            String oldName = oldName(i);
+            oldNames.add(oldName);
+            // the sample was renamed in the table, its descendants still have the old name.
+            DataRecord sample = server.addRecord("Sample", fields("SampleId", "12345_" + i, "OtherSampleId", newName(i),
+                    "ExemplarSampleType", "DNA", "RequestId", "12345"));
+            DataRecord aliquot = server.addChild(sample, "Sample", fields("SampleId", "12345_" + i + "_1", "OtherSampleId", oldName,
+                    "ExemplarSampleType", "DNA", "RequestId", "12345"));
+            seqRequirements.add(server.addChild(aliquot, "SeqRequirement", fields("OtherSampleId", oldName, "RequestedReads", 20.0)));
+            server.addChild(aliquot, "QcDatum", fields("SampleId", "12345_" + i + "_1", "DatumType", "Qubit"));
+            libraries.add(server.addChild(aliquot, "Sample", fields("SampleId", "12345_" + i + "_1_1", "OtherSampleId", oldName,
+                    "ExemplarSampleType", "DNA Library", "RequestId", "12345")));
+            otherRequestAliquots.add(server.addChild(sample, "Sample", fields("SampleId", "23456_" + i, "OtherSampleId", oldName,
+                    "ExemplarSampleType", "DNA", "RequestId", "23456")));
+            samples.add(sample);
+            aliquots.add(aliquot);
+        }
+        pool = server.addRecord("Sample", fields("SampleId", "Pool-12345-A1", "OtherSampleId", String.join(",", oldNames),
+                "ExemplarSampleType", "Pooled Library", "RequestId", "12345,23456"));
+        poolQc = server.addChild(pool, "SeqAnalysisSampleQC", fields("OtherSampleId", String.join(",", oldNames)));
+        for (DataRecord library : libraries) {
+            server.addChild(library, pool);
+        }
+    }
+
+    @Test
+    public void run_shouldUpdateDescendantsWithinRequestWithBoundedServerCalls() throws Exception {
+        newPlugin().run();
+
+        Mockito.verify(clientCallback, Mockito.never()).displayError(Mockito.anyString());
+        for (int i = 0; i < SAMPLES; i++) {
+            assertEquals(newName(i), server.getFields(aliquots.get(i)).get("OtherSampleId"));
+            assertEquals(newName(i), server.getFields(seqRequirements.get(i)).get("OtherSampleId"));
+            assertEquals(oldName(i), server.getFields(otherRequestAliquots.get(i)).get("OtherSampleId"));
+        }
+        List<String> newNames = new ArrayList<>();
+        for (int i = 0; i < SAMPLES; i++) {
+            newNames.add(newName(i));
+        }
+        assertEquals(String.join(",", newNames), server.getFields(pool).get("OtherSampleId"));
+        assertEquals(String.join(",", newNames), server.getFields(poolQc).get("OtherSampleId"));
+        for (DataRecord qcDatum : server.getRecords("QcDatum")) {
+            assertFalse(server.getFields(qcDatum).containsKey("OtherSampleId"));
+        }
+        assertEquals(1, server.getCallCount("DataRecordManager.setFieldsForRecords"));
+        assertEquals(1, server.getCallCount("DataRecordManager.storeAndCommit"));
+        assertEquals(0, server.getCallCount("DataRecord.setDataField"));
+        assertTrue(server.getCallCountSummary(), server.getManagerCallCount() <= MAX_MANAGER_CALLS);
+        assertTrue(server.getCallCountSummary(), server.getRecordCallCount() <= MAX_RECORD_CALLS);
+    }
+
+    @Test
+    public void run_shouldNotUpdateAnyRecordWhenNewValueIsInvalid() throws Exception {
+        samples.get(SAMPLES - 1).setDataField("OtherSampleId", "MRN123456789", user);
+
+        newPlugin().run();
+
+        Mockito.verify(clientCallback).displayError("Sample name 'MRN123456789' cannot contain characters and numbers matching a MRN.");
+        assertEquals(0, server.getCallCount("DataRecordManager.setFieldsForRecords"));
+        assertEquals(0, server.getCallCount("DataRecordManager.storeAndCommit"));
+        assertEquals(oldName(0), server.getFields(aliquots.get(0)).get("OtherSampleId"));
+    }
+
+    private static String oldName(int i) {
+        return String.format("OLD%03dx", i);
+    }
+
+    private static String newName(int i) {
+        return String.format("NEW%03dx", i);
+    }
+
+    private SampleFieldUpdater newPlugin() {
+        SampleFieldUpdater plugin = new SampleFieldUpdater();
+        TestUtils.setPluginField(plugin, "user", user);
+        TestUtils.setPluginField(plugin, "dataRecordManager", server.getDataRecordManager());
+        TestUtils.setPluginField(plugin, "clientCallback", clientCallback);
+        TestUtils.setPluginField(plugin, "pluginLogger", Mockito.mock(PluginLogger.class));
+        TestUtils.setPluginField(plugin, "dataRecordList", samples);
+        TestUtils.setPluginField(plugin, "dataTypeName", "Sample");
+        return plugin;
+    }
+}
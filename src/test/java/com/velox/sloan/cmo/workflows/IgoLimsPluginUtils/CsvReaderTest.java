@@ -0,0 +1,119 @@
+package com.velox.sloan.cmo.workflows.IgoLimsPluginUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CsvReaderTest {
+    private CsvReader csvReader;
+
+    @Before
+    public void setUp() {
+        String content = "Well, Sample ,Concentration,Observations\r\n" +
+                "A01,Sample_1,\"1,234.5\",\"said \"\"ok\"\"\"\r\n" +
+                "\n" +
+                "B01,Sample_2,12,\"line1\nline2\"\r" +
+                "C01,Sample_3,,\n" +
+                "D01";
+        csvReader = new CsvReader(content.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    @Test
+    public void getHeaderValueMap_shouldReturnTrimmedHeaderValues() {
+        assertEquals(4, csvReader.getHeaderValueMap().size());
+        assertEquals(1, (int) csvReader.getHeaderValueMap().get("Sample"));
+        assertEquals(3, (int) csvReader.getHeaderValueMap().get("Observations"));
+    }
+
+    @Test
+    public void iterator_shouldReadQuotedValuesAndAllLineEndings() {
+        List<List<String>> rows = new ArrayList<>();
+        for (CsvRow row : csvReader) {
+            rows.add(row.toList());
+        }
+        assertEquals(6, rows.size());
+        assertEquals(Arrays.asList("A01", "Sample_1", "1,234.5", "said \"ok\""), rows.get(1));
+        assertEquals(Arrays.asList(""), rows.get(2));
+        assertEquals(Arrays.asList("B01", "Sample_2", "12", "line1\nline2"), rows.get(3));
+        assertEquals(Arrays.asList("C01", "Sample_3", "", ""), rows.get(4));
+        assertEquals(Arrays.asList("D01"), rows.get(5));
+    }
+
+    @Test
+    public void getDataRows_shouldSkipHeaderRow() {
+        List<Integer> lineNumbers = new ArrayList<>();
+        for (CsvRow row : csvReader.getDataRows()) {
+            lineNumbers.add(row.getLineNumber());
+        }
+        assertEquals(Arrays.asList(1, 2, 3, 4, 5), lineNumbers);
+    }
+
+    @Test
+    public void csvRow_shouldCompareCellsWithoutCopyingValues() {
+        CsvRow row = csvReader.getDataRows().iterator().next();
+        assertEquals("Sample_1", row.get("Sample"));
+        assertTrue(row.equalsIgnoreCase("Sample", "SAMPLE_1"));
+        assertTrue(row.equals(3, "said \"ok\""));
+        assertTrue(row.contains(0, "01"));
+        assertTrue(row.lineContains("\"1,234.5\""));
+        assertEquals(2, row.indexOf("1,234.5"));
+        assertTrue(row.isBlank(7));
+        assertEquals("", row.get(7));
+        assertFalse(row.isBlank("Well"));
+    }
+
+    @Test
+    public void csvRow_shouldReadNumbersWithThousandSeparators() {
+        String content = "Size [bp],% of Total,Conc.\n" +
+                "\"1,234\",\" 1,234.5 \",0.05\n" +
+                "-35,-2.5e3,abc\n";
+        List<double[]> values = new ArrayList<>();
+        List<Integer> sizes = new ArrayList<>();
+        for (CsvRow row : new CsvReader(content.getBytes(StandardCharsets.ISO_8859_1)).getDataRows()) {
+            sizes.add(row.getInt("Size [bp]"));
+            values.add(new double[]{row.getDouble(1), row.getDouble(0)});
+        }
+        assertEquals(Arrays.asList(1234, -35), sizes);
+        assertEquals(1234.5, values.get(0)[0], 0.0);
+        assertEquals(-2500.0, values.get(1)[0], 0.0);
+        assertEquals(-35.0, values.get(1)[1], 0.0);
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void csvRow_shouldFailForValuesThatAreNotNumbers() {
+        CsvRow row = csvReader.getDataRows().iterator().next();
+        assertEquals(1234.5, row.getDouble("Concentration"), 0.0);
+        row.getDouble("Observations");
+    }
+
+    @Test
+    public void csvRow_shouldOnlyReadIntegersAsInt() {
+        String content = "Size [bp]\n1234.0\n1e3\n\n";
+        List<String> rejected = new ArrayList<>();
+        for (CsvRow row : new CsvReader(content.getBytes(StandardCharsets.ISO_8859_1)).getDataRows()) {
+            try {
+                row.getInt("Size [bp]");
+            } catch (NumberFormatException e) {
+                rejected.add(row.get("Size [bp]"));
+            }
+        }
+        assertEquals(Arrays.asList("1234.0", "1e3", ""), rejected);
+    }
+
+    @Test
+    public void emptyFile_shouldHaveNoRows() {
+        CsvReader emptyReader = new CsvReader(new byte[0]);
+        assertTrue(emptyReader.isEmpty());
+        assertTrue(emptyReader.getHeaderValueMap().isEmpty());
+        assertFalse(emptyReader.iterator().hasNext());
+        assertFalse(emptyReader.getDataRows().iterator().hasNext());
+    }
+}
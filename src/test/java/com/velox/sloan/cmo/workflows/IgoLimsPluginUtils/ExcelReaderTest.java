@@ -0,0 +1,96 @@
+package com.velox.sloan.cmo.workflows.IgoLimsPluginUtils;
+
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ExcelReaderTest {
+    private ExcelReader validFileReader;
+    private ExcelReader emptyFileReader;
+
+    @Before
+    public void setUp() throws Exception {
+        validFileReader = new ExcelReader(readResource("Valid_File_test.xlsx"));
+        emptyFileReader = new ExcelReader(readResource("EmptyFile_Test.xlsx"));
+    }
+
+    @Test
+    public void getHeaderValueMap_shouldReturnHeaderColumns() throws Exception {
+        assertEquals(15, validFileReader.getHeaderValueMap().size());
+        assertEquals(2, (int) validFileReader.getHeaderValueMap().get("Accession#"));
+        assertEquals(14, (int) validFileReader.getHeaderValueMap().get("Comments"));
+    }
+
+    @Test
+    public void read_shouldPassDataRowsWithTypedValues() throws Exception {
+        List<ExcelRow> rows = new ArrayList<>();
+        validFileReader.read(row -> rows.add(row.copy()));
+        assertEquals(81, rows.size());
+        assertEquals(81, validFileReader.getLastRowNum());
+
+        ExcelRow firstRow = rows.get(0);
+        assertEquals(1, firstRow.getRowNum());
+        assertEquals("18-064-00941", firstRow.getString("Accession#"));
+        assertEquals("18-064-00941", firstRow.getNumericOrString("Accession#"));
+        assertEquals(3.0, firstRow.getNumericOrString("#ofTubes"));
+        assertEquals("3.0", firstRow.getString("#ofTubes"));
+        assertEquals("3", firstRow.getText("#ofTubes"));
+        assertEquals("18-064-00941", firstRow.getText("Accession#"));
+        assertEquals(DateUtil.getJavaDate(43164), firstRow.getDate("DrawDate"));
+        assertTrue(firstRow.isNumeric("DrawTime"));
+        assertEquals(2.0, rows.get(80).getNumeric("#ofTubes"), 0.0);
+    }
+
+    @Test
+    public void read_shouldNotPassHeaderRow() throws Exception {
+        List<ExcelRow> rows = new ArrayList<>();
+        emptyFileReader.read(row -> rows.add(row.copy()));
+        assertEquals(0, rows.size());
+        assertEquals(0, emptyFileReader.getLastRowNum());
+        assertEquals(15, emptyFileReader.getHeaderValueMap().size());
+    }
+
+    @Test
+    public void hasDataRows_shouldReturnFalseForHeaderOnly() throws Exception {
+        assertTrue(validFileReader.hasDataRows());
+        assertFalse(emptyFileReader.hasDataRows());
+        validFileReader.read(row -> {
+        });
+        assertTrue(validFileReader.hasDataRows());
+    }
+
+    @Test
+    public void read_shouldThrowHandlerException() throws Exception {
+        IOException handlerError = new IOException("row 1");
+        try {
+            validFileReader.read(row -> {
+                throw handlerError;
+            });
+        } catch (IOException e) {
+            assertSame(handlerError, e);
+            return;
+        }
+        throw new AssertionError("Expected handler exception.");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void getNumeric_shouldFailForTextCells() throws Exception {
+        validFileReader.read(row -> row.getNumeric("Accession#"));
+    }
+
+    private byte[] readResource(String fileName) throws Exception {
+        return Files.readAllBytes(Paths.get(Objects.requireNonNull(ExcelReaderTest.class.getClassLoader().getResource(fileName)).toURI()));
+    }
+}
@@ -0,0 +1,638 @@
+package com.velox.sloan.cmo.workflows;
+
+import com.velox.api.datarecord.DataRecord;
+import com.velox.api.datarecord.DataRecordManager;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.lang.reflect.Array;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory stand-in for the LIMS server to run plugins in tests. Records are kept in memory with their field values
+ * and parent/child links, and the DataRecordManager and DataRecord objects handed to a plugin are Mockito mocks backed
+ * by these records. Every call a plugin makes on them is counted by method and DataType, so that tests can assert upper
+ * bounds for the number of round trips a plugin makes to the server.
+ * <p>
+ * DataRecord calls are counted against the DataType of the record they are made on, DataRecordManager calls against
+ * the DataType they query or load. getRecordId, getDataTypeName and toString do not call the server and are not
+ * counted. Records created with addRecord and addChild while setting up a test are not counted either.
+ * <p>
+ * queryDataRecords supports the where clauses built by DataRecordQuery: conditions joined by AND that use =, !=, &gt;,
+ * &lt;, IS NULL, IS NOT NULL, LIKE, NOT LIKE and IN. Like in SQL, a field without value only matches IS NULL. RecordId
+ * conditions match the id of the record.
+ */
+public class InMemoryDataRecordManager {
+    private static final Pattern CONDITION = Pattern.compile(
+            "(\\w+)\\s+(IS NOT NULL|IS NULL|NOT LIKE|LIKE|NOT IN|IN|!=|<>|=|>|<)\\s*(.*)", Pattern.CASE_INSENSITIVE);
+
+    private final Map<Long, StoredRecord> recordsById = new LinkedHashMap<>();
+    private final Map<String, Map<String, Integer>> callCountsByMethod = new TreeMap<>();
+    private final DataRecordManager dataRecordManager;
+    private long nextRecordId = 1;
+
+    public InMemoryDataRecordManager() {
+        // stub only mocks do not keep every invocation for verification, plugins can make many thousands of calls.
+        dataRecordManager = Mockito.mock(DataRecordManager.class, Mockito.withSettings().stubOnly().defaultAnswer(new ManagerAnswer()));
+    }
+
+    /**
+     * Build a field value map from alternating field names and values.
+     *
+     * @param namesAndValues
+     * @return Map<String, Object>
+     */
+    public static Map<String, Object> fields(Object... namesAndValues) {
+        Map<String, Object> fields = new HashMap<>();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            fields.put((String) namesAndValues[i], namesAndValues[i + 1]);
+        }
+        return fields;
+    }
+
+    public DataRecordManager getDataRecordManager() {
+        return dataRecordManager;
+    }
+
+    /**
+     * Create a record without counting a server call.
+     *
+     * @param dataType
+     * @param fields
+     * @return DataRecord
+     */
+    public synchronized DataRecord addRecord(String dataType, Map<String, Object> fields) {
+        return createRecord(dataType, fields).proxy;
+    }
+
+    /**
+     * Create a record as a child of another record without counting a server call.
+     *
+     * @param parent
+     * @param dataType
+     * @param fields
+     * @return DataRecord
+     */
+    public synchronized DataRecord addChild(DataRecord parent, String dataType, Map<String, Object> fields) {
+        StoredRecord child = createRecord(dataType, fields);
+        link(getStoredRecord(parent), child);
+        return child.proxy;
+    }
+
+    /**
+     * Link two existing records as parent and child without counting a server call.
+     *
+     * @param parent
+     * @param child
+     */
+    public synchronized void addChild(DataRecord parent, DataRecord child) {
+        link(getStoredRecord(parent), getStoredRecord(child));
+    }
+
+    /**
+     * Get the current field values of a record without counting a server call.
+     *
+     * @param record
+     * @return Map<String, Object>
+     */
+    public synchronized Map<String, Object> getFields(DataRecord record) {
+        return new HashMap<>(getStoredRecord(record).fields);
+    }
+
+    /**
+     * Get the records of a DataType in the order they were created, without counting a server call.
+     *
+     * @param dataType
+     * @return List<DataRecord>
+     */
+    public synchronized List<DataRecord> getRecords(String dataType) {
+        List<DataRecord> records = new ArrayList<>();
+        for (StoredRecord record : recordsById.values()) {
+            if (record.dataType.equals(dataType)) {
+                records.add(record.proxy);
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Total number of counted calls.
+     *
+     * @return int
+     */
+    public synchronized int getCallCount() {
+        int calls = 0;
+        for (String method : callCountsByMethod.keySet()) {
+            calls += getCallCount(method);
+        }
+        return calls;
+    }
+
+    /**
+     * Number of calls of a method for all DataTypes. Methods are named by interface, for example
+     * "DataRecord.getValue" or "DataRecordManager.queryDataRecords".
+     *
+     * @param method
+     * @return int
+     */
+    public synchronized int getCallCount(String method) {
+        int calls = 0;
+        for (Integer count : callCountsByMethod.getOrDefault(method, Collections.emptyMap()).values()) {
+            calls += count;
+        }
+        return calls;
+    }
+
+    public synchronized int getCallCount(String method, String dataType) {
+        return callCountsByMethod.getOrDefault(method, Collections.emptyMap()).getOrDefault(dataType, 0);
+    }
+
+    /**
+     * Number of calls made on DataRecord objects, which are the per record round trips that should not grow with the
+     * number of records a plugin works on.
+     *
+     * @return int
+     */
+    public synchronized int getRecordCallCount() {
+        int calls = 0;
+        for (String method : callCountsByMethod.keySet()) {
+            if (method.startsWith("DataRecord.")) {
+                calls += getCallCount(method);
+            }
+        }
+        return calls;
+    }
+
+    public synchronized int getManagerCallCount() {
+        return getCallCount() - getRecordCallCount();
+    }
+
+    public synchronized void resetCallCounts() {
+        callCountsByMethod.clear();
+    }
+
+    /**
+     * Call counts by method and DataType, one per line, to use as assertion message.
+     *
+     * @return String
+     */
+    public synchronized String getCallCountSummary() {
+        StringBuilder summary = new StringBuilder(String.format("%d calls:", getCallCount()));
+        for (Map.Entry<String, Map<String, Integer>> methodCounts : callCountsByMethod.entrySet()) {
+            for (Map.Entry<String, Integer> dataTypeCount : methodCounts.getValue().entrySet()) {
+                summary.append(String.format("%n%s(%s): %d", methodCounts.getKey(), dataTypeCount.getKey(), dataTypeCount.getValue()));
+            }
+        }
+        return summary.toString();
+    }
+
+    private void countCall(String method, String dataType) {
+        callCountsByMethod.computeIfAbsent(method, k -> new TreeMap<>()).merge(dataType, 1, Integer::sum);
+    }
+
+    private StoredRecord createRecord(String dataType, Map<String, Object> fields) {
+        StoredRecord record = new StoredRecord(nextRecordId++, dataType);
+        if (fields != null) {
+            record.fields.putAll(fields);
+        }
+        recordsById.put(record.recordId, record);
+        return record;
+    }
+
+    private StoredRecord getStoredRecord(DataRecord record) {
+        StoredRecord storedRecord = recordsById.get(record.getRecordId());
+        if (storedRecord == null || storedRecord.proxy != record) {
+            throw new IllegalArgumentException(String.format("Record %d was not created by this InMemoryDataRecordManager.", record.getRecordId()));
+        }
+        return storedRecord;
+    }
+
+    private void link(StoredRecord parent, StoredRecord child) {
+        if (!parent.children.contains(child)) {
+            parent.children.add(child);
+            child.parents.add(parent);
+        }
+    }
+
+    private void delete(StoredRecord record) {
+        recordsById.remove(record.recordId);
+        for (StoredRecord parent : record.parents) {
+            parent.children.remove(record);
+        }
+        for (StoredRecord child : record.children) {
+            child.parents.remove(record);
+        }
+    }
+
+    private static List<DataRecord> ofType(List<StoredRecord> records, String dataType) {
+        List<DataRecord> recordsOfType = new ArrayList<>();
+        for (StoredRecord record : records) {
+            if (dataType == null || record.dataType.equals(dataType)) {
+                recordsOfType.add(record.proxy);
+            }
+        }
+        return recordsOfType;
+    }
+
+    /**
+     * Get ancestors or descendants of a DataType, nearest first.
+     */
+    private static List<DataRecord> getRelativesOfType(StoredRecord record, String dataType, boolean ancestors) {
+        List<DataRecord> relatives = new ArrayList<>();
+        Set<StoredRecord> visited = new HashSet<>();
+        Deque<StoredRecord> queue = new ArrayDeque<>(ancestors ? record.parents : record.children);
+        while (!queue.isEmpty()) {
+            StoredRecord relative = queue.poll();
+            if (!visited.add(relative)) {
+                continue;
+            }
+            if (relative.dataType.equals(dataType)) {
+                relatives.add(relative.proxy);
+            }
+            queue.addAll(ancestors ? relative.parents : relative.children);
+        }
+        return relatives;
+    }
+
+    private static Object toReturnType(List<DataRecord> records, Class<?> returnType) {
+        return returnType.isArray() ? records.toArray(new DataRecord[0]) : records;
+    }
+
+    /**
+     * Convert a field value to the return type of the getter it is read with, e.g. getDoubleVal or getStringVal.
+     */
+    private static Object toFieldType(Object value, Class<?> type) {
+        if (type == Object.class) {
+            return value;
+        }
+        if (value == null) {
+            if (type == boolean.class) {
+                return false;
+            }
+            return type.isPrimitive() ? toFieldType(0, type) : null;
+        }
+        if (type == String.class) {
+            return value.toString();
+        }
+        if (type == Boolean.class || type == boolean.class) {
+            return value instanceof Boolean ? value : Boolean.parseBoolean(value.toString().trim());
+        }
+        Number number = value instanceof Number ? (Number) value : Double.valueOf(value.toString().trim());
+        if (type == Double.class || type == double.class) {
+            return number.doubleValue();
+        }
+        if (type == Float.class || type == float.class) {
+            return number.floatValue();
+        }
+        if (type == Long.class || type == long.class) {
+            return number.longValue();
+        }
+        if (type == Integer.class || type == int.class) {
+            return number.intValue();
+        }
+        if (type == Short.class || type == short.class) {
+            return number.shortValue();
+        }
+        return value;
+    }
+
+    private boolean matches(StoredRecord record, String whereClause) {
+        if (whereClause == null || whereClause.trim().isEmpty()) {
+            return true;
+        }
+        for (String condition : splitOutsideQuotes(whereClause, " AND ")) {
+            Matcher matcher = CONDITION.matcher(condition.trim());
+            if (!matcher.matches()) {
+                throw new IllegalArgumentException(String.format("Unsupported where clause condition '%s'.", condition));
+            }
+            Object fieldValue = matcher.group(1).equals("RecordId") ? record.recordId : record.fields.get(matcher.group(1));
+            String operator = matcher.group(2).toUpperCase();
+            String operand = matcher.group(3).trim();
+            boolean conditionMatches;
+            switch (operator) {
+                case "IS NULL":
+                    conditionMatches = fieldValue == null;
+                    break;
+                case "IS NOT NULL":
+                    conditionMatches = fieldValue != null;
+                    break;
+                case "=":
+                    conditionMatches = fieldValue != null && valuesEqual(fieldValue, parseLiteral(operand));
+                    break;
+                case "!=":
+                case "<>":
+                    conditionMatches = fieldValue != null && !valuesEqual(fieldValue, parseLiteral(operand));
+                    break;
+                case ">":
+                case "<":
+                    int comparison = fieldValue == null ? 0 : Double.compare(Double.parseDouble(fieldValue.toString().trim()), (Double) parseLiteral(operand));
+                    conditionMatches = fieldValue != null && (operator.equals(">") ? comparison > 0 : comparison < 0);
+                    break;
+                case "LIKE":
+                case "NOT LIKE":
+                    conditionMatches = fieldValue != null && likePatternToRegex(String.valueOf(parseLiteral(operand))).matcher(fieldValue.toString()).matches() == operator.equals("LIKE");
+                    break;
+                default:
+                    boolean inList = false;
+                    for (String literal : splitOutsideQuotes(operand.substring(operand.indexOf('(') + 1, operand.lastIndexOf(')')), ",")) {
+                        inList |= fieldValue != null && valuesEqual(fieldValue, parseLiteral(literal.trim()));
+                    }
+                    conditionMatches = fieldValue != null && inList == operator.equals("IN");
+            }
+            if (!conditionMatches) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean valuesEqual(Object fieldValue, Object literal) {
+        if (literal instanceof Double) {
+            Object value = fieldValue instanceof Boolean ? ((Boolean) fieldValue ? 1 : 0) : fieldValue;
+            try {
+                return Double.parseDouble(value.toString().trim()) == (Double) literal;
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+        return Objects.equals(fieldValue.toString(), literal);
+    }
+
+    private static Object parseLiteral(String literal) {
+        if (literal.startsWith("'") && literal.endsWith("'") && literal.length() > 1) {
+            return literal.substring(1, literal.length() - 1).replace("''", "'");
+        }
+        if (literal.equalsIgnoreCase("NULL")) {
+            return null;
+        }
+        return Double.valueOf(literal);
+    }
+
+    private static Pattern likePatternToRegex(String likePattern) {
+        StringBuilder regex = new StringBuilder();
+        for (char c : likePattern.toCharArray()) {
+            if (c == '%') {
+                regex.append(".*");
+            } else if (c == '_') {
+                regex.append('.');
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+
+    private static List<String> splitOutsideQuotes(String value, String separator) {
+        List<String> parts = new ArrayList<>();
+        boolean inQuotes = false;
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) == '\'') {
+                inQuotes = !inQuotes;
+            } else if (!inQuotes && value.regionMatches(true, i, separator, 0, separator.length())) {
+                parts.add(value.substring(start, i));
+                start = i + separator.length();
+                i = start - 1;
+            }
+        }
+        parts.add(value.substring(start));
+        return parts;
+    }
+
+    private class StoredRecord {
+        private final long recordId;
+        private final String dataType;
+        private final Map<String, Object> fields = new HashMap<>();
+        private final List<StoredRecord> parents = new ArrayList<>();
+        private final List<StoredRecord> children = new ArrayList<>();
+        private final DataRecord proxy;
+
+        private StoredRecord(long recordId, String dataType) {
+            this.recordId = recordId;
+            this.dataType = dataType;
+            this.proxy = Mockito.mock(DataRecord.class, Mockito.withSettings().stubOnly().defaultAnswer(new RecordAnswer(this)));
+        }
+    }
+
+    private class RecordAnswer implements Answer<Object> {
+        private final StoredRecord record;
+
+        private RecordAnswer(StoredRecord record) {
+            this.record = record;
+        }
+
+        @Override
+        public Object answer(InvocationOnMock invocation) throws Throwable {
+            String method = invocation.getMethod().getName();
+            switch (method) {
+                case "getRecordId":
+                    return record.recordId;
+                case "getDataTypeName":
+                    return record.dataType;
+                case "toString":
+                    return String.format("%s %d", record.dataType, record.recordId);
+                default:
+                    synchronized (InMemoryDataRecordManager.this) {
+                        countCall("DataRecord." + method, record.dataType);
+                        return invoke(method, invocation);
+                    }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private Object invoke(String method, InvocationOnMock invocation) throws Throwable {
+            Object[] args = invocation.getArguments();
+            Class<?> returnType = invocation.getMethod().getReturnType();
+            if ((method.equals("getValue") || method.equals("getDataField") || method.matches("get\\w*Val")) && args.length > 0 && args[0] instanceof String) {
+                return toFieldType(record.fields.get(args[0]), returnType);
+            }
+            switch (method) {
+                case "getFields":
+                    return new HashMap<>(record.fields);
+                case "setDataField":
+                    record.fields.put((String) args[0], args[1]);
+                    return null;
+                case "setFields":
+                    record.fields.putAll((Map<String, Object>) args[0]);
+                    return null;
+                case "getParents":
+                case "getParentsOfType":
+                    return toReturnType(ofType(record.parents, args[0] instanceof String ? (String) args[0] : null), returnType);
+                case "getChildren":
+                case "getChildrenOfType":
+                    return toReturnType(ofType(record.children, args[0] instanceof String ? (String) args[0] : null), returnType);
+                case "getAncestorsOfType":
+                    return toReturnType(getRelativesOfType(record, (String) args[0], true), returnType);
+                case "getDescendantsOfType":
+                    return toReturnType(getRelativesOfType(record, (String) args[0], false), returnType);
+                case "getChildAttributesList":
+                    return getChildAttributes(returnType.getComponentType());
+                case "addChild":
+                case "addChildIfNotExists":
+                    if (args[0] instanceof DataRecord) {
+                        link(record, getStoredRecord((DataRecord) args[0]));
+                        return null;
+                    }
+                    StoredRecord child = createRecord((String) args[0], args[1] instanceof Map ? (Map<String, Object>) args[1] : null);
+                    link(record, child);
+                    return child.proxy;
+                case "addChildren":
+                    List<DataRecord> children = new ArrayList<>();
+                    if (args[0] instanceof String) {
+                        for (Map<String, Object> fields : (List<Map<String, Object>>) args[1]) {
+                            StoredRecord newChild = createRecord((String) args[0], fields);
+                            link(record, newChild);
+                            children.add(newChild.proxy);
+                        }
+                    } else {
+                        for (DataRecord existingChild : (List<DataRecord>) args[0]) {
+                            link(record, getStoredRecord(existingChild));
+                            children.add(existingChild);
+                        }
+                    }
+                    return List.class.isAssignableFrom(returnType) ? children : null;
+                default:
+                    return Mockito.RETURNS_DEFAULTS.answer(invocation);
+            }
+        }
+
+        /**
+         * One attributes object per DataType of the children, only dataTypeName is set.
+         */
+        private Object getChildAttributes(Class<?> attributesType) throws ReflectiveOperationException {
+            Set<String> childTypes = new LinkedHashSet<>();
+            for (StoredRecord child : record.children) {
+                childTypes.add(child.dataType);
+            }
+            Object attributes = Array.newInstance(attributesType, childTypes.size());
+            int i = 0;
+            for (String childType : childTypes) {
+                Object childAttributes = Mockito.mock(attributesType, Mockito.withSettings().stubOnly());
+                attributesType.getField("dataTypeName").set(childAttributes, childType);
+                Array.set(attributes, i++, childAttributes);
+            }
+            return attributes;
+        }
+    }
+
+    private class ManagerAnswer implements Answer<Object> {
+        @Override
+        public Object answer(InvocationOnMock invocation) throws Throwable {
+            String method = invocation.getMethod().getName();
+            if (method.equals("toString")) {
+                return "InMemoryDataRecordManager";
+            }
+            synchronized (InMemoryDataRecordManager.this) {
+                countCall("DataRecordManager." + method, getDataType(invocation.getArguments()));
+                return invoke(method, invocation);
+            }
+        }
+
+        private String getDataType(Object[] args) {
+            if (args.length > 0 && args[0] instanceof String) {
+                return (String) args[0];
+            }
+            if (args.length > 1 && args[1] instanceof String) {
+                return (String) args[1];
+            }
+            if (args.length > 0 && args[0] instanceof List && !((List<?>) args[0]).isEmpty() && ((List<?>) args[0]).get(0) instanceof DataRecord) {
+                return ((DataRecord) ((List<?>) args[0]).get(0)).getDataTypeName();
+            }
+            return "";
+        }
+
+        @SuppressWarnings("unchecked")
+        private Object invoke(String method, InvocationOnMock invocation) throws Throwable {
+            Object[] args = invocation.getArguments();
+            switch (method) {
+                case "queryDataRecords":
+                case "queryAllRecordsOfType":
+                    return query((String) args[0], args);
+                case "getFieldsForRecords":
+                    List<Map<String, Object>> fieldsForRecords = new ArrayList<>();
+                    for (DataRecord record : (List<DataRecord>) args[0]) {
+                        fieldsForRecords.add(new HashMap<>(getStoredRecord(record).fields));
+                    }
+                    return fieldsForRecords;
+                case "getParentsOfType":
+                case "getChildrenOfType":
+                case "getAncestorsOfType":
+                case "getDescendantsOfType":
+                    Map<DataRecord, List<DataRecord>> relativesByRecord = new LinkedHashMap<>();
+                    for (DataRecord record : (List<DataRecord>) args[0]) {
+                        StoredRecord storedRecord = getStoredRecord(record);
+                        String dataType = (String) args[1];
+                        List<DataRecord> relatives;
+                        if (method.equals("getParentsOfType")) {
+                            relatives = ofType(storedRecord.parents, dataType);
+                        } else if (method.equals("getChildrenOfType")) {
+                            relatives = ofType(storedRecord.children, dataType);
+                        } else {
+                            relatives = getRelativesOfType(storedRecord, dataType, method.equals("getAncestorsOfType"));
+                        }
+                        relativesByRecord.put(record, relatives);
+                    }
+                    return relativesByRecord;
+                case "addDataRecord":
+                    return createRecord((String) args[0], null).proxy;
+                case "addDataRecords":
+                    List<DataRecord> newRecords = new ArrayList<>();
+                    if (args[1] instanceof Number) {
+                        for (int i = 0; i < ((Number) args[1]).intValue(); i++) {
+                            newRecords.add(createRecord((String) args[0], null).proxy);
+                        }
+                    } else {
+                        for (Map<String, Object> fields : (List<Map<String, Object>>) args[1]) {
+                            newRecords.add(createRecord((String) args[0], fields).proxy);
+                        }
+                    }
+                    return newRecords;
+                case "setFieldsForRecords":
+                    List<DataRecord> records = (List<DataRecord>) args[0];
+                    for (int i = 0; i < records.size(); i++) {
+                        Map<String, Object> fields = args[1] instanceof Map ? (Map<String, Object>) args[1] : ((List<Map<String, Object>>) args[1]).get(i);
+                        getStoredRecord(records.get(i)).fields.putAll(fields);
+                    }
+                    return null;
+                case "deleteDataRecords":
+                    for (DataRecord record : (List<DataRecord>) args[0]) {
+                        delete(getStoredRecord(record));
+                    }
+                    return null;
+                default:
+                    return Mockito.RETURNS_DEFAULTS.answer(invocation);
+            }
+        }
+
+        private List<DataRecord> query(String dataType, Object[] args) {
+            List<DataRecord> records = new ArrayList<>();
+            for (StoredRecord record : recordsById.values()) {
+                if (record.dataType.equals(dataType) && matchesQuery(record, args)) {
+                    records.add(record.proxy);
+                }
+            }
+            return records;
+        }
+
+        /**
+         * Match a record against the query arguments, either (DataType, where clause, User) or
+         * (DataType, field name, values, User).
+         */
+        private boolean matchesQuery(StoredRecord record, Object[] args) {
+            if (args.length < 4) {
+                return args.length < 3 || matches(record, (String) args[1]);
+            }
+            Object fieldValue = record.fields.get(args[1]);
+            Collection<?> values = args[2] instanceof Collection ? (Collection<?>) args[2] : Collections.singletonList(args[2]);
+            for (Object value : values) {
+                if (fieldValue != null && value != null && fieldValue.toString().equals(value.toString())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -8,6 +8,7 @@ import org.apache.commons.lang3.exception.ExceptionUtils;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.PrintWriter;
+import java.lang.reflect.Field;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -55,4 +56,28 @@ public class TestUtils {
         }
         return null;
     }
+
+    /**
+     * Set a field that the plugin framework normally sets before a plugin runs, e.g. "user", "activeTask",
+     * "dataRecordManager" or "clientCallback", so that plugins can be run in tests without a server connection.
+     *
+     * @param plugin
+     * @param fieldName
+     * @param value
+     */
+    public static void setPluginField(Object plugin, String fieldName, Object value) {
+        for (Class<?> type = plugin.getClass(); type != null; type = type.getSuperclass()) {
+            try {
+                Field field = type.getDeclaredField(fieldName);
+                field.setAccessible(true);
+                field.set(plugin, value);
+                return;
+            } catch (NoSuchFieldException e) {
+                // declared on a superclass
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(String.format("Cannot set field '%s' on %s", fieldName, plugin.getClass().getSimpleName()), e);
+            }
+        }
+        throw new IllegalArgumentException(String.format("%s has no field '%s'", plugin.getClass().getSimpleName(), fieldName));
+    }
 }
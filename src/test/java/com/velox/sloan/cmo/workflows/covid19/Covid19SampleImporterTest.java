@@ -0,0 +1,84 @@
+package com.velox.sloan.cmo.workflows.covid19;
+
+import com.velox.api.datarecord.DataRecord;
+import com.velox.api.plugin.PluginLogger;
+import com.velox.api.user.User;
+import com.velox.api.util.ClientCallbackOperations;
+import com.velox.sloan.cmo.workflows.InMemoryDataRecordManager;
+import com.velox.sloan.cmo.workflows.TestUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static com.velox.sloan.cmo.workflows.InMemoryDataRecordManager.fields;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class Covid19SampleImporterTest {
+    private static final int EXISTING_SAMPLES = 2000;
+    private static final int UPLOADED_SAMPLES = 500;
+
+    private User user;
+    private InMemoryDataRecordManager server;
+    private ClientCallbackOperations clientCallback;
+    private DataRecord request;
+
+    @Before
+    public void setUp() throws Exception {
+        user = Mockito.mock(User.class);
+        server = new InMemoryDataRecordManager();
+        clientCallback = Mockito.mock(ClientCallbackOperations.class);
+        request = server.addRecord("Request", fields("RequestId", "10858"));
+        for (int i = 1; i <= EXISTING_SAMPLES; i++) {
+            server.addChild(request, "Sample", fields("SampleId", "10858_" + i, "OtherSampleId", "ACC" + i,
+                    "ExemplarSampleType", "other", "RequestId", "10858"));
+        }
+        server.addChild(request, "Sample", fields("SampleId", "10858_" + (EXISTING_SAMPLES + 5) + "_1", "OtherSampleId", "ACC5",
+                "ExemplarSampleType", "DNA", "RequestId", "10858"));
+        StringBuilder file = new StringBuilder("Accession Number,Well ID\n");
+        for (int i = 1; i <= UPLOADED_SAMPLES; i++) {
+            // the first uploaded accession number is already used by 10858_1000.
+            file.append(i == 1 ? "acc1000" : "NEW" + i).append(",A").append(i % 12 + 1).append("\n");
+        }
+        Mockito.when(clientCallback.showFileDialog(Mockito.anyString(), Mockito.any())).thenReturn("covid_samples.csv");
+        Mockito.when(clientCallback.readBytes("covid_samples.csv")).thenReturn(file.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void run_shouldNumberNewSamplesAfterHighestSampleNumberWithoutPerSampleCalls() throws Exception {
+        newPlugin().run();
+
+        Mockito.verify(clientCallback, Mockito.never()).displayError(Mockito.anyString());
+        Mockito.verify(clientCallback).displayWarning("Duplicate Accession No 'acc1000' in uploaded file. Sample 10858_1000 already has this Accession No.");
+        Mockito.verify(clientCallback).displayWarning(Mockito.anyString());
+        assertEquals(1, server.getCallCount("DataRecordManager.storeAndCommit"));
+        // the request and its Samples, used for both the Accession Number check and the sample numbers.
+        assertEquals(2, server.getCallCount("DataRecordManager.queryDataRecords"));
+        assertEquals(1, server.getCallCount("DataRecordManager.getFieldsForRecords"));
+        assertTrue(server.getCallCountSummary(), server.getRecordCallCount() <= 1);
+
+        List<DataRecord> samples = server.getRecords("Sample");
+        assertEquals(EXISTING_SAMPLES + 1 + UPLOADED_SAMPLES, samples.size());
+        Set<String> newSampleIds = new HashSet<>();
+        for (DataRecord sample : samples.subList(EXISTING_SAMPLES + 1, samples.size())) {
+            newSampleIds.add(server.getFields(sample).get("SampleId").toString());
+        }
+        assertEquals(UPLOADED_SAMPLES, newSampleIds.size());
+        assertTrue(newSampleIds.contains("10858_" + (EXISTING_SAMPLES + 6)));
+        assertTrue(newSampleIds.contains("10858_" + (EXISTING_SAMPLES + 5 + UPLOADED_SAMPLES)));
+    }
+
+    private Covid19SampleImporter newPlugin() {
+        Covid19SampleImporter plugin = new Covid19SampleImporter();
+        TestUtils.setPluginField(plugin, "user", user);
+        TestUtils.setPluginField(plugin, "dataRecordManager", server.getDataRecordManager());
+        TestUtils.setPluginField(plugin, "clientCallback", clientCallback);
+        TestUtils.setPluginField(plugin, "pluginLogger", Mockito.mock(PluginLogger.class));
+        return plugin;
+    }
+}
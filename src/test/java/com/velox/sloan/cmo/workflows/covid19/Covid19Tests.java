@@ -1,9 +1,12 @@
 package com.velox.sloan.cmo.workflows.covid19;
 
+import com.velox.api.plugin.PluginLogger;
+import com.velox.sloan.cmo.workflows.IgoLimsPluginUtils.CsvReader;
 import com.velox.sloan.cmo.workflows.IgoLimsPluginUtils.IgoLimsPluginUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.Mockito;
 
 
 import java.io.IOException;
@@ -19,7 +22,7 @@ public class Covid19Tests {
     private Covid19Helper helper = new Covid19Helper();
     private byte[] byteData;
     private List<String> dataFromFile = new ArrayList<>();
-    List<String> qpcrData;
+    int qpcrResultRowCount;
     Map<String, List<Map<String, Object>>> parsedQpcrData;
     private Map<String, Integer> headerValuesMap;
     @Before
@@ -28,8 +31,9 @@ public class Covid19Tests {
         byteData = utils.readCsvFileToBytes(fileName);
         try {
             dataFromFile = utils.readDataFromCsvFile(byteData);
-            qpcrData = helper.getQpcrResults(dataFromFile);
-            parsedQpcrData = helper.parseQpcrData(qpcrData);
+            CsvReader csvData = utils.readCsvFile(byteData);
+            qpcrResultRowCount = helper.getQpcrResultRowCount(csvData);
+            parsedQpcrData = helper.parseQpcrData(csvData, Mockito.mock(PluginLogger.class));
         } catch (IOException e) {
             String message = ExceptionUtils.getMessage(e);
             System.out.println(message);
@@ -38,7 +42,7 @@ public class Covid19Tests {
 
     @Test
     public void getQpcrResults_test() {
-        assertEquals(qpcrData.size(), 289);
+        assertEquals(qpcrResultRowCount, 289);
     }
 
     @Test
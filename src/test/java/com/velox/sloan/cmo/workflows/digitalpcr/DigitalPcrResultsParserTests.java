@@ -1,8 +1,11 @@
 package com.velox.sloan.cmo.workflows.digitalpcr;
 
+import com.velox.api.plugin.PluginLogger;
+import com.velox.sloan.cmo.workflows.IgoLimsPluginUtils.CsvReader;
 import com.velox.sloan.cmo.workflows.IgoLimsPluginUtils.IgoLimsPluginUtils;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.Mockito;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -23,10 +26,12 @@ public class DigitalPcrResultsParserTests {
     List<Map<String, Object>> flatData;
     Map<String, List<Map<String, Object>>> groupedData;
     private List<String> dataFromFile = new ArrayList<>();
+    private CsvReader csvData;
     private Map<String, Integer> headerValuesMap;
     private byte[] byteData;
     private IgoLimsPluginUtils commonMethods = new IgoLimsPluginUtils();
     private DdPcrResultsProcessor resultsProcessor = new DdPcrResultsProcessor();
+    private PluginLogger logger = Mockito.mock(PluginLogger.class);
 
     @Before
     public void setUp() {
@@ -34,11 +39,12 @@ public class DigitalPcrResultsParserTests {
         byteData = readCsvFileToBytes(fileName);
         try {
             dataFromFile = commonMethods.readDataFromCsvFile(byteData);
-            headerValuesMap = commonMethods.getCsvHeaderValueMap(dataFromFile);
-            channel1Data = resultsProcessor.readChannel1Data(dataFromFile, headerValuesMap, true);
-            channel2Data = resultsProcessor.readChannel2Data(dataFromFile, headerValuesMap, true);
-            flatData = resultsProcessor.concatenateChannel1AndChannel2Data(channel1Data, channel2Data, headerValuesMap, true);
-            groupedData = resultsProcessor.aggregateResultsBySampleAndAssay(flatData);
+            csvData = commonMethods.readCsvFile(byteData);
+            headerValuesMap = csvData.getHeaderValueMap();
+            channel1Data = resultsProcessor.readChannel1Data(csvData, headerValuesMap, true);
+            channel2Data = resultsProcessor.readChannel2Data(csvData, headerValuesMap, true);
+            flatData = resultsProcessor.concatenateChannel1AndChannel2Data(channel1Data, channel2Data, headerValuesMap, true, logger);
+            groupedData = resultsProcessor.aggregateResultsBySampleAndAssay(flatData, true);
 
         } catch (IOException e) {
             e.printStackTrace();
@@ -67,7 +73,42 @@ public class DigitalPcrResultsParserTests {
 
     @Test
     public void concatenateChannel1AndChannel2Data_shouldReturn23Values() {
-        assertEquals(resultsProcessor.concatenateChannel1AndChannel2Data(channel1Data, channel2Data, headerValuesMap, true).size(), 23);
+        assertEquals(resultsProcessor.concatenateChannel1AndChannel2Data(channel1Data, channel2Data, headerValuesMap, true, logger).size(), 23);
+    }
+
+    @Test
+    public void concatenateChannel1AndChannel2Data_shouldJoinChannelsOnWellAndSample() {
+        Map<String, Object> values = flatData.get(5);
+        assertEquals("F01", values.get("Well"));
+        assertEquals("SK-PB-383-F", values.get("Sample"));
+        assertEquals("TP53_R249S", values.get("Target"));
+        assertEquals(7.3, values.get("ConcentrationMutation"));
+        assertEquals(386.0, values.get("ConcentrationWildType"));
+        assertEquals(7.3 / (7.3 + 386.0), values.get("FractionalAbundance"));
+        assertEquals(14818, values.get("AcceptedDroplets"));
+        assertEquals(28, values.get("Channel1PosChannel2Pos"));
+        assertEquals(64, values.get("Channel1PosChannel2Neg"));
+        assertEquals(4115, values.get("Channel1NegChannel2Pos"));
+        assertEquals(0.0, values.get("CNV"));
+    }
+
+    @Test
+    public void concatenateChannel1AndChannel2Data_shouldMatchWellAndSampleIgnoringCase() {
+        List<List<String>> lowerCaseChannel2Data = new ArrayList<>();
+        for (List<String> row : channel2Data) {
+            List<String> lowerCaseRow = new ArrayList<>(row);
+            lowerCaseRow.set(headerValuesMap.get("Well"), row.get(headerValuesMap.get("Well")).toLowerCase());
+            lowerCaseRow.set(headerValuesMap.get("Sample"), row.get(headerValuesMap.get("Sample")).toLowerCase());
+            lowerCaseChannel2Data.add(lowerCaseRow);
+        }
+        assertEquals(flatData, resultsProcessor.concatenateChannel1AndChannel2Data(channel1Data, lowerCaseChannel2Data, headerValuesMap, true, logger));
+    }
+
+    @Test
+    public void concatenateChannel1AndChannel2Data_shouldReturnRowForEachMatchingPair() {
+        List<List<String>> duplicatedChannel2Data = new ArrayList<>(channel2Data);
+        duplicatedChannel2Data.addAll(channel2Data);
+        assertEquals(46, resultsProcessor.concatenateChannel1AndChannel2Data(channel1Data, duplicatedChannel2Data, headerValuesMap, true, logger).size());
     }
 
     @Test
@@ -0,0 +1,76 @@
+package com.velox.sloan.cmo.workflows.dlpplus;
+
+import com.velox.api.datarecord.DataRecord;
+import com.velox.api.user.User;
+import com.velox.sloan.cmo.workflows.IgoLimsPluginUtils.ExcelReader;
+import com.velox.sloan.cmo.workflows.IgoLimsPluginUtils.ExcelRow;
+import com.velox.sloan.cmo.workflows.TestUtils;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class DlpSampleSplitterPoolMakerTest {
+    private User user;
+    private DlpSampleSplitterPoolMaker plugin;
+
+    @Before
+    public void setUp() {
+        user = Mockito.mock(User.class);
+        plugin = new DlpSampleSplitterPoolMaker();
+        TestUtils.setPluginField(plugin, "user", user);
+    }
+
+    @Test
+    public void getRowsBySample_shouldMatchNumericSampleCells() throws Exception {
+        ExcelReader excelReader = new ExcelReader(smartChipFile());
+        List<DataRecord> samples = Arrays.asList(sample("12345"), sample("DLP_1"), sample("Other"));
+
+        Map<String, List<ExcelRow>> rowsBySample = plugin.getRowsBySample(samples, excelReader, new HashMap<>(excelReader.getHeaderValueMap()));
+
+        assertEquals(2, rowsBySample.get("12345").size());
+        assertEquals(1, rowsBySample.get("DLP_1").size());
+        assertEquals(0, rowsBySample.get("Other").size());
+        assertEquals(3.0, rowsBySample.get("DLP_1").get(0).getNumeric("Row"), 0.0);
+    }
+
+    private DataRecord sample(String sampleId) throws Exception {
+        DataRecord sample = Mockito.mock(DataRecord.class);
+        Mockito.when(sample.getStringVal("SampleId", user)).thenReturn(sampleId);
+        return sample;
+    }
+
+    /**
+     * SmartChip file with Sample IDs entered as number and as text.
+     */
+    private static byte[] smartChipFile() throws Exception {
+        try (XSSFWorkbook workbook = new XSSFWorkbook(); ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            Sheet sheet = workbook.createSheet();
+            Row header = sheet.createRow(0);
+            header.createCell(0).setCellValue("Sample");
+            header.createCell(1).setCellValue("Row");
+            Object[][] rows = {{12345.0, 1.0}, {12345.0, 2.0}, {"DLP_1", 3.0}, {"Unknown", 4.0}};
+            for (int i = 0; i < rows.length; i++) {
+                Row row = sheet.createRow(i + 1);
+                if (rows[i][0] instanceof Double) {
+                    row.createCell(0).setCellValue((Double) rows[i][0]);
+                } else {
+                    row.createCell(0).setCellValue((String) rows[i][0]);
+                }
+                row.createCell(1).setCellValue((Double) rows[i][1]);
+            }
+            workbook.write(out);
+            return out.toByteArray();
+        }
+    }
+}
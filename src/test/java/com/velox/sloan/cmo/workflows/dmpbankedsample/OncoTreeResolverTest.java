@@ -0,0 +1,123 @@
+package com.velox.sloan.cmo.workflows.dmpbankedsample;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class OncoTreeResolverTest {
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private Path tempDirectory;
+    private Path cacheFile;
+    private URI searchUri;
+    private AtomicInteger requests;
+    private int errorStatus;
+
+    @Before
+    public void setUp() throws Exception {
+        requests = new AtomicInteger();
+        Map<String, String> codesByName = new HashMap<>();
+        codesByName.put("invasive breast carcinoma", "BRCA");
+        codesByName.put("lung adenocarcinoma", "LUAD");
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/api/tumorTypes/search/", exchange -> {
+            requests.incrementAndGet();
+            String[] path = exchange.getRequestURI().getPath().split("/");
+            String searchBy = path[path.length - 2];
+            String value = path[path.length - 1].toLowerCase();
+            String code = searchBy.equals("name") ? codesByName.get(value) : (codesByName.containsValue(value.toUpperCase()) ? value.toUpperCase() : null);
+            int status = errorStatus > 0 ? errorStatus : (code == null ? 404 : 200);
+            byte[] response = (status == 200 ? String.format("[{\"code\":\"%s\"}]", code) : "").getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status, response.length == 0 ? -1 : response.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(response);
+            }
+        });
+        serverExecutor = Executors.newFixedThreadPool(4);
+        server.setExecutor(serverExecutor);
+        server.start();
+        searchUri = URI.create(String.format("http://localhost:%d/api/tumorTypes/search/", server.getAddress().getPort()));
+        tempDirectory = Files.createTempDirectory("oncotree");
+        cacheFile = tempDirectory.resolve("oncotree-codes.json");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+        try (java.util.stream.Stream<Path> files = Files.walk(tempDirectory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void resolve_shouldLookUpEachDistinctTumorTypeOnce() throws Exception {
+        OncoTreeResolver resolver = new OncoTreeResolver(searchUri, 4, Duration.ofDays(1), cacheFile, null);
+        Map<String, String> codes = resolver.resolve(Arrays.asList("Invasive Breast Carcinoma", "Invasive Breast Carcinoma",
+                "invasive breast carcinoma ", "LUAD", "Unknown Tumor", "N/A", ""));
+        // one name search for the breast carcinoma, name and code searches for 'LUAD' and 'Unknown Tumor'.
+        assertEquals(5, requests.get());
+        assertEquals("BRCA", codes.get("Invasive Breast Carcinoma"));
+        assertEquals("BRCA", codes.get("invasive breast carcinoma "));
+        assertEquals("LUAD", codes.get("LUAD"));
+        assertEquals("Neither OncoTree code nor name found for: Unknown Tumor", codes.get("Unknown Tumor"));
+        assertEquals("", codes.get("N/A"));
+        assertEquals("", codes.get(""));
+
+        resolver.resolve(Arrays.asList("Invasive Breast Carcinoma", "LUAD"));
+        assertEquals(5, requests.get());
+    }
+
+    @Test
+    public void resolve_shouldReadCodesFromCacheFile() throws Exception {
+        new OncoTreeResolver(searchUri, 4, Duration.ofDays(1), cacheFile, null).resolve("Lung Adenocarcinoma");
+        assertEquals(1, requests.get());
+        OncoTreeResolver resolver = new OncoTreeResolver(searchUri, 4, Duration.ofDays(1), cacheFile, null);
+        assertEquals("LUAD", resolver.resolve("Lung Adenocarcinoma"));
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void resolve_shouldUseSnapshotWithoutOncoTree() throws Exception {
+        Path snapshotFile = tempDirectory.resolve("tumorTypes.json");
+        Files.write(snapshotFile, "[{\"code\":\"BRCA\",\"name\":\"Invasive Breast Carcinoma\"},{\"code\":\"LUAD\",\"name\":\"Lung Adenocarcinoma\"}]"
+                .getBytes(StandardCharsets.UTF_8));
+        server.stop(0);
+        OncoTreeResolver resolver = new OncoTreeResolver(searchUri, 4, Duration.ofDays(1), null, snapshotFile);
+        Map<String, String> codes = resolver.resolve(Arrays.asList("Invasive Breast Carcinoma", "luad"));
+        assertEquals("BRCA", codes.get("Invasive Breast Carcinoma"));
+        assertEquals("LUAD", codes.get("luad"));
+        assertEquals(0, requests.get());
+    }
+
+    @Test
+    public void resolve_shouldUseExpiredCodeWhenOncoTreeFails() throws Exception {
+        new OncoTreeResolver(searchUri, 4, Duration.ofDays(1), cacheFile, null).resolve("Lung Adenocarcinoma");
+        errorStatus = 503;
+        OncoTreeResolver resolver = new OncoTreeResolver(searchUri, 4, Duration.ofMillis(-1), cacheFile, null);
+        assertEquals("LUAD", resolver.resolve("Lung Adenocarcinoma"));
+        assertEquals(2, requests.get());
+    }
+
+    @Test(expected = IOException.class)
+    public void resolve_shouldFailWithoutCachedCodeWhenOncoTreeFails() throws Exception {
+        errorStatus = 503;
+        new OncoTreeResolver(searchUri, 4, Duration.ofDays(1), cacheFile, null).resolve("Lung Adenocarcinoma");
+    }
+}
@@ -0,0 +1,175 @@
+package com.velox.sloan.cmo.workflows.kapalibrary;
+
+import com.velox.api.datamgmtserver.DataMgmtServer;
+import com.velox.api.datarecord.DataRecord;
+import com.velox.api.plugin.PluginLogger;
+import com.velox.api.user.User;
+import com.velox.api.util.ClientCallbackOperations;
+import com.velox.api.workflow.ActiveTask;
+import com.velox.sloan.cmo.workflows.InMemoryDataRecordManager;
+import com.velox.sloan.cmo.workflows.TestUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.*;
+
+import static com.velox.sloan.cmo.workflows.InMemoryDataRecordManager.fields;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class IndexBarcodeToSampleAutoAssignerTest {
+    // plates, samples and IndexBarcode fields are loaded in bulk and the wells are sorted from the loaded fields, but
+    // the adapter configs are read and updated one at a time and all 384 of them are checked for depletion after each
+    // plate quadrant, so record calls are bounded per plate size instead of per sample.
+    private static final int MAX_MANAGER_CALLS = 6;
+    private static final int MAX_RECORD_CALLS_96_WELL_PLATE = 2000;
+    private static final int MAX_RECORD_CALLS_384_WELL_PLATE = 7000;
+
+    private User user;
+    private InMemoryDataRecordManager server;
+    private List<DataRecord> samples;
+    private List<DataRecord> indexBarcodes;
+
+    @Before
+    public void setUp() {
+        user = Mockito.mock(User.class);
+        server = new InMemoryDataRecordManager();
+        samples = new ArrayList<>();
+        indexBarcodes = new ArrayList<>();
+        for (int plate = 1; plate <= 4; plate++) {
+            addAdapterPlate(plate);
+        }
+    }
+
+    @Test
+    public void run_shouldAssignIndexBarcodesTo96WellPlateWithBoundedServerCalls() throws Exception {
+        runForPlate(96, 8, 12, 0, MAX_RECORD_CALLS_96_WELL_PLATE);
+    }
+
+    @Test
+    public void run_shouldAssignIndexBarcodesTo384WellPlateWithBoundedServerCalls() throws Exception {
+        runForPlate(384, 16, 24, 1, MAX_RECORD_CALLS_384_WELL_PLATE);
+    }
+
+    @Test
+    public void run_shouldAssignIndexBarcodesToPlatesInOrderWithOneConfigQuery() throws Exception {
+        List<String> plateIds = Arrays.asList("Plate_A", "Plate_B", "Plate_C");
+        for (String plateId : plateIds) {
+            addPlate(plateId, 8, 12, 0);
+        }
+        Map<String, String> taskOptions = runPlugin();
+
+        assertTrue(taskOptions.containsKey("_INDEXES_AUTO_ASIGNED"));
+        assertEquals(1, server.getCallCount("DataRecordManager.queryDataRecords", "AutoIndexAssignmentConfig"));
+        Set<Object> assignedIndexIds = new HashSet<>();
+        for (DataRecord indexBarcode : indexBarcodes) {
+            assignedIndexIds.add(server.getFields(indexBarcode).get("IndexId"));
+        }
+        assertEquals(3 * 96, assignedIndexIds.size());
+        // the first plate starts at column 2 of the first adapter plate, each plate continues after the previous one.
+        assertEquals("IDT_1_A2", server.getFields(indexBarcodes.get(0)).get("IndexId"));
+        assertEquals("IDT_2_A2", server.getFields(indexBarcodes.get(96)).get("IndexId"));
+        assertEquals("IDT_3_A2", server.getFields(indexBarcodes.get(192)).get("IndexId"));
+        List<Object> lastUsedIndexIds = new ArrayList<>();
+        for (DataRecord config : server.getRecords("AutoIndexAssignmentConfig")) {
+            if (Boolean.TRUE.equals(server.getFields(config).get("LastUsed"))) {
+                lastUsedIndexIds.add(server.getFields(config).get("IndexId"));
+            }
+        }
+        assertEquals(Collections.singletonList("IDT_4_H1"), lastUsedIndexIds);
+    }
+
+    @Test
+    public void run_shouldNotOfferConfigsDeactivatedByPreviousPlate() throws Exception {
+        addPlate("Plate_A", 8, 12, 0);
+        addPlate("Plate_B", 8, 12, 0);
+        // column 2 of the second adapter plate is marked depleted once the first plate is assigned.
+        for (DataRecord config : server.getRecords("AutoIndexAssignmentConfig")) {
+            if ("IDT_2_H2".equals(server.getFields(config).get("IndexId"))) {
+                config.setDataField("AdapterVolume", 10.0, user);
+            }
+        }
+        runPlugin();
+
+        assertEquals("IDT_1_A2", server.getFields(indexBarcodes.get(0)).get("IndexId"));
+        assertEquals("IDT_2_A3", server.getFields(indexBarcodes.get(96)).get("IndexId"));
+        for (int i = 96; i < indexBarcodes.size(); i++) {
+            assertFalse(String.valueOf(server.getFields(indexBarcodes.get(i)).get("IndexId")).matches("IDT_2_.2"));
+        }
+    }
+
+    private void runForPlate(int sampleCount, int rows, int columns, int plateWellCountIndex, int maxRecordCalls) throws Exception {
+        addPlate("Plate_" + sampleCount, rows, columns, plateWellCountIndex);
+        Map<String, String> taskOptions = runPlugin();
+
+        assertTrue(taskOptions.containsKey("_INDEXES_AUTO_ASIGNED"));
+        Set<Object> assignedIndexIds = new HashSet<>();
+        for (DataRecord indexBarcode : indexBarcodes) {
+            Object indexId = server.getFields(indexBarcode).get("IndexId");
+            assertNotNull(indexId);
+            assignedIndexIds.add(indexId);
+        }
+        assertEquals(sampleCount, assignedIndexIds.size());
+        assertTrue(server.getCallCountSummary(), server.getManagerCallCount() <= MAX_MANAGER_CALLS);
+        assertTrue(server.getCallCountSummary(), server.getRecordCallCount() <= maxRecordCalls);
+    }
+
+    private void addPlate(String plateId, int rows, int columns, int plateWellCountIndex) {
+        DataRecord plate = server.addRecord("Plate", fields("PlateId", plateId, "PlateWellCnt", plateWellCountIndex));
+        for (int column = 1; column <= columns; column++) {
+            for (int row = 0; row < rows; row++) {
+                addSample(plate, String.valueOf((char) ('A' + row)), String.valueOf(column));
+            }
+        }
+    }
+
+    private Map<String, String> runPlugin() throws Exception {
+        Map<String, String> taskOptions = new HashMap<>();
+        taskOptions.put("AUTOASSIGN INDEX BARCODES", "INDEX TYPE (IDT)");
+        ActiveTask activeTask = Mockito.mock(ActiveTask.class, Mockito.RETURNS_DEEP_STUBS);
+        Mockito.when(activeTask.getAttachedDataRecords("Sample", user)).thenReturn(samples);
+        Mockito.when(activeTask.getAttachedDataRecords("IndexBarcode", user)).thenReturn(indexBarcodes);
+        Mockito.when(activeTask.getTask().getTaskOptions()).thenReturn(taskOptions);
+        DataMgmtServer dataMgmtServer = Mockito.mock(DataMgmtServer.class, Mockito.RETURNS_DEEP_STUBS);
+        Mockito.when(dataMgmtServer.getPickListManager(user).getPickListConfig("Plate Sizes").getEntryList())
+                .thenReturn(Arrays.asList("96-Well", "384-Well"));
+        ClientCallbackOperations clientCallback = Mockito.mock(ClientCallbackOperations.class);
+        IndexBarcodeToSampleAutoAssigner plugin = new IndexBarcodeToSampleAutoAssigner();
+        TestUtils.setPluginField(plugin, "user", user);
+        TestUtils.setPluginField(plugin, "activeTask", activeTask);
+        TestUtils.setPluginField(plugin, "dataRecordManager", server.getDataRecordManager());
+        TestUtils.setPluginField(plugin, "dataMgmtServer", dataMgmtServer);
+        TestUtils.setPluginField(plugin, "clientCallback", clientCallback);
+        TestUtils.setPluginField(plugin, "pluginLogger", Mockito.mock(PluginLogger.class));
+
+        plugin.run();
+
+        Mockito.verify(clientCallback, Mockito.never()).displayError(Mockito.anyString());
+        return taskOptions;
+    }
+
+    /**
+     * Add a 96 well adapter plate of active IDT 'AutoIndexAssignmentConfig' records with enough volume left.
+     */
+    private void addAdapterPlate(int plate) {
+        for (int column = 1; column <= 12; column++) {
+            for (char row = 'A'; row <= 'H'; row++) {
+                String wellId = row + String.valueOf(column);
+                server.addRecord("AutoIndexAssignmentConfig", fields("IndexId", "IDT_" + plate + "_" + wellId, "IndexTag", "ACGTACGT",
+                        "AdapterPlateId", "Set1Plate" + plate, "WellId", wellId, "IndexType", "IDT", "AdapterConcentration", 15.0,
+                        "AdapterVolume", 1000.0, "LastUsed", false, "IsDepelted", false, "IsActive", true, "SetId", 1));
+            }
+        }
+    }
+
+    private void addSample(DataRecord plate, String row, String column) {
+        String sampleId = "12345_" + (samples.size() + 1);
+        samples.add(server.addChild(plate, "Sample", fields("SampleId", sampleId, "Recipe", "HumanWholeGenome",
+                "ExemplarSampleType", "DNA", "Species", "Human")));
+        indexBarcodes.add(server.addRecord("IndexBarcode", fields("SampleId", sampleId, "InitialInput", "100",
+                "SampleRow", row, "SampleColumn", column)));
+    }
+}
@@ -1,14 +1,11 @@
 package com.velox.sloan.cmo.workflows.labmedicine;
 
-import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.ss.usermodel.WorkbookFactory;
+import com.velox.sloan.cmo.workflows.IgoLimsPluginUtils.ExcelReader;
 import org.junit.Before;
 import org.junit.Test;
 
-import java.io.File;
-import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.*;
 
 import static org.junit.Assert.*;
@@ -17,31 +14,18 @@ public class ThoracicBankedSampleDataReaderTests {
     private ThoracicBankedSampleDataReader dataReader = new ThoracicBankedSampleDataReader();
     private List<String> expectedHeaderValues = new ArrayList<>();
     private List<String> existingRecordUuids = new ArrayList<>();
-    private Workbook validFileWorkbook;
-    private Workbook emptyFileWorkbook;
-    private Workbook invalidHeaderWorkbook;
-    private Sheet sheetWithValidData;
-    private Sheet emptySheet;
-    private Sheet sheetWithInvalidHeader;
+    private ExcelReader validFileReader;
+    private ExcelReader emptyFileReader;
+    private ExcelReader invalidHeaderFileReader;
 
     @Before
-    public void setUp() {
+    public void setUp() throws Exception {
 
         expectedHeaderValues = Arrays.asList("Accession#", "DrawDate", "DrawTime", "Pi", "TubeType", "#ofTubes", "BoxDate", "SpecimenType", "Aliquot#", "Comments");
         existingRecordUuids = createBulkUuids();
-        try {
-            validFileWorkbook = WorkbookFactory.create(new File(Objects.requireNonNull(ThoracicBankedSampleDataReaderTests
-                    .class.getClassLoader().getResource("Valid_File_test.xlsx")).getPath()));
-            emptyFileWorkbook = WorkbookFactory.create(new File(Objects.requireNonNull(ThoracicBankedSampleDataReaderTests
-                    .class.getClassLoader().getResource("EmptyFile_Test.xlsx")).getPath()));
-            invalidHeaderWorkbook = WorkbookFactory.create(new File(Objects.requireNonNull(ThoracicBankedSampleDataReaderTests
-                    .class.getClassLoader().getResource("Invalid_FileHeaders_test.xlsx")).getPath()));
-            sheetWithValidData = validFileWorkbook.getSheetAt(0);
-            emptySheet = emptyFileWorkbook.getSheetAt(0);
-            sheetWithInvalidHeader = invalidHeaderWorkbook.getSheetAt(0);
-        } catch (IOException | InvalidFormatException | RuntimeException e) {
-            e.printStackTrace();
-        }
+        validFileReader = new ExcelReader(readResource("Valid_File_test.xlsx"));
+        emptyFileReader = new ExcelReader(readResource("EmptyFile_Test.xlsx"));
+        invalidHeaderFileReader = new ExcelReader(readResource("Invalid_FileHeaders_test.xlsx"));
     }
 
     @Test
@@ -79,53 +63,68 @@ public class ThoracicBankedSampleDataReaderTests {
     }
 
     @Test
-    public void excelFileHasValidHeader_shouldReturnTrueIfValidFileHeader() {
-        String fileName = Objects.requireNonNull(ThoracicBankedSampleDataReaderTests.class.getClassLoader().getResource("Valid_File_test.xlsx"))
-                .getPath();
-        assertTrue(dataReader.excelFileHasValidHeader(sheetWithValidData, expectedHeaderValues, fileName));
+    public void generateUniqueIds_shouldNotReturnExistingOrRepeatedIds() {
+        Set<String> existingUuids = new HashSet<>(existingRecordUuids);
+        List<String> uniqueIds = dataReader.generateUniqueIds(5000, existingUuids);
+        assertEquals(5000, new HashSet<>(uniqueIds).size());
+        for (String uniqueId : uniqueIds) {
+            assertFalse(existingRecordUuids.contains(uniqueId));
+        }
+        assertEquals(existingRecordUuids.size() + 5000, existingUuids.size());
     }
 
     @Test
-    public void excelFileHasValidHeader_shouldReturnFalseIfNotValidFileHeader() {
-        String fileName = Objects.requireNonNull(ThoracicBankedSampleDataReaderTests.class.getClassLoader().getResource("Invalid_FileHeaders_test.xlsx"))
-                .getPath();
-        assertFalse(dataReader.excelFileHasValidHeader(sheetWithInvalidHeader, expectedHeaderValues, fileName));
+    public void excelFileHasValidHeader_shouldReturnTrueIfValidFileHeader() throws Exception {
+        assertTrue(dataReader.excelFileHasValidHeader(validFileReader, expectedHeaderValues, "Valid_File_test.xlsx"));
     }
 
     @Test
-    public void excelFileHasData_shouldReturnTrueWhenFileHasValidData() {
-        assertTrue(dataReader.excelFileHasData(sheetWithValidData));
+    public void excelFileHasValidHeader_shouldReturnFalseIfNotValidFileHeader() throws Exception {
+        assertFalse(dataReader.excelFileHasValidHeader(invalidHeaderFileReader, expectedHeaderValues, "Invalid_FileHeaders_test.xlsx"));
     }
 
     @Test
-    public void excelFileHasData_shouldReturnFalseWhenFileHasNotValidData() {
-        assertFalse(dataReader.excelFileHasData(emptySheet));
+    public void excelFileHasData_shouldReturnTrueWhenFileHasValidData() throws Exception {
+        assertTrue(dataReader.excelFileHasData(validFileReader));
     }
 
     @Test
-    public void parseExcelFileHeader_shouldReturnTrueIfHeaderValues() {
-        assertEquals(dataReader.parseExcelFileHeader(sheetWithValidData, expectedHeaderValues).size(), expectedHeaderValues.size());
+    public void excelFileHasData_shouldReturnFalseWhenFileHasNotValidData() throws Exception {
+        assertFalse(dataReader.excelFileHasData(emptyFileReader));
     }
 
     @Test
-    public void parseExcelFileHeader_shouldReturnFalseIfNotValidHeader() {
-        assertNotEquals(dataReader.parseExcelFileHeader(sheetWithInvalidHeader, expectedHeaderValues).size(), expectedHeaderValues.size());
+    public void parseExcelFileHeader_shouldReturnTrueIfHeaderValues() throws Exception {
+        assertEquals(dataReader.parseExcelFileHeader(validFileReader, expectedHeaderValues).size(), expectedHeaderValues.size());
     }
 
     @Test
-    public void readThoracicBankedSampleRecordsFromFile_shouldReturnDataWhenValidFile() {
-        Map<String, Integer> fileHeader = dataReader.parseExcelFileHeader(sheetWithValidData, expectedHeaderValues);
-        List<Map<String, Object>> records = dataReader.readThoracicBankedSampleRecordsFromFile(sheetWithValidData, fileHeader, existingRecordUuids);
-        assertNotNull(records);
+    public void parseExcelFileHeader_shouldReturnFalseIfNotValidHeader() throws Exception {
+        assertNotEquals(dataReader.parseExcelFileHeader(invalidHeaderFileReader, expectedHeaderValues).size(), expectedHeaderValues.size());
     }
 
     @Test
-    public void readThoracicBankedSampleRecordsFromFile_shouldReturnNoRecordsWhenNotValidFile() {
-        Map<String, Integer> fileHeader = dataReader.parseExcelFileHeader(emptySheet, expectedHeaderValues);
-        List<Map<String, Object>> records = dataReader.readThoracicBankedSampleRecordsFromFile(emptySheet, fileHeader, existingRecordUuids);
+    public void readThoracicBankedSampleRecordsFromFile_shouldReturnDataWhenValidFile() throws Exception {
+        Map<String, Integer> fileHeader = dataReader.parseExcelFileHeader(validFileReader, expectedHeaderValues);
+        List<Map<String, Object>> records = dataReader.readThoracicBankedSampleRecordsFromFile(validFileReader, fileHeader, new HashSet<>(existingRecordUuids));
+        assertEquals(81, records.size());
+        assertEquals("18-064-00941", records.get(0).get("AccessionNumber"));
+        assertEquals(3.0, records.get(0).get("NumberOfTubes"));
+        assertEquals("Received", records.get(0).get("ExemplarSampleStatus"));
+        assertFalse(existingRecordUuids.contains(records.get(0).get("Uuid")));
+    }
+
+    @Test
+    public void readThoracicBankedSampleRecordsFromFile_shouldReturnNoRecordsWhenNotValidFile() throws Exception {
+        Map<String, Integer> fileHeader = dataReader.parseExcelFileHeader(emptyFileReader, expectedHeaderValues);
+        List<Map<String, Object>> records = dataReader.readThoracicBankedSampleRecordsFromFile(emptyFileReader, fileHeader, new HashSet<>(existingRecordUuids));
         assertTrue(records.size() == 0);
     }
 
+    private byte[] readResource(String fileName) throws Exception {
+        return Files.readAllBytes(Paths.get(Objects.requireNonNull(ThoracicBankedSampleDataReaderTests.class.getClassLoader().getResource(fileName)).toURI()));
+    }
+
     private List<String> createBulkUuids() {
         List<String> existingRecordUuids = new ArrayList<>();
         for (int i = 0; i <= 10000; i++) {
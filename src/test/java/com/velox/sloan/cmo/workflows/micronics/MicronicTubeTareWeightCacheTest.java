@@ -0,0 +1,112 @@
+package com.velox.sloan.cmo.workflows.micronics;
+
+import com.velox.api.datarecord.DataRecord;
+import com.velox.api.datarecord.DataRecordManager;
+import com.velox.api.user.User;
+import com.velox.sloan.cmo.workflows.micronics.MicronicTubeTareWeightCache.MicronicTube;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MicronicTubeTareWeightCacheTest {
+    private DataRecordManager dataRecordManager;
+    private User user;
+    private long now;
+    private MicronicTubeTareWeightCache tareWeightCache;
+
+    @Before
+    public void setUp() {
+        dataRecordManager = Mockito.mock(DataRecordManager.class);
+        user = Mockito.mock(User.class);
+        now = 0L;
+        tareWeightCache = new MicronicTubeTareWeightCache(2, 1000L, () -> now);
+    }
+
+    @Test
+    public void getTubes_shouldServeCachedTubesWithoutQuerying() throws Exception {
+        mockTubes(Arrays.asList("1001", "1002"), tube(1L, "1001", 0.5, false), tube(2L, "1002", 0.6, true));
+        Map<String, MicronicTube> tubes = tareWeightCache.getTubes(Arrays.asList("1001", "1002"), dataRecordManager, user);
+        assertEquals(0.5, tubes.get("1001").getTareWeight(), 0.0);
+        assertTrue(tubes.get("1002").isAssignedToSample());
+
+        mockTubes(Arrays.asList("1001", "1002"), tube(1L, "1001", 0.9, false), tube(2L, "1002", 0.9, false));
+        tubes = tareWeightCache.getTubes(Arrays.asList("1001", "1002"), dataRecordManager, user);
+        assertEquals(0.5, tubes.get("1001").getTareWeight(), 0.0);
+        assertTrue(tubes.get("1002").isAssignedToSample());
+    }
+
+    @Test
+    public void getTubes_shouldUseLastRecordWeightForDuplicateBarcodes() throws Exception {
+        mockTubes(Collections.singletonList("1001"), tube(1L, "1001", 0.5, true), tube(2L, "1001", 0.7, false));
+        MicronicTube tube = tareWeightCache.getTubes(Collections.singletonList("1001"), dataRecordManager, user).get("1001");
+        assertEquals(0.7, tube.getTareWeight(), 0.0);
+        assertTrue(tube.isAssignedToSample());
+        assertEquals(Arrays.asList(1L, 2L), tube.getRecordIds());
+    }
+
+    @Test
+    public void getTubes_shouldEvictLeastRecentlyUsedTubes() throws Exception {
+        mockTubes(Collections.singletonList("1001"), tube(1L, "1001", 0.5, false));
+        mockTubes(Collections.singletonList("1002"), tube(2L, "1002", 0.6, false));
+        mockTubes(Collections.singletonList("1003"), tube(3L, "1003", 0.7, false));
+        tareWeightCache.getTubes(Collections.singletonList("1001"), dataRecordManager, user);
+        tareWeightCache.getTubes(Collections.singletonList("1002"), dataRecordManager, user);
+        tareWeightCache.getTubes(Collections.singletonList("1001"), dataRecordManager, user);
+        tareWeightCache.getTubes(Collections.singletonList("1003"), dataRecordManager, user);
+        assertEquals(2, tareWeightCache.size());
+
+        mockTubes(Collections.singletonList("1001"), tube(1L, "1001", 0.9, false));
+        mockTubes(Collections.singletonList("1002"), tube(2L, "1002", 0.9, false));
+        assertEquals(0.5, tareWeightCache.getTubes(Collections.singletonList("1001"), dataRecordManager, user).get("1001").getTareWeight(), 0.0);
+        assertEquals(0.9, tareWeightCache.getTubes(Collections.singletonList("1002"), dataRecordManager, user).get("1002").getTareWeight(), 0.0);
+    }
+
+    @Test
+    public void getTubes_shouldRefetchInvalidatedAndExpiredTubes() throws Exception {
+        mockTubes(Arrays.asList("1001", "1002"), tube(1L, "1001", 0.5, false), tube(2L, "1002", 0.6, false));
+        tareWeightCache.getTubes(Arrays.asList("1001", "1002"), dataRecordManager, user);
+        mockTubes(Collections.singletonList("1001"), tube(1L, "1001", 0.8, false));
+        tareWeightCache.invalidate(Collections.singletonList("1001"));
+        assertEquals(0.8, tareWeightCache.getTubes(Collections.singletonList("1001"), dataRecordManager, user).get("1001").getTareWeight(), 0.0);
+
+        mockTubes(Collections.singletonList("1002"), tube(2L, "1002", 0.9, false));
+        assertEquals(0.6, tareWeightCache.getTubes(Collections.singletonList("1002"), dataRecordManager, user).get("1002").getTareWeight(), 0.0);
+        now = 1001L;
+        assertEquals(0.9, tareWeightCache.getTubes(Collections.singletonList("1002"), dataRecordManager, user).get("1002").getTareWeight(), 0.0);
+    }
+
+    @Test
+    public void getTubes_shouldNotReturnUnknownBarcodes() throws Exception {
+        mockTubes(Arrays.asList("1001", "9999"), tube(1L, "1001", 0.5, false));
+        Map<String, MicronicTube> tubes = tareWeightCache.getTubes(Arrays.asList("1001", "9999"), dataRecordManager, user);
+        assertEquals(Collections.singleton("1001"), tubes.keySet());
+        assertEquals(1, tareWeightCache.size());
+    }
+
+    private Object[] tube(long recordId, String barcode, double tareWeight, boolean assignedToSample) {
+        Map<String, Object> fields = new HashMap<>();
+        fields.put("MicronicTubeBarcode", barcode);
+        fields.put("MicronicTubeWeight", tareWeight);
+        fields.put("AssignedToSample", assignedToSample);
+        return new Object[]{recordId, fields};
+    }
+
+    @SuppressWarnings("unchecked")
+    private void mockTubes(List<String> barcodes, Object[]... tubes) throws Exception {
+        List<DataRecord> records = new ArrayList<>();
+        List<Map<String, Object>> fields = new ArrayList<>();
+        for (Object[] tube : tubes) {
+            DataRecord record = Mockito.mock(DataRecord.class);
+            Mockito.when(record.getRecordId()).thenReturn((Long) tube[0]);
+            records.add(record);
+            fields.add((Map<String, Object>) tube[1]);
+        }
+        Mockito.when(dataRecordManager.queryDataRecords("MicronicTubesTareWeight", "MicronicTubeBarcode", new ArrayList<Object>(barcodes), user)).thenReturn(records);
+        Mockito.when(dataRecordManager.getFieldsForRecords(records, user)).thenReturn(fields);
+    }
+}
@@ -0,0 +1,88 @@
+package com.velox.sloan.cmo.workflows.planning;
+
+import com.velox.api.datarecord.DataRecord;
+import com.velox.api.plugin.PluginLogger;
+import com.velox.api.user.User;
+import com.velox.api.util.ClientCallbackOperations;
+import com.velox.api.workflow.ActiveTask;
+import com.velox.sloan.cmo.workflows.InMemoryDataRecordManager;
+import com.velox.sloan.cmo.workflows.TestUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.velox.sloan.cmo.workflows.InMemoryDataRecordManager.fields;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CustomFieldsRetrieverTest {
+    // fields and lineage of all samples are loaded with the same number of calls for any number of samples, the
+    // IndexBarcode, SeqRequirement and QCDatum values are still read from the records one by one.
+    private static final int MAX_MANAGER_CALLS = 9;
+    private static final int MAX_RECORD_CALLS_PER_SAMPLE = 17;
+
+    private User user;
+    private InMemoryDataRecordManager server;
+    private List<DataRecord> samples;
+    private List<DataRecord> planningProtocols;
+
+    @Before
+    public void setUp() {
+        user = Mockito.mock(User.class);
+        server = new InMemoryDataRecordManager();
+        samples = new ArrayList<>();
+        planningProtocols = new ArrayList<>();
+    }
+
+    @Test
+    public void run_shouldSetPlanningFieldsFor96SamplesWithBoundedServerCalls() throws Exception {
+        runForSamples(96);
+    }
+
+    @Test
+    public void run_shouldSetPlanningFieldsFor384SamplesWithBoundedServerCalls() throws Exception {
+        runForSamples(384);
+    }
+
+    private void runForSamples(int sampleCount) throws Exception {
+        for (int i = 0; i < sampleCount; i++) {
+            addLibraryAliquot(i);
+        }
+        ActiveTask activeTask = Mockito.mock(ActiveTask.class);
+        Mockito.when(activeTask.getAttachedDataRecords("Sample", user)).thenReturn(samples);
+        Mockito.when(activeTask.getAttachedDataRecords("PlanningStepProtocol1", user)).thenReturn(planningProtocols);
+        ClientCallbackOperations clientCallback = Mockito.mock(ClientCallbackOperations.class);
+        CustomFieldsRetriever plugin = new CustomFieldsRetriever();
+        TestUtils.setPluginField(plugin, "user", user);
+        TestUtils.setPluginField(plugin, "activeTask", activeTask);
+        TestUtils.setPluginField(plugin, "dataRecordManager", server.getDataRecordManager());
+        TestUtils.setPluginField(plugin, "clientCallback", clientCallback);
+        TestUtils.setPluginField(plugin, "pluginLogger", Mockito.mock(PluginLogger.class));
+
+        plugin.run();
+
+        Mockito.verify(clientCallback, Mockito.never()).displayError(Mockito.anyString());
+        DataRecord lastProtocol = planningProtocols.get(sampleCount - 1);
+        assertEquals("IDT" + (sampleCount - 1), server.getFields(lastProtocol).get("IndexId"));
+        assertEquals(350.0, (Double) server.getFields(lastProtocol).get("AvgSize"), 0.0);
+        assertTrue(server.getCallCountSummary(), server.getManagerCallCount() <= MAX_MANAGER_CALLS);
+        assertTrue(server.getCallCountSummary(), server.getRecordCallCount() <= MAX_RECORD_CALLS_PER_SAMPLE * sampleCount);
+    }
+
+    /**
+     * Add a DNA Library sample with IndexBarcode, SeqRequirement and QCDatum children and an aliquot of it that is
+     * attached to the task, so that field values are found on the parent of the attached sample.
+     */
+    private void addLibraryAliquot(int i) {
+        DataRecord library = server.addRecord("Sample", fields("SampleId", "12345_" + i, "ExemplarSampleType", "DNA Library"));
+        server.addChild(library, "IndexBarcode", fields("IndexId", "IDT" + i, "IndexTag", "ACGTACGT-TGCATGCA"));
+        server.addChild(library, "SeqRequirement", fields("RequestedReads", 20.0, "CoverageTarget", 100, "SequencingRunType", "PE100"));
+        server.addChild(library, "QCDatum", fields("SampleId", "12345_" + i, "AvgSize", 350.0, "MapToSample", true));
+        DataRecord aliquot = server.addChild(library, "Sample", fields("SampleId", "12345_" + i + "_1", "ExemplarSampleType", "DNA Library"));
+        samples.add(aliquot);
+        planningProtocols.add(server.addRecord("PlanningStepProtocol1", fields("SampleId", "12345_" + i + "_1")));
+    }
+}
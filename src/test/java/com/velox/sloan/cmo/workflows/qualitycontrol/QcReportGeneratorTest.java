@@ -0,0 +1,95 @@
+package com.velox.sloan.cmo.workflows.qualitycontrol;
+
+import com.velox.api.datarecord.DataRecord;
+import com.velox.api.plugin.PluginLogger;
+import com.velox.api.user.User;
+import com.velox.api.util.ClientCallbackOperations;
+import com.velox.api.workflow.ActiveTask;
+import com.velox.sloan.cmo.workflows.InMemoryDataRecordManager;
+import com.velox.sloan.cmo.workflows.TestUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static com.velox.sloan.cmo.workflows.InMemoryDataRecordManager.fields;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class QcReportGeneratorTest {
+    // QCDatum, QCProtocol and SeqRequirement records are queried and read in bulk, per sample there are only the
+    // calls for the source sample and to add the report record. The report type is read from the first sample.
+    private static final int MAX_MANAGER_CALLS = 7;
+    private static final int MAX_RECORD_CALLS_PER_SAMPLE = 3;
+    private static final int MAX_RECORD_CALLS_FOR_REPORT_TYPE = 2;
+
+    private User user;
+    private InMemoryDataRecordManager server;
+    private List<DataRecord> samples;
+
+    @Before
+    public void setUp() {
+        user = Mockito.mock(User.class);
+        server = new InMemoryDataRecordManager();
+        samples = new ArrayList<>();
+    }
+
+    @Test
+    public void run_shouldGenerateDnaQcReportFor96SamplesWithBoundedServerCalls() throws Exception {
+        runForSamples(96);
+    }
+
+    @Test
+    public void run_shouldGenerateDnaQcReportFor384SamplesWithBoundedServerCalls() throws Exception {
+        runForSamples(384);
+    }
+
+    private void runForSamples(int sampleCount) throws Exception {
+        for (int i = 0; i < sampleCount; i++) {
+            addDnaSample(i);
+        }
+        ActiveTask activeTask = Mockito.mock(ActiveTask.class);
+        Mockito.when(activeTask.getAttachedDataRecords("Sample", user)).thenReturn(samples);
+        ClientCallbackOperations clientCallback = Mockito.mock(ClientCallbackOperations.class);
+        QcReportGenerator plugin = new QcReportGenerator();
+        TestUtils.setPluginField(plugin, "user", user);
+        TestUtils.setPluginField(plugin, "activeTask", activeTask);
+        TestUtils.setPluginField(plugin, "dataRecordManager", server.getDataRecordManager());
+        TestUtils.setPluginField(plugin, "clientCallback", clientCallback);
+        TestUtils.setPluginField(plugin, "pluginLogger", Mockito.mock(PluginLogger.class));
+
+        plugin.run();
+
+        Mockito.verify(clientCallback, Mockito.never()).displayError(Mockito.anyString());
+        List<DataRecord> reports = server.getRecords("QcReportDna");
+        assertEquals(sampleCount, reports.size());
+        Map<String, Object> lastReport = server.getFields(reports.get(sampleCount - 1));
+        assertEquals("12345_" + (sampleCount - 1) + "_1", lastReport.get("SampleId"));
+        assertEquals("12345_" + (sampleCount - 1), lastReport.get("SourceSampleId"));
+        assertEquals(7.5, (Double) lastReport.get("DIN"), 0.0);
+        assertEquals("Passed", lastReport.get("IgoQcRecommendation"));
+        assertTrue(server.getCallCountSummary(), server.getManagerCallCount() <= MAX_MANAGER_CALLS);
+        assertTrue(server.getCallCountSummary(), server.getRecordCallCount() <= MAX_RECORD_CALLS_PER_SAMPLE * sampleCount + MAX_RECORD_CALLS_FOR_REPORT_TYPE);
+    }
+
+    /**
+     * Add a DNA sample with its source sample, QCDatum records for DIN and Nanodrop values, a QCProtocol record and
+     * a SeqRequirement record.
+     */
+    private void addDnaSample(int i) {
+        String sampleId = "12345_" + i + "_1";
+        DataRecord sourceSample = server.addRecord("Sample", fields("SampleId", "12345_" + i, "ExemplarSampleType", "DNA"));
+        DataRecord sample = server.addChild(sourceSample, "Sample", fields("SampleId", sampleId, "OtherSampleId", "sample_" + i,
+                "UserSampleID", "sample_" + i, "AltId", "ALT" + i, "RequestId", "12345", "Concentration", 10.0,
+                "ConcentrationUnits", "ng/uL", "Volume", 30.0, "TotalMass", 300.0, "ExemplarSampleType", "DNA",
+                "SpecimenType", "Biopsy", "TumorOrNormal", "Tumor", "Preservation", "Frozen", "Recipe", "WholeExomeSequencing"));
+        samples.add(sample);
+        server.addChild(sample, "QCDatum", fields("SampleId", sampleId, "DatumType", "TapeStation SampleTable", "DIN", 7.5));
+        server.addChild(sample, "QCDatum", fields("SampleId", sampleId, "DatumType", "Nanodrop Nano", "A260280", 1.8, "A260230", 2.1));
+        server.addRecord("QCProtocol", fields("SampleId", sampleId, "IGOQC", "Passed", "Comments_Field", "Good quality"));
+        server.addRecord("SeqRequirement", fields("SampleId", sampleId, "OtherSampleId", "sample_" + i, "RequestedReads", 30.0));
+    }
+}
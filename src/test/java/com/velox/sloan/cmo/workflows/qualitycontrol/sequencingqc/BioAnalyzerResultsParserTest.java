@@ -11,6 +11,7 @@ import com.velox.api.util.ClientCallbackOperations;
 import com.velox.api.util.ServerException;
 import com.velox.sapioutils.client.standalone.VeloxConnection;
 import com.velox.sloan.cmo.recmodels.SampleModel;
+import com.velox.sloan.cmo.workflows.IgoLimsPluginUtils.CsvReader;
 import com.velox.sloan.cmo.workflows.IgoLimsPluginUtils.IgoLimsPluginUtils;
 import com.velox.sloan.cmo.workflows.TestUtils;
 import com.velox.util.LogWriter;
@@ -62,8 +63,9 @@ public class BioAnalyzerResultsParserTest {
             //private List<String> headerValues = Arrays.asList("Size [bp]","Conc. [pg/�l]","Molarity [pmol/l]",
             //        "Observations","Area","Aligned Migration Time [s]","Peak Height","Peak Width","% of Total","Time corrected area");
             String BIOA_HEADER_IDENTIFIER = "Size [bp]";
-            Map<String, Integer> headerValueMap = utils.getBioanalyzerFileHeaderMap(dataFromFile, fileName, BIOA_HEADER_IDENTIFIER, logger);
-            parser = new BioAnalyzerResultsParser(dataFromFile, fileName, headerValueMap, clientCallback, logger, user);
+            CsvReader csvData = utils.readCsvFile(byteData);
+            Map<String, Integer> headerValueMap = utils.getBioanalyzerFileHeaderMap(csvData, fileName, BIOA_HEADER_IDENTIFIER, logger);
+            parser = new BioAnalyzerResultsParser(csvData, fileName, headerValueMap, clientCallback, logger, user);
         } catch (IOException e) {
             String message = ExceptionUtils.getMessage(e);
             System.out.println(message);
@@ -71,6 +73,23 @@ public class BioAnalyzerResultsParserTest {
         }
     }
 
+    @Test
+    public void groupQualityControlDataBySampleId_shouldGroupPeakTableRowsBySample() throws Exception {
+        Map<String, List<QualityControlData>> groupedData = parser.groupQualityControlDataBySampleId();
+        assertEquals(Arrays.asList("07566_12_1_1", "07566_13_1_1", "09687_AO_1_1"), new ArrayList<>(groupedData.keySet()));
+        assertEquals(18, groupedData.get("07566_12_1_1").size());
+        assertEquals(12, groupedData.get("07566_13_1_1").size());
+        assertEquals(14, groupedData.get("09687_AO_1_1").size());
+        QualityControlData lowerMarker = groupedData.get("07566_12_1_1").get(0);
+        assertEquals(35, lowerMarker.getToBp());
+        assertEquals("Lower Marker", lowerMarker.getObservation());
+        QualityControlData firstPeak = groupedData.get("07566_12_1_1").get(1);
+        assertEquals(35, firstPeak.getFromBp());
+        assertEquals(141, firstPeak.getToBp());
+        assertEquals(47.49, firstPeak.getConcentration(), 0.0);
+        assertEquals(10.3, firstPeak.getFractionVal(), 0.0);
+    }
+
     @After
     public void tearDown() throws Exception {
         connection.close();
@@ -10,21 +10,17 @@ import com.velox.api.util.ClientCallbackOperations;
 import com.velox.api.util.ServerException;
 import com.velox.sapioutils.client.standalone.VeloxConnection;
 import com.velox.sloan.cmo.recmodels.SampleModel;
+import com.velox.sloan.cmo.workflows.IgoLimsPluginUtils.CsvReader;
 import com.velox.sloan.cmo.workflows.IgoLimsPluginUtils.IgoLimsPluginUtils;
 import com.velox.sloan.cmo.workflows.TestUtils;
 import com.velox.util.LogWriter;
-import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mockito;
 
-import java.io.IOException;
 import java.rmi.RemoteException;
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 
 import static org.junit.Assert.*;
 
@@ -34,7 +30,6 @@ public class TapeStationResultParserTest {
     PluginLogger logger;
     private IgoLimsPluginUtils utils = new IgoLimsPluginUtils();
     private byte[] byteData;
-    private List<String> dataFromFile = new ArrayList<>();
     private TapeStationResultParser parser;
     private User user;
     private DataRecordManager dataRecordManager;
@@ -55,17 +50,10 @@ public class TapeStationResultParserTest {
         }
         String fileName = "Tapestation_Test_File_QCResultAnnotation.csv";
         byteData = utils.readCsvFileToBytes(fileName);
-        try {
-            dataFromFile = utils.readDataFromCsvFile(byteData);
-            logger = Mockito.mock(PluginLogger.class);
-            clientCallback = Mockito.mock(ClientCallbackOperations.class);
-            Map<String, Integer> headerValueMap = utils.getCsvHeaderValueMap(dataFromFile);
-            parser = new TapeStationResultParser(dataFromFile, fileName, headerValueMap, clientCallback, logger, user);
-        } catch (IOException e) {
-            String message = ExceptionUtils.getMessage(e);
-            System.out.println(message);
-            System.out.println(dataFromFile);
-        }
+        CsvReader fileData = utils.readCsvFile(byteData);
+        logger = Mockito.mock(PluginLogger.class);
+        clientCallback = Mockito.mock(ClientCallbackOperations.class);
+        parser = new TapeStationResultParser(fileData, fileName, fileData.getHeaderValueMap(), clientCallback, logger, user);
     }
 
 
@@ -0,0 +1,118 @@
+package com.velox.sloan.cmo.workflows.samplereceiving;
+
+import com.velox.api.datarecord.DataRecord;
+import com.velox.api.datarecord.DataRecordManager;
+import com.velox.api.plugin.PluginLogger;
+import com.velox.api.user.User;
+import com.velox.api.util.ClientCallbackOperations;
+import com.velox.api.workflow.ActiveTask;
+import com.velox.api.workflow.ActiveWorkflow;
+import com.velox.sloan.cmo.workflows.InMemoryDataRecordManager;
+import com.velox.sloan.cmo.workflows.TestUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.rmi.RemoteException;
+import java.util.*;
+
+import static com.velox.sloan.cmo.workflows.InMemoryDataRecordManager.fields;
+import static org.junit.Assert.*;
+
+public class UserLibraryPoolMakerTest {
+    private static final int POOL_COUNT = 48;
+    private static final int LIBRARIES_PER_POOL = 2;
+
+    private User user;
+    private InMemoryDataRecordManager server;
+    private List<DataRecord> samples;
+    private Map<String, String> taskOptions;
+    private ClientCallbackOperations clientCallback;
+
+    @Before
+    public void setUp() {
+        user = Mockito.mock(User.class);
+        server = new InMemoryDataRecordManager();
+        samples = new ArrayList<>();
+        taskOptions = new HashMap<>();
+        taskOptions.put("CREATE USER LIBRARY POOLS", "");
+        clientCallback = Mockito.mock(ClientCallbackOperations.class);
+        DataRecord request = server.addRecord("Request", fields("RequestId", "12345"));
+        for (int pool = 1; pool <= POOL_COUNT; pool++) {
+            for (int library = 1; library <= LIBRARIES_PER_POOL; library++) {
+                int sampleNumber = (pool - 1) * LIBRARIES_PER_POOL + library;
+                DataRecord sample = server.addChild(request, "Sample", fields("SampleId", "12345_" + sampleNumber,
+                        "OtherSampleId", "library_" + sampleNumber, "UserSampleID", "library_" + sampleNumber, "AltId", "ALT" + sampleNumber,
+                        "ExemplarSampleType", "Pooled Library", "ExemplarSampleStatus", "Received", "Species", "Human",
+                        "Recipe", "HumanWholeGenome", "MicronicTubeBarcode", String.format("01%08d", pool)));
+                server.addChild(sample, "SeqRequirement", fields("SequencingRunType", "PE150", "RequestedReads", 10.0));
+                samples.add(sample);
+            }
+        }
+    }
+
+    @Test
+    public void run_shouldCreateAllPoolsWithSingleCommit() throws Exception {
+        newPlugin().run();
+
+        Mockito.verify(clientCallback, Mockito.never()).displayError(Mockito.anyString());
+        assertTrue(taskOptions.containsKey("USER POOLS CREATED"));
+        assertEquals(1, server.getCallCount("DataRecordManager.storeAndCommit"));
+        assertEquals(2, server.getCallCount("DataRecordManager.addDataRecords"));
+        assertEquals(0, server.getCallCount("DataRecordManager.queryDataRecords"));
+        List<DataRecord> pools = getPools();
+        assertEquals(POOL_COUNT, pools.size());
+        Map<String, Object> lastPool = server.getFields(pools.get(POOL_COUNT - 1));
+        assertEquals("Pool-12345-Tube" + POOL_COUNT, lastPool.get("SampleId"));
+        assertEquals("library_95,library_96", lastPool.get("OtherSampleId"));
+        DataRecord lastPoolSeqRequirement = pools.get(POOL_COUNT - 1).getChildrenOfType("SeqRequirementPooled", user)[0];
+        assertEquals(20.0, server.getFields(lastPoolSeqRequirement).get("RequestedReads"));
+        assertEquals("PE150", server.getFields(lastPoolSeqRequirement).get("SequencingRunType"));
+        assertEquals(Arrays.asList(samples.get(94), samples.get(95)), pools.get(POOL_COUNT - 1).getParentsOfType("Sample", user));
+        for (DataRecord sample : samples) {
+            assertEquals("Processing Completed", server.getFields(sample).get("ExemplarSampleStatus"));
+        }
+    }
+
+    @Test
+    public void run_shouldNotCreatePoolsWhenCommitFails() throws Exception {
+        DataRecordManager dataRecordManager = server.getDataRecordManager();
+        Mockito.doThrow(new RemoteException("Connection lost")).when(dataRecordManager).storeAndCommit(Mockito.anyString(), Mockito.any(), Mockito.any(User.class));
+
+        newPlugin().run();
+
+        Mockito.verify(clientCallback).displayError(Mockito.contains("Connection lost"));
+        assertFalse(taskOptions.containsKey("USER POOLS CREATED"));
+        assertTrue(getPools().isEmpty());
+        assertTrue(server.getRecords("SeqRequirementPooled").isEmpty());
+        for (DataRecord sample : samples) {
+            assertEquals("Received", server.getFields(sample).get("ExemplarSampleStatus"));
+        }
+    }
+
+    private UserLibraryPoolMaker newPlugin() throws Exception {
+        ActiveTask activeTask = Mockito.mock(ActiveTask.class, Mockito.RETURNS_DEEP_STUBS);
+        Mockito.when(activeTask.getAttachedDataRecords("Sample", user)).thenReturn(samples);
+        Mockito.when(activeTask.getTask().getTaskOptions()).thenReturn(taskOptions);
+        ActiveWorkflow activeWorkflow = Mockito.mock(ActiveWorkflow.class);
+        Mockito.when(activeWorkflow.getActiveTaskList()).thenReturn(new ArrayList<>());
+        UserLibraryPoolMaker plugin = new UserLibraryPoolMaker();
+        TestUtils.setPluginField(plugin, "user", user);
+        TestUtils.setPluginField(plugin, "activeTask", activeTask);
+        TestUtils.setPluginField(plugin, "activeWorkflow", activeWorkflow);
+        TestUtils.setPluginField(plugin, "dataRecordManager", server.getDataRecordManager());
+        TestUtils.setPluginField(plugin, "clientCallback", clientCallback);
+        TestUtils.setPluginField(plugin, "pluginLogger", Mockito.mock(PluginLogger.class));
+        return plugin;
+    }
+
+    private List<DataRecord> getPools() {
+        List<DataRecord> pools = new ArrayList<>();
+        for (DataRecord sample : server.getRecords("Sample")) {
+            if (server.getFields(sample).get("SampleId").toString().startsWith("Pool-")) {
+                pools.add(sample);
+            }
+        }
+        return pools;
+    }
+}
@@ -0,0 +1,129 @@
+package com.velox.sloan.cmo.workflows.samplereceiving.sequencingrequirements;
+
+import com.velox.api.datarecord.DataRecord;
+import com.velox.sloan.cmo.workflows.utils.RecordFieldSnapshot;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class CoverageReferenceTableTest {
+    private static final Object[] RECIPES = {"WholeExomeSequencing", "IMPACT505", "ShallowWGS", null};
+    private static final Object[] PANELS = {"WES_Human", "IMPACT505", "", " ", null};
+    private static final Object[] TUMOR_NORMALS = {"Tumor", "Normal", "", null};
+    private static final Object[] COVERAGES = {"30", "100", " 100 ", "", null};
+
+    private List<RecordFieldSnapshot> references;
+    private CoverageReferenceTable refTable;
+
+    @Before
+    public void setUp() {
+        Random random = new Random(42);
+        references = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            Map<String, Object> fields = new HashMap<>();
+            fields.put(CoverageReferenceTable.PLATFORM_APPLICATION, pick(random, RECIPES));
+            fields.put(CoverageReferenceTable.CAPTURE_PANEL, pick(random, PANELS));
+            fields.put(CoverageReferenceTable.TUMOR_NORMAL, pick(random, TUMOR_NORMALS));
+            fields.put(CoverageReferenceTable.COVERAGE, pick(random, COVERAGES));
+            references.add(createReference(i, fields));
+        }
+        refTable = new CoverageReferenceTable(references);
+    }
+
+    @Test
+    public void getRefRecord_shouldReturnSameRecordAsLinearScan() {
+        for (Object recipe : RECIPES) {
+            for (Object panel : PANELS) {
+                for (Object tumorOrNormal : TUMOR_NORMALS) {
+                    for (Object coverage : COVERAGES) {
+                        String message = String.format("Recipe: %s, Panel: %s, TumorOrNormal: %s, Coverage: %s", recipe, panel, tumorOrNormal, coverage);
+                        assertEquals(message, scanRefRecord(recipe, panel, tumorOrNormal, coverage),
+                                refTable.getRefRecord(recipe, panel, tumorOrNormal, coverage));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void getRefRecord_shouldFallBackToReferenceWithoutPanelAndTumorNormal() {
+        List<RecordFieldSnapshot> refs = Arrays.asList(
+                createReference(1, refFields("ShallowWGS", "", "Tumor", "10")),
+                createReference(2, refFields("ShallowWGS", null, "", "10")));
+        CoverageReferenceTable table = new CoverageReferenceTable(refs);
+        assertEquals(refs.get(0), table.getRefRecord("ShallowWGS", null, "Tumor", "10"));
+        assertEquals(refs.get(1), table.getRefRecord("ShallowWGS", null, "Normal", " 10 "));
+        assertNull(table.getRefRecord("ShallowWGS", null, "Normal", "20"));
+    }
+
+    @Test
+    public void getRefRecord_shouldMatchPanelReferenceOnTumorNormalWhenCoverageIsBlank() {
+        List<RecordFieldSnapshot> refs = Arrays.asList(
+                createReference(1, refFields("IMPACT505", "IMPACT505", "Tumor", "500")),
+                createReference(2, refFields("IMPACT505", "IMPACT505", "Normal", "250")));
+        CoverageReferenceTable table = new CoverageReferenceTable(refs);
+        assertEquals(refs.get(1), table.getRefRecord("IMPACT505", "IMPACT505", "Normal", ""));
+        assertEquals(refs.get(0), table.getRefRecord("IMPACT505", "IMPACT505", "Normal", "500"));
+        assertNull(table.getRefRecord("IMPACT505", "IMPACT505", "Normal", "100"));
+    }
+
+    private Object pick(Random random, Object[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private Map<String, Object> refFields(Object recipe, Object panel, Object tumorOrNormal, Object coverage) {
+        Map<String, Object> fields = new HashMap<>();
+        fields.put(CoverageReferenceTable.PLATFORM_APPLICATION, recipe);
+        fields.put(CoverageReferenceTable.CAPTURE_PANEL, panel);
+        fields.put(CoverageReferenceTable.TUMOR_NORMAL, tumorOrNormal);
+        fields.put(CoverageReferenceTable.COVERAGE, coverage);
+        return fields;
+    }
+
+    private RecordFieldSnapshot createReference(long recordId, Map<String, Object> fields) {
+        DataRecord record = Mockito.mock(DataRecord.class);
+        Mockito.when(record.getRecordId()).thenReturn(recordId);
+        return new RecordFieldSnapshot(record, fields);
+    }
+
+    /**
+     * Linear scan over the references as done before the lookup table was added. Null Coverage values are compared as
+     * blank values.
+     */
+    private RecordFieldSnapshot scanRefRecord(Object recipe, Object panel, Object tumorOrNormal, Object coverage) {
+        recipe = Objects.isNull(recipe) ? "" : recipe;
+        panel = Objects.isNull(panel) ? "" : panel;
+        tumorOrNormal = Objects.isNull(tumorOrNormal) ? "" : tumorOrNormal;
+        String coverageVal = Objects.isNull(coverage) ? "" : coverage.toString().trim();
+        for (RecordFieldSnapshot d : references) {
+            Object dRecipe = d.getValue(CoverageReferenceTable.PLATFORM_APPLICATION);
+            Object dPanel = d.getValue(CoverageReferenceTable.CAPTURE_PANEL);
+            Object dTumorOrNormal = d.getValue(CoverageReferenceTable.TUMOR_NORMAL);
+            Object dCoverage = d.getValue(CoverageReferenceTable.COVERAGE);
+            String dCoverageVal = Objects.isNull(dCoverage) ? "" : dCoverage.toString().trim();
+            if (Objects.isNull(dPanel) || dPanel.toString().trim().isEmpty()) {
+                if (Objects.equals(dRecipe, recipe) && Objects.equals(dTumorOrNormal, tumorOrNormal) && dCoverageVal.equals(coverageVal)) {
+                    return d;
+                } else if (Objects.isNull(dTumorOrNormal) || dTumorOrNormal.toString().trim().isEmpty()) {
+                    if (Objects.equals(dRecipe, recipe) && dCoverageVal.equals(coverageVal)) {
+                        return d;
+                    }
+                }
+            } else if (Objects.nonNull(dCoverage) && !coverageVal.isEmpty()) {
+                if (Objects.equals(dRecipe, recipe) && Objects.equals(dPanel, panel) && dCoverageVal.equals(coverageVal)) {
+                    return d;
+                }
+            } else {
+                if (Objects.equals(dRecipe, recipe) && Objects.equals(dTumorOrNormal, tumorOrNormal)) {
+                    return d;
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,109 @@
+package com.velox.sloan.cmo.workflows.samplereceiving.sequencingrequirements;
+
+import com.velox.api.datamgmtserver.DataMgmtServer;
+import com.velox.api.datarecord.DataRecord;
+import com.velox.api.plugin.PluginLogger;
+import com.velox.api.user.User;
+import com.velox.api.util.ClientCallbackOperations;
+import com.velox.api.workflow.ActiveTask;
+import com.velox.sloan.cmo.workflows.InMemoryDataRecordManager;
+import com.velox.sloan.cmo.workflows.TestUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.*;
+
+import static com.velox.sloan.cmo.workflows.InMemoryDataRecordManager.fields;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs SequencingRequirementsHandler against an InMemoryDataRecordManager instead of a LIMS server, unlike
+ * SequencingRequirementsHandlerTest.
+ */
+public class SequencingRequirementsHandlerCallCountTest {
+    // the reference table and the BankedSample records are queried in bulk, but every sample is still compared with
+    // every BankedSample and SeqRequirement record by reading their values, so record calls grow with the square of
+    // the sample count.
+    private static final int MAX_MANAGER_CALLS = 5;
+    private static final int MAX_RECORD_CALLS_PER_SAMPLE_PAIR = 2;
+    private static final int MAX_RECORD_CALLS_PER_SAMPLE = 14;
+    private static final int MAX_RECORD_CALLS_FOR_TASK = 2;
+
+    private User user;
+    private InMemoryDataRecordManager server;
+    private List<DataRecord> samples;
+    private List<DataRecord> seqRequirements;
+
+    @Before
+    public void setUp() {
+        user = Mockito.mock(User.class);
+        server = new InMemoryDataRecordManager();
+        samples = new ArrayList<>();
+        seqRequirements = new ArrayList<>();
+        server.addRecord("ApplicationReadCoverageRef", fields("PlatformApplication", "WholeExomeSequencing", "CapturePanel", "IDT_Exome_v1_FP",
+                "Coverage", "100", "TumorNormal", "Tumor", "MillionReadsHuman", 60.0, "SequencingRunType", "PE100", "ReferenceOnly", false));
+        server.addRecord("ApplicationReadCoverageRef", fields("PlatformApplication", "WholeExomeSequencing", "CapturePanel", "IDT_Exome_v1_FP",
+                "Coverage", "250", "TumorNormal", "Tumor", "MillionReadsHuman", 120.0, "SequencingRunType", "PE100", "ReferenceOnly", false));
+        server.addRecord("ApplicationReadCoverageRef", fields("PlatformApplication", "ShallowWGS", "MillionReadsHuman", 10.0,
+                "SequencingRunType", "PE100", "ReferenceOnly", true));
+    }
+
+    @Test
+    public void run_shouldUpdateSequencingRequirementsFor96SamplesWithBoundedServerCalls() throws Exception {
+        runForSamples(96);
+    }
+
+    @Test
+    public void run_shouldUpdateSequencingRequirementsFor384SamplesWithBoundedServerCalls() throws Exception {
+        runForSamples(384);
+    }
+
+    private void runForSamples(int sampleCount) throws Exception {
+        for (int i = 0; i < sampleCount; i++) {
+            addSample(i);
+        }
+        Map<String, String> taskOptions = new HashMap<>();
+        taskOptions.put("UPDATE SEQUENCING REQUIREMENTS FROM REFERENCE TABLE", "");
+        ActiveTask activeTask = Mockito.mock(ActiveTask.class, Mockito.RETURNS_DEEP_STUBS);
+        Mockito.when(activeTask.getAttachedDataRecords("Sample", user)).thenReturn(samples);
+        Mockito.when(activeTask.getAttachedDataRecords("SeqRequirement", user)).thenReturn(seqRequirements);
+        Mockito.when(activeTask.getTask().getTaskOptions()).thenReturn(taskOptions);
+        DataMgmtServer dataMgmtServer = Mockito.mock(DataMgmtServer.class, Mockito.RETURNS_DEEP_STUBS);
+        Mockito.when(dataMgmtServer.getPickListManager(user).getPickListConfig("NonSequencingRecipes").getEntryList())
+                .thenReturn(Arrays.asList("DNAExtraction", "RNAExtraction"));
+        ClientCallbackOperations clientCallback = Mockito.mock(ClientCallbackOperations.class);
+        SequencingRequirementsHandler plugin = new SequencingRequirementsHandler();
+        TestUtils.setPluginField(plugin, "user", user);
+        TestUtils.setPluginField(plugin, "activeTask", activeTask);
+        TestUtils.setPluginField(plugin, "dataRecordManager", server.getDataRecordManager());
+        TestUtils.setPluginField(plugin, "dataMgmtServer", dataMgmtServer);
+        TestUtils.setPluginField(plugin, "clientCallback", clientCallback);
+        TestUtils.setPluginField(plugin, "pluginLogger", Mockito.mock(PluginLogger.class));
+
+        plugin.run();
+
+        Mockito.verify(clientCallback, Mockito.never()).displayError(Mockito.anyString());
+        assertTrue(taskOptions.containsKey("SEQUENCING REQUIREMENTS UPDATED"));
+        Map<String, Object> lastSeqRequirement = server.getFields(seqRequirements.get(sampleCount - 1));
+        assertEquals(sampleCount % 2 == 0 ? 120.0 : 60.0, lastSeqRequirement.get("RequestedReads"));
+        assertEquals("PE100", lastSeqRequirement.get("SequencingRunType"));
+        assertTrue(server.getCallCountSummary(), server.getManagerCallCount() <= MAX_MANAGER_CALLS);
+        int maxRecordCalls = MAX_RECORD_CALLS_PER_SAMPLE_PAIR * sampleCount * sampleCount + MAX_RECORD_CALLS_PER_SAMPLE * sampleCount
+                + MAX_RECORD_CALLS_FOR_TASK;
+        assertTrue(server.getCallCountSummary(), server.getRecordCallCount() <= maxRecordCalls);
+    }
+
+    /**
+     * Add an exome sample with its BankedSample and SeqRequirement, with alternating 100X and 250X coverage.
+     */
+    private void addSample(int i) {
+        String userSampleId = "sample_" + i;
+        samples.add(server.addRecord("Sample", fields("SampleId", "12345_" + i, "OtherSampleId", userSampleId, "UserSampleID", userSampleId,
+                "RequestId", "12345", "Recipe", "WholeExomeSequencing", "ExemplarSampleType", "DNA", "Species", "Human", "TumorOrNormal", "Tumor")));
+        server.addRecord("BankedSample", fields("RequestId", "12345", "UserSampleID", userSampleId, "Recipe", "WholeExomeSequencing",
+                "CapturePanel", "IDT_Exome_v1_FP", "RequestedCoverage", i % 2 == 0 ? "100X" : "250X"));
+        seqRequirements.add(server.addRecord("SeqRequirement", fields("SampleId", "12345_" + i)));
+    }
+}
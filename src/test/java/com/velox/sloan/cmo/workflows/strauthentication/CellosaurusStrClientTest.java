@@ -0,0 +1,169 @@
+package com.velox.sloan.cmo.workflows.strauthentication;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpServer;
+import com.velox.api.plugin.PluginLogger;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class CellosaurusStrClientTest {
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private Path cacheDirectory;
+    private PluginLogger logger;
+    private AtomicInteger requests;
+    private AtomicInteger unavailableResponses;
+    private int errorStatus;
+    private Queue<Integer> batchSizes;
+    private CellosaurusStrClient strClient;
+
+    @Before
+    public void setUp() throws Exception {
+        requests = new AtomicInteger();
+        unavailableResponses = new AtomicInteger();
+        batchSizes = new ConcurrentLinkedQueue<>();
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/api/batch", exchange -> {
+            requests.incrementAndGet();
+            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            int status = 200;
+            String response = "";
+            if (errorStatus > 0) {
+                status = errorStatus;
+            } else if (unavailableResponses.getAndDecrement() > 0) {
+                status = 503;
+            } else {
+                List<Map<String, Object>> results = new ArrayList<>();
+                List<?> samples = new Gson().fromJson(body, List.class);
+                batchSizes.add(samples.size());
+                for (Object sample : samples) {
+                    Map<String, Object> result = new HashMap<>();
+                    result.put("description", ((Map<?, ?>) sample).get("description"));
+                    result.put("results", new ArrayList<>());
+                    results.add(result);
+                }
+                response = new Gson().toJson(results);
+            }
+            byte[] responseBytes = response.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status, responseBytes.length == 0 ? -1 : responseBytes.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(responseBytes);
+            }
+        });
+        serverExecutor = Executors.newFixedThreadPool(4);
+        server.setExecutor(serverExecutor);
+        server.start();
+        cacheDirectory = Files.createTempDirectory("str-cache");
+        logger = Mockito.mock(PluginLogger.class);
+        URI apiUri = URI.create(String.format("http://localhost:%d/api/batch", server.getAddress().getPort()));
+        strClient = new CellosaurusStrClient(apiUri, 2, 2, 2, Duration.ofSeconds(5), Duration.ofMillis(10), cacheDirectory, Duration.ofDays(1));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+        try (java.util.stream.Stream<Path> files = Files.walk(cacheDirectory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void getStrResults_shouldSendSamplesInBatchesAndKeepSampleOrder() throws Exception {
+        List<Map<String, Object>> profiles = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            profiles.add(getProfile("Sample" + i, i + ",12"));
+        }
+        JSONArray results = strClient.getStrResults(profiles, logger);
+        assertEquals(3, requests.get());
+        assertEquals(Arrays.asList(1, 2, 2), sorted(batchSizes));
+        assertEquals(Arrays.asList("Sample1", "Sample2", "Sample3", "Sample4", "Sample5"), getSampleNames(results));
+    }
+
+    @Test
+    public void getStrResults_shouldServeRepeatedProfilesFromDiskCache() throws Exception {
+        strClient.getStrResults(Arrays.asList(getProfile("Sample1", "11,12"), getProfile("Sample2", "10")), logger);
+        assertEquals(1, requests.get());
+        // same profiles under new names, with alleles in a different order.
+        JSONArray results = strClient.getStrResults(Arrays.asList(getProfile("Sample1_rerun", " 12,11"), getProfile("Sample2_rerun", "10")), logger);
+        assertEquals(1, requests.get());
+        assertEquals(Arrays.asList("Sample1_rerun", "Sample2_rerun"), getSampleNames(results));
+
+        strClient.getStrResults(Arrays.asList(getProfile("Sample1", "11,12"), getProfile("Sample3", "9")), logger);
+        assertEquals(2, requests.get());
+        assertEquals(Arrays.asList(1, 2), sorted(batchSizes));
+    }
+
+    @Test
+    public void getStrResults_shouldRetryUnavailableApi() throws Exception {
+        unavailableResponses.set(2);
+        JSONArray results = strClient.getStrResults(Collections.singletonList(getProfile("Sample1", "11,12")), logger);
+        assertEquals(3, requests.get());
+        assertEquals(Collections.singletonList("Sample1"), getSampleNames(results));
+    }
+
+    @Test(expected = IOException.class)
+    public void getStrResults_shouldNotRetryBadRequests() throws Exception {
+        errorStatus = 400;
+        try {
+            strClient.getStrResults(Collections.singletonList(getProfile("Sample1", "11,12")), logger);
+        } finally {
+            assertEquals(1, requests.get());
+        }
+    }
+
+    @Test
+    public void getProfileKey_shouldIgnoreSampleNameAndAlleleOrder() {
+        String profileKey = CellosaurusStrClient.getProfileKey(getProfile("Sample1", "11,12"));
+        assertEquals(profileKey, CellosaurusStrClient.getProfileKey(getProfile("Sample2", "12, 11")));
+        assertNotEquals(profileKey, CellosaurusStrClient.getProfileKey(getProfile("Sample1", "11,13")));
+    }
+
+    private Map<String, Object> getProfile(String sampleName, String d5s818Alleles) {
+        Map<String, Object> profile = new HashMap<>();
+        profile.put("description", sampleName);
+        profile.put("algorithm", 1);
+        profile.put("scoringMode", 1);
+        profile.put("scoreFilter", 75);
+        profile.put("includeAmelogenin", true);
+        profile.put("species", "human");
+        profile.put("Amelogenin", "X");
+        profile.put("D5S818", d5s818Alleles);
+        return profile;
+    }
+
+    private List<Object> getSampleNames(JSONArray results) {
+        List<Object> sampleNames = new ArrayList<>();
+        for (Object result : results) {
+            sampleNames.add(((JSONObject) result).get("description"));
+        }
+        return sampleNames;
+    }
+
+    private List<Integer> sorted(Collection<Integer> values) {
+        List<Integer> sortedValues = new ArrayList<>(values);
+        Collections.sort(sortedValues);
+        return sortedValues;
+    }
+}
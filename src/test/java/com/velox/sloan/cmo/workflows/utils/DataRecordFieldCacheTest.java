@@ -0,0 +1,68 @@
+package com.velox.sloan.cmo.workflows.utils;
+
+import com.velox.api.datarecord.DataRecord;
+import com.velox.api.user.User;
+import com.velox.sloan.cmo.workflows.InMemoryDataRecordManager;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static com.velox.sloan.cmo.workflows.InMemoryDataRecordManager.fields;
+import static org.junit.Assert.assertEquals;
+
+public class DataRecordFieldCacheTest {
+    private User user;
+    private InMemoryDataRecordManager server;
+    private DataRecordFieldCache fieldCache;
+    private DataRecord first;
+    private DataRecord second;
+
+    @Before
+    public void setUp() {
+        user = Mockito.mock(User.class);
+        server = new InMemoryDataRecordManager();
+        fieldCache = new DataRecordFieldCache(server.getDataRecordManager(), user);
+        first = server.addRecord("Sample", fields("SampleId", "12345_1", "Concentration", 10.5));
+        second = server.addRecord("Sample", fields("SampleId", "12345_2", "Concentration", 20.0));
+    }
+
+    @Test
+    public void prefetch_shouldFetchEachRecordOnceAndReturnSnapshotsInRecordOrder() throws Exception {
+        List<RecordFieldSnapshot> snapshots = fieldCache.prefetch(Arrays.asList(second, first, second));
+
+        assertEquals(3, snapshots.size());
+        assertEquals("12345_2", snapshots.get(0).getStringVal("SampleId"));
+        assertEquals("12345_1", snapshots.get(1).getStringVal("SampleId"));
+        assertEquals("12345_2", snapshots.get(2).getStringVal("SampleId"));
+        fieldCache.prefetch(Arrays.asList(first, second));
+        assertEquals(10.5, fieldCache.getDoubleVal(first, "Concentration"), 0.0);
+        assertEquals(1, server.getCallCount("DataRecordManager.getFieldsForRecords"));
+        assertEquals(0, server.getRecordCallCount());
+        assertEquals(1, fieldCache.getServerCalls());
+    }
+
+    @Test
+    public void get_shouldFetchRecordThatWasNotPrefetchedOnce() throws Exception {
+        fieldCache.prefetch(Arrays.asList(first));
+
+        assertEquals("12345_2", fieldCache.getStringVal(second, "SampleId"));
+        assertEquals(20.0, fieldCache.getDoubleVal(second, "Concentration"), 0.0);
+        assertEquals(1, server.getCallCount("DataRecord.getFields"));
+        assertEquals(2, fieldCache.getServerCalls());
+    }
+
+    @Test
+    public void invalidate_shouldReadCurrentValuesAgain() throws Exception {
+        fieldCache.prefetch(Arrays.asList(first, second));
+        first.setDataField("Concentration", 12.0, user);
+
+        assertEquals(10.5, fieldCache.getDoubleVal(first, "Concentration"), 0.0);
+        fieldCache.invalidate(first);
+        assertEquals(12.0, fieldCache.getDoubleVal(first, "Concentration"), 0.0);
+        assertEquals(20.0, fieldCache.getDoubleVal(second, "Concentration"), 0.0);
+        assertEquals(1, server.getCallCount("DataRecord.getFields"));
+    }
+}
@@ -0,0 +1,90 @@
+package com.velox.sloan.cmo.workflows.utils;
+
+import com.velox.api.datarecord.DataRecord;
+import com.velox.api.datarecord.DataRecordManager;
+import com.velox.api.user.User;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DataRecordQueryTest {
+    private DataRecordManager dataRecordManager;
+    private User user;
+
+    @Before
+    public void setUp() {
+        dataRecordManager = Mockito.mock(DataRecordManager.class);
+        user = Mockito.mock(User.class);
+    }
+
+    @Test
+    public void getWhereClause_shouldRenderValuesByType() {
+        String whereClause = DataRecordQuery.from("Sample")
+                .whereEquals("RequestId", "O'Brien_1")
+                .whereNotEquals("ReferenceOnly", 1)
+                .whereEquals("IsControl", true)
+                .whereEquals("Recipe", null)
+                .whereLike("SampleId", "12345_A%")
+                .whereGreaterThan("RecordId", 1234L)
+                .whereIn("OtherSampleId", Arrays.asList("a", "b'c", "a"))
+                .getWhereClause();
+        assertEquals("RequestId = 'O''Brien_1' AND ReferenceOnly != 1 AND IsControl = 1 AND Recipe IS NULL AND " +
+                "SampleId LIKE '12345_A%' AND RecordId > 1234 AND OtherSampleId IN ('a', 'b''c')", whereClause);
+    }
+
+    @Test
+    public void getWhereClause_shouldJoinLikePatternsWithOr() {
+        assertEquals("SampleId LIKE '12345_A%'", DataRecordQuery.from("Sample")
+                .whereLikeAny("SampleId", Arrays.asList("12345_A%", "12345_A%")).getWhereClause());
+        assertEquals("RequestId = '12345' AND (SampleId LIKE '12345_A%' OR SampleId LIKE 'Pool-12345-Tube1%')", DataRecordQuery.from("Sample")
+                .whereEquals("RequestId", "12345")
+                .whereLikeAny("SampleId", Arrays.asList("12345_A%", "Pool-12345-Tube1%"))
+                .getWhereClause());
+    }
+
+    @Test
+    public void getWhereClause_shouldBeNullWithoutConditions() {
+        assertNull(DataRecordQuery.from("MicronicTubesTareWeight").getWhereClause());
+    }
+
+    @Test
+    public void execute_shouldNotQueryEmptyInList() throws Exception {
+        List<DataRecord> records = DataRecordQuery.from("Sample").whereIn("SampleId", new ArrayList<>()).execute(dataRecordManager, user);
+        assertTrue(records.isEmpty());
+    }
+
+    @Test
+    public void execute_shouldSplitLargeInListsIntoChunks() throws Exception {
+        List<String> sampleIds = new ArrayList<>();
+        for (int i = 0; i < DataRecordQuery.MAX_IN_CLAUSE_VALUES * 2 + 1; i++) {
+            sampleIds.add("12345_" + i);
+        }
+        List<DataRecord> expectedRecords = new ArrayList<>();
+        for (int i = 0; i < sampleIds.size(); i += DataRecordQuery.MAX_IN_CLAUSE_VALUES) {
+            List<Object> chunk = new ArrayList<>(sampleIds.subList(i, Math.min(i + DataRecordQuery.MAX_IN_CLAUSE_VALUES, sampleIds.size())));
+            DataRecord record = Mockito.mock(DataRecord.class);
+            expectedRecords.add(record);
+            Mockito.when(dataRecordManager.queryDataRecords("QCDatum", "SampleId", chunk, user)).thenReturn(Collections.singletonList(record));
+        }
+        List<DataRecord> records = DataRecordQuery.from("QCDatum").whereIn("SampleId", sampleIds).execute(dataRecordManager, user);
+        assertEquals(expectedRecords, records);
+    }
+
+    @Test
+    public void execute_shouldCombineInListWithOtherConditions() throws Exception {
+        DataRecord bankedSample = Mockito.mock(DataRecord.class);
+        Mockito.when(dataRecordManager.queryDataRecords("BankedSample", "RequestId = '12345' AND UserSampleID IN ('s1', 's2')", user))
+                .thenReturn(Collections.singletonList(bankedSample));
+        List<DataRecord> records = DataRecordQuery.from("BankedSample")
+                .whereEquals("RequestId", "12345")
+                .whereIn("UserSampleID", Arrays.asList("s1", "s2"))
+                .execute(dataRecordManager, user);
+        assertEquals(Collections.singletonList(bankedSample), records);
+    }
+}
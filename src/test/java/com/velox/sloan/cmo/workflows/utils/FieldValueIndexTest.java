@@ -0,0 +1,88 @@
+package com.velox.sloan.cmo.workflows.utils;
+
+import com.velox.api.datarecord.DataRecord;
+import com.velox.api.user.User;
+import com.velox.sloan.cmo.workflows.InMemoryDataRecordManager;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static com.velox.sloan.cmo.workflows.InMemoryDataRecordManager.fields;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FieldValueIndexTest {
+    private User user;
+    private InMemoryDataRecordManager server;
+    private FieldValueIndex index;
+
+    @Before
+    public void setUp() {
+        user = Mockito.mock(User.class);
+        server = new InMemoryDataRecordManager();
+        index = new FieldValueIndex("ThoracicBankTransfer", "Uuid");
+        for (int i = 0; i < 1000; i++) {
+            server.addRecord("ThoracicBankTransfer", fields("Uuid", "AB" + i));
+        }
+    }
+
+    @Test
+    public void getValues_shouldLoadAllValuesWithOneQueryAndOneFieldFetch() throws Exception {
+        Set<String> values = index.getValues(server.getDataRecordManager(), user);
+
+        assertEquals(1000, values.size());
+        assertEquals(1, server.getCallCount("DataRecordManager.queryDataRecords"));
+        assertEquals(1, server.getCallCount("DataRecordManager.getFieldsForRecords"));
+        assertEquals(0, server.getRecordCallCount());
+    }
+
+    @Test
+    public void getValues_shouldOnlyFetchRecordsAddedSinceLastCall() throws Exception {
+        Set<String> values = new HashSet<>(index.getValues(server.getDataRecordManager(), user));
+        server.addRecord("ThoracicBankTransfer", fields("Uuid", "EF1"));
+        server.addRecord("ThoracicBankTransfer", fields("Uuid", "EF2"));
+        server.addRecord("Sample", fields("Uuid", "EF3"));
+
+        Set<String> updatedValues = index.getValues(server.getDataRecordManager(), user);
+
+        assertEquals(1002, updatedValues.size());
+        assertEquals(new HashSet<>(Arrays.asList("EF1", "EF2")), difference(updatedValues, values));
+        assertEquals(2, server.getCallCount("DataRecordManager.queryDataRecords"));
+        assertEquals(2, server.getCallCount("DataRecordManager.getFieldsForRecords"));
+    }
+
+    @Test
+    public void getValues_shouldRescanRecordsBelowLastRecordId() throws Exception {
+        // committed by a concurrent run after records with a higher RecordId were loaded.
+        DataRecord lateRecord = server.addRecord("ThoracicBankTransfer", fields());
+        server.addRecord("ThoracicBankTransfer", fields("Uuid", "EF1"));
+        index.getValues(server.getDataRecordManager(), user);
+        lateRecord.setDataField("Uuid", "EF0", user);
+
+        Set<String> values = index.getValues(server.getDataRecordManager(), user);
+
+        assertTrue(values.contains("EF0"));
+    }
+
+    @Test
+    public void getValues_shouldKeepValuesAddedByCallerOutOfIndex() throws Exception {
+        Set<String> values = index.getValues(server.getDataRecordManager(), user);
+
+        assertTrue(values.add("CD1"));
+        assertFalse(values.add("AB1"));
+        assertTrue(values.contains("CD1"));
+        assertEquals(1001, values.size());
+        assertFalse(index.getValues(server.getDataRecordManager(), user).contains("CD1"));
+    }
+
+    private static Set<String> difference(Set<String> values, Set<String> otherValues) {
+        Set<String> difference = new HashSet<>(values);
+        difference.removeAll(otherValues);
+        return difference;
+    }
+}
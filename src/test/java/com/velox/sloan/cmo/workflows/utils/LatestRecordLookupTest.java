@@ -0,0 +1,58 @@
+package com.velox.sloan.cmo.workflows.utils;
+
+import com.velox.api.datarecord.DataRecord;
+import com.velox.api.user.User;
+import com.velox.sloan.cmo.workflows.InMemoryDataRecordManager;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.Collections;
+
+import static com.velox.sloan.cmo.workflows.InMemoryDataRecordManager.fields;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class LatestRecordLookupTest {
+    private User user;
+    private InMemoryDataRecordManager server;
+
+    @Before
+    public void setUp() {
+        user = Mockito.mock(User.class);
+        server = new InMemoryDataRecordManager();
+    }
+
+    @Test
+    public void getLatestRecord_shouldOnlyQueryRecordsFromLatestKnownRecordUp() throws Exception {
+        DataRecord latest = null;
+        for (int i = 0; i < 500; i++) {
+            latest = server.addRecord("LabMedicineTransfer", fields("Name", "Transfer " + i));
+        }
+
+        assertSame(latest, LatestRecordLookup.getLatestRecord("LabMedicineTransfer", server.getDataRecordManager(), user));
+        DataRecord added = server.addRecord("LabMedicineTransfer", fields("Name", "Transfer 500"));
+        assertSame(added, LatestRecordLookup.getLatestRecord("LabMedicineTransfer", server.getDataRecordManager(), user));
+        assertSame(added, LatestRecordLookup.getLatestRecord("LabMedicineTransfer", server.getDataRecordManager(), user));
+
+        assertEquals(3, server.getCallCount("DataRecordManager.queryDataRecords"));
+        assertEquals(0, server.getRecordCallCount());
+    }
+
+    @Test
+    public void getLatestRecord_shouldQueryAllRecordsWhenLatestRecordWasDeleted() throws Exception {
+        DataRecord first = server.addRecord("ThoracicBankTransfer", fields("Uuid", "AB1"));
+        DataRecord second = server.addRecord("ThoracicBankTransfer", fields("Uuid", "AB2"));
+        assertSame(second, LatestRecordLookup.getLatestRecord("ThoracicBankTransfer", server.getDataRecordManager(), user));
+
+        server.getDataRecordManager().deleteDataRecords(Collections.singletonList(second), null, false, user);
+
+        assertSame(first, LatestRecordLookup.getLatestRecord("ThoracicBankTransfer", server.getDataRecordManager(), user));
+    }
+
+    @Test
+    public void getLatestRecord_shouldReturnNullWithoutRecords() throws Exception {
+        assertNull(LatestRecordLookup.getLatestRecord("LabMedicineCutoff", server.getDataRecordManager(), user));
+    }
+}
@@ -0,0 +1,200 @@
+package com.velox.sloan.cmo.workflows.utils;
+
+import com.velox.api.datarecord.DataRecord;
+import com.velox.api.datarecord.DataRecordManager;
+import com.velox.api.plugin.PluginLogger;
+import com.velox.api.plugin.PluginResult;
+import com.velox.api.user.User;
+import com.velox.api.util.ClientCallbackOperations;
+import com.velox.api.util.ServerException;
+import com.velox.api.workflow.ActiveTask;
+import com.velox.sloan.cmo.workflows.InMemoryDataRecordManager;
+import com.velox.sloan.cmo.workflows.TestUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.rmi.RemoteException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.velox.sloan.cmo.workflows.InMemoryDataRecordManager.fields;
+import static org.junit.Assert.*;
+
+public class ProfiledGenericPluginTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private User user;
+    private InMemoryDataRecordManager server;
+    private ActiveTask activeTask;
+    private ClientCallbackOperations clientCallback;
+    private Path metricsFile;
+
+    @Before
+    public void setUp() throws Exception {
+        user = Mockito.mock(User.class);
+        server = new InMemoryDataRecordManager();
+        List<DataRecord> samples = Arrays.asList(server.addRecord("Sample", fields("SampleId", "12345_1")),
+                server.addRecord("Sample", fields("SampleId", "12345_2")));
+        activeTask = Mockito.mock(ActiveTask.class);
+        Mockito.when(activeTask.getAttachedDataRecords("Sample", user)).thenReturn(samples);
+        clientCallback = Mockito.mock(ClientCallbackOperations.class);
+        metricsFile = temporaryFolder.getRoot().toPath().resolve("metrics").resolve("plugin-metrics.json");
+    }
+
+    @Test
+    public void run_shouldRecordQueriesCommitsAndAttachedRecords() throws Exception {
+        PluginMetrics metrics = new PluginMetrics(metricsFile, Duration.ofHours(1));
+        TestPlugin plugin = newPlugin(metrics, false);
+
+        plugin.run();
+        plugin.run();
+
+        List<PluginMetrics.PluginStats> ranked = metrics.getPluginsByWallTime();
+        assertEquals(1, ranked.size());
+        PluginMetrics.PluginStats stats = ranked.get(0);
+        assertEquals("TestPlugin", stats.getPlugin());
+        assertEquals(2, stats.getRuns());
+        assertEquals(0, stats.getFailedRuns());
+        assertEquals(4, stats.getTotalAttachedRecords());
+        assertEquals(2, stats.getTotalQueries());
+        assertEquals(2, stats.getTotalCommits());
+        assertEquals(2, Arrays.stream(stats.getWallMsHistogram()).sum());
+        Mockito.verify(clientCallback, Mockito.times(2)).displayInfo("Done");
+        assertEquals(2, server.getCallCount("DataRecordManager.storeAndCommit"));
+        // the runs only update the metrics in memory, the file is saved by the writer thread.
+        assertFalse(Files.exists(metricsFile));
+        metrics.saveMetricsFile();
+        String json = new String(Files.readAllBytes(metricsFile), StandardCharsets.UTF_8);
+        assertTrue(json.contains("\"plugin\": \"TestPlugin\""));
+        assertTrue(json.contains("\"runs\": 2"));
+    }
+
+    @Test
+    public void run_shouldRestoreFieldsAndRecordFailedRun() throws Exception {
+        PluginMetrics metrics = new PluginMetrics(null, Duration.ofHours(1));
+        TestPlugin plugin = newPlugin(metrics, true);
+
+        try {
+            plugin.run();
+            fail("Expected RemoteException");
+        } catch (RemoteException e) {
+            // expected
+        }
+
+        assertSame(server.getDataRecordManager(), plugin.getDataRecordManager());
+        assertSame(clientCallback, plugin.getClientCallback());
+        assertEquals(1, metrics.getPluginsByWallTime().get(0).getFailedRuns());
+    }
+
+    @Test
+    public void getPluginsByWallTime_shouldOnlyCoverRunsInRollingWindow() throws Exception {
+        long[] now = {0L};
+        PluginMetrics metrics = new PluginMetrics(null, Duration.ofHours(24), () -> now[0]);
+        metrics.record(finishedProfile("TestPlugin"));
+        now[0] = Duration.ofHours(12).toMillis();
+        metrics.record(finishedProfile("TestPlugin"));
+        metrics.record(finishedProfile("OtherPlugin"));
+
+        now[0] = Duration.ofMinutes(23 * 60 + 30).toMillis();
+        assertEquals(2, metrics.getPluginsByWallTime().size());
+        assertEquals(2, getStats(metrics, "TestPlugin").getRuns());
+        now[0] = Duration.ofHours(24).toMillis();
+        assertEquals(1, getStats(metrics, "TestPlugin").getRuns());
+        now[0] = Duration.ofHours(36).toMillis();
+        assertTrue(metrics.getPluginsByWallTime().isEmpty());
+    }
+
+    @Test
+    public void toLogLine_shouldListCountersAsKeyValuePairs() throws Exception {
+        PluginRunProfile profile = new PluginRunProfile("TestPlugin");
+        DataRecordManager dataRecordManager = profile.wrap(server.getDataRecordManager());
+        profile.wrap(activeTask).getAttachedDataRecords("Sample", user);
+        dataRecordManager.queryDataRecords("Sample", "SampleId = '12345_1'", user);
+        dataRecordManager.queryDataRecords("Sample", "SampleId = '12345_2'", user);
+        dataRecordManager.storeAndCommit("Updated samples", null, user);
+        profile.wrap(clientCallback).displayWarning("Check samples");
+        profile.finish();
+
+        String logLine = profile.toLogLine();
+
+        assertTrue(logLine, logLine.startsWith("plugin_metrics plugin=TestPlugin status=completed wallMs="));
+        assertTrue(logLine, logLine.contains(" attachedRecords=2 queries=2 "));
+        assertTrue(logLine, logLine.contains(" commits=1 "));
+        assertTrue(logLine, logLine.contains(" managerCalls=0 "));
+        assertTrue(logLine, logLine.contains(" clientCalls=1 "));
+    }
+
+    private static PluginRunProfile finishedProfile(String pluginName) {
+        PluginRunProfile profile = new PluginRunProfile(pluginName);
+        profile.finish();
+        return profile;
+    }
+
+    private static PluginMetrics.PluginStats getStats(PluginMetrics metrics, String pluginName) {
+        for (PluginMetrics.PluginStats stats : metrics.getPluginsByWallTime()) {
+            if (stats.getPlugin().equals(pluginName)) {
+                return stats;
+            }
+        }
+        throw new AssertionError("No metrics for " + pluginName);
+    }
+
+    private TestPlugin newPlugin(PluginMetrics metrics, boolean fail) {
+        TestPlugin plugin = new TestPlugin(metrics, fail);
+        TestUtils.setPluginField(plugin, "user", user);
+        TestUtils.setPluginField(plugin, "activeTask", activeTask);
+        TestUtils.setPluginField(plugin, "dataRecordManager", server.getDataRecordManager());
+        TestUtils.setPluginField(plugin, "clientCallback", clientCallback);
+        TestUtils.setPluginField(plugin, "pluginLogger", Mockito.mock(PluginLogger.class));
+        return plugin;
+    }
+
+    private static class TestPlugin extends ProfiledGenericPlugin {
+        private final PluginMetrics metrics;
+        private final boolean fail;
+
+        TestPlugin(PluginMetrics metrics, boolean fail) {
+            this.metrics = metrics;
+            this.fail = fail;
+        }
+
+        @Override
+        protected PluginResult runProfiled() throws ServerException, RemoteException {
+            try {
+                List<DataRecord> samples = activeTask.getAttachedDataRecords("Sample", user);
+                DataRecordQuery.from("Sample").whereEquals("SampleId", "12345_1").execute(dataRecordManager, user);
+                if (fail) {
+                    throw new RemoteException("Failed to update samples");
+                }
+                dataRecordManager.storeAndCommit("Updated samples", null, user);
+                clientCallback.displayInfo("Done");
+                return new PluginResult(!samples.isEmpty());
+            } catch (ServerException | RemoteException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        protected PluginMetrics getPluginMetrics() {
+            return metrics;
+        }
+
+        DataRecordManager getDataRecordManager() {
+            return dataRecordManager;
+        }
+
+        ClientCallbackOperations getClientCallback() {
+            return clientCallback;
+        }
+    }
+}
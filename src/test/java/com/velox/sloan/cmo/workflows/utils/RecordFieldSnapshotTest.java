@@ -0,0 +1,55 @@
+package com.velox.sloan.cmo.workflows.utils;
+
+import com.velox.api.datarecord.DataRecord;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.velox.sloan.cmo.workflows.InMemoryDataRecordManager.fields;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RecordFieldSnapshotTest {
+
+    @Test
+    public void boxedGetters_shouldReturnNullForMissingOrBlankFields() {
+        Map<String, Object> values = fields("Volume", "", "Concentration", "  ", "Quantity", null);
+        RecordFieldSnapshot snapshot = new RecordFieldSnapshot(Mockito.mock(DataRecord.class), values);
+
+        for (String field : new String[]{"Volume", "Concentration", "Quantity", "Missing"}) {
+            assertNull(field, snapshot.getDoubleVal(field));
+            assertNull(field, snapshot.getIntegerVal(field));
+            assertNull(field, snapshot.getLongVal(field));
+        }
+        assertNull(snapshot.getStringVal("Quantity"));
+        assertNull(snapshot.getStringVal("Missing"));
+        assertFalse(snapshot.getBooleanVal("Missing"));
+    }
+
+    @Test
+    public void getters_shouldConvertNumbersAndParseStrings() {
+        RecordFieldSnapshot snapshot = new RecordFieldSnapshot(Mockito.mock(DataRecord.class),
+                fields("Volume", 25, "Concentration", " 1.5 ", "RecordId", "1234", "IsActive", "true", "SampleId", "12345_1"));
+
+        assertEquals(25.0, snapshot.getDoubleVal("Volume"), 0.0);
+        assertEquals(Integer.valueOf(25), snapshot.getIntegerVal("Volume"));
+        assertEquals(1.5, snapshot.getDoubleVal("Concentration"), 0.0);
+        assertEquals(Long.valueOf(1234), snapshot.getLongVal("RecordId"));
+        assertTrue(snapshot.getBooleanVal("IsActive"));
+        assertEquals("12345_1", snapshot.getStringVal("SampleId"));
+    }
+
+    @Test
+    public void getFields_shouldNotChangeWithTheFetchedMap() {
+        Map<String, Object> values = new HashMap<>(fields("SampleId", "12345_1"));
+        RecordFieldSnapshot snapshot = new RecordFieldSnapshot(Mockito.mock(DataRecord.class), values);
+        values.put("SampleId", "12345_2");
+
+        assertEquals("12345_1", snapshot.getStringVal("SampleId"));
+        assertTrue(snapshot.hasField("SampleId"));
+    }
+}
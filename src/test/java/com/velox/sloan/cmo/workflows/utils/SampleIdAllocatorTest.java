@@ -0,0 +1,120 @@
+package com.velox.sloan.cmo.workflows.utils;
+
+import com.velox.api.datarecord.DataRecord;
+import com.velox.api.datarecord.DataRecordManager;
+import com.velox.api.user.User;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+
+public class SampleIdAllocatorTest {
+    private DataRecordManager dataRecordManager;
+    private User user;
+    private SampleIdAllocator allocator;
+
+    @Before
+    public void setUp() {
+        dataRecordManager = Mockito.mock(DataRecordManager.class);
+        user = Mockito.mock(User.class);
+        allocator = new SampleIdAllocator(dataRecordManager, user);
+    }
+
+    @After
+    public void tearDown() {
+        allocator.close();
+    }
+
+    @Test
+    public void getNextSampleId_shouldSkipIdsUsedAsAliquotBase() throws Exception {
+        mockExistingSampleIds("12345_A", "12345_A_1", "12345_A_1_1", "12345_A_1_2", "12345_A_2_1", "12345_A_10");
+        assertEquals("12345_A_3", allocator.getNextSampleId("12345_A", false));
+    }
+
+    @Test
+    public void getNextSampleId_shouldReturnBaseIdIfUnused() throws Exception {
+        mockExistingSampleIds("Pool-12345-Tube1", "Pool-12345-Tube10");
+        assertEquals("Pool-12345-Tube1", allocator.getNextSampleId("Pool-12345-Tube1", true));
+    }
+
+    @Test
+    public void getNextSampleId_shouldExtendBaseIdIfUsed() throws Exception {
+        mockExistingSampleIds("Pool-12346-Tube1", "Pool-12346-Tube1", "Pool-12346-Tube1_1");
+        assertEquals("Pool-12346-Tube1_2", allocator.getNextSampleId("Pool-12346-Tube1", true));
+    }
+
+    @Test
+    public void getNextSampleId_shouldNotReturnReservedIdsBeforeTheyAreCommitted() throws Exception {
+        mockExistingSampleIds("12347_B", "12347_B_1_1");
+        SampleIdAllocator otherRunAllocator = new SampleIdAllocator(dataRecordManager, user);
+        assertEquals("12347_B_2", allocator.getNextSampleId("12347_B", false));
+        assertEquals("12347_B_3", otherRunAllocator.getNextSampleId("12347_B", false));
+        assertEquals("12347_B_4", allocator.getNextSampleId("12347_B", false));
+        otherRunAllocator.close();
+    }
+
+    @Test
+    public void close_shouldReleaseReservedIds() throws Exception {
+        mockExistingSampleIds("12348_C", "12348_C_1_1");
+        SampleIdAllocator otherRunAllocator = new SampleIdAllocator(dataRecordManager, user);
+        assertEquals("12348_C_2", otherRunAllocator.getNextSampleId("12348_C", false));
+        otherRunAllocator.close();
+        assertEquals("12348_C_2", allocator.getNextSampleId("12348_C", false));
+    }
+
+    @Test
+    public void getNextSampleIds_shouldQueryAllBaseIdsOnce() throws Exception {
+        List<DataRecord> samples = mockSamples("12349_A", "12349_A_1_1", "Pool-12349-Tube1", "Pool-12349-Tube2_1");
+        Mockito.when(dataRecordManager.queryDataRecords("Sample", "(SampleId LIKE '12349_A%' OR SampleId LIKE 'Pool-12349-Tube1%' OR " +
+                "SampleId LIKE 'Pool-12349-Tube2%')", user)).thenReturn(samples);
+        Map<String, String> nextSampleIds = allocator.getNextSampleIds(Arrays.asList("12349_A", "Pool-12349-Tube1", "Pool-12349-Tube2"), true);
+        assertEquals("12349_A_2", nextSampleIds.get("12349_A"));
+        assertEquals("Pool-12349-Tube1_1", nextSampleIds.get("Pool-12349-Tube1"));
+        assertEquals("Pool-12349-Tube2", nextSampleIds.get("Pool-12349-Tube2"));
+        Mockito.verify(dataRecordManager).queryDataRecords(Mockito.anyString(), Mockito.anyString(), Mockito.eq(user));
+    }
+
+    @Test
+    public void reserveSampleNumbers_shouldReserveBlockAfterHighestNumberInUseOrReserved() throws Exception {
+        mockExistingSampleIds("20002", "20002_1", "20002_100", "20002_100_1", "20002_A");
+        SampleIdAllocator otherRunAllocator = new SampleIdAllocator(dataRecordManager, user);
+        assertEquals(101, allocator.reserveSampleNumbers("20002", 96));
+        assertEquals(197, otherRunAllocator.reserveSampleNumbers("20002", 10));
+        otherRunAllocator.close();
+        assertEquals(197, allocator.reserveSampleNumbers("20002", 1));
+    }
+
+    @Test
+    public void reserveSampleNumbers_shouldFollowKnownHighestNumberAndEarlierReservationsWithoutQuery() throws Exception {
+        SampleIdAllocator otherRunAllocator = new SampleIdAllocator(dataRecordManager, user);
+        assertEquals(101, allocator.reserveSampleNumbers("20003", 96, 100));
+        assertEquals(197, otherRunAllocator.reserveSampleNumbers("20003", 10, 100));
+        otherRunAllocator.close();
+        // the numbers of the closed allocator may be committed already, the caller read the Samples before.
+        assertEquals(207, allocator.reserveSampleNumbers("20003", 1, 100));
+        assertEquals(301, allocator.reserveSampleNumbers("20003", 1, 300));
+        Mockito.verifyZeroInteractions(dataRecordManager);
+    }
+
+    private void mockExistingSampleIds(String baseId, String... sampleIds) throws Exception {
+        List<DataRecord> samples = mockSamples(sampleIds);
+        Mockito.when(dataRecordManager.queryDataRecords("Sample", "SampleId LIKE '" + baseId + "%'", user)).thenReturn(samples);
+    }
+
+    private List<DataRecord> mockSamples(String... sampleIds) throws Exception {
+        List<DataRecord> samples = new ArrayList<>();
+        List<Map<String, Object>> fields = new ArrayList<>();
+        for (String sampleId : sampleIds) {
+            samples.add(Mockito.mock(DataRecord.class));
+            Map<String, Object> sampleFields = new HashMap<>();
+            sampleFields.put("SampleId", sampleId);
+            fields.add(sampleFields);
+        }
+        Mockito.when(dataRecordManager.getFieldsForRecords(samples, user)).thenReturn(fields);
+        return samples;
+    }
+}
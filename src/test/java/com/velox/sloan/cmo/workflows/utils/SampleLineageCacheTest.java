@@ -0,0 +1,133 @@
+package com.velox.sloan.cmo.workflows.utils;
+
+import com.velox.api.datarecord.DataRecord;
+import com.velox.api.datarecord.DataRecordManager;
+import com.velox.api.user.User;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SampleLineageCacheTest {
+    private User user;
+    private DataRecord request;
+    private DataRecord parentSample;
+    private DataRecord childSample;
+    private DataRecord aliquot1;
+    private DataRecord aliquot2;
+    private DataRecord otherRequestSample;
+    private DataRecord indexBarcode;
+    private DataRecord qcAliquot1;
+    private DataRecord qcAliquot2;
+    private DataRecord qcOtherRequest;
+    private SampleLineageCache lineageCache;
+
+    @Before
+    public void setUp() throws Exception {
+        user = Mockito.mock(User.class);
+        request = mockRecord(1L, null);
+        parentSample = mockRecord(2L, "12345");
+        childSample = mockRecord(3L, "12345");
+        aliquot1 = mockRecord(4L, "12345");
+        aliquot2 = mockRecord(5L, "12345");
+        otherRequestSample = mockRecord(6L, "12345_B");
+        indexBarcode = mockRecord(7L, null);
+        qcAliquot1 = mockRecord(8L, null);
+        qcAliquot2 = mockRecord(9L, null);
+        qcOtherRequest = mockRecord(10L, null);
+
+        mockParents(parentSample, Collections.singletonList(request), new ArrayList<>());
+        mockParents(childSample, new ArrayList<>(), Collections.singletonList(parentSample));
+        mockParents(aliquot1, new ArrayList<>(), Collections.singletonList(childSample));
+        mockParents(aliquot2, new ArrayList<>(), Collections.singletonList(childSample));
+        mockParents(otherRequestSample, new ArrayList<>(), Collections.singletonList(childSample));
+
+        mockChildren(parentSample, "Sample", childSample);
+        mockChildren(childSample, "Sample", aliquot1, aliquot2, otherRequestSample);
+        mockChildren(aliquot1, "Sample");
+        mockChildren(aliquot2, "Sample");
+        mockChildren(otherRequestSample, "Sample");
+        mockChildren(parentSample, "IndexBarcode");
+        mockChildren(childSample, "IndexBarcode", indexBarcode);
+        mockChildren(aliquot1, "IndexBarcode");
+        mockChildren(aliquot2, "IndexBarcode");
+        mockChildren(parentSample, "SeqAnalysisSampleQC");
+        mockChildren(childSample, "SeqAnalysisSampleQC");
+        mockChildren(aliquot1, "SeqAnalysisSampleQC", qcAliquot1);
+        mockChildren(aliquot2, "SeqAnalysisSampleQC", qcAliquot2);
+        mockChildren(otherRequestSample, "SeqAnalysisSampleQC", qcOtherRequest);
+
+        lineageCache = new SampleLineageCache(user);
+    }
+
+    @Test
+    public void getParentSampleUnderRequest_shouldLoadSharedAncestorsOnce() throws Exception {
+        assertEquals(parentSample, lineageCache.getParentSampleUnderRequest(aliquot1));
+        int serverCalls = lineageCache.getServerCalls();
+        assertEquals(parentSample, lineageCache.getParentSampleUnderRequest(aliquot2));
+        // only the Request and Sample parents of the second aliquot are new.
+        assertEquals(serverCalls + 2, lineageCache.getServerCalls());
+        assertEquals(parentSample, lineageCache.getParentSampleUnderRequest(parentSample));
+        assertEquals(serverCalls + 2, lineageCache.getServerCalls());
+    }
+
+    @Test
+    public void getParentSampleUnderRequest_shouldNotFollowParentsOfOtherRequests() throws Exception {
+        assertNull(lineageCache.getParentSampleUnderRequest(otherRequestSample));
+    }
+
+    @Test
+    public void getDescendantRecordsUnderRequest_shouldSkipSamplesOfOtherRequests() throws Exception {
+        List<DataRecord> qcRecords = lineageCache.getDescendantRecordsUnderRequest(parentSample, "12345", "SeqAnalysisSampleQC");
+        assertEquals(Arrays.asList(qcAliquot2, qcAliquot1), qcRecords);
+    }
+
+    @Test
+    public void getRecordsOfTypeFromParents_shouldReturnChildrenOfNearestParent() throws Exception {
+        assertEquals(Collections.singletonList(indexBarcode), lineageCache.getRecordsOfTypeFromParents(aliquot1, "Sample", "IndexBarcode"));
+        assertEquals(Collections.singletonList(indexBarcode), lineageCache.getRecordsOfTypeFromParents(childSample, "Sample", "IndexBarcode"));
+        assertTrue(lineageCache.getRecordsOfTypeFromParents(parentSample, "Sample", "IndexBarcode").isEmpty());
+    }
+
+    @Test
+    public void getParentSampleWithChildOfType_shouldLoadEachLevelWithOneCall() throws Exception {
+        DataRecordManager dataRecordManager = Mockito.mock(DataRecordManager.class);
+        Map<DataRecord, List<DataRecord>> aliquotParents = new HashMap<>();
+        aliquotParents.put(aliquot1, Collections.singletonList(childSample));
+        aliquotParents.put(aliquot2, Collections.singletonList(childSample));
+        Mockito.when(dataRecordManager.getParentsOfType(Arrays.asList(aliquot1, aliquot2), "Sample", user)).thenReturn(aliquotParents);
+        Map<DataRecord, List<DataRecord>> barcodes = new HashMap<>();
+        barcodes.put(childSample, Collections.singletonList(indexBarcode));
+        Mockito.when(dataRecordManager.getChildrenOfType(Collections.singletonList(childSample), "IndexBarcode", user)).thenReturn(barcodes);
+        SampleLineageCache batchedLineageCache = new SampleLineageCache(dataRecordManager, user);
+
+        batchedLineageCache.loadParentSamplesWithChildOfType(Arrays.asList(aliquot1, aliquot2), "IndexBarcode");
+        assertEquals(2, batchedLineageCache.getServerCalls());
+        assertEquals(childSample, batchedLineageCache.getParentSampleWithChildOfType(aliquot1, "IndexBarcode"));
+        assertEquals(childSample, batchedLineageCache.getParentSampleWithChildOfType(aliquot2, "IndexBarcode"));
+        assertEquals(2, batchedLineageCache.getServerCalls());
+    }
+
+    private DataRecord mockRecord(long recordId, String requestId) throws Exception {
+        DataRecord record = Mockito.mock(DataRecord.class);
+        Mockito.when(record.getRecordId()).thenReturn(recordId);
+        Map<String, Object> fields = new HashMap<>();
+        fields.put("RequestId", requestId);
+        Mockito.when(record.getFields(user)).thenReturn(fields);
+        return record;
+    }
+
+    private void mockParents(DataRecord sample, List<DataRecord> requests, List<DataRecord> parentSamples) throws Exception {
+        Mockito.when(sample.getParentsOfType("Request", user)).thenReturn(requests);
+        Mockito.when(sample.getParentsOfType("Sample", user)).thenReturn(parentSamples);
+    }
+
+    private void mockChildren(DataRecord record, String dataType, DataRecord... children) throws Exception {
+        Mockito.when(record.getChildrenOfType(dataType, user)).thenReturn(children);
+    }
+}